@@ -80,6 +80,7 @@ public class HColumnDescriptor implements WritableComparable<HColumnDescriptor>
   public static final String CACHE_INDEX_ON_WRITE = "CACHE_INDEX_ON_WRITE";
   public static final String CACHE_BLOOMS_ON_WRITE = "CACHE_BLOOMS_ON_WRITE";
   public static final String EVICT_BLOCKS_ON_CLOSE = "EVICT_BLOCKS_ON_CLOSE";
+  public static final String CACHE_DATA_COMPRESSED = "CACHE_DATA_COMPRESSED";
 
   /**
    * Size of storefile/hfile 'blocks'.  Default is {@link #DEFAULT_BLOCKSIZE}.
@@ -194,6 +195,12 @@ public class HColumnDescriptor implements WritableComparable<HColumnDescriptor>
    */
   public static final boolean DEFAULT_EVICT_BLOCKS_ON_CLOSE = false;
 
+  /**
+   * Default setting for whether to keep data blocks compressed in the
+   * blockcache.
+   */
+  public static final boolean DEFAULT_CACHE_DATA_COMPRESSED = false;
+
   /**
    * Default compress tags along with any type of DataBlockEncoding.
    */
@@ -219,6 +226,7 @@ public class HColumnDescriptor implements WritableComparable<HColumnDescriptor>
       DEFAULT_VALUES.put(CACHE_INDEX_ON_WRITE, String.valueOf(DEFAULT_CACHE_INDEX_ON_WRITE));
       DEFAULT_VALUES.put(CACHE_BLOOMS_ON_WRITE, String.valueOf(DEFAULT_CACHE_BLOOMS_ON_WRITE));
       DEFAULT_VALUES.put(EVICT_BLOCKS_ON_CLOSE, String.valueOf(DEFAULT_EVICT_BLOCKS_ON_CLOSE));
+      DEFAULT_VALUES.put(CACHE_DATA_COMPRESSED, String.valueOf(DEFAULT_CACHE_DATA_COMPRESSED));
       for (String s : DEFAULT_VALUES.keySet()) {
         RESERVED_KEYWORDS.add(new ImmutableBytesWritable(Bytes.toBytes(s)));
       }
@@ -712,6 +720,9 @@ public class HColumnDescriptor implements WritableComparable<HColumnDescriptor>
    * LZO is not bundled as part of the hbase distribution.
    * See <a href="http://wiki.apache.org/hadoop/UsingLzoCompression">LZO Compression</a>
    * for how to enable it.
+   * The compaction compression is used for the files written by major
+   * compactions, flushes and minor compactions use {@link #getCompression()},
+   * so a fast codec can be set for the latter and a heavy one for the former.
    * @param type Compression type setting.
    * @return this (for chained invocation)
    */
@@ -923,6 +934,27 @@ public class HColumnDescriptor implements WritableComparable<HColumnDescriptor>
     return setValue(EVICT_BLOCKS_ON_CLOSE, Boolean.toString(value));
   }
 
+  /**
+   * @return true if we should keep data blocks in their compressed on-disk
+   * form in the blockcache
+   */
+  public boolean shouldCacheDataCompressed() {
+    String value = getValue(CACHE_DATA_COMPRESSED);
+    if (value != null) {
+      return Boolean.valueOf(value).booleanValue();
+    }
+    return DEFAULT_CACHE_DATA_COMPRESSED;
+  }
+
+  /**
+   * @param value true if we should keep data blocks in their compressed
+   * on-disk form in the blockcache, decompressing them on every access
+   * @return this (for chained invocation)
+   */
+  public HColumnDescriptor setCacheDataCompressed(boolean value) {
+    return setValue(CACHE_DATA_COMPRESSED, Boolean.toString(value));
+  }
+
   /**
    * @see java.lang.Object#toString()
    */
@@ -36,5 +36,12 @@ public enum BloomType {
   /**
    * Bloom enabled with Table row & column (family+qualifier) as Key
    */
-  ROWCOL
+  ROWCOL,
+  /**
+   * Bloom enabled with a prefix of the Table row as Key. The prefix is a fixed
+   * number of bytes or ends with a delimiter, see the column family
+   * configuration keys RowPrefixBloomFilter.prefix_length and
+   * RowPrefixBloomFilter.delimiter
+   */
+  ROWPREFIX
 }
\ No newline at end of file
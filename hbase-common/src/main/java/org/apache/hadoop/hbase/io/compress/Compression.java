@@ -49,6 +49,11 @@ import org.apache.hadoop.util.ReflectionUtils;
 public final class Compression {
   static final Log LOG = LogFactory.getLog(Compression.class);
 
+  /** Class of the codec of the ZSTD algorithm */
+  public static final String ZSTD_CODEC_CLASS_KEY = "hbase.io.compress.zstd.codec";
+  public static final String ZSTD_CODEC_CLASS_DEFAULT =
+      "org.apache.hadoop.hbase.io.compress.ZstdCodec";
+
   /**
    * Prevent the instantiation of class.
    */
@@ -244,6 +249,50 @@ public final class Compression {
           throw new RuntimeException(e);
         }
       }
+    },
+    ZSTD("zstd") {
+      // Use base type to avoid compile-time dependencies.
+      private volatile transient CompressionCodec zstdCodec;
+      private transient Object lock = new Object();
+
+      @Override
+      CompressionCodec getCodec(Configuration conf) {
+        if (zstdCodec == null) {
+          synchronized (lock) {
+            if (zstdCodec == null) {
+              zstdCodec = buildCodec(conf);
+            }
+          }
+        }
+        return zstdCodec;
+      }
+
+      private CompressionCodec buildCodec(Configuration conf) {
+        // Another implementation, e.g. a pure Java one, can be plugged in
+        String codecClassName = conf.get(ZSTD_CODEC_CLASS_KEY, ZSTD_CODEC_CLASS_DEFAULT);
+        try {
+          Class<?> externalCodec = getClassLoaderForCodec().loadClass(codecClassName);
+          return (CompressionCodec) ReflectionUtils.newInstance(externalCodec,
+              new Configuration(conf));
+        } catch (ClassNotFoundException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public Compressor getCompressor(int level, byte[] dictionary) {
+        Compressor compressor = getCompressor();
+        if (compressor != null) {
+          // A pooled compressor may still carry the settings of another family
+          Configuration compressorConf = new Configuration(false);
+          compressorConf.setInt(ZstdCodec.ZSTD_LEVEL_KEY, level);
+          compressor.reinit(compressorConf);
+          if (dictionary != null) {
+            compressor.setDictionary(dictionary, 0, dictionary.length);
+          }
+        }
+        return compressor;
+      }
   };
 
     private final Configuration conf;
@@ -326,6 +375,16 @@ public final class Compression {
       return null;
     }
 
+    /**
+     * Gets a compressor for the given level and dictionary. Algorithms
+     * without levels or dictionaries ignore them.
+     * @param level compression level, 0 for the default of the algorithm
+     * @param dictionary trained dictionary, may be null
+     */
+    public Compressor getCompressor(int level, byte[] dictionary) {
+      return getCompressor();
+    }
+
     public void returnCompressor(Compressor compressor) {
       if (compressor != null) {
         CodecPool.returnCompressor(compressor);
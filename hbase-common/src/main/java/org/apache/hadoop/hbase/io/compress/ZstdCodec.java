@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.BlockCompressorStream;
+import org.apache.hadoop.io.compress.BlockDecompressorStream;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Zstandard codec, backed by the zstd-jni library. Data is written in the
+ * block format of Hadoop's block codecs, each block being one Zstandard frame.
+ * <p>
+ * The compressor takes its level from {@link #ZSTD_LEVEL_KEY} and a trained
+ * dictionary through {@link Compressor#setDictionary(byte[], int, int)}.
+ * Frames compressed with a dictionary carry its id, the decompressor looks it
+ * up among the dictionaries registered with {@link #registerDictionary(byte[])}
+ * in this JVM.
+ */
+@InterfaceAudience.Private
+public class ZstdCodec implements Configurable, CompressionCodec {
+
+  /** Compression level, 1 (fastest) to 22, 0 for the library default */
+  public static final String ZSTD_LEVEL_KEY = "hbase.io.compress.zstd.level";
+  public static final int ZSTD_LEVEL_DEFAULT = 0;
+
+  /** Path of a dictionary trained with "zstd --train", usually set per family */
+  public static final String ZSTD_DICTIONARY_KEY = "hbase.io.compress.zstd.dictionary";
+
+  public static final String ZSTD_BUFFER_SIZE_KEY = "hbase.io.compress.zstd.buffersize";
+  public static final int ZSTD_BUFFER_SIZE_DEFAULT = 256 * 1024;
+
+  private static final int FRAME_MAGIC = 0xFD2FB528;
+  private static final int DICTIONARY_MAGIC = 0xEC30A437;
+
+  private static final ConcurrentMap<Integer, byte[]> DICTIONARIES =
+      new ConcurrentHashMap<Integer, byte[]>();
+
+  private Configuration conf;
+
+  public ZstdCodec() {
+    this.conf = new Configuration();
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  private int getBufferSize() {
+    return conf.getInt(ZSTD_BUFFER_SIZE_KEY, ZSTD_BUFFER_SIZE_DEFAULT);
+  }
+
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out) throws IOException {
+    return createOutputStream(out, createCompressor());
+  }
+
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor)
+      throws IOException {
+    int bufferSize = getBufferSize();
+    // Worst case expansion of a frame, see ZSTD_COMPRESSBOUND
+    int compressionOverhead = (bufferSize >> 8) + 64;
+    return new BlockCompressorStream(out, compressor, bufferSize, compressionOverhead);
+  }
+
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return ZstdCompressor.class;
+  }
+
+  @Override
+  public Compressor createCompressor() {
+    return new ZstdCompressor(conf.getInt(ZSTD_LEVEL_KEY, ZSTD_LEVEL_DEFAULT), getBufferSize());
+  }
+
+  @Override
+  public CompressionInputStream createInputStream(InputStream in) throws IOException {
+    return createInputStream(in, createDecompressor());
+  }
+
+  @Override
+  public CompressionInputStream createInputStream(InputStream in, Decompressor decompressor)
+      throws IOException {
+    return new BlockDecompressorStream(in, decompressor, getBufferSize());
+  }
+
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return ZstdDecompressor.class;
+  }
+
+  @Override
+  public Decompressor createDecompressor() {
+    return new ZstdDecompressor(getBufferSize());
+  }
+
+  @Override
+  public String getDefaultExtension() {
+    return ".zst";
+  }
+
+  /**
+   * Makes a trained dictionary available to the decompressors of this JVM.
+   * @param dictionary a dictionary as written by "zstd --train"
+   * @return the id of the dictionary
+   */
+  public static int registerDictionary(byte[] dictionary) {
+    if (dictionary.length < 8 || readIntLE(dictionary, 0) != DICTIONARY_MAGIC) {
+      throw new IllegalArgumentException("Not a trained zstd dictionary");
+    }
+    int id = readIntLE(dictionary, 4);
+    DICTIONARIES.put(id, dictionary);
+    return id;
+  }
+
+  /**
+   * Reads and registers a trained dictionary.
+   * @param conf configuration of the file system of the dictionary
+   * @param path path of the dictionary
+   * @return the dictionary
+   * @throws IOException
+   */
+  public static byte[] loadDictionary(Configuration conf, String path) throws IOException {
+    Path dictionaryPath = new Path(path);
+    FileSystem fs = dictionaryPath.getFileSystem(conf);
+    byte[] dictionary = new byte[(int) fs.getFileStatus(dictionaryPath).getLen()];
+    FSDataInputStream in = fs.open(dictionaryPath);
+    try {
+      IOUtils.readFully(in, dictionary, 0, dictionary.length);
+    } finally {
+      in.close();
+    }
+    try {
+      registerDictionary(dictionary);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Could not load zstd dictionary " + path, e);
+    }
+    return dictionary;
+  }
+
+  static byte[] getDictionary(int id) {
+    return DICTIONARIES.get(id);
+  }
+
+  /**
+   * @return the dictionary id in the header of the frame, 0 if there is none
+   */
+  static int getDictionaryId(byte[] frame, int offset, int length) {
+    if (length < 6 || readIntLE(frame, offset) != FRAME_MAGIC) {
+      return 0;
+    }
+    int descriptor = frame[offset + 4] & 0xff;
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    int pos = offset + 5 + (singleSegment ? 0 : 1);
+    switch (descriptor & 0x3) {
+    case 1:
+      return frame[pos] & 0xff;
+    case 2:
+      return (frame[pos] & 0xff) | (frame[pos + 1] & 0xff) << 8;
+    case 3:
+      return readIntLE(frame, pos);
+    default:
+      return 0;
+    }
+  }
+
+  private static int readIntLE(byte[] b, int offset) {
+    return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8
+        | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+  }
+}
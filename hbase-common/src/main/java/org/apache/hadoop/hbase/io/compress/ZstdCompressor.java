@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.Compressor;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Compressor for {@link ZstdCodec}. The input is collected until
+ * {@link #finish()} and then compressed into a single frame.
+ */
+@InterfaceAudience.Private
+public class ZstdCompressor implements Compressor {
+
+  private int level;
+  private byte[] dictionary;
+  private byte[] inBuf;
+  private int inLen;
+  private byte[] outBuf = new byte[0];
+  private int outOff;
+  private int outLen;
+  private boolean finish;
+  private boolean compressed;
+  private long bytesRead;
+  private long bytesWritten;
+
+  ZstdCompressor(int level, int bufferSize) {
+    this.level = level;
+    this.inBuf = new byte[bufferSize];
+  }
+
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (inLen + len > inBuf.length) {
+      byte[] newInBuf = new byte[Math.max(inBuf.length * 2, inLen + len)];
+      System.arraycopy(inBuf, 0, newInBuf, 0, inLen);
+      inBuf = newInBuf;
+    }
+    System.arraycopy(b, off, inBuf, inLen, len);
+    inLen += len;
+    bytesRead += len;
+  }
+
+  @Override
+  public boolean needsInput() {
+    return !finish;
+  }
+
+  /**
+   * Sets a trained dictionary, kept until {@link #reinit(Configuration)}.
+   */
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    byte[] dictionary = new byte[len];
+    System.arraycopy(b, off, dictionary, 0, len);
+    ZstdCodec.registerDictionary(dictionary);
+    this.dictionary = dictionary;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void finish() {
+    finish = true;
+  }
+
+  @Override
+  public boolean finished() {
+    return finish && compressed && outOff == outLen;
+  }
+
+  @Override
+  public int compress(byte[] b, int off, int len) throws IOException {
+    if (finish && !compressed) {
+      if (inLen > 0) {
+        int bound = (int) Zstd.compressBound(inLen);
+        if (outBuf.length < bound) {
+          outBuf = new byte[bound];
+        }
+        long size = dictionary == null
+            ? Zstd.compressByteArray(outBuf, 0, outBuf.length, inBuf, 0, inLen, level)
+            : Zstd.compressUsingDict(outBuf, 0, inBuf, 0, inLen, dictionary, level);
+        if (Zstd.isError(size)) {
+          throw new IOException("Zstd compression failed: " + Zstd.getErrorName(size));
+        }
+        outLen = (int) size;
+      }
+      outOff = 0;
+      inLen = 0;
+      compressed = true;
+    }
+    int n = Math.min(len, outLen - outOff);
+    System.arraycopy(outBuf, outOff, b, off, n);
+    outOff += n;
+    bytesWritten += n;
+    return n;
+  }
+
+  @Override
+  public void reset() {
+    inLen = 0;
+    outOff = 0;
+    outLen = 0;
+    finish = false;
+    compressed = false;
+    bytesRead = 0;
+    bytesWritten = 0;
+  }
+
+  @Override
+  public void end() {
+    inBuf = new byte[0];
+    outBuf = new byte[0];
+    dictionary = null;
+  }
+
+  /**
+   * Takes the level from the configuration and drops the dictionary.
+   */
+  @Override
+  public void reinit(Configuration conf) {
+    reset();
+    dictionary = null;
+    if (conf != null) {
+      level = conf.getInt(ZstdCodec.ZSTD_LEVEL_KEY, ZstdCodec.ZSTD_LEVEL_DEFAULT);
+    }
+  }
+}
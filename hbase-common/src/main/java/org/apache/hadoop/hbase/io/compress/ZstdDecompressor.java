@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.compress.Decompressor;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Decompressor for {@link ZstdCodec}. Each input is a whole frame, which is
+ * decompressed at once. The dictionary of the frame, if any, is looked up by
+ * the id in the frame header.
+ */
+@InterfaceAudience.Private
+public class ZstdDecompressor implements Decompressor {
+
+  private byte[] inBuf = new byte[0];
+  private int inLen;
+  private byte[] outBuf;
+  private int outOff;
+  private int outLen;
+
+  ZstdDecompressor(int bufferSize) {
+    this.outBuf = new byte[bufferSize];
+  }
+
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (inBuf.length < len) {
+      inBuf = new byte[len];
+    }
+    System.arraycopy(b, off, inBuf, 0, len);
+    inLen = len;
+    outOff = 0;
+    outLen = 0;
+  }
+
+  @Override
+  public boolean needsInput() {
+    return inLen == 0 && outOff == outLen;
+  }
+
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    throw new UnsupportedOperationException(
+        "Dictionaries are looked up by id, see ZstdCodec.registerDictionary");
+  }
+
+  @Override
+  public boolean needsDictionary() {
+    return false;
+  }
+
+  @Override
+  public boolean finished() {
+    return needsInput();
+  }
+
+  @Override
+  public int decompress(byte[] b, int off, int len) throws IOException {
+    if (inLen > 0 && outOff == outLen) {
+      int dictionaryId = ZstdCodec.getDictionaryId(inBuf, 0, inLen);
+      long size;
+      if (dictionaryId == 0) {
+        size = Zstd.decompressByteArray(outBuf, 0, outBuf.length, inBuf, 0, inLen);
+      } else {
+        byte[] dictionary = ZstdCodec.getDictionary(dictionaryId);
+        if (dictionary == null) {
+          throw new IOException("Zstd dictionary " + dictionaryId + " is not loaded, set "
+              + ZstdCodec.ZSTD_DICTIONARY_KEY + " on the family");
+        }
+        size = Zstd.decompressUsingDict(outBuf, 0, inBuf, 0, inLen, dictionary);
+      }
+      if (Zstd.isError(size)) {
+        throw new IOException("Zstd decompression failed: " + Zstd.getErrorName(size));
+      }
+      outOff = 0;
+      outLen = (int) size;
+      inLen = 0;
+    }
+    int n = Math.min(len, outLen - outOff);
+    System.arraycopy(outBuf, outOff, b, off, n);
+    outOff += n;
+    return n;
+  }
+
+  public int getRemaining() {
+    return inLen;
+  }
+
+  @Override
+  public void reset() {
+    inLen = 0;
+    outOff = 0;
+    outLen = 0;
+  }
+
+  @Override
+  public void end() {
+    inBuf = new byte[0];
+    outBuf = new byte[0];
+  }
+}
@@ -43,7 +43,9 @@ public enum DataBlockEncoding {
   FAST_DIFF(4, "org.apache.hadoop.hbase.io.encoding.FastDiffDeltaEncoder"),
   // id 5 is reserved for the COPY_KEY algorithm for benchmarking
   // COPY_KEY(5, "org.apache.hadoop.hbase.io.encoding.CopyKeyDataBlockEncoder"),
-  PREFIX_TREE(6, "org.apache.hadoop.hbase.codec.prefixtree.PrefixTreeCodec");
+  PREFIX_TREE(6, "org.apache.hadoop.hbase.codec.prefixtree.PrefixTreeCodec"),
+  ROW_INDEX(7, "org.apache.hadoop.hbase.io.encoding.RowIndexDataBlockEncoder"),
+  DICTIONARY(8, "org.apache.hadoop.hbase.io.encoding.DictionaryDataBlockEncoder");
 
   private final short id;
   private final byte[] idInBytes;
@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Replace the columns and the repeated values of a block with references into
+ * dictionaries stored at the start of the block. Suits tables with few
+ * distinct qualifiers and enum-like values, of which FAST_DIFF only removes
+ * the key prefixes shared with the previous KeyValue.
+ *
+ * Format:
+ * 4 bytes: length of the unencoded KeyValues
+ * 1-5 bytes: number of columns (7-bit encoding), followed by each column as
+ *   its length (7-bit encoding) and the family length byte, family and
+ *   qualifier, as they appear in the key
+ * 1-5 bytes: number of dictionary values (7-bit encoding), followed by each
+ *   value as its length (7-bit encoding) and bytes
+ * For each KeyValue:
+ * 1 byte: flags
+ * 1-5 bytes: row length (7-bit encoding) and row, unless it is the row of
+ *   the previous KeyValue
+ * 1-5 bytes: column index (7-bit encoding)
+ * 8 bytes: timestamp, unless it is the timestamp of the previous KeyValue
+ * 1 byte: type, unless it is the type of the previous KeyValue
+ * 1-5 bytes: value index (7-bit encoding), or value length (7-bit encoding)
+ *   and value for values which are not in the dictionary
+ *
+ * The seeker does not copy the dictionaries, the columns are copied into the
+ * key when a KeyValue is decoded and the values are read in place.
+ */
+@InterfaceAudience.Private
+public class DictionaryDataBlockEncoder extends BufferedDataBlockEncoder {
+  static final int FLAG_SAME_ROW = 1;
+  static final int FLAG_SAME_TIMESTAMP = 1 << 1;
+  static final int FLAG_SAME_TYPE = 1 << 2;
+  static final int FLAG_VALUE_IN_DICTIONARY = 1 << 3;
+
+  /** Longer values are always stored inline */
+  static final int MAX_DICTIONARY_VALUE_LENGTH = 1024;
+
+  @Override
+  public void internalEncodeKeyValues(DataOutputStream out, ByteBuffer in,
+      HFileBlockDefaultEncodingContext encodingCtx) throws IOException {
+    in.rewind();
+    if (!in.hasArray()) {
+      throw new IOException(this + " only encodes array backed buffers");
+    }
+    boolean includesTags = encodingCtx.getHFileContext().isIncludesTags();
+    boolean includesMvcc = encodingCtx.getHFileContext().isIncludesMvcc();
+    byte[] array = in.array();
+    int arrayOffset = in.arrayOffset();
+
+    // Collect the columns and count the values
+    Map<ImmutableBytesWritable, Integer> columns = new HashMap<ImmutableBytesWritable, Integer>();
+    List<ImmutableBytesWritable> columnList = new ArrayList<ImmutableBytesWritable>();
+    Map<ImmutableBytesWritable, Integer> values = new HashMap<ImmutableBytesWritable, Integer>();
+    while (in.hasRemaining()) {
+      int keyLength = in.getInt();
+      int valueLength = in.getInt();
+      int keyOffset = in.position();
+      int rowLength = in.getShort(keyOffset);
+      int columnOffset = keyOffset + Bytes.SIZEOF_SHORT + rowLength;
+      int columnLength = keyOffset + keyLength - KeyValue.TIMESTAMP_TYPE_SIZE - columnOffset;
+      ImmutableBytesWritable column = new ImmutableBytesWritable(array,
+          arrayOffset + columnOffset, columnLength);
+      if (!columns.containsKey(column)) {
+        columns.put(column, columnList.size());
+        columnList.add(column);
+      }
+      if (valueLength <= MAX_DICTIONARY_VALUE_LENGTH) {
+        ImmutableBytesWritable value = new ImmutableBytesWritable(array,
+            arrayOffset + keyOffset + keyLength, valueLength);
+        Integer count = values.get(value);
+        values.put(value, count == null ? 1 : count + 1);
+      }
+      ByteBufferUtils.skip(in, keyLength + valueLength);
+      skipTagsAndMvcc(in, includesTags, includesMvcc);
+    }
+
+    // Only the values which repeat are worth a dictionary entry
+    Map<ImmutableBytesWritable, Integer> valueIndexes =
+        new HashMap<ImmutableBytesWritable, Integer>();
+    List<ImmutableBytesWritable> valueList = new ArrayList<ImmutableBytesWritable>();
+    for (Map.Entry<ImmutableBytesWritable, Integer> entry : values.entrySet()) {
+      if (entry.getValue() > 1) {
+        valueIndexes.put(entry.getKey(), valueList.size());
+        valueList.add(entry.getKey());
+      }
+    }
+
+    ByteBufferUtils.putInt(out, in.limit());
+    writeDictionary(out, columnList);
+    writeDictionary(out, valueList);
+
+    in.rewind();
+    int prevRowOffset = -1;
+    int prevRowLength = 0;
+    long prevTimestamp = 0;
+    byte prevType = 0;
+    while (in.hasRemaining()) {
+      int keyLength = in.getInt();
+      int valueLength = in.getInt();
+      int keyOffset = in.position();
+      int rowLength = in.getShort(keyOffset);
+      int rowOffset = keyOffset + Bytes.SIZEOF_SHORT;
+      int columnOffset = rowOffset + rowLength;
+      int timestampOffset = keyOffset + keyLength - KeyValue.TIMESTAMP_TYPE_SIZE;
+      long timestamp = in.getLong(timestampOffset);
+      byte type = in.get(timestampOffset + Bytes.SIZEOF_LONG);
+      int valueOffset = keyOffset + keyLength;
+      Integer valueIndex = valueLength > MAX_DICTIONARY_VALUE_LENGTH ? null
+          : valueIndexes.get(new ImmutableBytesWritable(array, arrayOffset + valueOffset,
+              valueLength));
+
+      int flags = 0;
+      if (prevRowOffset != -1) {
+        if (ByteBufferUtils.arePartsEqual(in, prevRowOffset, prevRowLength, rowOffset,
+            rowLength)) {
+          flags |= FLAG_SAME_ROW;
+        }
+        if (timestamp == prevTimestamp) {
+          flags |= FLAG_SAME_TIMESTAMP;
+        }
+        if (type == prevType) {
+          flags |= FLAG_SAME_TYPE;
+        }
+      }
+      if (valueIndex != null) {
+        flags |= FLAG_VALUE_IN_DICTIONARY;
+      }
+
+      out.write(flags);
+      if ((flags & FLAG_SAME_ROW) == 0) {
+        ByteBufferUtils.putCompressedInt(out, rowLength);
+        out.write(array, arrayOffset + rowOffset, rowLength);
+      }
+      ByteBufferUtils.putCompressedInt(out, columns.get(new ImmutableBytesWritable(array,
+          arrayOffset + columnOffset, timestampOffset - columnOffset)));
+      if ((flags & FLAG_SAME_TIMESTAMP) == 0) {
+        out.writeLong(timestamp);
+      }
+      if ((flags & FLAG_SAME_TYPE) == 0) {
+        out.write(type);
+      }
+      if (valueIndex != null) {
+        ByteBufferUtils.putCompressedInt(out, valueIndex);
+      } else {
+        ByteBufferUtils.putCompressedInt(out, valueLength);
+        out.write(array, arrayOffset + valueOffset, valueLength);
+      }
+
+      in.position(valueOffset + valueLength);
+      afterEncodingKeyValue(in, out, encodingCtx);
+      prevRowOffset = rowOffset;
+      prevRowLength = rowLength;
+      prevTimestamp = timestamp;
+      prevType = type;
+    }
+  }
+
+  private static void skipTagsAndMvcc(ByteBuffer in, boolean includesTags,
+      boolean includesMvcc) {
+    if (includesTags) {
+      int tagsLength = in.getShort() & 0xffff;
+      ByteBufferUtils.skip(in, tagsLength);
+    }
+    if (includesMvcc) {
+      ByteBufferUtils.readVLong(in);
+    }
+  }
+
+  private static void writeDictionary(DataOutputStream out,
+      List<ImmutableBytesWritable> entries) throws IOException {
+    ByteBufferUtils.putCompressedInt(out, entries.size());
+    for (ImmutableBytesWritable entry : entries) {
+      ByteBufferUtils.putCompressedInt(out, entry.getLength());
+      out.write(entry.get(), entry.getOffset(), entry.getLength());
+    }
+  }
+
+  private static byte[][] readDictionary(DataInputStream source) throws IOException {
+    byte[][] entries = new byte[ByteBufferUtils.readCompressedInt(source)][];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = new byte[ByteBufferUtils.readCompressedInt(source)];
+      source.readFully(entries[i]);
+    }
+    return entries;
+  }
+
+  @Override
+  protected ByteBuffer internalDecodeKeyValues(DataInputStream source, int allocateHeaderLength,
+      int skipLastBytes, HFileBlockDefaultDecodingContext decodingCtx) throws IOException {
+    int decompressedSize = source.readInt();
+    ByteBuffer buffer = ByteBuffer.allocate(decompressedSize +
+        allocateHeaderLength);
+    buffer.position(allocateHeaderLength);
+    byte[][] columns = readDictionary(source);
+    byte[][] values = readDictionary(source);
+
+    byte[] row = null;
+    long timestamp = 0;
+    byte type = 0;
+    while (source.available() > skipLastBytes) {
+      int flags = source.readByte();
+      if ((flags & FLAG_SAME_ROW) == 0) {
+        row = new byte[ByteBufferUtils.readCompressedInt(source)];
+        source.readFully(row);
+      }
+      byte[] column = columns[ByteBufferUtils.readCompressedInt(source)];
+      if ((flags & FLAG_SAME_TIMESTAMP) == 0) {
+        timestamp = source.readLong();
+      }
+      if ((flags & FLAG_SAME_TYPE) == 0) {
+        type = source.readByte();
+      }
+      byte[] value;
+      if ((flags & FLAG_VALUE_IN_DICTIONARY) != 0) {
+        value = values[ByteBufferUtils.readCompressedInt(source)];
+      } else {
+        value = new byte[ByteBufferUtils.readCompressedInt(source)];
+        source.readFully(value);
+      }
+
+      buffer.putInt(Bytes.SIZEOF_SHORT + row.length + column.length
+          + KeyValue.TIMESTAMP_TYPE_SIZE);
+      buffer.putInt(value.length);
+      buffer.putShort((short) row.length);
+      buffer.put(row);
+      buffer.put(column);
+      buffer.putLong(timestamp);
+      buffer.put(type);
+      buffer.put(value);
+      afterDecodingKeyValue(source, buffer, decodingCtx);
+    }
+
+    if (source.available() != skipLastBytes) {
+      throw new IllegalStateException("Read too many bytes.");
+    }
+
+    buffer.limit(buffer.position());
+    return buffer;
+  }
+
+  @Override
+  public ByteBuffer getFirstKeyInBlock(ByteBuffer block) {
+    ByteBuffer in = block.duplicate();
+    in.position(Bytes.SIZEOF_INT);
+    int columnCount = ByteBufferUtils.readCompressedInt(in);
+    int firstColumnOffset = in.position();
+    for (int i = 0; i < columnCount; i++) {
+      ByteBufferUtils.skip(in, ByteBufferUtils.readCompressedInt(in));
+    }
+    int valueCount = ByteBufferUtils.readCompressedInt(in);
+    for (int i = 0; i < valueCount; i++) {
+      ByteBufferUtils.skip(in, ByteBufferUtils.readCompressedInt(in));
+    }
+
+    // The first KeyValue has all its fields, no flag but the value one is set
+    in.get();
+    int rowLength = ByteBufferUtils.readCompressedInt(in);
+    int rowOffset = in.position();
+    ByteBufferUtils.skip(in, rowLength);
+    int columnIndex = ByteBufferUtils.readCompressedInt(in);
+    long timestamp = in.getLong();
+    byte type = in.get();
+
+    ByteBuffer column = block.duplicate();
+    column.position(firstColumnOffset);
+    for (int i = 0; i < columnIndex; i++) {
+      ByteBufferUtils.skip(column, ByteBufferUtils.readCompressedInt(column));
+    }
+    int columnLength = ByteBufferUtils.readCompressedInt(column);
+
+    ByteBuffer result = ByteBuffer.allocate(Bytes.SIZEOF_SHORT + rowLength + columnLength
+        + KeyValue.TIMESTAMP_TYPE_SIZE);
+    result.putShort((short) rowLength);
+    result.put(block.array(), block.arrayOffset() + rowOffset, rowLength);
+    result.put(block.array(), block.arrayOffset() + column.position(), columnLength);
+    result.putLong(timestamp);
+    result.put(type);
+    result.rewind();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return DictionaryDataBlockEncoder.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(KVComparator comparator,
+      final HFileBlockDecodingContext decodingCtx) {
+    return new DictionarySeeker(comparator, decodingCtx);
+  }
+
+  /**
+   * Also keeps the fields which a KeyValue may take from the previous one.
+   */
+  static class DictionarySeekerState extends SeekerState {
+    int rowLength;
+    long timestamp;
+    byte type;
+
+    @Override
+    protected void copyFromNext(SeekerState nextState) {
+      super.copyFromNext(nextState);
+      DictionarySeekerState state = (DictionarySeekerState) nextState;
+      rowLength = state.rowLength;
+      timestamp = state.timestamp;
+      type = state.type;
+      tagsLength = state.tagsLength;
+      tagsOffset = state.tagsOffset;
+    }
+  }
+
+  static class DictionarySeeker extends BufferedEncodedSeeker<DictionarySeekerState> {
+    /** Offsets and lengths of the dictionary entries in the current buffer */
+    private int[] columnOffsets = new int[16];
+    private int[] columnLengths = new int[16];
+    private int[] valueOffsets = new int[16];
+    private int[] valueLengths = new int[16];
+    /** Offset of the first KeyValue in the current buffer */
+    private int dataOffset;
+
+    DictionarySeeker(KVComparator comparator, HFileBlockDecodingContext decodingCtx) {
+      super(comparator, decodingCtx);
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuffer buffer) {
+      // Locate the dictionary entries once per block, they are not copied
+      ByteBuffer in = buffer.duplicate();
+      in.position(Bytes.SIZEOF_INT);
+      int columnCount = ByteBufferUtils.readCompressedInt(in);
+      if (columnCount > columnOffsets.length) {
+        columnOffsets = new int[columnCount];
+        columnLengths = new int[columnCount];
+      }
+      for (int i = 0; i < columnCount; i++) {
+        columnLengths[i] = ByteBufferUtils.readCompressedInt(in);
+        columnOffsets[i] = in.position();
+        ByteBufferUtils.skip(in, columnLengths[i]);
+      }
+      int valueCount = ByteBufferUtils.readCompressedInt(in);
+      if (valueCount > valueOffsets.length) {
+        valueOffsets = new int[valueCount];
+        valueLengths = new int[valueCount];
+      }
+      for (int i = 0; i < valueCount; i++) {
+        valueLengths[i] = ByteBufferUtils.readCompressedInt(in);
+        valueOffsets[i] = in.position();
+        ByteBufferUtils.skip(in, valueLengths[i]);
+      }
+      dataOffset = in.position();
+      super.setCurrentBuffer(buffer);
+    }
+
+    @Override
+    protected DictionarySeekerState createSeekerState() {
+      return new DictionarySeekerState();
+    }
+
+    @Override
+    protected void decodeFirst() {
+      currentBuffer.position(dataOffset);
+      decodeNext();
+    }
+
+    @Override
+    protected void decodeNext() {
+      byte[] array = currentBuffer.array();
+      int arrayOffset = currentBuffer.arrayOffset();
+      int flags = currentBuffer.get();
+      int rowOffset = -1;
+      if ((flags & FLAG_SAME_ROW) == 0) {
+        current.rowLength = ByteBufferUtils.readCompressedInt(currentBuffer);
+        rowOffset = currentBuffer.position();
+        ByteBufferUtils.skip(currentBuffer, current.rowLength);
+      }
+      int columnIndex = ByteBufferUtils.readCompressedInt(currentBuffer);
+      if ((flags & FLAG_SAME_TIMESTAMP) == 0) {
+        current.timestamp = currentBuffer.getLong();
+      }
+      if ((flags & FLAG_SAME_TYPE) == 0) {
+        current.type = currentBuffer.get();
+      }
+
+      // The row is already in the key buffer if it is the previous one
+      int columnLength = columnLengths[columnIndex];
+      current.keyLength = Bytes.SIZEOF_SHORT + current.rowLength + columnLength
+          + KeyValue.TIMESTAMP_TYPE_SIZE;
+      current.ensureSpaceForKey();
+      int pos = Bytes.SIZEOF_SHORT;
+      if (rowOffset != -1) {
+        Bytes.putShort(current.keyBuffer, 0, (short) current.rowLength);
+        System.arraycopy(array, arrayOffset + rowOffset, current.keyBuffer, pos,
+            current.rowLength);
+        current.lastCommonPrefix = 0;
+      } else {
+        current.lastCommonPrefix = Bytes.SIZEOF_SHORT + current.rowLength;
+      }
+      pos += current.rowLength;
+      System.arraycopy(array, arrayOffset + columnOffsets[columnIndex], current.keyBuffer, pos,
+          columnLength);
+      pos += columnLength;
+      pos = Bytes.putLong(current.keyBuffer, pos, current.timestamp);
+      current.keyBuffer[pos] = current.type;
+
+      if ((flags & FLAG_VALUE_IN_DICTIONARY) != 0) {
+        int valueIndex = ByteBufferUtils.readCompressedInt(currentBuffer);
+        current.valueOffset = valueOffsets[valueIndex];
+        current.valueLength = valueLengths[valueIndex];
+      } else {
+        current.valueLength = ByteBufferUtils.readCompressedInt(currentBuffer);
+        current.valueOffset = currentBuffer.position();
+        ByteBufferUtils.skip(currentBuffer, current.valueLength);
+      }
+      if (includesTags()) {
+        decodeTags();
+      }
+      if (includesMvcc()) {
+        current.memstoreTS = ByteBufferUtils.readVLong(currentBuffer);
+      } else {
+        current.memstoreTS = 0;
+      }
+      current.nextKvOffset = currentBuffer.position();
+    }
+  }
+}
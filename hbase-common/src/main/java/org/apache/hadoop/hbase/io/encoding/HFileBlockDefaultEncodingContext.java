@@ -89,7 +89,8 @@ public class HFileBlockDefaultEncodingContext implements
     Compression.Algorithm compressionAlgorithm =
         fileContext.getCompression() == null ? NONE : fileContext.getCompression();
     if (compressionAlgorithm != NONE) {
-      compressor = compressionAlgorithm.getCompressor();
+      compressor = compressionAlgorithm.getCompressor(fileContext.getCompressionLevel(),
+          fileContext.getCompressionDictionary());
       compressedByteStream = new ByteArrayOutputStream();
       try {
         compressionStream =
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Store the KeyValues unchanged and append an index of the rows of the block,
+ * so that a seek binary searches for the row and only decodes the KeyValues of
+ * that row, instead of all the KeyValues from the start of the block.
+ *
+ * Format:
+ * 4 bytes: length of the KeyValues
+ * ... bytes: the KeyValues, as in an unencoded block
+ * 4 bytes: number of rows
+ * 4 bytes per row: offset of the first KeyValue of the row, from the start of
+ * the encoded block
+ *
+ * Tags are stored uncompressed even if tag compression is enabled, as the
+ * tag dictionary would need to be rebuilt from the start of the block.
+ */
+@InterfaceAudience.Private
+public class RowIndexDataBlockEncoder extends BufferedDataBlockEncoder {
+
+  @Override
+  public void internalEncodeKeyValues(DataOutputStream out, ByteBuffer in,
+      HFileBlockDefaultEncodingContext encodingCtx) throws IOException {
+    boolean includesTags = encodingCtx.getHFileContext().isIncludesTags();
+    boolean includesMvcc = encodingCtx.getHFileContext().isIncludesMvcc();
+    in.rewind();
+    int dataLength = in.limit();
+    int[] rowOffsets = new int[16];
+    int rowCount = 0;
+    int prevRowOffset = -1;
+    int prevRowLength = 0;
+    while (in.hasRemaining()) {
+      int offset = in.position();
+      int keyLength = in.getInt();
+      int valueLength = in.getInt();
+      int rowLength = in.getShort();
+      int rowOffset = in.position();
+      if (prevRowOffset == -1 || !ByteBufferUtils.arePartsEqual(in, prevRowOffset,
+          prevRowLength, rowOffset, rowLength)) {
+        if (rowCount == rowOffsets.length) {
+          int[] newRowOffsets = new int[rowOffsets.length * 2];
+          System.arraycopy(rowOffsets, 0, newRowOffsets, 0, rowCount);
+          rowOffsets = newRowOffsets;
+        }
+        // Offsets are from the start of the encoded block, after the length
+        rowOffsets[rowCount++] = Bytes.SIZEOF_INT + offset;
+        prevRowOffset = rowOffset;
+        prevRowLength = rowLength;
+      }
+      ByteBufferUtils.skip(in, keyLength - Bytes.SIZEOF_SHORT + valueLength);
+      if (includesTags) {
+        int tagsLength = in.getShort() & 0xffff;
+        ByteBufferUtils.skip(in, tagsLength);
+      }
+      if (includesMvcc) {
+        ByteBufferUtils.readVLong(in);
+      }
+    }
+
+    ByteBufferUtils.putInt(out, dataLength);
+    in.rewind();
+    ByteBufferUtils.moveBufferToStream(out, in, dataLength);
+    ByteBufferUtils.putInt(out, rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      ByteBufferUtils.putInt(out, rowOffsets[i]);
+    }
+  }
+
+  @Override
+  public ByteBuffer getFirstKeyInBlock(ByteBuffer block) {
+    int keyLength = block.getInt(Bytes.SIZEOF_INT);
+    return ByteBuffer.wrap(block.array(),
+        block.arrayOffset() + 3 * Bytes.SIZEOF_INT, keyLength).slice();
+  }
+
+  @Override
+  public String toString() {
+    return RowIndexDataBlockEncoder.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(KVComparator comparator,
+      final HFileBlockDecodingContext decodingCtx) {
+    return new RowIndexSeeker(comparator, decodingCtx);
+  }
+
+  @Override
+  protected ByteBuffer internalDecodeKeyValues(DataInputStream source, int allocateHeaderLength,
+      int skipLastBytes, HFileBlockDefaultDecodingContext decodingCtx) throws IOException {
+    int decompressedSize = source.readInt();
+    ByteBuffer buffer = ByteBuffer.allocate(decompressedSize +
+        allocateHeaderLength);
+    buffer.position(allocateHeaderLength);
+    ByteBufferUtils.copyFromStreamToBuffer(buffer, source, decompressedSize);
+    // Skip the row index
+    int rowCount = source.readInt();
+    source.skipBytes(rowCount * Bytes.SIZEOF_INT);
+    return buffer;
+  }
+
+  /**
+   * The tags are not compressed, so their position is kept along with the
+   * rest of the state when the seeker saves the previous KeyValue.
+   */
+  static class RowIndexSeekerState extends SeekerState {
+    @Override
+    protected void copyFromNext(SeekerState nextState) {
+      super.copyFromNext(nextState);
+      tagsLength = nextState.tagsLength;
+      tagsOffset = nextState.tagsOffset;
+    }
+  }
+
+  /**
+   * Seeker which uses the row index to skip to the row of the sought key, and
+   * then scans the KeyValues of the row as the other encoders do.
+   */
+  static class RowIndexSeeker extends BufferedEncodedSeeker<RowIndexSeekerState> {
+    /** The whole encoded block, including the row index */
+    private ByteBuffer encodedBuffer;
+    private int rowCount;
+    /** Position of the first row offset in encodedBuffer */
+    private int rowIndexOffset;
+    private final KeyValue.KeyOnlyKeyValue rowFirstKey = new KeyValue.KeyOnlyKeyValue();
+
+    RowIndexSeeker(KVComparator comparator, HFileBlockDecodingContext decodingCtx) {
+      super(comparator, decodingCtx);
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuffer buffer) {
+      int dataLength = buffer.getInt(0);
+      encodedBuffer = buffer;
+      rowCount = buffer.getInt(Bytes.SIZEOF_INT + dataLength);
+      rowIndexOffset = 2 * Bytes.SIZEOF_INT + dataLength;
+      // The KeyValues are iterated in a view which ends before the row index
+      super.setCurrentBuffer(ByteBuffer.wrap(buffer.array(), buffer.arrayOffset(),
+          Bytes.SIZEOF_INT + dataLength).slice());
+    }
+
+    @Override
+    public int seekToKeyInBlock(Cell seekCell, boolean seekBefore) {
+      // Find the last row whose first key is strictly before the sought key,
+      // the sought key or the key before it is in that row or the next one.
+      int low = 0;
+      int high = rowCount - 1;
+      int row = -1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int rowOffset = getRowOffset(mid);
+        rowFirstKey.setKey(encodedBuffer.array(),
+            encodedBuffer.arrayOffset() + rowOffset + 2 * Bytes.SIZEOF_INT,
+            encodedBuffer.getInt(rowOffset));
+        if (comparator.compareOnlyKeyPortion(seekCell, rowFirstKey) > 0) {
+          row = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      // Only skip forward, a reseek continues from the current position
+      if (row > 0 && getRowOffset(row) >= current.nextKvOffset) {
+        currentBuffer.position(getRowOffset(row));
+        decodeNext();
+        previous.invalidate();
+      }
+      return super.seekToKeyInBlock(seekCell, seekBefore);
+    }
+
+    @Override
+    protected RowIndexSeekerState createSeekerState() {
+      return new RowIndexSeekerState();
+    }
+
+    private int getRowOffset(int row) {
+      return encodedBuffer.getInt(rowIndexOffset + row * Bytes.SIZEOF_INT);
+    }
+
+    @Override
+    protected void decodeNext() {
+      current.keyLength = currentBuffer.getInt();
+      current.valueLength = currentBuffer.getInt();
+      current.ensureSpaceForKey();
+      currentBuffer.get(current.keyBuffer, 0, current.keyLength);
+      current.valueOffset = currentBuffer.position();
+      ByteBufferUtils.skip(currentBuffer, current.valueLength);
+      if (includesTags()) {
+        current.tagsLength = currentBuffer.getShort() & 0xffff;
+        current.tagsOffset = currentBuffer.position();
+        ByteBufferUtils.skip(currentBuffer, current.tagsLength);
+      }
+      if (includesMvcc()) {
+        current.memstoreTS = ByteBufferUtils.readVLong(currentBuffer);
+      } else {
+        current.memstoreTS = 0;
+      }
+      current.lastCommonPrefix = 0;
+      current.nextKvOffset = currentBuffer.position();
+    }
+
+    @Override
+    protected void decodeFirst() {
+      ByteBufferUtils.skip(currentBuffer, Bytes.SIZEOF_INT);
+      decodeNext();
+    }
+  }
+}
@@ -45,6 +45,10 @@ public class HFileContext implements HeapSize, Cloneable {
   private boolean includesTags;
   /**Compression algorithm used**/
   private Compression.Algorithm compressAlgo = Compression.Algorithm.NONE;
+  /** Compression level, 0 for the default of the algorithm **/
+  private int compressionLevel;
+  /** Trained compression dictionary, null if none **/
+  private byte[] compressionDictionary;
   /** Whether tags to be compressed or not**/
   private boolean compressTags;
   /** the checksum type **/
@@ -70,6 +74,8 @@ public class HFileContext implements HeapSize, Cloneable {
     this.includesMvcc = context.includesMvcc;
     this.includesTags = context.includesTags;
     this.compressAlgo = context.compressAlgo;
+    this.compressionLevel = context.compressionLevel;
+    this.compressionDictionary = context.compressionDictionary;
     this.compressTags = context.compressTags;
     this.checksumType = context.checksumType;
     this.bytesPerChecksum = context.bytesPerChecksum;
@@ -104,6 +110,22 @@ public class HFileContext implements HeapSize, Cloneable {
     this.compressAlgo = compressAlgo;
   }
 
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  public byte[] getCompressionDictionary() {
+    return compressionDictionary;
+  }
+
+  public void setCompressionDictionary(byte[] compressionDictionary) {
+    this.compressionDictionary = compressionDictionary;
+  }
+
   public boolean isUseHBaseChecksum() {
     return usesHBaseChecksum;
   }
@@ -168,9 +190,10 @@ public class HFileContext implements HeapSize, Cloneable {
   @Override
   public long heapSize() {
     long size = ClassSize.align(ClassSize.OBJECT +
-        // Algorithm reference, encodingon, checksumtype, Encryption.Context reference
-        4 * ClassSize.REFERENCE +
-        2 * Bytes.SIZEOF_INT +
+        // Algorithm reference, encodingon, checksumtype, Encryption.Context reference,
+        // compression dictionary reference
+        5 * ClassSize.REFERENCE +
+        3 * Bytes.SIZEOF_INT +
         // usesHBaseChecksum, includesMvcc, includesTags and compressTags
         4 * Bytes.SIZEOF_BOOLEAN);
     return size;
@@ -197,6 +220,8 @@ public class HFileContext implements HeapSize, Cloneable {
     sb.append(" includesMvcc=");      sb.append(includesMvcc);
     sb.append(" includesTags=");      sb.append(includesTags);
     sb.append(" compressAlgo=");      sb.append(compressAlgo);
+    sb.append(" compressionLevel=");  sb.append(compressionLevel);
+    sb.append(" compressionDictionary="); sb.append(compressionDictionary != null);
     sb.append(" compressTags=");      sb.append(compressTags);
     sb.append(" cryptoContext=[ ");   sb.append(cryptoContext);      sb.append(" ]");
     sb.append(" ]");
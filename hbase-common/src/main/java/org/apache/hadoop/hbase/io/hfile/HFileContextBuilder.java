@@ -41,6 +41,10 @@ public class HFileContextBuilder {
   private boolean includesTags;
   /** Compression algorithm used **/
   private Algorithm compression = Algorithm.NONE;
+  /** Compression level, 0 for the default of the algorithm **/
+  private int compressionLevel = 0;
+  /** Trained compression dictionary **/
+  private byte[] compressionDictionary = null;
   /** Whether tags to be compressed or not **/
   private boolean compressTags = false;
   /** the checksum type **/
@@ -73,6 +77,16 @@ public class HFileContextBuilder {
     return this;
   }
 
+  public HFileContextBuilder withCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  public HFileContextBuilder withCompressionDictionary(byte[] compressionDictionary) {
+    this.compressionDictionary = compressionDictionary;
+    return this;
+  }
+
   public HFileContextBuilder withCompressTags(boolean compressTags) {
     this.compressTags = compressTags;
     return this;
@@ -104,7 +118,11 @@ public class HFileContextBuilder {
   }
 
   public HFileContext build() {
-    return new HFileContext(usesHBaseChecksum, includesMvcc, includesTags, compression,
-      compressTags, checksumType, bytesPerChecksum, blocksize, encoding, cryptoContext);
+    HFileContext context = new HFileContext(usesHBaseChecksum, includesMvcc, includesTags,
+      compression, compressTags, checksumType, bytesPerChecksum, blocksize, encoding,
+      cryptoContext);
+    context.setCompressionLevel(compressionLevel);
+    context.setCompressionDictionary(compressionDictionary);
+    return context;
   }
 }
@@ -24,6 +24,7 @@ import java.util.zip.Checksum;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.DataChecksum;
 
 /**
  * Checksum types. The Checksum type is a one byte number
@@ -46,6 +47,10 @@ public enum ChecksumType {
     public Checksum getChecksumObject() throws IOException {
       return null; // checksums not used
     }
+    @Override
+    public DataChecksum.Type getDataChecksumType() {
+      return DataChecksum.Type.NULL;
+    }
   },
 
   CRC32((byte)1) {
@@ -92,6 +97,11 @@ public enum ChecksumType {
         throw new IOException(e);
       }
     }
+
+    @Override
+    public DataChecksum.Type getDataChecksumType() {
+      return DataChecksum.Type.CRC32;
+    }
   },
 
   CRC32C((byte)2) {
@@ -106,14 +116,29 @@ public enum ChecksumType {
     public void initialize() {
       final String PURECRC32C = "org.apache.hadoop.util.PureJavaCrc32C";
       LOG = LogFactory.getLog(ChecksumType.class);
+      // check if the JDK has a CRC32C, which the JIT compiles to the CPU
+      // instruction where there is one (JDK 9 and later)
+      try {
+        ctor = ChecksumFactory.newConstructor(JDKCRC32C);
+        LOG.debug("Checksum using " + JDKCRC32C);
+      } catch (Exception e) {
+        LOG.trace(JDKCRC32C + " not available.");
+      }
       try {
-        ctor = ChecksumFactory.newConstructor(PURECRC32C);
-        LOG.debug("Checksum can use " + PURECRC32C);
+        if (ctor == null) {
+          ctor = ChecksumFactory.newConstructor(PURECRC32C);
+          LOG.debug("Checksum can use " + PURECRC32C);
+        }
       } catch (Exception e) {
         LOG.trace(PURECRC32C + " not available.");
       }
     }
 
+    @Override
+    public boolean isHardwareAccelerated() {
+      return ctor != null && JDKCRC32C.equals(ctor.getDeclaringClass().getName());
+    }
+
     @Override
     public Checksum getChecksumObject() throws IOException {
       if (ctor == null) {
@@ -125,8 +150,15 @@ public enum ChecksumType {
         throw new IOException(e);
       }
     }
+
+    @Override
+    public DataChecksum.Type getDataChecksumType() {
+      return DataChecksum.Type.CRC32C;
+    }
   };
 
+  private static final String JDKCRC32C = "java.util.zip.CRC32C";
+
   private final byte code;
   protected Log LOG;
 
@@ -144,6 +176,21 @@ public enum ChecksumType {
   /** returns a object that can be used to generate/validate checksums */
   public abstract Checksum getChecksumObject() throws IOException;
 
+  /**
+   * Returns the Hadoop checksum type of the same algorithm, whose
+   * {@link DataChecksum} validates many chunks in one call, with the Hadoop
+   * native library when it is loaded.
+   */
+  public abstract DataChecksum.Type getDataChecksumType();
+
+  /**
+   * Whether the checksum objects of this type use a CPU instruction, so that
+   * there is no need for the Hadoop native library.
+   */
+  public boolean isHardwareAccelerated() {
+    return false;
+  }
+
   public byte getCode() {
     return this.code;
   }
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.io.compress.Compression.Algorithm;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.github.luben.zstd.Zstd;
+
+@Category(SmallTests.class)
+public class TestZstdCodec {
+
+  @Test
+  public void testAlgorithmName() {
+    assertEquals(Algorithm.ZSTD, Compression.getCompressionAlgorithmByName("zstd"));
+    // Ordinals are persisted in the HFile trailer
+    assertEquals(5, Algorithm.ZSTD.ordinal());
+  }
+
+  @Test
+  public void testLevels() throws Exception {
+    byte[] data = getBlock(0);
+    byte[] fast = compress(data, 1, null);
+    byte[] best = compress(data, 19, null);
+    assertTrue(best.length <= fast.length);
+    assertArrayEquals(data, decompress(fast, data.length));
+    assertArrayEquals(data, decompress(best, data.length));
+  }
+
+  @Test
+  public void testDictionary() throws Exception {
+    byte[][] samples = new byte[200][];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = getBlock(i);
+    }
+    byte[] dictionary = new byte[16 * 1024];
+    long dictionaryLength = Zstd.trainFromBuffer(samples, dictionary);
+    assertTrue(!Zstd.isError(dictionaryLength));
+    byte[] trained = new byte[(int) dictionaryLength];
+    System.arraycopy(dictionary, 0, trained, 0, trained.length);
+    int id = ZstdCodec.registerDictionary(trained);
+
+    byte[] data = getBlock(samples.length);
+    byte[] compressed = compress(data, 0, trained);
+    // The frame follows the uncompressed and compressed lengths of the block
+    assertEquals(id, ZstdCodec.getDictionaryId(compressed, 8, compressed.length - 8));
+    assertTrue(compressed.length < compress(data, 0, null).length);
+    assertArrayEquals(data, decompress(compressed, data.length));
+  }
+
+  private static byte[] getBlock(int seed) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < 100; i++) {
+      byte[] row = Bytes.toBytes(String.format("row-%08d/info:column-%d/value-%d",
+          seed * 100 + i, i % 10, (seed + i) % 7));
+      out.write(row, 0, row.length);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @return the block compressed as HFileBlockDefaultEncodingContext does
+   */
+  private static byte[] compress(byte[] data, int level, byte[] dictionary) throws Exception {
+    Compressor compressor = Algorithm.ZSTD.getCompressor(level, dictionary);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      CompressionOutputStream cos =
+          Algorithm.ZSTD.createPlainCompressionStream(out, compressor);
+      cos.resetState();
+      cos.write(data);
+      cos.flush();
+      cos.finish();
+      return out.toByteArray();
+    } finally {
+      Algorithm.ZSTD.returnCompressor(compressor);
+    }
+  }
+
+  private static byte[] decompress(byte[] compressed, int length) throws Exception {
+    Decompressor decompressor = Algorithm.ZSTD.getDecompressor();
+    try {
+      InputStream in = Algorithm.ZSTD.createDecompressionStream(
+          new ByteArrayInputStream(compressed), decompressor, 0);
+      byte[] data = new byte[length];
+      IOUtils.readFully(in, data, 0, length);
+      assertEquals(-1, in.read());
+      return data;
+    } finally {
+      Algorithm.ZSTD.returnDecompressor(decompressor);
+    }
+  }
+}
@@ -185,6 +185,30 @@ public interface MetricsRegionServerSource extends BaseSource {
   String BLOCK_CACHE_EXPRESS_HIT_PERCENT = "blockCacheExpressHitPercent";
   String BLOCK_CACHE_EXPRESS_HIT_PERCENT_DESC =
       "The percent of the time that requests with the cache turned on hit the cache.";
+  String ROW_CACHE_SIZE = "rowCacheSize";
+  String ROW_CACHE_SIZE_DESC = "Heap size of the results in the row cache.";
+  String ROW_CACHE_COUNT = "rowCacheCount";
+  String ROW_CACHE_COUNT_DESC = "Number of results in the row cache.";
+  String ROW_CACHE_HIT_COUNT = "rowCacheHitCount";
+  String ROW_CACHE_HIT_COUNT_DESC = "Count of the Gets served from the row cache.";
+  String ROW_CACHE_MISS_COUNT = "rowCacheMissCount";
+  String ROW_CACHE_MISS_COUNT_DESC =
+      "Count of the cacheable Gets that missed the row cache.";
+  String ROW_CACHE_EVICTED_COUNT = "rowCacheEvictedCount";
+  String ROW_CACHE_EVICTED_COUNT_DESC =
+      "Count of the results evicted from the row cache to bound its size.";
+  String COMPACTION_THROTTLED_TIME = "compactionThrottledTime";
+  String COMPACTION_THROTTLED_TIME_DESC =
+      "Total time in milliseconds compactions slept to stay under the throughput limit.";
+  String FLUSH_THROTTLED_TIME = "flushThrottledTime";
+  String FLUSH_THROTTLED_TIME_DESC =
+      "Total time in milliseconds flushes slept to stay under the throughput limit.";
+  String DELETED_CELLS_SKIPPED_COUNT = "deletedCellsSkippedCount";
+  String DELETED_CELLS_SKIPPED_COUNT_DESC =
+      "Number of delete markers and deleted cells skipped by user scans of the online stores.";
+  String DELETED_CELLS_SKIPPED_PER_SCAN = "deletedCellsSkippedPerScan";
+  String DELETED_CELLS_SKIPPED_PER_SCAN_DESC =
+      "Average number of delete markers and deleted cells skipped by a user scan of a store.";
   String RS_START_TIME_NAME = "regionServerStartTime";
   String ZOOKEEPER_QUORUM_NAME = "zookeeperQuorum";
   String SERVER_NAME_NAME = "serverName";
@@ -196,6 +220,10 @@ public interface MetricsRegionServerSource extends BaseSource {
   String UPDATES_BLOCKED_TIME = "updatesBlockedTime";
   String UPDATES_BLOCKED_DESC =
       "Number of MS updates have been blocked so that the memstore can be flushed.";
+  String BLOCKED_REQUESTS_COUNT = "blockedRequestCount";
+  String BLOCKED_REQUESTS_COUNT_DESC =
+      "Number of updates rejected because the memstore of their region was above its blocking "
+      + "size.";
   String DELETE_KEY = "delete";
   String GET_KEY = "get";
   String INCREMENT_KEY = "increment";
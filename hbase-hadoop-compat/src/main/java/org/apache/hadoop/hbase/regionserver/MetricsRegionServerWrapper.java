@@ -207,6 +207,52 @@ public interface MetricsRegionServerWrapper {
    */
   int getBlockCacheHitCachingPercent();
 
+  /**
+   * Get the heap size of the results in the row cache.
+   */
+  long getRowCacheSize();
+
+  /**
+   * Get the number of results in the row cache.
+   */
+  long getRowCacheCount();
+
+  /**
+   * Get the count of Gets served from the row cache.
+   */
+  long getRowCacheHitCount();
+
+  /**
+   * Get the count of cacheable Gets that missed the row cache.
+   */
+  long getRowCacheMissCount();
+
+  /**
+   * Get the number of results evicted from the row cache.
+   */
+  long getRowCacheEvictedCount();
+
+  /**
+   * Get the total time compactions slept to stay under the throughput limit.
+   */
+  long getCompactionThrottledTime();
+
+  /**
+   * Get the total time flushes slept to stay under the throughput limit.
+   */
+  long getFlushThrottledTime();
+
+  /**
+   * Get the number of delete markers and deleted cells skipped by user scans.
+   */
+  long getDeletedCellsSkippedCount();
+
+  /**
+   * Get the average number of delete markers and deleted cells skipped by a user scan of a
+   * store.
+   */
+  long getDeletedCellsSkippedPerScan();
+
   /**
    * Force a re-computation of the metrics.
    */
@@ -216,4 +262,9 @@ public interface MetricsRegionServerWrapper {
    * Get the amount of time that updates were blocked.
    */
   long getUpdatesBlockedTime();
+
+  /**
+   * Get the number of updates rejected because the memstore of their region was too large.
+   */
+  long getBlockedRequestsCount();
 }
@@ -205,8 +205,28 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getBlockCacheHitPercent())
           .addGauge(Interns.info(BLOCK_CACHE_EXPRESS_HIT_PERCENT,
               BLOCK_CACHE_EXPRESS_HIT_PERCENT_DESC), rsWrap.getBlockCacheHitCachingPercent())
+          .addGauge(Interns.info(ROW_CACHE_SIZE, ROW_CACHE_SIZE_DESC),
+              rsWrap.getRowCacheSize())
+          .addGauge(Interns.info(ROW_CACHE_COUNT, ROW_CACHE_COUNT_DESC),
+              rsWrap.getRowCacheCount())
+          .addCounter(Interns.info(ROW_CACHE_HIT_COUNT, ROW_CACHE_HIT_COUNT_DESC),
+              rsWrap.getRowCacheHitCount())
+          .addCounter(Interns.info(ROW_CACHE_MISS_COUNT, ROW_CACHE_MISS_COUNT_DESC),
+              rsWrap.getRowCacheMissCount())
+          .addCounter(Interns.info(ROW_CACHE_EVICTED_COUNT, ROW_CACHE_EVICTED_COUNT_DESC),
+              rsWrap.getRowCacheEvictedCount())
+          .addCounter(Interns.info(COMPACTION_THROTTLED_TIME, COMPACTION_THROTTLED_TIME_DESC),
+              rsWrap.getCompactionThrottledTime())
+          .addCounter(Interns.info(FLUSH_THROTTLED_TIME, FLUSH_THROTTLED_TIME_DESC),
+              rsWrap.getFlushThrottledTime())
+          .addCounter(Interns.info(DELETED_CELLS_SKIPPED_COUNT, DELETED_CELLS_SKIPPED_COUNT_DESC),
+              rsWrap.getDeletedCellsSkippedCount())
+          .addGauge(Interns.info(DELETED_CELLS_SKIPPED_PER_SCAN,
+              DELETED_CELLS_SKIPPED_PER_SCAN_DESC), rsWrap.getDeletedCellsSkippedPerScan())
           .addCounter(Interns.info(UPDATES_BLOCKED_TIME, UPDATES_BLOCKED_DESC),
               rsWrap.getUpdatesBlockedTime())
+          .addCounter(Interns.info(BLOCKED_REQUESTS_COUNT, BLOCKED_REQUESTS_COUNT_DESC),
+              rsWrap.getBlockedRequestsCount())
           .tag(Interns.info(ZOOKEEPER_QUORUM_NAME, ZOOKEEPER_QUORUM_DESC),
               rsWrap.getZookeeperQuorum())
           .tag(Interns.info(SERVER_NAME_NAME, SERVER_NAME_DESC), rsWrap.getServerName())
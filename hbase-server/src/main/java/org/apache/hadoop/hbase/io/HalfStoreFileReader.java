@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -117,6 +118,16 @@ public class HalfStoreFileReader extends StoreFile.Reader {
     return this.top;
   }
 
+  /**
+   * The half scanner reads all the columns, so that it can check the
+   * boundaries of the half on any cell.
+   */
+  @Override
+  public HFileScanner getScanner(final boolean cacheBlocks, final boolean pread,
+      final boolean isCompaction, final NavigableSet<byte[]> columns) {
+    return getScanner(cacheBlocks, pread, isCompaction);
+  }
+
   @Override
   public HFileScanner getScanner(final boolean cacheBlocks,
       final boolean pread, final boolean isCompaction) {
@@ -243,6 +254,11 @@ public class HalfStoreFileReader extends StoreFile.Reader {
         return this.delegate.isSeeked();
       }
 
+      @Override
+      public void close() {
+        this.delegate.close();
+      }
+
       @Override
       public int seekTo(Cell key) throws IOException {
         if (top) {
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.io.hfile;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableSet;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configurable;
@@ -163,6 +164,16 @@ public abstract class AbstractHFileReader
     return getScanner(cacheBlocks, pread, false);
   }
 
+  /**
+   * Returns a scanner of all the columns, as row oriented data blocks have to
+   * be read entirely anyway.
+   */
+  @Override
+  public HFileScanner getScanner(boolean cacheBlocks, boolean pread,
+      boolean isCompaction, NavigableSet<byte[]> columns) {
+    return getScanner(cacheBlocks, pread, isCompaction);
+  }
+
   /**
    * @return the first key in the file. May be null if file has no entries. Note
    *         that this is not the first row key, but rather the byte form of the
@@ -322,6 +333,11 @@ public abstract class AbstractHFileReader
     public HFile.Reader getReader() {
       return reader;
     }
+
+    @Override
+    public void close() {
+      // Nothing to release by default
+    }
   }
 
   /** For testing */
@@ -0,0 +1,556 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * Keeps track of the block cache usage by table, column family and HFile, and
+ * of the age of the cached blocks. The block caches report every block they
+ * cache, remove and hit, so the usage is maintained incrementally and reading
+ * it does not walk the cache. The caches still walk their own blocks for
+ * {@link BlockCache#getBlockCacheColumnFamilySummaries(org.apache.hadoop.conf.Configuration)},
+ * looking up the table and family of their files here rather than in the file system.
+ * <p>
+ * The cache keys only carry the HFile name, so the HFile readers register the
+ * table and family of their file while open. Blocks of unregistered files are
+ * accounted to an "unknown" family, until their file is registered, e.g. blocks
+ * cached on write until the written file is opened. The usage of all the block caches of the
+ * process is summed, a block moving between two levels of a cache is removed
+ * from one and added to the other.
+ * <p>
+ * The on-heap caches report the heap size of their blocks while the
+ * {@link org.apache.hadoop.hbase.io.hfile.bucket.BucketCache} reports their
+ * serialized length, so the two are kept apart: the cached size is the heap size
+ * of the blocks of the on-heap caches, the serialized size the length of the
+ * blocks of the bucket caches.
+ */
+@InterfaceAudience.Private
+public class BlockCacheUsage implements BlockCacheUsageMXBean {
+
+  private static final BlockCacheUsage INSTANCE = new BlockCacheUsage();
+
+  static final String UNKNOWN = "unknown";
+
+  /** Number of files reported by {@link #getCachedSizeOfTopFiles()} */
+  static final int TOP_FILES = 20;
+
+  private static final long MINUTE = 60 * 1000;
+  /** Upper bounds of the age buckets in minutes, the last bucket is unbounded */
+  private static final long[] AGE_BOUNDS = { 1, 5, 15, 60, 6 * 60, 24 * 60 };
+  private static final String[] AGE_LABELS =
+    { "<1m", "<5m", "<15m", "<1h", "<6h", "<24h", ">=24h" };
+
+  /** Table and family of the HFiles with open readers */
+  private final ConcurrentHashMap<String, Owner> owners =
+      new ConcurrentHashMap<String, Owner>();
+  private final ConcurrentHashMap<String, FamilyUsage> families =
+      new ConcurrentHashMap<String, FamilyUsage>();
+  private final ConcurrentHashMap<String, FileUsage> files =
+      new ConcurrentHashMap<String, FileUsage>();
+  /** Number of cached blocks by the minute they were cached in */
+  private final ConcurrentHashMap<Long, AtomicLong> blocksByMinute =
+      new ConcurrentHashMap<Long, AtomicLong>();
+
+  public static BlockCacheUsage getInstance() {
+    return INSTANCE;
+  }
+
+  BlockCacheUsage() {
+  }
+
+  /**
+   * Registers the table and family of an HFile, which is parsed from its path.
+   * @param hfileName name of the file in the cache keys
+   * @param path path of the store file
+   */
+  public synchronized void registerFile(String hfileName, Path path) {
+    Owner owner = owners.get(hfileName);
+    if (owner == null) {
+      BlockCacheColumnFamilySummary summary =
+          BlockCacheColumnFamilySummary.createFromStoreFilePath(path);
+      owner = summary == null ? new Owner(UNKNOWN, UNKNOWN)
+          : new Owner(summary.getTable(), summary.getColumnFamily());
+      owners.put(hfileName, owner);
+      FileUsage file = files.get(hfileName);
+      if (file != null) {
+        resolveFamily(file, owner);
+      }
+    }
+    owner.refs++;
+  }
+
+  /**
+   * Drops the registration of an HFile, once all its readers are closed.
+   * @param hfileName name of the file in the cache keys
+   */
+  public synchronized void unregisterFile(String hfileName) {
+    Owner owner = owners.get(hfileName);
+    if (owner != null && --owner.refs <= 0) {
+      owners.remove(hfileName);
+      FileUsage file = files.get(hfileName);
+      if (file != null) {
+        dropIfEmpty(hfileName, file);
+      }
+    }
+  }
+
+  /**
+   * Called by an on-heap block cache when it adds a block.
+   * @param cachedTime time the block was cached, see {@link #now()}
+   */
+  public void blockCached(BlockCacheKey key, long heapSize, long cachedTime) {
+    blockCached(key, heapSize, 0, cachedTime);
+  }
+
+  /**
+   * Called by a bucket cache when it adds a block.
+   * @param cachedTime time the block was cached, see {@link #now()}
+   */
+  public void serializedBlockCached(BlockCacheKey key, long length, long cachedTime) {
+    blockCached(key, 0, length, cachedTime);
+  }
+
+  private void blockCached(BlockCacheKey key, long heapSize, long length, long cachedTime) {
+    String hfileName = key.getHfileName();
+    while (true) {
+      FileUsage file = files.get(hfileName);
+      if (file == null) {
+        file = new FileUsage(getFamily(owners.get(hfileName)));
+        FileUsage existing = files.putIfAbsent(hfileName, file);
+        if (existing != null) {
+          file = existing;
+        } else if (file.family.isUnknown()) {
+          // The file may have been registered meanwhile
+          synchronized (this) {
+            Owner owner = owners.get(hfileName);
+            if (owner != null) {
+              resolveFamily(file, owner);
+            }
+          }
+        }
+      }
+      if (file.add(1, heapSize, length)) {
+        break;
+      }
+      // Dropped meanwhile, account the block to a new entry
+      files.remove(hfileName, file);
+    }
+    Long minute = cachedTime / MINUTE;
+    AtomicLong count = blocksByMinute.get(minute);
+    if (count == null) {
+      count = new AtomicLong(0);
+      AtomicLong existing = blocksByMinute.putIfAbsent(minute, count);
+      if (existing != null) {
+        count = existing;
+      } else {
+        // At most once a minute
+        sweep(minute);
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * Called by an on-heap block cache when it removes a block.
+   * @param cachedTime time the block was cached
+   */
+  public void blockRemoved(BlockCacheKey key, long heapSize, long cachedTime) {
+    blockRemoved(key, heapSize, 0, cachedTime);
+  }
+
+  /**
+   * Called by a bucket cache when it removes a block.
+   * @param cachedTime time the block was cached
+   */
+  public void serializedBlockRemoved(BlockCacheKey key, long length, long cachedTime) {
+    blockRemoved(key, 0, length, cachedTime);
+  }
+
+  private void blockRemoved(BlockCacheKey key, long heapSize, long length, long cachedTime) {
+    String hfileName = key.getHfileName();
+    FileUsage file = files.get(hfileName);
+    if (file != null && file.add(-1, -heapSize, -length) && file.blocks.get() <= 0
+        && !owners.containsKey(hfileName)) {
+      dropIfEmpty(hfileName, file);
+    }
+    Long minute = cachedTime / MINUTE;
+    AtomicLong count = blocksByMinute.get(minute);
+    if (count != null && count.decrementAndGet() <= 0 && minute < now() / MINUTE - 1) {
+      // No more blocks are cached in a past minute
+      blocksByMinute.remove(minute, count);
+    }
+  }
+
+  /**
+   * Moves the usage of a file accounted to the unknown family to the family of
+   * its owner.
+   */
+  private void resolveFamily(FileUsage file, Owner owner) {
+    if (file.family.isUnknown() && !UNKNOWN.equals(owner.table)) {
+      file.moveTo(getFamily(owner));
+    }
+  }
+
+  /**
+   * Drops the entry of a file without cached blocks.
+   */
+  private void dropIfEmpty(String hfileName, FileUsage file) {
+    if (file.drop()) {
+      files.remove(hfileName, file);
+    }
+  }
+
+  /**
+   * Called by a block cache when it serves a block.
+   */
+  public void blockHit(BlockCacheKey key) {
+    FileUsage file = files.get(key.getHfileName());
+    if (file != null) {
+      file.hits.incrementAndGet();
+      file.family.hits.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return the current time, to pass as cached time
+   */
+  public static long now() {
+    return EnvironmentEdgeManager.currentTimeMillis();
+  }
+
+  private FamilyUsage getFamily(Owner owner) {
+    String table = owner == null ? UNKNOWN : owner.table;
+    String family = owner == null ? UNKNOWN : owner.family;
+    String key = table + "/" + family;
+    FamilyUsage usage = families.get(key);
+    if (usage == null) {
+      usage = new FamilyUsage(table, family);
+      FamilyUsage existing = families.putIfAbsent(key, usage);
+      if (existing != null) usage = existing;
+    }
+    return usage;
+  }
+
+  /**
+   * Drops the entries of the past minutes without cached blocks left, which
+   * their last removed block did not drop as it was removed in the minute it
+   * was cached in.
+   * @param currentMinute the minute blocks are being cached in
+   */
+  private void sweep(long currentMinute) {
+    for (Iterator<Map.Entry<Long, AtomicLong>> it = blocksByMinute.entrySet().iterator();
+        it.hasNext();) {
+      Map.Entry<Long, AtomicLong> entry = it.next();
+      if (entry.getValue().get() <= 0 && entry.getKey() < currentMinute - 1) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the number of files with an entry, for tests
+   */
+  int getFileCount() {
+    return files.size();
+  }
+
+  /**
+   * @return the number of minutes with an entry, for tests
+   */
+  int getMinuteCount() {
+    return blocksByMinute.size();
+  }
+
+  @Override
+  public Map<String, Long> getCachedSizeByTable() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (FamilyUsage usage : families.values()) {
+      addTo(result, usage.table, usage.size.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedSerializedSizeByTable() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (FamilyUsage usage : families.values()) {
+      addTo(result, usage.table, usage.serializedSize.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedBlocksByTable() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (FamilyUsage usage : families.values()) {
+      addTo(result, usage.table, usage.blocks.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getHitCountByTable() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (FamilyUsage usage : families.values()) {
+      addTo(result, usage.table, usage.hits.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedSizeByFamily() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (Map.Entry<String, FamilyUsage> entry : families.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().size.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedSerializedSizeByFamily() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (Map.Entry<String, FamilyUsage> entry : families.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().serializedSize.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getHitCountByFamily() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (Map.Entry<String, FamilyUsage> entry : families.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().hits.get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedSizeOfTopFiles() {
+    return getTopFiles(false);
+  }
+
+  @Override
+  public Map<String, Long> getCachedSerializedSizeOfTopFiles() {
+    return getTopFiles(true);
+  }
+
+  private Map<String, Long> getTopFiles(boolean serialized) {
+    List<Map.Entry<String, Long>> sizes = new ArrayList<Map.Entry<String, Long>>();
+    for (Map.Entry<String, FileUsage> entry : files.entrySet()) {
+      long size = serialized ? entry.getValue().serializedSize.get()
+          : entry.getValue().size.get();
+      if (size > 0) {
+        FamilyUsage family = entry.getValue().family;
+        sizes.add(new AbstractMap.SimpleImmutableEntry<String, Long>(
+            family.table + "/" + family.family + "/" + entry.getKey(), size));
+      }
+    }
+    Collections.sort(sizes, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+    });
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Long> entry : sizes.subList(0, Math.min(TOP_FILES, sizes.size()))) {
+      result.put(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCachedBlocksByAge() {
+    long[] counts = new long[AGE_LABELS.length];
+    long currentMinute = now() / MINUTE;
+    for (Map.Entry<Long, AtomicLong> entry : blocksByMinute.entrySet()) {
+      long age = currentMinute - entry.getKey();
+      int i = 0;
+      while (i < AGE_BOUNDS.length && age >= AGE_BOUNDS[i]) {
+        i++;
+      }
+      counts[i] += entry.getValue().get();
+    }
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    for (int i = 0; i < counts.length; i++) {
+      result.put(AGE_LABELS[i], counts[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Adds a block of a cache to summaries by table and family, see
+   * {@link BlockCache#getBlockCacheColumnFamilySummaries(org.apache.hadoop.conf.Configuration)}.
+   * The blocks of files of unknown table and family are skipped.
+   * @param bcs the summaries, keyed by themselves
+   * @param size size of the block
+   */
+  public void addToSummaries(
+      Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs,
+      BlockCacheKey key, long size) {
+    FileUsage file = files.get(key.getHfileName());
+    if (file == null || file.family.isUnknown()) {
+      return;
+    }
+    BlockCacheColumnFamilySummary bcse = getSummary(bcs, file.family.table, file.family.family);
+    bcse.incrementBlocks();
+    bcse.incrementHeapSize(size);
+  }
+
+  /**
+   * Adds summaries, e.g. of a level of a cache, to other summaries.
+   * @param bcs the summaries, keyed by themselves
+   */
+  public static void addToSummaries(
+      Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs,
+      List<BlockCacheColumnFamilySummary> summaries) {
+    for (BlockCacheColumnFamilySummary summary : summaries) {
+      BlockCacheColumnFamilySummary bcse =
+          getSummary(bcs, summary.getTable(), summary.getColumnFamily());
+      bcse.setBlocks(bcse.getBlocks() + summary.getBlocks());
+      bcse.incrementHeapSize(summary.getHeapSize());
+    }
+  }
+
+  /**
+   * @return the summaries, sorted by table and family
+   */
+  public static List<BlockCacheColumnFamilySummary> toSortedList(
+      Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs) {
+    List<BlockCacheColumnFamilySummary> list =
+        new ArrayList<BlockCacheColumnFamilySummary>(bcs.values());
+    Collections.sort(list);
+    return list;
+  }
+
+  private static BlockCacheColumnFamilySummary getSummary(
+      Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs,
+      String table, String family) {
+    // quirky, but it's a compound key and this is a shortcut taken instead of
+    // creating a class that would represent only a key.
+    BlockCacheColumnFamilySummary lookup = new BlockCacheColumnFamilySummary(table, family);
+    BlockCacheColumnFamilySummary bcse = bcs.get(lookup);
+    if (bcse == null) {
+      bcse = BlockCacheColumnFamilySummary.create(lookup);
+      bcs.put(lookup, bcse);
+    }
+    return bcse;
+  }
+
+  private static void addTo(Map<String, Long> map, String key, long value) {
+    Long current = map.get(key);
+    map.put(key, current == null ? value : current + value);
+  }
+
+  private static class Owner {
+    final String table;
+    final String family;
+    int refs = 0;
+
+    Owner(String table, String family) {
+      this.table = table;
+      this.family = family;
+    }
+  }
+
+  private static class FamilyUsage {
+    final String table;
+    final String family;
+    final AtomicLong blocks = new AtomicLong(0);
+    final AtomicLong size = new AtomicLong(0);
+    final AtomicLong serializedSize = new AtomicLong(0);
+    final AtomicLong hits = new AtomicLong(0);
+
+    FamilyUsage(String table, String family) {
+      this.table = table;
+      this.family = family;
+    }
+
+    boolean isUnknown() {
+      return UNKNOWN.equals(table);
+    }
+  }
+
+  private static class FileUsage {
+    /** Only changes from the unknown family once the file is registered */
+    volatile FamilyUsage family;
+    final AtomicLong blocks = new AtomicLong(0);
+    final AtomicLong size = new AtomicLong(0);
+    final AtomicLong serializedSize = new AtomicLong(0);
+    final AtomicLong hits = new AtomicLong(0);
+    /** Set once the entry is dropped from the files, it is no longer updated */
+    private boolean dropped = false;
+
+    FileUsage(FamilyUsage family) {
+      this.family = family;
+    }
+
+    /**
+     * @return false if the entry was dropped, and the block not accounted
+     */
+    synchronized boolean add(long blockCount, long heapSize, long length) {
+      if (dropped) {
+        return false;
+      }
+      blocks.addAndGet(blockCount);
+      size.addAndGet(heapSize);
+      serializedSize.addAndGet(length);
+      family.blocks.addAndGet(blockCount);
+      family.size.addAndGet(heapSize);
+      family.serializedSize.addAndGet(length);
+      return true;
+    }
+
+    synchronized void moveTo(FamilyUsage newFamily) {
+      family.blocks.addAndGet(-blocks.get());
+      family.size.addAndGet(-size.get());
+      family.serializedSize.addAndGet(-serializedSize.get());
+      family.hits.addAndGet(-hits.get());
+      newFamily.blocks.addAndGet(blocks.get());
+      newFamily.size.addAndGet(size.get());
+      newFamily.serializedSize.addAndGet(serializedSize.get());
+      newFamily.hits.addAndGet(hits.get());
+      family = newFamily;
+    }
+
+    /**
+     * @return true if the file has no cached blocks, and the entry is now dropped
+     */
+    synchronized boolean drop() {
+      if (blocks.get() > 0) {
+        return false;
+      }
+      dropped = true;
+      return true;
+    }
+  }
+}
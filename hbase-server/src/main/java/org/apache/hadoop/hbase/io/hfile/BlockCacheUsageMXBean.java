@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * JMX view of {@link BlockCacheUsage}. Tables are keyed by name, families by
+ * table and family name separated by '/'.
+ */
+@InterfaceAudience.Private
+public interface BlockCacheUsageMXBean {
+
+  /**
+   * @return heap size of the blocks of each table in the on-heap caches
+   */
+  Map<String, Long> getCachedSizeByTable();
+
+  /**
+   * @return serialized length of the blocks of each table in the bucket caches
+   */
+  Map<String, Long> getCachedSerializedSizeByTable();
+
+  /**
+   * @return number of cached blocks of each table
+   */
+  Map<String, Long> getCachedBlocksByTable();
+
+  /**
+   * @return number of block cache hits of each table
+   */
+  Map<String, Long> getHitCountByTable();
+
+  /**
+   * @return heap size of the blocks of each family in the on-heap caches
+   */
+  Map<String, Long> getCachedSizeByFamily();
+
+  /**
+   * @return serialized length of the blocks of each family in the bucket caches
+   */
+  Map<String, Long> getCachedSerializedSizeByFamily();
+
+  /**
+   * @return number of block cache hits of each family
+   */
+  Map<String, Long> getHitCountByFamily();
+
+  /**
+   * @return heap size of the blocks in the on-heap caches of the files with the
+   * most such bytes
+   */
+  Map<String, Long> getCachedSizeOfTopFiles();
+
+  /**
+   * @return serialized length of the blocks in the bucket caches of the files
+   * with the most such bytes
+   */
+  Map<String, Long> getCachedSerializedSizeOfTopFiles();
+
+  /**
+   * @return number of cached blocks by time since they were cached
+   */
+  Map<String, Long> getCachedBlocksByAge();
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * Reads the blocks of an {@link HFile} ahead of a sequential scanner, in a
+ * background thread, so that the HDFS latency overlaps with the processing of
+ * the current block. The blocks are read with positional reads through
+ * {@link HFileReaderV2#readBlock}, so they are cached and unpacked as if the
+ * scanner had read them, and the reads do not contend for the stream with
+ * the scanner.
+ * <p>
+ * The offset of a block is only known once the previous one is read, so the
+ * blocks are read one after the other, up to a window of blocks ahead of the
+ * scanner. The window starts at one block and doubles, up to
+ * {@link #READAHEAD_BLOCKS_KEY}, each time the scanner has to wait for a
+ * block, that is when it consumes the blocks faster than they are read ahead.
+ * A seek resets the window. The scanner closes the readahead when it is
+ * closed, which drops the pending reads and waits for the one in progress, so
+ * that no read outlives the scanner and its reader.
+ */
+@InterfaceAudience.Private
+public class BlockReadahead {
+  private static final Log LOG = LogFactory.getLog(BlockReadahead.class);
+
+  /**
+   * Maximum number of blocks read ahead of a scanner. Readahead is disabled
+   * when 0, and only applies to scanners which do not use positional reads,
+   * i.e. long scans and compactions.
+   */
+  public static final String READAHEAD_BLOCKS_KEY = "hbase.hfile.readahead.blocks";
+  public static final int DEFAULT_READAHEAD_BLOCKS = 0;
+
+  /** Number of threads reading blocks ahead, shared by all the scanners */
+  public static final String READAHEAD_THREADS_KEY = "hbase.hfile.readahead.threads";
+  public static final int DEFAULT_READAHEAD_THREADS = 16;
+
+  private static ThreadPoolExecutor pool;
+
+  /** Blocks read ahead and used by a scanner */
+  static final AtomicLong hitCount = new AtomicLong();
+  /** Blocks a scanner had to wait for */
+  static final AtomicLong waitCount = new AtomicLong();
+
+  /** A block read ahead, or being read */
+  private static class Read {
+    final long offset;
+    HFileBlock block;
+    IOException error;
+    boolean done;
+
+    Read(long offset) {
+      this.offset = offset;
+    }
+  }
+
+  private final HFileReaderV2 reader;
+  private final boolean cacheBlocks;
+  private final boolean isCompaction;
+  private final DataBlockEncoding encoding;
+  private final int maxBlocks;
+
+  // All the fields below are guarded by this
+  private final LinkedList<Read> reads = new LinkedList<Read>();
+  private int window = 1;
+  private boolean running;
+  /** Incremented on seeks, so that the reads in progress are dropped */
+  private long generation;
+  private long nextOffset = -1;
+  private long nextOnDiskSize = -1;
+  /** The last readahead task submitted to the pool */
+  private Future<?> task;
+  /** Number of blocks being read by readahead tasks */
+  private int activeReads = 0;
+  private boolean closed = false;
+
+  private BlockReadahead(HFileReaderV2 reader, boolean cacheBlocks,
+      boolean isCompaction, DataBlockEncoding encoding, int maxBlocks) {
+    this.reader = reader;
+    this.cacheBlocks = cacheBlocks;
+    this.isCompaction = isCompaction;
+    this.encoding = encoding;
+    this.maxBlocks = maxBlocks;
+  }
+
+  /**
+   * @return the readahead of a scanner, or null if it does not apply
+   */
+  static BlockReadahead create(HFileReaderV2 reader, Configuration conf,
+      boolean cacheBlocks, boolean pread, boolean isCompaction,
+      DataBlockEncoding encoding) {
+    if (pread || conf == null) {
+      return null;
+    }
+    int maxBlocks = conf.getInt(READAHEAD_BLOCKS_KEY, DEFAULT_READAHEAD_BLOCKS);
+    if (maxBlocks <= 0) {
+      return null;
+    }
+    initPool(conf);
+    return new BlockReadahead(reader, cacheBlocks, isCompaction, encoding,
+        maxBlocks);
+  }
+
+  private static synchronized void initPool(Configuration conf) {
+    if (pool == null) {
+      pool = Threads.getBoundedCachedThreadPool(
+          conf.getInt(READAHEAD_THREADS_KEY, DEFAULT_READAHEAD_THREADS),
+          60, TimeUnit.SECONDS, Threads.newDaemonThreadFactory("hfile-readahead"));
+    }
+  }
+
+  /**
+   * Returns the block following the given one, read ahead if possible, and
+   * reads more blocks ahead.
+   *
+   * @param curBlock the current block of the scanner
+   * @return the next block of the file, which may not be a data block
+   * @throws IOException
+   */
+  HFileBlock readNextBlock(HFileBlock curBlock) throws IOException {
+    long offset = curBlock.getOffset() + curBlock.getOnDiskSizeWithHeader();
+    Read read = null;
+    synchronized (this) {
+      if (!reads.isEmpty() && reads.getFirst().offset == offset) {
+        read = reads.removeFirst();
+        if (!read.done) {
+          waitCount.incrementAndGet();
+          window = Math.min(window * 2, maxBlocks);
+          try {
+            while (!read.done) {
+              wait();
+            }
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted waiting for block at "
+                + offset + " of " + reader.getName());
+          }
+        }
+      } else {
+        // A seek, or the first block of the scanner
+        reset();
+      }
+    }
+
+    HFileBlock block;
+    if (read != null && read.block != null) {
+      hitCount.incrementAndGet();
+      block = read.block;
+    } else {
+      if (read != null && LOG.isDebugEnabled()) {
+        LOG.debug("Readahead of block at " + offset + " of " + reader.getName()
+            + " failed, reading it again", read.error);
+      }
+      block = reader.readBlock(offset, curBlock.getNextBlockOnDiskSizeWithHeader(),
+          cacheBlocks, false, isCompaction, null, encoding);
+      synchronized (this) {
+        reset();
+        setNext(block);
+      }
+    }
+    synchronized (this) {
+      if (!closed && !running && reads.size() < window && nextOffset >= 0) {
+        running = true;
+        final long readGeneration = generation;
+        task = pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            readAhead(readGeneration);
+          }
+        });
+      }
+    }
+    return block;
+  }
+
+  /**
+   * Drops the blocks read ahead and cancels the readahead task if it has not
+   * started, then waits for the block being read, if any. Called when the
+   * scanner is closed.
+   */
+  synchronized void close() {
+    closed = true;
+    reset();
+    if (task != null) {
+      task.cancel(false);
+      task = null;
+    }
+    try {
+      while (activeReads > 0) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted waiting for the readahead of " + reader.getName());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of blocks read ahead or being read
+   */
+  synchronized int getPendingReads() {
+    return reads.size() + activeReads;
+  }
+
+  /**
+   * Drops the blocks read ahead, after a seek.
+   */
+  private void reset() {
+    generation++;
+    reads.clear();
+    window = 1;
+    running = false;
+    nextOffset = -1;
+    nextOnDiskSize = -1;
+  }
+
+  /**
+   * Continues the reads after the given block, unless it is the last data
+   * block.
+   */
+  private void setNext(HFileBlock block) {
+    if (block.getOffset() >= reader.getTrailer().getLastDataBlockOffset()) {
+      nextOffset = -1;
+    } else {
+      nextOffset = block.getOffset() + block.getOnDiskSizeWithHeader();
+      nextOnDiskSize = block.getNextBlockOnDiskSizeWithHeader();
+    }
+  }
+
+  /**
+   * Reads blocks until the window is full. Runs in the readahead pool.
+   */
+  private void readAhead(long readGeneration) {
+    while (true) {
+      Read read;
+      long onDiskSize;
+      synchronized (this) {
+        if (generation != readGeneration || reads.size() >= window || nextOffset < 0) {
+          if (generation == readGeneration) {
+            running = false;
+          }
+          return;
+        }
+        read = new Read(nextOffset);
+        onDiskSize = nextOnDiskSize;
+        reads.addLast(read);
+        activeReads++;
+      }
+
+      HFileBlock block = null;
+      IOException error = null;
+      try {
+        block = reader.readBlock(read.offset, onDiskSize, cacheBlocks, true,
+            isCompaction, null, encoding);
+      } catch (IOException e) {
+        error = e;
+      } catch (RuntimeException e) {
+        error = new IOException(e);
+      }
+
+      synchronized (this) {
+        read.block = block;
+        read.error = error;
+        read.done = true;
+        activeReads--;
+        notifyAll();
+        if (generation != readGeneration) {
+          return;
+        }
+        if (block == null) {
+          // The scanner will read the block itself and restart the readahead
+          running = false;
+          nextOffset = -1;
+          return;
+        }
+        setNext(block);
+      }
+    }
+  }
+}
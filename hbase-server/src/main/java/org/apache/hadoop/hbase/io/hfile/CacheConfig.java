@@ -60,8 +60,10 @@ public class CacheConfig {
       "hfile.block.bloom.cacheonwrite";
 
   /**
-   * TODO: Implement this (jgray)
-   * Configuration key to cache data blocks in compressed format.
+   * Configuration key to cache data blocks in compressed format. Blocks are
+   * kept in the form they were read from disk in, and are decompressed on
+   * every access. This trades CPU for effective cache capacity, and is
+   * mostly useful with a large L2 {@link BucketCache}.
    */
   public static final String CACHE_DATA_BLOCKS_COMPRESSED_KEY =
       "hbase.rs.blockcache.cachedatacompressed";
@@ -87,6 +89,18 @@ public class CacheConfig {
   public static final String BUCKET_CACHE_WRITER_THREADS_KEY = "hbase.bucketcache.writer.threads";
   public static final String BUCKET_CACHE_WRITER_QUEUE_KEY = 
       "hbase.bucketcache.writer.queuelength";
+  /**
+   * Configuration keys for the tiered cache. When enabled, the LruBlockCache,
+   * the bucket cache and an optional file backed bucket cache are arranged as
+   * the levels of a {@link TieredBlockCache} instead of a
+   * {@link CombinedBlockCache}.
+   */
+  public static final String TIERED_CACHE_ENABLED_KEY = "hbase.blockcache.tiered.enabled";
+  public static final String TIERED_CACHE_L3_IOENGINE_KEY =
+      "hbase.blockcache.tiered.l3.ioengine";
+  public static final String TIERED_CACHE_L3_SIZE_KEY = "hbase.blockcache.tiered.l3.size";
+  public static final String TIERED_CACHE_L3_PERSISTENT_PATH_KEY =
+      "hbase.blockcache.tiered.l3.persistent.path";
   /**
    * Defaults for Bucket cache
    */
@@ -152,7 +166,8 @@ public class CacheConfig {
             DEFAULT_CACHE_BLOOMS_ON_WRITE) || family.shouldCacheBloomsOnWrite(),
         conf.getBoolean(EVICT_BLOCKS_ON_CLOSE_KEY,
             DEFAULT_EVICT_ON_CLOSE) || family.shouldEvictBlocksOnClose(),
-        conf.getBoolean(CACHE_DATA_BLOCKS_COMPRESSED_KEY, DEFAULT_COMPRESSED_CACHE)
+        conf.getBoolean(CACHE_DATA_BLOCKS_COMPRESSED_KEY,
+            DEFAULT_COMPRESSED_CACHE) || family.shouldCacheDataCompressed()
      );
   }
 
@@ -315,6 +330,16 @@ public class CacheConfig {
     return isBlockCacheEnabled() && this.cacheCompressed;
   }
 
+  /**
+   * @return true if blocks of the given category should be kept in their
+   *         packed (compressed and/or encrypted) on-disk form in the cache.
+   *         Only data blocks are cached packed; index and bloom blocks are
+   *         accessed too frequently to be decompressed on every access.
+   */
+  public boolean shouldCacheCompressed(BlockCategory category) {
+    return shouldCacheCompressed() && category == BlockCategory.DATA;
+  }
+
   @Override
   public String toString() {
     if (!isBlockCacheEnabled()) {
@@ -340,6 +365,30 @@ public class CacheConfig {
   /** Boolean whether we have disabled the block cache entirely. */
   private static boolean blockCacheDisabled = false;
 
+  /**
+   * Creates the file backed level of the tiered cache.
+   * @return the bucket cache, or null if not configured
+   */
+  private static BucketCache instantiateFileTier(Configuration conf, int blockSize) {
+    String ioEngineName = conf.get(TIERED_CACHE_L3_IOENGINE_KEY, null);
+    // Absolute value with unit megabytes
+    long size = conf.getLong(TIERED_CACHE_L3_SIZE_KEY, 0) * 1024 * 1024;
+    if (ioEngineName == null || size <= 0) return null;
+    LOG.info("Allocating file tier of the block cache with size " +
+      StringUtils.humanReadableInt(size) + " on " + ioEngineName);
+    try {
+      return new BucketCache(ioEngineName, size, blockSize,
+          conf.getInt(BUCKET_CACHE_WRITER_THREADS_KEY, DEFAULT_BUCKET_CACHE_WRITER_THREADS),
+          conf.getInt(BUCKET_CACHE_WRITER_QUEUE_KEY, DEFAULT_BUCKET_CACHE_WRITER_QUEUE),
+          conf.get(TIERED_CACHE_L3_PERSISTENT_PATH_KEY),
+          conf.getInt("hbase.bucketcache.ioengine.errors.tolerated.duration",
+              BucketCache.DEFAULT_ERROR_TOLERATION_DURATION));
+    } catch (IOException ioex) {
+      LOG.error("Can't instantiate file tier of the block cache", ioex);
+      throw new RuntimeException(ioex);
+    }
+  }
+
   /**
    * Returns the block cache or <code>null</code> in case none should be used.
    *
@@ -406,6 +455,12 @@ public class CacheConfig {
       LOG.info("Allocating LruBlockCache with maximum size " +
         StringUtils.humanReadableInt(lruCacheSize));
       LruBlockCache lruCache = new LruBlockCache(lruCacheSize, blockSize);
+      boolean tiered = conf.getBoolean(TIERED_CACHE_ENABLED_KEY, false);
+      if (bucketCache != null && tiered) {
+        globalBlockCache = new TieredBlockCache(lruCache, bucketCache,
+            instantiateFileTier(conf, blockSize));
+        return globalBlockCache;
+      }
       lruCache.setVictimCache(bucketCache);
       if (bucketCache != null && combinedWithLru) {
         globalBlockCache = new CombinedBlockCache(lruCache, bucketCache);
@@ -35,7 +35,7 @@ import org.apache.hadoop.hbase.util.ClassSize;
 public class CachedBlock implements HeapSize, Comparable<CachedBlock> {
 
   public final static long PER_BLOCK_OVERHEAD = ClassSize.align(
-    ClassSize.OBJECT + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_LONG) +
+    ClassSize.OBJECT + (3 * ClassSize.REFERENCE) + (3 * Bytes.SIZEOF_LONG) +
     ClassSize.STRING + ClassSize.BYTE_BUFFER);
 
   static enum BlockPriority {
@@ -56,6 +56,7 @@ public class CachedBlock implements HeapSize, Comparable<CachedBlock> {
   private final BlockCacheKey cacheKey;
   private final Cacheable buf;
   private volatile long accessTime;
+  private final long cachedTime;
   private long size;
   private BlockPriority priority;
 
@@ -68,6 +69,7 @@ public class CachedBlock implements HeapSize, Comparable<CachedBlock> {
     this.cacheKey = cacheKey;
     this.buf = buf;
     this.accessTime = accessTime;
+    this.cachedTime = BlockCacheUsage.now();
     // We approximate the size of this class by the size of its name string
     // plus the size of its byte buffer plus the overhead associated with all
     // the base classes. We also include the base class
@@ -125,4 +127,11 @@ public class CachedBlock implements HeapSize, Comparable<CachedBlock> {
   public BlockPriority getPriority() {
     return this.priority;
   }
+
+  /**
+   * @return time the block was cached, in milliseconds
+   */
+  public long getCachedTime() {
+    return this.cachedTime;
+  }
 }
@@ -22,9 +22,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
+import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ChecksumType;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
  * Utility methods to compute and validate checksums.
@@ -43,6 +46,20 @@ public class ChecksumUtil {
    */
   private static boolean generateExceptions = false;
 
+  /**
+   * Whether the Hadoop native library is loaded. It computes CRC32C with the
+   * CPU instruction, but only over direct buffers.
+   */
+  private static final boolean NATIVE_CHECKSUMS = NativeCodeLoader.isNativeCodeLoaded();
+
+  /**
+   * Blocks up to this size are copied to a direct buffer to be validated by
+   * the Hadoop native library, which is much faster than a pure Java CRC.
+   */
+  private static final int MAX_DIRECT_COPY_SIZE = 1024 * 1024;
+
+  private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = new ThreadLocal<ByteBuffer>();
+
   /**
    * Generates a checksum for all the data in indata. The checksum is
    * written to outdata.
@@ -92,8 +109,9 @@ public class ChecksumUtil {
    * then validate that it matches the value stored in the header.
    * If there is a checksum mismatch, then return false. Otherwise
    * return true.
-   * The header is extracted from the specified HFileBlock while the
-   * data-to-be-verified is extracted from 'data'.
+   * The header is extracted from the specified HFileBlock, while 'data'
+   * holds the header, the data and the checksums of the block, which are
+   * all validated in one pass.
    */
   static boolean validateBlockChecksum(Path path, HFileBlock block, 
     byte[] data, int hdrSize) throws IOException {
@@ -116,9 +134,6 @@ public class ChecksumUtil {
     if (cktype == ChecksumType.NULL) {
       return true; // No checkums validations needed for this block.
     }
-    Checksum checksumObject = cktype.getChecksumObject();
-    checksumObject.reset();
-
     // read in the stored value of the checksum size from the header.
     int bytesPerChecksum = block.getBytesPerChecksum();
 
@@ -130,45 +145,115 @@ public class ChecksumUtil {
       HFile.LOG.warn(msg);
       return false;   // cannot happen case, unable to verify checksum
     }
-    // Extract the header and compute checksum for the header.
-    ByteBuffer hdr = block.getBufferWithHeader();
-    checksumObject.update(hdr.array(), hdr.arrayOffset(), hdrSize);
-
-    int off = hdrSize;
-    int consumed = hdrSize;
-    int bytesLeft = block.getOnDiskDataSizeWithHeader() - off;
-    int cksumOffset = block.getOnDiskDataSizeWithHeader();
-    
-    // validate each chunk
-    while (bytesLeft > 0) {
-      int thisChunkSize = bytesPerChecksum - consumed;
-      int count = Math.min(bytesLeft, thisChunkSize);
-      checksumObject.update(data, off, count);
 
-      int storedChecksum = Bytes.toInt(data, cksumOffset);
-      if (storedChecksum != (int)checksumObject.getValue()) {
-        String msg = "File " + path +
-                     " Stored checksum value of " + storedChecksum +
-                     " at offset " + cksumOffset +
-                     " does not match computed checksum " +
-                     checksumObject.getValue() +
-                     ", total data size " + data.length +
-                     " Checksum data range offset " + off + " len " + count +
-                     HFileBlock.toStringHeader(block.getBufferReadOnly());
-        HFile.LOG.warn(msg);
-        if (generateExceptions) {
-          throw new IOException(msg); // this is only for unit tests
-        } else {
-          return false;               // checksum validation failure
+    // The data starts with the header, and the checksums follow the data.
+    int onDiskDataSizeWithHeader = block.getOnDiskDataSizeWithHeader();
+    ByteBuffer dataBuf = ByteBuffer.wrap(data, 0, onDiskDataSizeWithHeader);
+    ByteBuffer checksumBuf = ByteBuffer.wrap(data, onDiskDataSizeWithHeader,
+        block.getOnDiskSizeWithHeader() - onDiskDataSizeWithHeader);
+    String error = verifyChunkedChecksums(path.toString(), cktype, bytesPerChecksum,
+        dataBuf, checksumBuf);
+    if (error != null) {
+      String msg = "File " + path + " " + error +
+                   ", total data size " + data.length +
+                   HFileBlock.toStringHeader(block.getBufferReadOnly());
+      HFile.LOG.warn(msg);
+      if (generateExceptions) {
+        throw new IOException(msg); // this is only for unit tests
+      } else {
+        return false;               // checksum validation failure
+      }
+    }
+    return true; // checksum is valid
+  }
+
+  /**
+   * Validates all the checksum chunks of the given data in one pass. Direct
+   * (off-heap) buffers are validated in place by the Hadoop native library
+   * if it is loaded. Heap buffers are validated with the checksum object of
+   * the type if it uses a CPU instruction, or else are copied to a direct
+   * buffer for the native library when it is loaded.
+   *
+   * @param name the name of the data, for error messages
+   * @param checksumType type of checksum
+   * @param bytesPerChecksum number of bytes per checksum value
+   * @param data the data, from its position to its limit
+   * @param checksums the stored checksum values, one int per chunk of data
+   * @return null if the checksums match, or a description of the first
+   *         mismatch
+   */
+  static String verifyChunkedChecksums(String name, ChecksumType checksumType,
+      int bytesPerChecksum, ByteBuffer data, ByteBuffer checksums) throws IOException {
+    if (data.isDirect() || (NATIVE_CHECKSUMS && !checksumType.isHardwareAccelerated()
+        && data.remaining() + checksums.remaining() <= MAX_DIRECT_COPY_SIZE)) {
+      DataChecksum dataChecksum = DataChecksum.newDataChecksum(
+          checksumType.getDataChecksumType(), bytesPerChecksum);
+      if (!data.isDirect() || !checksums.isDirect()) {
+        ByteBuffer direct = getDirectBuffer((data.isDirect() ? 0 : data.remaining())
+            + (checksums.isDirect() ? 0 : checksums.remaining()));
+        if (!data.isDirect()) {
+          data = copyTo(direct, data);
+        }
+        if (!checksums.isDirect()) {
+          checksums = copyTo(direct, checksums);
         }
       }
+      try {
+        dataChecksum.verifyChunkedSums(data, checksums, name, 0);
+      } catch (ChecksumException e) {
+        return "Checksum mismatch at data offset " + e.getPos() + ": " + e.getMessage();
+      }
+      return null;
+    }
+
+    Checksum checksumObject = checksumType.getChecksumObject();
+    byte[] array = data.array();
+    int off = data.arrayOffset() + data.position();
+    int end = off + data.remaining();
+    int cksumOffset = checksums.position();
+    while (off < end) {
+      int count = Math.min(end - off, bytesPerChecksum);
+      checksumObject.reset();
+      checksumObject.update(array, off, count);
+      int storedChecksum = checksums.getInt(cksumOffset);
+      if (storedChecksum != (int)checksumObject.getValue()) {
+        return "Stored checksum value of " + storedChecksum +
+               " at offset " + cksumOffset +
+               " does not match computed checksum " +
+               checksumObject.getValue() +
+               " Checksum data range offset " + off + " len " + count;
+      }
       cksumOffset += HFileBlock.CHECKSUM_SIZE;
-      bytesLeft -= count; 
       off += count;
-      consumed = 0;
-      checksumObject.reset();
     }
-    return true; // checksum is valid
+    return null;
+  }
+
+  /**
+   * @return the direct buffer of the thread, cleared, with at least the given
+   *         capacity
+   */
+  private static ByteBuffer getDirectBuffer(int capacity) {
+    ByteBuffer buf = DIRECT_BUFFER.get();
+    if (buf == null || buf.capacity() < capacity) {
+      buf = ByteBuffer.allocateDirect(Math.max(capacity, 128 * 1024));
+      DIRECT_BUFFER.set(buf);
+    }
+    buf.clear();
+    return buf;
+  }
+
+  /**
+   * Appends the remaining bytes of the given buffer to the direct buffer.
+   * @return the copy
+   */
+  private static ByteBuffer copyTo(ByteBuffer direct, ByteBuffer buf) {
+    int start = direct.position();
+    direct.put(buf.duplicate());
+    ByteBuffer copy = direct.duplicate();
+    copy.limit(direct.position());
+    copy.position(start);
+    return copy.slice();
   }
 
   /**
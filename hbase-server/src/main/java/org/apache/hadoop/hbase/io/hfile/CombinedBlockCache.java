@@ -19,7 +19,9 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
@@ -129,7 +131,11 @@ public class CombinedBlockCache implements BlockCache, HeapSize {
   @Override
   public List<BlockCacheColumnFamilySummary> getBlockCacheColumnFamilySummaries(
       Configuration conf) throws IOException {
-    throw new UnsupportedOperationException();
+    Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs =
+        new HashMap<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary>();
+    BlockCacheUsage.addToSummaries(bcs, lruCache.getBlockCacheColumnFamilySummaries(conf));
+    BlockCacheUsage.addToSummaries(bcs, bucketCache.getBlockCacheColumnFamilySummaries(conf));
+    return BlockCacheUsage.toSortedList(bcs);
   }
 
   private static class CombinedCacheStats extends CacheStats {
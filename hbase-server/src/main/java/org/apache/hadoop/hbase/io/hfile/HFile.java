@@ -32,6 +32,7 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -154,7 +155,13 @@ public class HFile {
 
   /** Maximum supported HFile format version
    */
-  public static final int MAX_FORMAT_VERSION = 3;
+  public static final int MAX_FORMAT_VERSION = 4;
+
+  /**
+   * HFile format version new files are written with by default. Version 4,
+   * with columnar data blocks, is experimental and has to be set explicitly.
+   */
+  public static final int DEFAULT_FORMAT_VERSION = 3;
 
   /**
    * Minimum HFile format version with support for persisting cell tags
@@ -402,7 +409,7 @@ public class HFile {
   public static final String FORMAT_VERSION_KEY = "hfile.format.version";
 
   public static int getFormatVersion(Configuration conf) {
-    int version = conf.getInt(FORMAT_VERSION_KEY, MAX_FORMAT_VERSION);
+    int version = conf.getInt(FORMAT_VERSION_KEY, DEFAULT_FORMAT_VERSION);
     checkFormatVersion(version);
     return version;
   }
@@ -430,6 +437,8 @@ public class HFile {
       return new HFileWriterV2.WriterFactoryV2(conf, cacheConf);
     case 3:
       return new HFileWriterV3.WriterFactoryV3(conf, cacheConf);
+    case 4:
+      return new HFileWriterV4.WriterFactoryV4(conf, cacheConf);
     default:
       throw new IllegalArgumentException("Cannot create writer for HFile " +
           "format version " + version);
@@ -477,6 +486,16 @@ public class HFile {
     HFileScanner getScanner(boolean cacheBlocks,
        final boolean pread, final boolean isCompaction);
 
+    /**
+     * Returns a scanner which may skip the cells of the columns which are not
+     * in the given set, if the file format allows it. Delete markers are
+     * never skipped, and cells of other columns may still be returned.
+     *
+     * @param columns the qualifiers the caller reads, or null for all
+     */
+    HFileScanner getScanner(boolean cacheBlocks, boolean pread,
+       boolean isCompaction, NavigableSet<byte[]> columns);
+
     ByteBuffer getMetaBlock(String metaBlockName,
        boolean cacheBlock) throws IOException;
 
@@ -559,6 +578,8 @@ public class HFile {
         return new HFileReaderV2(path, trailer, fsdis, size, cacheConf, hfs, conf);
       case 3 :
         return new HFileReaderV3(path, trailer, fsdis, size, cacheConf, hfs, conf);
+      case 4 :
+        return new HFileReaderV4(path, trailer, fsdis, size, cacheConf, hfs, conf);
       default:
         throw new IllegalArgumentException("Invalid HFile version " + trailer.getMajorVersion());
       }
@@ -81,7 +81,11 @@ import com.google.common.base.Preconditions;
  * </ul>
  * </ul>
  * The version 2 block representation in the block cache is the same as above,
- * except that the data section is always uncompressed in the cache.
+ * except that the data section is uncompressed in the cache unless the block
+ * was cached in its packed (on-disk) form, see
+ * {@link CacheConfig#shouldCacheCompressed(BlockType.BlockCategory)}. A packed
+ * block has to be {@link #unpack(HFileContext, FSReader) unpacked} before its
+ * data can be accessed.
  */
 @InterfaceAudience.Private
 public class HFileBlock implements Cacheable {
@@ -109,7 +113,7 @@ public class HFileBlock implements Cacheable {
   public static final int BYTE_BUFFER_HEAP_SIZE = (int) ClassSize.estimateBase(
       ByteBuffer.wrap(new byte[0], 0, 0).getClass(), false);
 
-  // meta.usesHBaseChecksum+offset+nextBlockOnDiskSizeWithHeader
+  // meta.usesHBaseChecksum|packed flags+offset+nextBlockOnDiskSizeWithHeader
   public static final int EXTRA_SERIALIZATION_SPACE = Bytes.SIZEOF_BYTE +  Bytes.SIZEOF_INT
       + Bytes.SIZEOF_LONG;
 
@@ -118,6 +122,10 @@ public class HFileBlock implements Cacheable {
    */
   static final int CHECKSUM_SIZE = Bytes.SIZEOF_INT;
 
+  /** Bits of the serialized flags byte, see {@link #serializeExtraInfo(ByteBuffer)} */
+  private static final byte USES_HBASE_CHECKSUM_FLAG = 0x01;
+  private static final byte PACKED_FLAG = 0x02;
+
   private static final CacheableDeserializer<Cacheable> blockDeserializer =
       new CacheableDeserializer<Cacheable>() {
         public HFileBlock deserialize(ByteBuffer buf, boolean reuse) throws IOException{
@@ -131,8 +139,10 @@ public class HFileBlock implements Cacheable {
           }
           buf.position(buf.limit());
           buf.limit(buf.limit() + HFileBlock.EXTRA_SERIALIZATION_SPACE);
-          boolean usesChecksum = buf.get() == (byte)1;
+          byte flags = buf.get();
+          boolean usesChecksum = (flags & USES_HBASE_CHECKSUM_FLAG) != 0;
           HFileBlock ourBuffer = new HFileBlock(newByteBuffer, usesChecksum);
+          ourBuffer.unpacked = (flags & PACKED_FLAG) == 0;
           ourBuffer.offset = buf.getLong();
           ourBuffer.nextBlockOnDiskSizeWithHeader = buf.getInt();
           return ourBuffer;
@@ -186,6 +196,12 @@ public class HFileBlock implements Cacheable {
    */
   private int nextBlockOnDiskSizeWithHeader = -1;
 
+  /**
+   * Whether the data section of {@link #buf} is uncompressed and decrypted.
+   * False if the block still holds its on-disk representation.
+   */
+  private boolean unpacked = true;
+
   /**
    * Creates a new {@link HFile} block from the given fields. This constructor
    * is mostly used when the block data has already been read and uncompressed,
@@ -257,6 +273,82 @@ public class HFileBlock implements Cacheable {
     buf.rewind();
   }
 
+  /**
+   * Copy constructor. Shares the buffer of the given block; used by
+   * {@link #unpack(HFileContext, FSReader)} before allocating a new buffer.
+   */
+  private HFileBlock(HFileBlock that) {
+    this.blockType = that.blockType;
+    this.onDiskSizeWithoutHeader = that.onDiskSizeWithoutHeader;
+    this.uncompressedSizeWithoutHeader = that.uncompressedSizeWithoutHeader;
+    this.prevBlockOffset = that.prevBlockOffset;
+    this.onDiskDataSizeWithHeader = that.onDiskDataSizeWithHeader;
+    this.buf = that.buf.duplicate();
+    this.fileContext = that.fileContext;
+    this.offset = that.offset;
+    this.nextBlockOnDiskSizeWithHeader = that.nextBlockOnDiskSizeWithHeader;
+    this.unpacked = that.unpacked;
+  }
+
+  /**
+   * Retrieves the decompressed/decrypted view of this block. A packed block
+   * is left untouched and a new block holding the unpacked data is returned,
+   * so it is safe to call this on blocks shared through the block cache.
+   *
+   * @param fileContext the context of the file this block belongs to, which
+   *          carries the compression algorithm and encryption context
+   * @param reader the block reader providing the decoding contexts
+   * @return this block if it is already unpacked, a new unpacked block
+   *         otherwise
+   */
+  HFileBlock unpack(HFileContext fileContext, FSReader reader) throws IOException {
+    if (unpacked || !isCompressedOrEncrypted(fileContext)) {
+      return this;
+    }
+
+    HFileBlock unpackedBlock = new HFileBlock(this);
+    // This will allocate a new buffer but keep header bytes.
+    unpackedBlock.allocateBuffer(nextBlockOnDiskSizeWithHeader > 0);
+    HFileBlockDecodingContext ctx = blockType == BlockType.ENCODED_DATA ?
+        reader.getBlockDecodingContext() : reader.getDefaultBlockDecodingContext();
+    ctx.prepareDecoding(unpackedBlock.getOnDiskSizeWithoutHeader(),
+        unpackedBlock.getUncompressedSizeWithoutHeader(), unpackedBlock.getBufferWithoutHeader(),
+        this.buf.array(), this.buf.arrayOffset() + headerSize());
+
+    // Copy next block's header bytes into the new block if we have them.
+    int onDiskSizeWithHeader = getOnDiskSizeWithHeader();
+    if (nextBlockOnDiskSizeWithHeader > 0
+        && this.buf.capacity() >= onDiskSizeWithHeader + headerSize()) {
+      System.arraycopy(this.buf.array(), this.buf.arrayOffset() + onDiskSizeWithHeader,
+          unpackedBlock.buf.array(), unpackedBlock.buf.arrayOffset() + unpackedBlock.headerSize()
+          + unpackedBlock.uncompressedSizeWithoutHeader + unpackedBlock.totalChecksumBytes(),
+          headerSize());
+    }
+    unpackedBlock.unpacked = true;
+    return unpackedBlock;
+  }
+
+  /**
+   * @return true if the data section of this block is uncompressed and
+   *         decrypted, false if it still is in its on-disk form
+   */
+  public boolean isUnpacked() {
+    return unpacked;
+  }
+
+  static boolean isCompressedOrEncrypted(HFileContext fileContext) {
+    Algorithm compressAlgo = fileContext.getCompression();
+    boolean isCompressed =
+      compressAlgo != null
+          && compressAlgo != Compression.Algorithm.NONE;
+
+    Encryption.Context cryptoContext = fileContext.getEncryptionContext();
+    boolean isEncrypted = cryptoContext != null
+        && cryptoContext != Encryption.Context.NONE;
+
+    return isCompressed || isEncrypted;
+  }
+
   public BlockType getBlockType() {
     return blockType;
   }
@@ -529,6 +621,8 @@ public class HFileBlock implements Cacheable {
         4 * Bytes.SIZEOF_INT +
         // This and previous block offset
         2 * Bytes.SIZEOF_LONG +
+        // Whether the data is unpacked
+        Bytes.SIZEOF_BOOLEAN +
         // Heap size of the meta object. meta will be always not null.
         fileContext.heapSize()
     );
@@ -1088,6 +1182,24 @@ public class HFileBlock implements Cacheable {
     HFileBlock readBlockData(long offset, long onDiskSize,
         int uncompressedSize, boolean pread) throws IOException;
 
+    /**
+     * Same as {@link #readBlockData(long, long, int, boolean)}, but optionally
+     * returns the block in its packed on-disk form. Such a block has to be
+     * passed through {@link HFileBlock#unpack(HFileContext, FSReader)}
+     * before its data can be read.
+     *
+     * @param unpack whether to decompress and decrypt the block data
+     * @return the newly read block
+     */
+    HFileBlock readBlockData(long offset, long onDiskSize,
+        int uncompressedSize, boolean pread, boolean unpack) throws IOException;
+
+    /** @return the decoding context used for encoded data blocks */
+    HFileBlockDecodingContext getBlockDecodingContext();
+
+    /** @return the decoding context used for all other blocks */
+    HFileBlockDecodingContext getDefaultBlockDecodingContext();
+
     /**
      * Creates a block iterator over the given portion of the {@link HFile}.
      * The iterator returns blocks starting with offset such that offset <=
@@ -1302,6 +1414,23 @@ public class HFileBlock implements Cacheable {
     @Override
     public HFileBlock readBlockData(long offset, long onDiskSizeWithHeaderL,
         int uncompressedSize, boolean pread) throws IOException {
+      return readBlockData(offset, onDiskSizeWithHeaderL, uncompressedSize, pread, true);
+    }
+
+    /**
+     * Reads a version 2 block, leaving it packed if so requested.
+     *
+     * @param offset the offset in the stream to read at
+     * @param onDiskSizeWithHeaderL the on-disk size of the block, including
+     *          the header, or -1 if unknown
+     * @param uncompressedSize the uncompressed size of the the block. Always
+     *          expected to be -1. This parameter is only used in version 1.
+     * @param pread whether to use a positional read
+     * @param unpack whether to decompress and decrypt the block data
+     */
+    @Override
+    public HFileBlock readBlockData(long offset, long onDiskSizeWithHeaderL,
+        int uncompressedSize, boolean pread, boolean unpack) throws IOException {
 
       // get a copy of the current state of whether to validate
       // hbase checksums or not for this read call. This is not 
@@ -1365,7 +1494,7 @@ public class HFileBlock implements Cacheable {
       // but it is harmless because eventually checksumOffCount will be
       // a negative number.
       streamWrapper.checksumOk();
-      return blk;
+      return unpack ? blk.unpack(fileContext, this) : blk;
     }
 
     /**
@@ -1493,16 +1622,8 @@ public class HFileBlock implements Cacheable {
         onDiskSizeWithHeader = b.onDiskSizeWithoutHeader + hdrSize;
       }
 
-      Algorithm compressAlgo = fileContext.getCompression();
-      boolean isCompressed =
-        compressAlgo != null
-            && compressAlgo != Compression.Algorithm.NONE;
-
-      Encryption.Context cryptoContext = fileContext.getEncryptionContext();
-      boolean isEncrypted = cryptoContext != null
-          && cryptoContext != Encryption.Context.NONE;
-
-      if (!isCompressed && !isEncrypted) {
+      boolean isPacked = isCompressedOrEncrypted(fileContext);
+      if (!isPacked) {
         b.assumeUncompressed();
       }
 
@@ -1511,33 +1632,14 @@ public class HFileBlock implements Cacheable {
         return null;             // checksum mismatch
       }
 
-      if (isCompressed || isEncrypted) {
-        // This will allocate a new buffer but keep header bytes.
-        b.allocateBuffer(nextBlockOnDiskSize > 0);
-        if (b.blockType == BlockType.ENCODED_DATA) {
-          encodedBlockDecodingCtx.prepareDecoding(b.getOnDiskSizeWithoutHeader(),
-              b.getUncompressedSizeWithoutHeader(), b.getBufferWithoutHeader(), onDiskBlock,
-              hdrSize);
-        } else {
-          defaultDecodingCtx.prepareDecoding(b.getOnDiskSizeWithoutHeader(),
-              b.getUncompressedSizeWithoutHeader(), b.getBufferWithoutHeader(), onDiskBlock,
-              hdrSize);
-        }
-        if (nextBlockOnDiskSize > 0) {
-          // Copy next block's header bytes into the new block if we have them.
-          System.arraycopy(onDiskBlock, onDiskSizeWithHeader, b.buf.array(),
-              b.buf.arrayOffset() + hdrSize
-              + b.uncompressedSizeWithoutHeader + b.totalChecksumBytes(),
-              hdrSize);
-        }
-      } else {
-        // The onDiskBlock will become the headerAndDataBuffer for this block.
-        // If nextBlockOnDiskSizeWithHeader is not zero, the onDiskBlock already
-        // contains the header of next block, so no need to set next
-        // block's header in it.
-        b = new HFileBlock(ByteBuffer.wrap(onDiskBlock, 0,
-                onDiskSizeWithHeader), this.fileContext.isUseHBaseChecksum());
-      }
+      // The onDiskBlock will become the headerAndDataBuffer for this block.
+      // If nextBlockOnDiskSizeWithHeader is not zero, the onDiskBlock already
+      // contains the header of next block, so no need to set next
+      // block's header in it. Compressed or encrypted data is left as is,
+      // the caller unpacks the block if needed.
+      b = new HFileBlock(ByteBuffer.wrap(onDiskBlock, 0,
+              onDiskSizeWithHeader), this.fileContext.isUseHBaseChecksum());
+      b.unpacked = !isPacked;
 
       b.nextBlockOnDiskSizeWithHeader = nextBlockOnDiskSize;
 
@@ -1562,6 +1664,16 @@ public class HFileBlock implements Cacheable {
       encodedBlockDecodingCtx = encoder.newDataBlockDecodingContext(this.fileContext);
     }
 
+    @Override
+    public HFileBlockDecodingContext getBlockDecodingContext() {
+      return this.encodedBlockDecodingCtx;
+    }
+
+    @Override
+    public HFileBlockDecodingContext getDefaultBlockDecodingContext() {
+      return this.defaultDecodingCtx;
+    }
+
     /**
      * Generates the checksum for the header as well as the data and
      * then validates that it matches the value stored in the header.
@@ -1588,6 +1700,19 @@ public class HFileBlock implements Cacheable {
     return 0;
   }
 
+  /**
+   * @return the serialized length this block would have once unpacked, i.e.
+   *         the amount of data it logically holds in a cache. Equals
+   *         {@link #getSerializedLength()} for unpacked blocks.
+   */
+  public int getUnpackedSerializedLength() {
+    if (unpacked) {
+      return getSerializedLength();
+    }
+    return headerSize() + uncompressedSizeWithoutHeader + totalChecksumBytes()
+        + HFileBlock.EXTRA_SERIALIZATION_SPACE;
+  }
+
   @Override
   public void serialize(ByteBuffer destination) {
     ByteBuffer dupBuf = this.buf.duplicate();
@@ -1597,7 +1722,11 @@ public class HFileBlock implements Cacheable {
   }
 
   public void serializeExtraInfo(ByteBuffer destination) {
-    destination.put(this.fileContext.isUseHBaseChecksum() ? (byte) 1 : (byte) 0);
+    byte flags = this.fileContext.isUseHBaseChecksum() ? USES_HBASE_CHECKSUM_FLAG : 0;
+    if (!unpacked) {
+      flags |= PACKED_FLAG;
+    }
+    destination.put(flags);
     destination.putLong(this.offset);
     destination.putInt(this.nextBlockOnDiskSizeWithHeader);
     destination.rewind();
@@ -1640,6 +1769,9 @@ public class HFileBlock implements Cacheable {
     if (castedComparison.uncompressedSizeWithoutHeader != this.uncompressedSizeWithoutHeader) {
       return false;
     }
+    if (castedComparison.unpacked != this.unpacked) {
+      return false;
+    }
     if (this.buf.compareTo(castedComparison.buf) != 0) {
       return false;
     }
@@ -177,6 +177,9 @@ public class HFileReaderV2 extends AbstractHFileReader {
     while ((b = blockIter.nextBlock()) != null) {
       loadOnOpenBlocks.add(b);
     }
+
+    // Let the block cache usage be reported by table and family
+    BlockCacheUsage.getInstance().registerFile(name, path);
   }
 
   protected HFileContext createHFileContext(FSDataInputStreamWrapper fsdis, long fileSize,
@@ -220,6 +223,9 @@ public class HFileReaderV2 extends AbstractHFileReader {
        HFileBlock cachedBlock =
                (HFileBlock) cache.getBlock(cacheKey, cacheBlock, useLock);
        if (cachedBlock != null) {
+         // Blocks may be cached in their packed on-disk form, see
+         // CacheConfig#shouldCacheCompressed(BlockCategory)
+         cachedBlock = cachedBlock.unpack(hfileContext, fsBlockReader);
          validateBlockType(cachedBlock, expectedBlockType);
 
          if (expectedDataBlockEncoding == null) {
@@ -411,22 +417,26 @@ public class HFileReaderV2 extends AbstractHFileReader {
         // Load block from filesystem.
         long startTimeNs = System.nanoTime();
         HFileBlock hfileBlock = fsBlockReader.readBlockData(dataBlockOffset, onDiskBlockSize, -1,
-            pread);
+            pread, false);
         validateBlockType(hfileBlock, expectedBlockType);
+        HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
+        BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
 
         final long delta = System.nanoTime() - startTimeNs;
         HFile.offerReadLatency(delta, pread);
 
-        // Cache the block if necessary
-        if (cacheBlock && cacheConf.shouldCacheBlockOnRead(hfileBlock.getBlockType().getCategory())) {
-          cacheConf.getBlockCache().cacheBlock(cacheKey, hfileBlock, cacheConf.isInMemory());
+        // Cache the block if necessary, keeping it packed if so configured
+        if (cacheBlock && cacheConf.shouldCacheBlockOnRead(category)) {
+          cacheConf.getBlockCache().cacheBlock(cacheKey,
+              cacheConf.shouldCacheCompressed(category) ? hfileBlock : unpacked,
+              cacheConf.isInMemory());
         }
 
-        if (hfileBlock.getBlockType().isData()) {
+        if (unpacked.getBlockType().isData()) {
           HFile.dataBlockReadCnt.incrementAndGet();
         }
 
-        return hfileBlock;
+        return unpacked;
       }
     } finally {
       traceScope.close();
@@ -501,6 +511,7 @@ public class HFileReaderV2 extends AbstractHFileReader {
       }
     }
     fsBlockReader.closeStreams();
+    BlockCacheUsage.getInstance().unregisterFile(name);
   }
 
   public DataBlockEncoding getEffectiveEncodingInCache(boolean isCompaction) {
@@ -527,9 +538,26 @@ public class HFileReaderV2 extends AbstractHFileReader {
      */
     protected byte[] nextIndexedKey;
 
+    /** Reads the next blocks ahead of a long scan, null if disabled */
+    private final BlockReadahead readahead;
+
     public AbstractScannerV2(HFileReaderV2 r, boolean cacheBlocks,
         final boolean pread, final boolean isCompaction) {
       super(r, cacheBlocks, pread, isCompaction);
+      this.readahead = BlockReadahead.create(r, r.conf, cacheBlocks, pread,
+          isCompaction, r.getEffectiveEncodingInCache(isCompaction));
+    }
+
+    @Override
+    public void close() {
+      if (readahead != null) {
+        readahead.close();
+      }
+    }
+
+    /** For testing */
+    BlockReadahead getReadahead() {
+      return readahead;
     }
 
     protected abstract ByteBuffer getFirstKeyInBlock(HFileBlock curBlock);
@@ -677,10 +705,14 @@ public class HFileReaderV2 extends AbstractHFileReader {
 
         // We are reading the next block without block type validation, because
         // it might turn out to be a non-data block.
-        curBlock = reader.readBlock(curBlock.getOffset()
-            + curBlock.getOnDiskSizeWithHeader(),
-            curBlock.getNextBlockOnDiskSizeWithHeader(), cacheBlocks, pread,
-            isCompaction, null, getEffectiveDataBlockEncoding());
+        if (readahead != null) {
+          curBlock = readahead.readNextBlock(curBlock);
+        } else {
+          curBlock = reader.readBlock(curBlock.getOffset()
+              + curBlock.getOnDiskSizeWithHeader(),
+              curBlock.getNextBlockOnDiskSizeWithHeader(), cacheBlocks, pread,
+              isCompaction, null, getEffectiveDataBlockEncoding());
+        }
       } while (!curBlock.getBlockType().isData());
 
       return curBlock;
@@ -87,7 +87,7 @@ public class HFileReaderV3 extends HFileReaderV2 {
   @Override
   protected HFileContext createHFileContext(FSDataInputStreamWrapper fsdis, long fileSize,
       HFileSystem hfs, Path path, FixedFileTrailer trailer) throws IOException {
-    trailer.expectMajorVersion(3);
+    trailer.expectMajorVersion(getMajorVersion());
     HFileContextBuilder builder = new HFileContextBuilder()
       .withIncludesMvcc(this.includesMemstoreTS)
       .withHBaseCheckSum(true)
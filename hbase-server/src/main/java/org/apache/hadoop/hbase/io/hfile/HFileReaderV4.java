@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NavigableSet;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.fs.HFileSystem;
+import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link HFile} reader for the experimental version 4, whose data blocks group
+ * the cells by qualifier as described in {@link HFileWriterV4}.
+ */
+@InterfaceAudience.Private
+public class HFileReaderV4 extends HFileReaderV3 {
+
+  public static final int MAX_MINOR_VERSION = 0;
+
+  /**
+   * Opens a HFile. You must load the index before you can use it by calling
+   * {@link #loadFileInfo()}.
+   * @param path
+   *          Path to HFile.
+   * @param trailer
+   *          File trailer.
+   * @param fsdis
+   *          input stream.
+   * @param size
+   *          Length of the stream.
+   * @param cacheConf
+   *          Cache configuration.
+   * @param hfs
+   *          The file system.
+   * @param conf
+   *          Configuration
+   */
+  public HFileReaderV4(Path path, FixedFileTrailer trailer, final FSDataInputStreamWrapper fsdis,
+      final long size, final CacheConfig cacheConf, final HFileSystem hfs,
+      final Configuration conf) throws IOException {
+    super(path, trailer, fsdis, size, cacheConf, hfs, conf);
+  }
+
+  @Override
+  public HFileScanner getScanner(boolean cacheBlocks, final boolean pread,
+      final boolean isCompaction) {
+    return new ColumnarScannerV4(this, cacheBlocks, pread, isCompaction, null);
+  }
+
+  /**
+   * Create a Scanner on this file which only decodes the given columns, and
+   * the delete markers.
+   */
+  @Override
+  public HFileScanner getScanner(boolean cacheBlocks, final boolean pread,
+      final boolean isCompaction, NavigableSet<byte[]> columns) {
+    return new ColumnarScannerV4(this, cacheBlocks, pread, isCompaction, columns);
+  }
+
+  /**
+   * Scanner of the version 4 data blocks. The cells of the selected columns
+   * of the current block are located when the block is loaded, and then read
+   * in key order.
+   * <p>
+   * When some columns are skipped, the first cell of a block may be after the
+   * key a seek is looking for, or a block may have no cell at all. In this
+   * case the scanner moves to the first cell after the key and returns
+   * {@link HConstants#INDEX_KEY_MAGIC}, as with a faked index key, or if there
+   * is none, positions itself before the end of the file so that
+   * {@link #next()} returns false.
+   */
+  protected static class ColumnarScannerV4 extends AbstractScannerV2 {
+
+    private final HFileReaderV4 reader;
+    /** The qualifiers to decode, or null for all */
+    private final NavigableSet<byte[]> columns;
+
+    /** The array of the current block */
+    private byte[] blockArray;
+    /** The offsets in the block array, lengths and memstore timestamps of the cells */
+    private int[] cellOffsets = new int[0];
+    private int[] cellLengths = new int[0];
+    private long[] cellMemstoreTS = new long[0];
+    private int cellCount;
+    /** Index of the current cell, -1 when positioned before the first one */
+    private int pos = -1;
+
+    public ColumnarScannerV4(HFileReaderV4 r, boolean cacheBlocks, final boolean pread,
+        final boolean isCompaction, NavigableSet<byte[]> columns) {
+      super(r, cacheBlocks, pread, isCompaction);
+      this.reader = r;
+      this.columns = columns;
+    }
+
+    @Override
+    public boolean isSeeked() {
+      return block != null;
+    }
+
+    protected void setNonSeekedState() {
+      block = null;
+      blockArray = null;
+      cellCount = 0;
+      pos = -1;
+    }
+
+    /**
+     * Updates the current block to be the given {@link HFileBlock}, and
+     * locates its cells. Seeks to the first cell, if any.
+     */
+    protected void updateCurrBlock(HFileBlock newBlock) {
+      if (newBlock.getBlockType() != BlockType.DATA) {
+        throw new IllegalStateException("ColumnarScannerV4 works only on data " +
+            "blocks, got " + newBlock.getBlockType() + "; " +
+            "fileName=" + reader.name + ", " +
+            "isCompaction=" + isCompaction);
+      }
+      block = newBlock;
+      locateCells();
+      pos = 0;
+      blockFetches++;
+
+      // Reset the next indexed key
+      this.nextIndexedKey = null;
+    }
+
+    /**
+     * Reads the group directory of the current block and locates the cells of
+     * the selected groups, in key order.
+     */
+    private void locateCells() {
+      ByteBuffer buf = block.getBufferWithoutHeader();
+      blockArray = buf.array();
+      int firstKeyLength = (int) ByteBufferUtils.readVLong(buf);
+      ByteBufferUtils.skip(buf, firstKeyLength);
+      int blockCellCount = (int) ByteBufferUtils.readVLong(buf);
+      int groupCount = (int) ByteBufferUtils.readVLong(buf);
+      boolean[] selected = new boolean[groupCount];
+      int[] groupCellCounts = new int[groupCount];
+      int[] groupSizes = new int[groupCount];
+      for (int i = 0; i < groupCount; i++) {
+        byte kind = buf.get();
+        byte[] qualifier = new byte[(int) ByteBufferUtils.readVLong(buf)];
+        buf.get(qualifier);
+        selected[i] = kind == HFileWriterV4.DELETES_GROUP || columns == null
+            || columns.contains(qualifier);
+        groupCellCounts[i] = (int) ByteBufferUtils.readVLong(buf);
+        groupSizes[i] = (int) ByteBufferUtils.readVLong(buf);
+      }
+
+      if (cellOffsets.length < blockCellCount) {
+        cellOffsets = new int[blockCellCount];
+        cellLengths = new int[blockCellCount];
+        cellMemstoreTS = new long[blockCellCount];
+      }
+      // Put the cells at their index in the block, then drop the holes
+      Arrays.fill(cellOffsets, 0, blockCellCount, -1);
+      boolean includesTags = reader.hfileContext.isIncludesTags();
+      boolean includesMemstoreTS = reader.shouldIncludeMemstoreTS();
+      int groupStart = buf.position();
+      for (int i = 0; i < groupCount; i++) {
+        if (selected[i]) {
+          ByteBuffer group = buf.duplicate();
+          group.position(groupStart);
+          for (int c = 0; c < groupCellCounts[i]; c++) {
+            int index = (int) ByteBufferUtils.readVLong(group);
+            int cellStart = group.position();
+            int klen = group.getInt();
+            int vlen = group.getInt();
+            if (index < 0 || index >= blockCellCount || klen < 0 || vlen < 0
+                || klen > group.remaining() || vlen > group.remaining()) {
+              throw new IllegalStateException("Invalid cell index " + index + ", klen "
+                  + klen + " or vlen " + vlen + ". Block offset: " + block.getOffset()
+                  + ", block length: " + group.limit() + ", position: " + cellStart
+                  + " (without header).");
+            }
+            ByteBufferUtils.skip(group, klen + vlen);
+            if (includesTags) {
+              int tlen = group.getShort();
+              ByteBufferUtils.skip(group, tlen);
+            }
+            cellOffsets[index] = group.arrayOffset() + cellStart;
+            cellLengths[index] = group.position() - cellStart;
+            if (reader.includesMemstoreTS) {
+              long memstoreTS = ByteBufferUtils.readVLong(group);
+              cellMemstoreTS[index] = includesMemstoreTS ? memstoreTS : 0;
+            }
+          }
+        }
+        groupStart += groupSizes[i];
+      }
+      cellCount = 0;
+      for (int index = 0; index < blockCellCount; index++) {
+        if (cellOffsets[index] >= 0) {
+          cellOffsets[cellCount] = cellOffsets[index];
+          cellLengths[cellCount] = cellLengths[index];
+          cellMemstoreTS[cellCount] = cellMemstoreTS[index];
+          cellCount++;
+        }
+      }
+    }
+
+    private int getKeyLength(int index) {
+      return Bytes.toInt(blockArray, cellOffsets[index]);
+    }
+
+    private int getKeyOffset(int index) {
+      return cellOffsets[index] + KEY_VALUE_LEN_SIZE;
+    }
+
+    private int getValueLength(int index) {
+      return Bytes.toInt(blockArray, cellOffsets[index] + Bytes.SIZEOF_INT);
+    }
+
+    private boolean isPositioned() {
+      return block != null && pos >= 0 && pos < cellCount;
+    }
+
+    @Override
+    public Cell getKeyValue() {
+      if (!isPositioned()) {
+        return null;
+      }
+      KeyValue ret = new KeyValue(blockArray, cellOffsets[pos], cellLengths[pos]);
+      if (this.reader.shouldIncludeMemstoreTS()) {
+        ret.setMvccVersion(cellMemstoreTS[pos]);
+      }
+      return ret;
+    }
+
+    @Override
+    public ByteBuffer getKey() {
+      assertPositioned();
+      return ByteBuffer.wrap(blockArray, getKeyOffset(pos), getKeyLength(pos)).slice();
+    }
+
+    @Override
+    public ByteBuffer getValue() {
+      assertPositioned();
+      return ByteBuffer.wrap(blockArray, getKeyOffset(pos) + getKeyLength(pos),
+          getValueLength(pos)).slice();
+    }
+
+    private void assertPositioned() {
+      if (!isPositioned()) {
+        throw new NotSeekedException();
+      }
+    }
+
+    @Override
+    public String getKeyString() {
+      assertPositioned();
+      return Bytes.toStringBinary(blockArray, getKeyOffset(pos), getKeyLength(pos));
+    }
+
+    @Override
+    public String getValueString() {
+      assertPositioned();
+      return Bytes.toString(blockArray, getKeyOffset(pos) + getKeyLength(pos),
+          getValueLength(pos));
+    }
+
+    @Override
+    public int compareKey(KVComparator comparator, byte[] key, int offset, int length) {
+      if (!isPositioned()) {
+        // Before the first cell
+        return 1;
+      }
+      return comparator.compareFlatKey(key, offset, length, blockArray, getKeyOffset(pos),
+          getKeyLength(pos));
+    }
+
+    @Override
+    public int compareKey(KVComparator comparator, Cell key) {
+      if (!isPositioned()) {
+        // Before the first cell
+        return 1;
+      }
+      return compareKey(comparator, key, pos);
+    }
+
+    private int compareKey(KVComparator comparator, Cell key, int index) {
+      return comparator.compareOnlyKeyPortion(key,
+          new KeyValue.KeyOnlyKeyValue(blockArray, getKeyOffset(index), getKeyLength(index)));
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      assertSeeked();
+      pos++;
+      return skipEmptyBlocks();
+    }
+
+    /**
+     * Moves to the next blocks until the current position is a cell.
+     * @return false if there is no cell left in the file
+     */
+    private boolean skipEmptyBlocks() throws IOException {
+      while (pos >= cellCount) {
+        HFileBlock nextBlock = readNextDataBlock();
+        if (nextBlock == null) {
+          setNonSeekedState();
+          return false;
+        }
+        updateCurrBlock(nextBlock);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean seekTo() throws IOException {
+      if (reader == null) {
+        return false;
+      }
+
+      if (reader.getTrailer().getEntryCount() == 0) {
+        // No data blocks.
+        return false;
+      }
+
+      long firstDataBlockOffset =
+          reader.getTrailer().getFirstDataBlockOffset();
+      if (block != null && block.getOffset() == firstDataBlockOffset) {
+        pos = 0;
+      } else {
+        HFileBlock firstBlock = reader.readBlock(firstDataBlockOffset, -1, cacheBlocks, pread,
+            isCompaction, BlockType.DATA, getEffectiveDataBlockEncoding());
+        if (firstBlock.getOffset() < 0) {
+          throw new IOException("Invalid block offset: " + firstBlock.getOffset());
+        }
+        updateCurrBlock(firstBlock);
+      }
+      return skipEmptyBlocks();
+    }
+
+    @Override
+    public boolean seekBefore(Cell key) throws IOException {
+      // The cells before the key may all be in skipped columns
+      return super.seekBefore(key) && isPositioned();
+    }
+
+    @Override
+    protected int loadBlockAndSeekToKey(HFileBlock seekToBlock, byte[] nextIndexedKey,
+        boolean rewind, Cell key, boolean seekBefore) throws IOException {
+      if (block == null || block.getOffset() != seekToBlock.getOffset()) {
+        updateCurrBlock(seekToBlock);
+      }
+
+      // Update the nextIndexedKey
+      this.nextIndexedKey = nextIndexedKey;
+      return blockSeek(key, seekBefore);
+    }
+
+    /**
+     * Within the loaded block, seeks to the last cell which is before or at
+     * the given key, or strictly before with seekBefore.
+     *
+     * @return 0 in case of an exact key match, 1 in case of an inexact match,
+     *         -2 if the scanner moved to a cell after the key
+     */
+    private int blockSeek(Cell key, boolean seekBefore) throws IOException {
+      KVComparator comparator = reader.getComparator();
+      // Find the first cell after the key, or at the key with seekBefore
+      int low = 0;
+      int high = cellCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int comp = compareKey(comparator, key, mid);
+        if (comp > 0 || (comp == 0 && !seekBefore)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      if (low > 0) {
+        pos = low - 1;
+        return !seekBefore && compareKey(comparator, key, pos) == 0 ? 0 : 1;
+      }
+
+      if (seekBefore) {
+        // Look for the last cell of the previous blocks
+        while (true) {
+          long prevBlockOffset = block.getPrevBlockOffset();
+          if (prevBlockOffset < 0) {
+            pos = -1;
+            return 1;
+          }
+          updateCurrBlock(reader.readBlock(prevBlockOffset, -1, cacheBlocks, pread,
+              isCompaction, BlockType.DATA, getEffectiveDataBlockEncoding()));
+          if (cellCount > 0) {
+            pos = cellCount - 1;
+            return 1;
+          }
+        }
+      }
+
+      // All the cells of the block are after the key
+      pos = 0;
+      while (pos >= cellCount) {
+        HFileBlock nextBlock = readNextDataBlock();
+        if (nextBlock == null) {
+          // No cell at or after the key, next() returns false
+          pos = -1;
+          cellCount = 0;
+          return 1;
+        }
+        updateCurrBlock(nextBlock);
+      }
+      return HConstants.INDEX_KEY_MAGIC;
+    }
+
+    @Override
+    protected ByteBuffer getFirstKeyInBlock(HFileBlock curBlock) {
+      ByteBuffer buffer = curBlock.getBufferWithoutHeader();
+      int klen = (int) ByteBufferUtils.readVLong(buffer);
+      ByteBuffer keyBuff = buffer.slice();
+      keyBuff.limit(klen);
+      keyBuff.rewind();
+      return keyBuff;
+    }
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 4;
+  }
+}
@@ -157,4 +157,9 @@ public interface HFileScanner {
    * Otherwise returns false.
    */
   boolean isSeeked();
+  /**
+   * Releases the resources of the scanner, e.g. stops the blocks it reads ahead.
+   * The scanner can not be used after.
+   */
+  void close();
 }
@@ -47,7 +47,7 @@ public class HFileWriterV3 extends HFileWriterV2 {
 
   private static final Log LOG = LogFactory.getLog(HFileWriterV3.class);
 
-  private int maxTagsLength = 0;
+  protected int maxTagsLength = 0;
 
   static class WriterFactoryV3 extends HFile.WriterFactory {
     WriterFactoryV3(Configuration conf, CacheConfig cacheConf) {
@@ -136,7 +136,7 @@ public class HFileWriterV3 extends HFileWriterV2 {
    * @param tagLength
    * @throws IOException
    */
-  private void append(final long memstoreTS, final byte[] key, final int koffset,
+  protected void append(final long memstoreTS, final byte[] key, final int koffset,
       final int klength, final byte[] value, final int voffset, final int vlength,
       final byte[] tag, final int tagsOffset, final int tagsLength) throws IOException {
     boolean dupKey = checkKey(key, koffset, klength);
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.hfile.HFile.Writer;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * {@link HFile} writer for the experimental version 4. The file has the layout
+ * of version 3, except for the data blocks, in which the cells are grouped by
+ * qualifier so that a scanner reading a few columns out of many decodes only
+ * these columns. The delete markers are kept in a separate group, which is
+ * always decoded. A data block is made of:
+ * <pre>
+ *   vint firstKeyLength, firstKey       the first key of the block
+ *   vint cellCount
+ *   vint groupCount
+ *   groupCount times:
+ *     byte kind                          {@link #DELETES_GROUP} or {@link #COLUMN_GROUP}
+ *     vint qualifierLength, qualifier    empty for the delete markers
+ *     vint groupCellCount, vint groupSize
+ *   groupCount times, the cells of the group in key order:
+ *     vint index                         index of the cell in the block, in key order
+ *     cell                               as in version 3: key length, value length, key,
+ *                                        value, tags, memstore timestamp
+ * </pre>
+ * A store file holds a single column family, so the groups are per qualifier.
+ * Data block encodings do not apply to this layout and are disabled.
+ */
+@InterfaceAudience.Private
+public class HFileWriterV4 extends HFileWriterV3 {
+
+  private static final Log LOG = LogFactory.getLog(HFileWriterV4.class);
+
+  /** Kind of the group of the delete markers */
+  static final byte DELETES_GROUP = 0;
+
+  /** Kind of the group of the cells of a qualifier */
+  static final byte COLUMN_GROUP = 1;
+
+  /** The cells of a group in the current block */
+  private static class CellGroup {
+    final byte kind;
+    final byte[] qualifier;
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(baos);
+    int cellCount = 0;
+
+    CellGroup(byte kind, byte[] qualifier) {
+      this.kind = kind;
+      this.qualifier = qualifier;
+    }
+  }
+
+  /** The groups of the qualifiers of the current block */
+  private final Map<byte[], CellGroup> columnGroups =
+      new TreeMap<byte[], CellGroup>(Bytes.BYTES_COMPARATOR);
+  private CellGroup deletesGroup;
+  /** The group of the last cell, which is likely the group of the next one */
+  private CellGroup lastGroup;
+  private int blockCellCount = 0;
+  private int blockBufferedSize = 0;
+
+  static class WriterFactoryV4 extends HFile.WriterFactory {
+    WriterFactoryV4(Configuration conf, CacheConfig cacheConf) {
+      super(conf, cacheConf);
+    }
+
+    @Override
+    public Writer createWriter(FileSystem fs, Path path, FSDataOutputStream ostream,
+        final KVComparator comparator, HFileContext fileContext)
+        throws IOException {
+      if (fileContext.getDataBlockEncoding() != DataBlockEncoding.NONE) {
+        LOG.debug("Data block encoding " + fileContext.getDataBlockEncoding()
+            + " does not apply to HFile version 4");
+        fileContext.setDataBlockEncoding(DataBlockEncoding.NONE);
+      }
+      return new HFileWriterV4(conf, cacheConf, fs, path, ostream, comparator, fileContext);
+    }
+  }
+
+  /** Constructor that takes a path, creates and closes the output stream. */
+  public HFileWriterV4(Configuration conf, CacheConfig cacheConf, FileSystem fs, Path path,
+      FSDataOutputStream ostream, final KVComparator comparator,
+      final HFileContext fileContext) throws IOException {
+    super(conf, cacheConf, fs, path, ostream, comparator, fileContext);
+  }
+
+  /**
+   * Adds the cell to the group of its qualifier in the current block. The
+   * block is written when it is full, or when the file is closed.
+   */
+  @Override
+  protected void append(final long memstoreTS, final byte[] key, final int koffset,
+      final int klength, final byte[] value, final int voffset, final int vlength,
+      final byte[] tag, final int tagsOffset, final int tagsLength) throws IOException {
+    boolean dupKey = checkKey(key, koffset, klength);
+    checkValue(value, voffset, vlength);
+    if (!dupKey) {
+      checkBlockBoundary();
+    }
+
+    if (!fsBlockWriter.isWriting())
+      newBlock();
+
+    CellGroup group = getGroup(key, koffset, klength);
+    DataOutputStream out = group.out;
+    int startSize = out.size();
+    WritableUtils.writeVInt(out, blockCellCount);
+    out.writeInt(klength);
+    totalKeyLength += klength;
+    out.writeInt(vlength);
+    totalValueLength += vlength;
+    out.write(key, koffset, klength);
+    out.write(value, voffset, vlength);
+    if (hFileContext.isIncludesTags()) {
+      out.writeShort((short) tagsLength);
+      if (tagsLength > 0) {
+        out.write(tag, tagsOffset, tagsLength);
+        if (tagsLength > maxTagsLength) {
+          maxTagsLength = tagsLength;
+        }
+      }
+    }
+    if (this.hFileContext.isIncludesMvcc()) {
+      WritableUtils.writeVLong(out, memstoreTS);
+    }
+    group.cellCount++;
+    blockCellCount++;
+    blockBufferedSize += out.size() - startSize;
+
+    // Are we the first key in this block?
+    if (firstKeyInBlock == null) {
+      // Copy the key.
+      firstKeyInBlock = new byte[klength];
+      System.arraycopy(key, koffset, firstKeyInBlock, 0, klength);
+    }
+
+    lastKeyBuffer = key;
+    lastKeyOffset = koffset;
+    lastKeyLength = klength;
+    entryCount++;
+  }
+
+  /**
+   * @return the group of the cell with the given key in the current block
+   */
+  private CellGroup getGroup(final byte[] key, final int koffset, final int klength) {
+    if (key[koffset + klength - 1] != KeyValue.Type.Put.getCode()) {
+      if (deletesGroup == null) {
+        deletesGroup = new CellGroup(DELETES_GROUP, HConstants.EMPTY_BYTE_ARRAY);
+      }
+      return deletesGroup;
+    }
+    int rowLength = Bytes.toShort(key, koffset);
+    int familyOffset = koffset + Bytes.SIZEOF_SHORT + rowLength;
+    int qualifierOffset = familyOffset + 1 + key[familyOffset];
+    int qualifierLength = koffset + klength - KeyValue.TIMESTAMP_TYPE_SIZE - qualifierOffset;
+    if (lastGroup != null && Bytes.equals(lastGroup.qualifier, 0, lastGroup.qualifier.length,
+        key, qualifierOffset, qualifierLength)) {
+      return lastGroup;
+    }
+    byte[] qualifier = Bytes.copy(key, qualifierOffset, qualifierLength);
+    CellGroup group = columnGroups.get(qualifier);
+    if (group == null) {
+      group = new CellGroup(COLUMN_GROUP, qualifier);
+      columnGroups.put(qualifier, group);
+    }
+    lastGroup = group;
+    return group;
+  }
+
+  @Override
+  protected void checkBlockBoundary() throws IOException {
+    if (blockBufferedSize < hFileContext.getBlocksize())
+      return;
+
+    writeColumnarBlock();
+    super.checkBlockBoundary();
+  }
+
+  /**
+   * Writes the cells of the current block, grouped by qualifier, to the
+   * block writer.
+   */
+  private void writeColumnarBlock() throws IOException {
+    if (blockCellCount == 0) {
+      return;
+    }
+    DataOutputStream out = fsBlockWriter.getUserDataStream();
+    WritableUtils.writeVInt(out, firstKeyInBlock.length);
+    out.write(firstKeyInBlock);
+    WritableUtils.writeVInt(out, blockCellCount);
+    WritableUtils.writeVInt(out, columnGroups.size() + (deletesGroup == null ? 0 : 1));
+    if (deletesGroup != null) {
+      writeGroupHeader(out, deletesGroup);
+    }
+    for (CellGroup group : columnGroups.values()) {
+      writeGroupHeader(out, group);
+    }
+    if (deletesGroup != null) {
+      deletesGroup.baos.writeTo(out);
+    }
+    for (CellGroup group : columnGroups.values()) {
+      group.baos.writeTo(out);
+    }
+
+    columnGroups.clear();
+    deletesGroup = null;
+    lastGroup = null;
+    blockCellCount = 0;
+    blockBufferedSize = 0;
+  }
+
+  private static void writeGroupHeader(DataOutputStream out, CellGroup group)
+      throws IOException {
+    out.writeByte(group.kind);
+    WritableUtils.writeVInt(out, group.qualifier.length);
+    out.write(group.qualifier);
+    WritableUtils.writeVInt(out, group.cellCount);
+    WritableUtils.writeVInt(out, group.baos.size());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (outputStream != null) {
+      writeColumnarBlock();
+    }
+    super.close();
+  }
+
+  @Override
+  protected int getMajorVersion() {
+    return 4;
+  }
+
+  @Override
+  protected int getMinorVersion() {
+    return HFileReaderV4.MAX_MINOR_VERSION;
+  }
+}
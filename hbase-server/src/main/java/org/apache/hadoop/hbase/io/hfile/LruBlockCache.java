@@ -21,8 +21,6 @@ package org.apache.hadoop.hbase.io.hfile;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
@@ -41,15 +39,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.CachedBlock.BlockPriority;
 import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
-import org.apache.hadoop.hbase.util.FSUtils;
 import org.apache.hadoop.hbase.util.HasThread;
 import org.apache.hadoop.util.StringUtils;
 
@@ -193,6 +188,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   /** Where to send victims (blocks evicted from the cache) */
   private BucketCache victimHandler = null;
 
+  /** Incrementally maintained usage by table, family and file */
+  private static final BlockCacheUsage USAGE = BlockCacheUsage.getInstance();
+
   /**
    * Default constructor.  Specify maximum size and expected average block
    * size (approximation is fine).
@@ -328,6 +326,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
     }
     cb = new CachedBlock(cacheKey, buf, count.incrementAndGet(), inMemory);
     long newSize = updateSizeMetrics(cb, false);
+    USAGE.blockCached(cacheKey, cb.heapSize(), cb.getCachedTime());
     map.put(cacheKey, cb);
     elements.incrementAndGet();
     if(newSize > acceptableSize() && !evictionInProgress) {
@@ -389,6 +388,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       return null;
     }
     stats.hit(caching);
+    USAGE.blockHit(cacheKey);
     cb.access(count.incrementAndGet());
     return cb.getBuffer();
   }
@@ -444,7 +444,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
    * @return the heap size of evicted block
    */
   protected long evictBlock(CachedBlock block, boolean evictedByEvictionProcess) {
-    map.remove(block.getCacheKey());
+    if (map.remove(block.getCacheKey()) != null) {
+      USAGE.blockRemoved(block.getCacheKey(), block.heapSize(), block.getCachedTime());
+    }
     updateSizeMetrics(block, true);
     elements.decrementAndGet();
     stats.evicted();
@@ -808,37 +810,19 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
         ((long)concurrency * ClassSize.CONCURRENT_HASHMAP_SEGMENT);
   }
 
+  /**
+   * Returns the usage of this cache by table and family, the heap size of its
+   * blocks. The table and family of their files are looked up in
+   * {@link BlockCacheUsage}.
+   */
   @Override
   public List<BlockCacheColumnFamilySummary> getBlockCacheColumnFamilySummaries(Configuration conf) throws IOException {
-
-    Map<String, Path> sfMap = FSUtils.getTableStoreFilePathMap(
-        FileSystem.get(conf),
-        FSUtils.getRootDir(conf));
-
-    // quirky, but it's a compound key and this is a shortcut taken instead of
-    // creating a class that would represent only a key.
     Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs =
       new HashMap<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary>();
-
     for (CachedBlock cb : map.values()) {
-      String sf = cb.getCacheKey().getHfileName();
-      Path path = sfMap.get(sf);
-      if ( path != null) {
-        BlockCacheColumnFamilySummary lookup =
-          BlockCacheColumnFamilySummary.createFromStoreFilePath(path);
-        BlockCacheColumnFamilySummary bcse = bcs.get(lookup);
-        if (bcse == null) {
-          bcse = BlockCacheColumnFamilySummary.create(lookup);
-          bcs.put(lookup,bcse);
-        }
-        bcse.incrementBlocks();
-        bcse.incrementHeapSize(cb.heapSize());
-      }
+      USAGE.addToSummaries(bcs, cb.getCacheKey(), cb.heapSize());
     }
-    List<BlockCacheColumnFamilySummary> list =
-        new ArrayList<BlockCacheColumnFamilySummary>(bcs.values());
-    Collections.sort( list );
-    return list;
+    return BlockCacheUsage.toSortedList(bcs);
   }
 
   // Simple calculators of sizes given factors and maxSize
@@ -884,6 +868,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
 
   /** Clears the cache. Used in tests. */
   public void clearCache() {
+    for (CachedBlock cb : map.values()) {
+      USAGE.blockRemoved(cb.getCacheKey(), cb.heapSize(), cb.getCachedTime());
+    }
     map.clear();
   }
 
@@ -0,0 +1,317 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+
+/**
+ * TieredBlockCache arranges an on-heap {@link LruBlockCache}, an off-heap
+ * {@link BucketCache} and an optional file backed {@link BucketCache} as three
+ * levels of one cache. New blocks are cached in the first level. Blocks evicted
+ * from a level are demoted to the level below it, and blocks read more than
+ * once from a lower level are promoted one level up. getBlock looks into the
+ * levels from top to bottom. Hits, misses, hit latency and promotions are
+ * tracked per level, see {@link #getTierStats(int)}.
+ **/
+@InterfaceAudience.Private
+public class TieredBlockCache implements BlockCache, HeapSize {
+  static final Log LOG = LogFactory.getLog(TieredBlockCache.class);
+
+  private final LruBlockCache l1;
+  private final BucketCache l2;
+  /** May be null */
+  private final BucketCache l3;
+  private final TierStats[] tierStats;
+  private final TieredCacheStats cacheStats;
+
+  /**
+   * @param l1 on-heap level
+   * @param l2 off-heap level
+   * @param l3 file backed level, may be null
+   */
+  public TieredBlockCache(LruBlockCache l1, BucketCache l2, BucketCache l3) {
+    this.l1 = l1;
+    this.l2 = l2;
+    this.l3 = l3;
+    l1.setVictimCache(l2);
+    if (l3 != null) {
+      l2.setVictimCache(l3);
+    }
+    this.tierStats = new TierStats[l3 == null ? 2 : 3];
+    for (int i = 0; i < tierStats.length; i++) {
+      tierStats[i] = new TierStats();
+    }
+    this.cacheStats = new TieredCacheStats(l1.getStats(), l2.getStats(),
+        l3 == null ? null : l3.getStats());
+  }
+
+  /**
+   * @return number of levels of this cache, 2 or 3
+   */
+  public int getNumTiers() {
+    return tierStats.length;
+  }
+
+  /**
+   * @param level 0 for the on-heap level, 1 for the off-heap level and 2 for
+   * the file backed level
+   * @return the statistics of the given level
+   */
+  public TierStats getTierStats(int level) {
+    return tierStats[level];
+  }
+
+  @Override
+  public long heapSize() {
+    return l1.heapSize() + l2.heapSize() + (l3 == null ? 0 : l3.heapSize());
+  }
+
+  @Override
+  public void cacheBlock(BlockCacheKey cacheKey, Cacheable buf, boolean inMemory) {
+    l1.cacheBlock(cacheKey, buf, inMemory);
+  }
+
+  @Override
+  public void cacheBlock(BlockCacheKey cacheKey, Cacheable buf) {
+    cacheBlock(cacheKey, buf, false);
+  }
+
+  @Override
+  public Cacheable getBlock(BlockCacheKey cacheKey, boolean caching,
+      boolean repeat) {
+    long start = System.nanoTime();
+    // Don't use the victim lookup of the LruBlockCache, the lower levels are
+    // looked into here so that they are accounted separately.
+    if (l1.containsBlock(cacheKey)) {
+      Cacheable block = l1.getBlock(cacheKey, caching, repeat);
+      if (block != null) {
+        tierStats[0].hit(System.nanoTime() - start);
+        cacheStats.hit(caching);
+        return block;
+      }
+    }
+    tierStats[0].miss();
+
+    boolean hot = l2.isHotBlock(cacheKey);
+    Cacheable block = l2.getBlock(cacheKey, caching, repeat);
+    if (block != null) {
+      tierStats[1].hit(System.nanoTime() - start);
+      cacheStats.hit(caching);
+      if (hot && !l1.containsBlock(cacheKey)) {
+        l1.cacheBlock(cacheKey, block);
+        l2.evictBlock(cacheKey);
+        tierStats[1].promoted();
+      }
+      return block;
+    }
+    tierStats[1].miss();
+
+    if (l3 != null) {
+      hot = l3.isHotBlock(cacheKey);
+      block = l3.getBlock(cacheKey, caching, repeat);
+      if (block != null) {
+        tierStats[2].hit(System.nanoTime() - start);
+        cacheStats.hit(caching);
+        if (hot) {
+          l2.cacheBlock(cacheKey, block);
+          l3.evictBlock(cacheKey);
+          tierStats[2].promoted();
+        }
+        return block;
+      }
+      tierStats[2].miss();
+    }
+    if (!repeat) cacheStats.miss(caching);
+    return null;
+  }
+
+  @Override
+  public boolean evictBlock(BlockCacheKey cacheKey) {
+    // Evict from every level, a block may briefly be held by two of them
+    // while it is being promoted or demoted.
+    boolean evicted = l1.evictBlock(cacheKey);
+    evicted |= l2.evictBlock(cacheKey);
+    if (l3 != null) {
+      evicted |= l3.evictBlock(cacheKey);
+    }
+    return evicted;
+  }
+
+  @Override
+  public int evictBlocksByHfileName(String hfileName) {
+    // The LruBlockCache passes this on to its victim, l2
+    int numEvicted = l1.evictBlocksByHfileName(hfileName);
+    if (l3 != null) {
+      numEvicted += l3.evictBlocksByHfileName(hfileName);
+    }
+    return numEvicted;
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return this.cacheStats;
+  }
+
+  @Override
+  public void shutdown() {
+    // The LruBlockCache passes this on to its victim, l2
+    l1.shutdown();
+    if (l3 != null) {
+      l3.shutdown();
+    }
+  }
+
+  @Override
+  public long size() {
+    return l1.size() + l2.size() + (l3 == null ? 0 : l3.size());
+  }
+
+  @Override
+  public long getFreeSize() {
+    return l1.getFreeSize() + l2.getFreeSize()
+        + (l3 == null ? 0 : l3.getFreeSize());
+  }
+
+  @Override
+  public long getCurrentSize() {
+    return l1.getCurrentSize() + l2.getCurrentSize()
+        + (l3 == null ? 0 : l3.getCurrentSize());
+  }
+
+  @Override
+  public long getEvictedCount() {
+    return l1.getEvictedCount() + l2.getEvictedCount()
+        + (l3 == null ? 0 : l3.getEvictedCount());
+  }
+
+  @Override
+  public long getBlockCount() {
+    return l1.getBlockCount() + l2.getBlockCount()
+        + (l3 == null ? 0 : l3.getBlockCount());
+  }
+
+  @Override
+  public List<BlockCacheColumnFamilySummary> getBlockCacheColumnFamilySummaries(
+      Configuration conf) throws IOException {
+    Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs =
+        new HashMap<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary>();
+    BlockCacheUsage.addToSummaries(bcs, l1.getBlockCacheColumnFamilySummaries(conf));
+    BlockCacheUsage.addToSummaries(bcs, l2.getBlockCacheColumnFamilySummaries(conf));
+    if (l3 != null) {
+      BlockCacheUsage.addToSummaries(bcs, l3.getBlockCacheColumnFamilySummaries(conf));
+    }
+    return BlockCacheUsage.toSortedList(bcs);
+  }
+
+  /**
+   * Statistics of a single level of the cache.
+   */
+  public static class TierStats {
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong hitTimeNanos = new AtomicLong(0);
+    private final AtomicLong promotedCount = new AtomicLong(0);
+
+    void hit(long nanos) {
+      hitCount.incrementAndGet();
+      hitTimeNanos.addAndGet(nanos);
+    }
+
+    void miss() {
+      missCount.incrementAndGet();
+    }
+
+    void promoted() {
+      promotedCount.incrementAndGet();
+    }
+
+    public long getHitCount() {
+      return hitCount.get();
+    }
+
+    public long getMissCount() {
+      return missCount.get();
+    }
+
+    /**
+     * @return number of blocks moved from this level to the one above it
+     */
+    public long getPromotedCount() {
+      return promotedCount.get();
+    }
+
+    /**
+     * @return average time in nanoseconds to serve a hit from this level,
+     * including the time spent missing the levels above it
+     */
+    public long getAverageHitTimeNanos() {
+      long hits = hitCount.get();
+      return hits == 0 ? 0 : hitTimeNanos.get() / hits;
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + getHitCount() + ", misses=" + getMissCount()
+          + ", avgHitTimeNanos=" + getAverageHitTimeNanos()
+          + ", promoted=" + getPromotedCount();
+    }
+  }
+
+  /**
+   * Hits and misses are counted once per request over all levels, evictions
+   * are the sum of the evictions of the levels.
+   */
+  private static class TieredCacheStats extends CacheStats {
+    private final CacheStats[] levelStats;
+
+    TieredCacheStats(CacheStats l1Stats, CacheStats l2Stats, CacheStats l3Stats) {
+      this.levelStats = l3Stats == null ? new CacheStats[] { l1Stats, l2Stats }
+          : new CacheStats[] { l1Stats, l2Stats, l3Stats };
+    }
+
+    @Override
+    public long getEvictionCount() {
+      long count = 0;
+      for (CacheStats stats : levelStats) {
+        count += stats.getEvictionCount();
+      }
+      return count;
+    }
+
+    @Override
+    public long getEvictedCount() {
+      long count = 0;
+      for (CacheStats stats : levelStats) {
+        count += stats.getEvictedCount();
+      }
+      return count;
+    }
+  }
+}
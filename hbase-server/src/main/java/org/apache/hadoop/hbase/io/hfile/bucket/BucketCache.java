@@ -31,6 +31,7 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -44,6 +45,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,6 +55,7 @@ import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheColumnFamilySummary;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheUsage;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.Cacheable;
 import org.apache.hadoop.hbase.io.hfile.CacheableDeserializer;
@@ -63,7 +66,7 @@ import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.util.ConcurrentIndex;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.HasThread;
-import org.apache.hadoop.hbase.util.IdLock;
+import org.apache.hadoop.hbase.util.IdReadWriteLock;
 import org.apache.hadoop.util.StringUtils;
 
 import com.google.common.collect.ImmutableList;
@@ -134,6 +137,11 @@ public class BucketCache implements BlockCache, HeapSize {
   private UniqueIndexMap<Integer> deserialiserMap = new UniqueIndexMap<Integer>();
 
   private final AtomicLong realCacheSize = new AtomicLong(0);
+  /**
+   * Size of the cached blocks once unpacked. Differs from realCacheSize when
+   * blocks are cached in their compressed on-disk form.
+   */
+  private final AtomicLong logicalCacheSize = new AtomicLong(0);
   private final AtomicLong heapSize = new AtomicLong(0);
   /** Current number of cached elements */
   private final AtomicLong blockNumber = new AtomicLong(0);
@@ -165,13 +173,19 @@ public class BucketCache implements BlockCache, HeapSize {
   private volatile long ioErrorStartTime = -1;
 
   /**
-   * A "sparse lock" implementation allowing to lock on a particular block
+   * A striped read-write lock allowing to lock on a particular block
    * identified by offset. The purpose of this is to avoid freeing the block
-   * which is being read.
-   * 
-   * TODO:We could extend the IdLock to IdReadWriteLock for better.
+   * which is being read, while letting concurrent readers of the same block
+   * proceed in parallel.
    */
-  private IdLock offsetLock = new IdLock();
+  private IdReadWriteLock offsetLock = new IdReadWriteLock();
+
+  /** Cache receiving the blocks evicted to free space, may be null */
+  private volatile BlockCache victimCache = null;
+  private final AtomicLong demotedBlockCount = new AtomicLong(0);
+
+  /** Incrementally maintained usage by table, family and file */
+  private static final BlockCacheUsage USAGE = BlockCacheUsage.getInstance();
 
   private final ConcurrentIndex<String, BlockCacheKey> blocksByHFile =
       new ConcurrentIndex<String, BlockCacheKey>(new Comparator<BlockCacheKey>() {
@@ -338,6 +352,7 @@ public class BucketCache implements BlockCache, HeapSize {
       this.blockNumber.incrementAndGet();
       this.heapSize.addAndGet(cachedItem.heapSize());
       blocksByHFile.put(cacheKey.getHfileName(), cacheKey);
+      USAGE.serializedBlockCached(cacheKey, cachedItem.getSerializedLength(), re.getCachedTime());
     }
   }
 
@@ -355,26 +370,21 @@ public class BucketCache implements BlockCache, HeapSize {
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       cacheStats.hit(caching);
+      USAGE.blockHit(key);
       re.access(accessCount.incrementAndGet());
       return re.getData();
     }
     BucketEntry bucketEntry = backingMap.get(key);
     if(bucketEntry!=null) {
       long start = System.nanoTime();
-      IdLock.Entry lockEntry = null;
+      ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
+      lock.readLock().lock();
       try {
-        lockEntry = offsetLock.getLockEntry(bucketEntry.offset());
         if (bucketEntry.equals(backingMap.get(key))) {
-          int len = bucketEntry.getLength();
-          ByteBuffer bb = ByteBuffer.allocate(len);
-          int lenRead = ioEngine.read(bb, bucketEntry.offset());
-          if (lenRead != len) {
-            throw new RuntimeException("Only " + lenRead + " bytes read, " + len + " expected");
-          }
-          Cacheable cachedBlock = bucketEntry.deserializerReference(
-              deserialiserMap).deserialize(bb, true);
+          Cacheable cachedBlock = readFromEngine(bucketEntry);
           long timeTaken = System.nanoTime() - start;
           cacheStats.hit(caching);
+          USAGE.blockHit(key);
           cacheStats.ioHit(timeTaken);
           bucketEntry.access(accessCount.incrementAndGet());
           if (this.ioErrorStartTime > 0) {
@@ -386,15 +396,67 @@ public class BucketCache implements BlockCache, HeapSize {
         LOG.error("Failed reading block " + key + " from bucket cache", ioex);
         checkIOErrorIsTolerated();
       } finally {
-        if (lockEntry != null) {
-          offsetLock.releaseLockEntry(lockEntry);
-        }
+        lock.readLock().unlock();
       }
     }
     if(!repeat)cacheStats.miss(caching);
     return null;
   }
 
+  /**
+   * Reads and deserializes the block held by the given entry. Must be called
+   * holding the read lock of the entry offset.
+   */
+  private Cacheable readFromEngine(BucketEntry bucketEntry) throws IOException {
+    int len = bucketEntry.getLength();
+    ByteBuffer bb = ByteBuffer.allocate(len);
+    int lenRead = ioEngine.read(bb, bucketEntry.offset());
+    if (lenRead != len) {
+      throw new RuntimeException("Only " + lenRead + " bytes read, " + len + " expected");
+    }
+    return bucketEntry.deserializerReference(deserialiserMap).deserialize(bb, true);
+  }
+
+  /**
+   * Returns true if the block is cached and has been accessed more than once
+   * since it was cached, or was cached as in-memory.
+   * @param key block's cache key
+   */
+  public boolean isHotBlock(BlockCacheKey key) {
+    BucketEntry bucketEntry = backingMap.get(key);
+    return bucketEntry != null && bucketEntry.getPriority() != BlockPriority.SINGLE;
+  }
+
+  /**
+   * Sets a cache that receives the blocks evicted by {@link #freeSpace()},
+   * instead of dropping them.
+   * @param victimCache lower level cache
+   */
+  public void setVictimCache(BlockCache victimCache) {
+    this.victimCache = victimCache;
+  }
+
+  /**
+   * Hands a block which is about to be freed to the victim cache, if any.
+   */
+  private void demoteBlock(BlockCacheKey cacheKey, BucketEntry bucketEntry) {
+    if (victimCache == null) return;
+    ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
+    lock.readLock().lock();
+    try {
+      if (bucketEntry.equals(backingMap.get(cacheKey))) {
+        victimCache.cacheBlock(cacheKey, readFromEngine(bucketEntry),
+            bucketEntry.getPriority() == BlockPriority.MEMORY);
+        demotedBlockCount.incrementAndGet();
+      }
+    } catch (IOException ioex) {
+      LOG.error("Failed reading block " + cacheKey + " for demotion", ioex);
+      checkIOErrorIsTolerated();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     if (!cacheEnabled) return false;
@@ -402,34 +464,42 @@ public class BucketCache implements BlockCache, HeapSize {
     if (removedBlock != null) {
       this.blockNumber.decrementAndGet();
       this.heapSize.addAndGet(-1 * removedBlock.getData().heapSize());
+      USAGE.serializedBlockRemoved(cacheKey, removedBlock.getData().getSerializedLength(),
+          removedBlock.getCachedTime());
     }
     BucketEntry bucketEntry = backingMap.get(cacheKey);
     if (bucketEntry != null) {
-      IdLock.Entry lockEntry = null;
+      ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
+      lock.writeLock().lock();
       try {
-        lockEntry = offsetLock.getLockEntry(bucketEntry.offset());
         if (bucketEntry.equals(backingMap.remove(cacheKey))) {
-          bucketAllocator.freeBlock(bucketEntry.offset());
-          realCacheSize.addAndGet(-1 * bucketEntry.getLength());
+          freeBucketEntry(bucketEntry);
           blocksByHFile.remove(cacheKey.getHfileName(), cacheKey);
           if (removedBlock == null) {
             this.blockNumber.decrementAndGet();
+            USAGE.serializedBlockRemoved(cacheKey, bucketEntry.getLength(),
+                bucketEntry.getCachedTime());
           }
         } else {
           return false;
         }
-      } catch (IOException ie) {
-        LOG.warn("Failed evicting block " + cacheKey);
-        return false;
       } finally {
-        if (lockEntry != null) {
-          offsetLock.releaseLockEntry(lockEntry);
-        }
+        lock.writeLock().unlock();
       }
     }
     cacheStats.evicted();
     return true;
   }
+
+  /**
+   * Releases the space of a bucket entry which has been removed from the
+   * backingMap. Must be called holding the write lock of the entry offset.
+   */
+  private void freeBucketEntry(BucketEntry bucketEntry) {
+    bucketAllocator.freeBlock(bucketEntry.offset());
+    realCacheSize.addAndGet(-1 * bucketEntry.getLength());
+    logicalCacheSize.addAndGet(-1 * bucketEntry.getLogicalLength());
+  }
   
   /*
    * Statistics thread.  Periodically prints the cache statistics to the log.
@@ -461,6 +531,7 @@ public class BucketCache implements BlockCache, HeapSize {
         "free=" + StringUtils.byteDesc(freeSize) + ", " +
         "usedSize=" + StringUtils.byteDesc(usedSize) +", " +
         "cacheSize=" + StringUtils.byteDesc(cacheSize) +", " +
+        "logicalCacheSize=" + StringUtils.byteDesc(this.logicalCacheSize.get()) + ", " +
         "accesses=" + cacheStats.getRequestCount() + ", " +
         "hits=" + cacheStats.getHitCount() + ", " +
         "IOhitsPerSecond=" + cacheStats.getIOHitsPerSecond() + ", " +
@@ -704,7 +775,7 @@ public class BucketCache implements BlockCache, HeapSize {
             continue;
           }
           BucketEntry bucketEntry = ramEntry.writeToCache(ioEngine,
-              bucketAllocator, deserialiserMap, realCacheSize);
+              bucketAllocator, deserialiserMap, realCacheSize, logicalCacheSize);
           ramEntries[done] = ramEntry;
           bucketEntries[done++] = bucketEntry;
           if (ioErrorStartTime > 0) {
@@ -743,7 +814,19 @@ public class BucketCache implements BlockCache, HeapSize {
 
       for (int i = 0; i < done; ++i) {
         if (bucketEntries[i] != null) {
-          backingMap.put(ramEntries[i].getKey(), bucketEntries[i]);
+          BlockCacheKey key = ramEntries[i].getKey();
+          BucketEntry previousEntry = backingMap.put(key, bucketEntries[i]);
+          if (previousEntry != null && previousEntry != bucketEntries[i]) {
+            // The same block was cached twice concurrently; free the space
+            // of the replaced copy once nobody is reading it any more.
+            ReentrantReadWriteLock lock = offsetLock.getLock(previousEntry.offset());
+            lock.writeLock().lock();
+            try {
+              freeBucketEntry(previousEntry);
+            } finally {
+              lock.writeLock().unlock();
+            }
+          }
         }
         RAMQueueEntry ramCacheEntry = ramCache.remove(ramEntries[i].getKey());
         if (ramCacheEntry != null) {
@@ -815,6 +898,11 @@ public class BucketCache implements BlockCache, HeapSize {
           backingMap, this.realCacheSize);
       backingMap = (ConcurrentHashMap<BlockCacheKey, BucketEntry>) ois
           .readObject();
+      for (Map.Entry<BlockCacheKey, BucketEntry> entry : backingMap.entrySet()) {
+        logicalCacheSize.addAndGet(entry.getValue().getLogicalLength());
+        USAGE.serializedBlockCached(entry.getKey(), entry.getValue().getLength(),
+            entry.getValue().getCachedTime());
+      }
       bucketAllocator = allocator;
       deserialiserMap = deserMap;
     } finally {
@@ -906,6 +994,14 @@ public class BucketCache implements BlockCache, HeapSize {
     return this.realCacheSize.get();
   }
 
+  /**
+   * @return the size of the cached blocks as if they were all unpacked. This
+   *         is larger than {@link #size()} when blocks are cached compressed.
+   */
+  public long getLogicalCacheSize() {
+    return this.logicalCacheSize.get();
+  }
+
   @Override
   public long getFreeSize() {
     return this.bucketAllocator.getFreeSize();
@@ -926,6 +1022,13 @@ public class BucketCache implements BlockCache, HeapSize {
     return cacheStats.getEvictedCount();
   }
 
+  /**
+   * @return number of blocks handed to the victim cache when freeing space
+   */
+  public long getDemotedBlockCount() {
+    return demotedBlockCount.get();
+  }
+
   /**
    * Evicts all blocks for a specific HFile.
    * <p>
@@ -953,10 +1056,20 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
 
+  /**
+   * Returns the usage of this cache by table and family, the serialized length
+   * of its blocks. The table and family of their files are looked up in
+   * {@link BlockCacheUsage}.
+   */
   @Override
   public List<BlockCacheColumnFamilySummary> getBlockCacheColumnFamilySummaries(
       Configuration conf) {
-    throw new UnsupportedOperationException();
+    Map<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary> bcs =
+        new HashMap<BlockCacheColumnFamilySummary, BlockCacheColumnFamilySummary>();
+    for (Map.Entry<BlockCacheKey, BucketEntry> entry : backingMap.entrySet()) {
+      USAGE.addToSummaries(bcs, entry.getKey(), entry.getValue().getLength());
+    }
+    return BlockCacheUsage.toSortedList(bcs);
   }
 
   static enum BlockPriority {
@@ -986,15 +1099,21 @@ public class BucketCache implements BlockCache, HeapSize {
     private static final long serialVersionUID = -6741504807982257534L;
     private int offsetBase;
     private int length;
+    /** Unpacked length of the block, 0 if same as length */
+    private int logicalLength;
     private byte offset1;
     byte deserialiserIndex;
     private volatile long accessTime;
+    /** Time the block was cached, in milliseconds */
+    private long cachedTime;
     private BlockPriority priority;
 
-    BucketEntry(long offset, int length, long accessTime, boolean inMemory) {
+    BucketEntry(long offset, int length, long accessTime, long cachedTime,
+        boolean inMemory) {
       setOffset(offset);
       this.length = length;
       this.accessTime = accessTime;
+      this.cachedTime = cachedTime;
       if (inMemory) {
         this.priority = BlockPriority.MEMORY;
       } else {
@@ -1019,6 +1138,17 @@ public class BucketCache implements BlockCache, HeapSize {
       return length;
     }
 
+    /**
+     * @return the length the cached block has once unpacked
+     */
+    public int getLogicalLength() {
+      return logicalLength > 0 ? logicalLength : length;
+    }
+
+    void setLogicalLength(int logicalLength) {
+      this.logicalLength = logicalLength;
+    }
+
     protected CacheableDeserializer<Cacheable> deserializerReference(
         UniqueIndexMap<Integer> deserialiserMap) {
       return CacheableDeserializerIdManager.getDeserializer(deserialiserMap
@@ -1046,6 +1176,10 @@ public class BucketCache implements BlockCache, HeapSize {
       return this.priority;
     }
 
+    long getCachedTime() {
+      return this.cachedTime;
+    }
+
     @Override
     public int compareTo(BucketEntry that) {
       if(this.accessTime == that.accessTime) return 0;
@@ -1085,6 +1219,7 @@ public class BucketCache implements BlockCache, HeapSize {
       Map.Entry<BlockCacheKey, BucketEntry> entry;
       long freedBytes = 0;
       while ((entry = queue.pollLast()) != null) {
+        demoteBlock(entry.getKey(), entry.getValue());
         evictBlock(entry.getKey());
         freedBytes += entry.getValue().getLength();
         if (freedBytes >= toFree) {
@@ -1123,6 +1258,7 @@ public class BucketCache implements BlockCache, HeapSize {
     private BlockCacheKey key;
     private Cacheable data;
     private long accessTime;
+    private final long cachedTime;
     private boolean inMemory;
 
     public RAMQueueEntry(BlockCacheKey bck, Cacheable data, long accessTime,
@@ -1130,9 +1266,14 @@ public class BucketCache implements BlockCache, HeapSize {
       this.key = bck;
       this.data = data;
       this.accessTime = accessTime;
+      this.cachedTime = BlockCacheUsage.now();
       this.inMemory = inMemory;
     }
 
+    public long getCachedTime() {
+      return cachedTime;
+    }
+
     public Cacheable getData() {
       return data;
     }
@@ -1148,22 +1289,26 @@ public class BucketCache implements BlockCache, HeapSize {
     public BucketEntry writeToCache(final IOEngine ioEngine,
         final BucketAllocator bucketAllocator,
         final UniqueIndexMap<Integer> deserialiserMap,
-        final AtomicLong realCacheSize) throws CacheFullException, IOException,
-        BucketAllocatorException {
+        final AtomicLong realCacheSize, final AtomicLong logicalCacheSize)
+        throws CacheFullException, IOException, BucketAllocatorException {
       int len = data.getSerializedLength();
       // This cacheable thing can't be serialized...
       if (len == 0) return null;
       long offset = bucketAllocator.allocateBlock(len);
       BucketEntry bucketEntry = new BucketEntry(offset, len, accessTime,
-          inMemory);
+          cachedTime, inMemory);
       bucketEntry.setDeserialiserReference(data.getDeserializer(), deserialiserMap);
       try {
         if (data instanceof HFileBlock) {
-          ByteBuffer sliceBuf = ((HFileBlock) data).getBufferReadOnlyWithHeader();
+          HFileBlock block = (HFileBlock) data;
+          if (!block.isUnpacked()) {
+            bucketEntry.setLogicalLength(block.getUnpackedSerializedLength());
+          }
+          ByteBuffer sliceBuf = block.getBufferReadOnlyWithHeader();
           sliceBuf.rewind();
           assert len == sliceBuf.limit() + HFileBlock.EXTRA_SERIALIZATION_SPACE;
           ByteBuffer extraInfoBuffer = ByteBuffer.allocate(HFileBlock.EXTRA_SERIALIZATION_SPACE);
-          ((HFileBlock) data).serializeExtraInfo(extraInfoBuffer);
+          block.serializeExtraInfo(extraInfoBuffer);
           ioEngine.write(sliceBuf, offset);
           ioEngine.write(extraInfoBuffer, offset + len - HFileBlock.EXTRA_SERIALIZATION_SPACE);
         } else {
@@ -1178,6 +1323,7 @@ public class BucketCache implements BlockCache, HeapSize {
       }
       
       realCacheSize.addAndGet(len);
+      logicalCacheSize.addAndGet(bucketEntry.getLogicalLength());
       return bucketEntry;
     }
   }
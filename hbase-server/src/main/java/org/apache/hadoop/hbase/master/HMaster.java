@@ -45,6 +45,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.CompoundConfiguration;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HBaseIOException;
 import org.apache.hadoop.hbase.HColumnDescriptor;
@@ -97,9 +98,11 @@ import org.apache.hadoop.hbase.monitoring.MonitoredTask;
 import org.apache.hadoop.hbase.monitoring.TaskMonitor;
 import org.apache.hadoop.hbase.procedure.MasterProcedureManagerHost;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.RegionServerInfo;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.regionserver.HRegionServer;
 import org.apache.hadoop.hbase.regionserver.RSRpcServices;
 import org.apache.hadoop.hbase.regionserver.RegionSplitPolicy;
+import org.apache.hadoop.hbase.regionserver.RowPrefixBloomKey;
 import org.apache.hadoop.hbase.replication.regionserver.Replication;
 import org.apache.hadoop.hbase.security.UserProvider;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -201,6 +204,7 @@ public class HMaster extends HRegionServer implements MasterServices, Server {
   private ClusterStatusPublisher clusterStatusPublisherChore = null;
 
   CatalogJanitor catalogJanitorChore;
+  private MajorCompactionScheduler majorCompactionScheduler;
   private LogCleaner logCleaner;
   private HFileCleaner hfileCleaner;
 
@@ -585,6 +589,10 @@ public class HMaster extends HRegionServer implements MasterServices, Server {
     Threads.setDaemonThreadRunning(balancerChore.getThread());
     this.catalogJanitorChore = new CatalogJanitor(this, this);
     Threads.setDaemonThreadRunning(catalogJanitorChore.getThread());
+    if (conf.getBoolean(MajorCompactionScheduler.ENABLED_KEY, false)) {
+      this.majorCompactionScheduler = new MajorCompactionScheduler(this);
+      Threads.setDaemonThreadRunning(majorCompactionScheduler.getThread());
+    }
 
     status.setStatus("Starting namespace manager");
     initNamespace();
@@ -729,6 +737,13 @@ public class HMaster extends HRegionServer implements MasterServices, Server {
       catalogJanitorChore.getEnabled() : false;
   }
 
+  /**
+   * @return The scheduler of the major compactions, null when not enabled
+   */
+  public MajorCompactionScheduler getMajorCompactionScheduler() {
+    return this.majorCompactionScheduler;
+  }
+
   private void splitMetaLogBeforeAssignment(ServerName currentMetaServer) throws IOException {
     if (this.distributedLogReplay) {
       // In log replay mode, we mark hbase:meta region as recovering in ZK
@@ -887,6 +902,9 @@ public class HMaster extends HRegionServer implements MasterServices, Server {
     if (this.catalogJanitorChore != null) {
       this.catalogJanitorChore.interrupt();
     }
+    if (this.majorCompactionScheduler != null) {
+      this.majorCompactionScheduler.interrupt();
+    }
     if (this.clusterStatusPublisherChore != null){
       clusterStatusPublisherChore.interrupt();
     }
@@ -1168,6 +1186,22 @@ public class HMaster extends HRegionServer implements MasterServices, Server {
     // check compression can be loaded
     checkCompression(htd);
 
+    // check the prefix of row prefix Bloom filters is set
+    for (HColumnDescriptor hcd : htd.getColumnFamilies()) {
+      if (hcd.getBloomFilterType() == BloomType.ROWPREFIX) {
+        try {
+          RowPrefixBloomKey.fromConf(new CompoundConfiguration().add(conf)
+              .addStringMap(htd.getConfiguration())
+              .addStringMap(hcd.getConfiguration())
+              .addWritableMap(hcd.getValues()));
+        } catch (IllegalArgumentException e) {
+          throw new DoNotRetryIOException("Bad row prefix Bloom filter for family "
+              + hcd.getNameAsString() + ". Set " + CONF_KEY + " to false at conf or table "
+              + "descriptor if you want to bypass sanity checks", e);
+        }
+      }
+    }
+
     // check that we have at least 1 CF
     if (htd.getColumnFamilies().length == 0) {
       throw new DoNotRetryIOException("Table should have at least one column family "
@@ -0,0 +1,320 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.master;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Chore;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.RegionLoad;
+import org.apache.hadoop.hbase.ServerLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.GetRegionInfoResponse.CompactionState;
+import org.apache.hadoop.hbase.regionserver.compactions.OffPeakHours;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.util.StringUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Chore that major compacts every region of the cluster once per
+ * {@link #INTERVAL_KEY}, during the off-peak hours (hbase.offpeak.start.hour and
+ * hbase.offpeak.end.hour, all day when not set), running at most {@link #MAX_PER_SERVER_KEY}
+ * major compactions per region server at a time. It is meant to replace the time based major
+ * compactions of the region servers, which should then be disabled by setting
+ * hbase.hregion.majorcompaction to 0.
+ * <p/>
+ * Compactions are requested through the compact region RPC of the region servers. A requested
+ * compaction holds its slot until the region server reports, through the get region info RPC,
+ * that the region is no longer compacting, or until the region leaves the server, in which
+ * case it is requested again later. The due regions with the oldest major compaction go first. Regions seen for the first time,
+ * e.g. after the master restarted, are assumed to have been major compacted at a random time
+ * within the last interval, so that the major compactions spread over the interval. The
+ * throughput of the completed compactions gives the time left to compact the due regions.
+ */
+@InterfaceAudience.Private
+public class MajorCompactionScheduler extends Chore {
+  private static final Log LOG = LogFactory.getLog(MajorCompactionScheduler.class);
+
+  public static final String ENABLED_KEY = "hbase.master.majorcompaction.scheduler.enabled";
+  public static final String PERIOD_KEY = "hbase.master.majorcompaction.scheduler.period";
+  private static final int DEFAULT_PERIOD = 60 * 1000;
+  /** How often each region is major compacted */
+  public static final String INTERVAL_KEY = "hbase.master.majorcompaction.scheduler.interval";
+  private static final long DEFAULT_INTERVAL = 7L * 24 * 60 * 60 * 1000;
+  /** Maximum number of major compactions requested and not done, per region server */
+  public static final String MAX_PER_SERVER_KEY =
+      "hbase.master.majorcompaction.scheduler.max.per.server";
+
+  private final MasterServices master;
+  private final OffPeakHours offPeakHours;
+  /** Fraction of the day made of off-peak hours */
+  private final float offPeakFraction;
+  private final long interval;
+  private final int maxPerServer;
+
+  /** Time of the last major compaction of each region, by encoded region name */
+  private final Map<String, Long> lastMajorCompactions = new HashMap<String, Long>();
+  /** Requested major compactions not done yet, by encoded region name */
+  private final Map<String, Compaction> compactions = new HashMap<String, Compaction>();
+  /** Size of the regions major compacted, and the time it took */
+  private long compactedMB = 0;
+  private long compactingMillis = 0;
+
+  private volatile int dueCount = 0;
+  private volatile long etaMillis = -1;
+
+  /**
+   * A major compaction requested from a region server.
+   */
+  private static class Compaction {
+    final HRegionInfo region;
+    final ServerName server;
+    final long requestTime;
+    final int sizeMB;
+
+    Compaction(HRegionInfo region, ServerName server, long requestTime, int sizeMB) {
+      this.region = region;
+      this.server = server;
+      this.requestTime = requestTime;
+      this.sizeMB = sizeMB;
+    }
+  }
+
+  public MajorCompactionScheduler(MasterServices master) {
+    this(master, OffPeakHours.getInstance(master.getConfiguration()));
+  }
+
+  @VisibleForTesting
+  MajorCompactionScheduler(MasterServices master, OffPeakHours offPeakHours) {
+    super(master.getServerName() + "-MajorCompactionScheduler",
+        master.getConfiguration().getInt(PERIOD_KEY, DEFAULT_PERIOD), master);
+    Configuration conf = master.getConfiguration();
+    this.master = master;
+    this.offPeakHours = offPeakHours;
+    int offPeakCount = 0;
+    for (int hour = 0; hour < 24; hour++) {
+      if (offPeakHours == OffPeakHours.DISABLED || offPeakHours.isOffPeakHour(hour)) {
+        offPeakCount++;
+      }
+    }
+    this.offPeakFraction = offPeakCount / 24f;
+    this.interval = Math.max(1, conf.getLong(INTERVAL_KEY, DEFAULT_INTERVAL));
+    this.maxPerServer = Math.max(1, conf.getInt(MAX_PER_SERVER_KEY, 1));
+  }
+
+  @Override
+  protected void chore() {
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    Map<ServerName, Map<byte[], RegionLoad>> loads =
+        new HashMap<ServerName, Map<byte[], RegionLoad>>();
+    for (Map.Entry<ServerName, ServerLoad> entry :
+        master.getServerManager().getOnlineServers().entrySet()) {
+      loads.put(entry.getKey(), entry.getValue().getRegionsLoad());
+    }
+    RegionStates regionStates = master.getAssignmentManager().getRegionStates();
+    Map<HRegionInfo, ServerName> assignments = regionStates.getRegionAssignments();
+
+    trackCompactions(now, assignments);
+    List<HRegionInfo> dueRegions = getDueRegions(now, assignments, regionStates);
+    if (offPeakHours == OffPeakHours.DISABLED || offPeakHours.isOffPeakHour()) {
+      requestCompactions(now, dueRegions, assignments, loads);
+    }
+    updateEta(dueRegions, assignments, loads);
+  }
+
+  /**
+   * Updates the requested compactions from the compaction state of their regions, forgetting
+   * those done, or of regions which moved. Only the done ones count as major compacted.
+   */
+  private void trackCompactions(long now, Map<HRegionInfo, ServerName> assignments) {
+    Iterator<Map.Entry<String, Compaction>> it = compactions.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Compaction> entry = it.next();
+      Compaction compaction = entry.getValue();
+      if (!compaction.server.equals(assignments.get(compaction.region))) {
+        // Moved, split, merged or its server died; it will be requested again
+        LOG.debug("Region " + compaction.region.getRegionNameAsString() + " left "
+            + compaction.server + " before its major compaction completed");
+        it.remove();
+        continue;
+      }
+      CompactionState state;
+      try {
+        state = master.getServerManager().getRegionCompactionState(compaction.server,
+            compaction.region);
+      } catch (IOException e) {
+        // Keeps the slot until the region server answers, or the region leaves it
+        LOG.debug("Failed to get the compaction state of "
+            + compaction.region.getRegionNameAsString() + " on " + compaction.server, e);
+        continue;
+      }
+      if (state == CompactionState.NONE) {
+        long millis = now - compaction.requestTime;
+        LOG.info("Major compaction of " + compaction.region.getRegionNameAsString() + " on "
+            + compaction.server + " completed in " + StringUtils.formatTime(millis));
+        compactedMB += compaction.sizeMB;
+        compactingMillis += millis;
+        lastMajorCompactions.put(entry.getKey(), now);
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return The regions not major compacted within the interval, not in transition and with no
+   *         major compaction requested, from the oldest major compaction to the newest
+   */
+  private List<HRegionInfo> getDueRegions(long now, Map<HRegionInfo, ServerName> assignments,
+      RegionStates regionStates) {
+    Map<String, Long> lastMajorCompactionsOfAssigned = new HashMap<String, Long>();
+    final Map<HRegionInfo, Long> due = new HashMap<HRegionInfo, Long>();
+    for (HRegionInfo hri : assignments.keySet()) {
+      String encodedName = hri.getEncodedName();
+      Long last = lastMajorCompactions.get(encodedName);
+      if (last == null) {
+        last = now - (encodedName.hashCode() & Integer.MAX_VALUE) % interval;
+      }
+      // Forget the regions which are gone
+      lastMajorCompactionsOfAssigned.put(encodedName, last);
+      if (last + interval <= now && !compactions.containsKey(encodedName)
+          && !regionStates.isRegionInTransition(hri)) {
+        due.put(hri, last);
+      }
+    }
+    lastMajorCompactions.clear();
+    lastMajorCompactions.putAll(lastMajorCompactionsOfAssigned);
+    List<HRegionInfo> dueRegions = new ArrayList<HRegionInfo>(due.keySet());
+    Collections.sort(dueRegions, new Comparator<HRegionInfo>() {
+      @Override
+      public int compare(HRegionInfo left, HRegionInfo right) {
+        return due.get(left).compareTo(due.get(right));
+      }
+    });
+    return dueRegions;
+  }
+
+  /**
+   * Requests the major compaction of the due regions of the region servers running less than
+   * {@link #maxPerServer} of them, removing the requested regions from the due ones.
+   */
+  private void requestCompactions(long now, List<HRegionInfo> dueRegions,
+      Map<HRegionInfo, ServerName> assignments, Map<ServerName, Map<byte[], RegionLoad>> loads) {
+    Map<ServerName, Integer> running = new HashMap<ServerName, Integer>();
+    for (Compaction compaction : compactions.values()) {
+      Integer count = running.get(compaction.server);
+      running.put(compaction.server, count == null ? 1 : count + 1);
+    }
+    Iterator<HRegionInfo> it = dueRegions.iterator();
+    while (it.hasNext()) {
+      HRegionInfo hri = it.next();
+      ServerName server = assignments.get(hri);
+      Integer count = running.get(server);
+      if (count != null && count >= maxPerServer) {
+        continue;
+      }
+      Map<byte[], RegionLoad> regionLoads = loads.get(server);
+      RegionLoad load = regionLoads == null ? null : regionLoads.get(hri.getRegionName());
+      if (load == null) {
+        // Not reported yet by its server
+        continue;
+      }
+      if (load.getStorefiles() == 0) {
+        // Nothing to compact
+        lastMajorCompactions.put(hri.getEncodedName(), now);
+        it.remove();
+        continue;
+      }
+      try {
+        master.getServerManager().sendRegionCompact(server, hri, true);
+      } catch (IOException e) {
+        LOG.warn("Failed to request the major compaction of " + hri.getRegionNameAsString()
+            + " on " + server, e);
+        continue;
+      }
+      LOG.info("Requested major compaction of " + hri.getRegionNameAsString() + " ("
+          + load.getStorefileSizeMB() + " MB) on " + server);
+      compactions.put(hri.getEncodedName(),
+          new Compaction(hri, server, now, load.getStorefileSizeMB()));
+      running.put(server, count == null ? 1 : count + 1);
+      it.remove();
+    }
+  }
+
+  /**
+   * Estimates the time left to major compact the due regions, from the throughput of the major
+   * compactions completed so far, all the region servers running {@link #maxPerServer} of them
+   * during the off-peak hours.
+   */
+  private void updateEta(List<HRegionInfo> dueRegions, Map<HRegionInfo, ServerName> assignments,
+      Map<ServerName, Map<byte[], RegionLoad>> loads) {
+    long backlogMB = 0;
+    for (HRegionInfo hri : dueRegions) {
+      Map<byte[], RegionLoad> regionLoads = loads.get(assignments.get(hri));
+      RegionLoad load = regionLoads == null ? null : regionLoads.get(hri.getRegionName());
+      if (load != null) {
+        backlogMB += load.getStorefileSizeMB();
+      }
+    }
+    for (Compaction compaction : compactions.values()) {
+      backlogMB += compaction.sizeMB;
+    }
+    long eta = -1;
+    if (backlogMB == 0) {
+      eta = 0;
+    } else if (compactedMB > 0 && compactingMillis > 0 && !loads.isEmpty()
+        && offPeakFraction > 0) {
+      double millis = (double) backlogMB * compactingMillis
+          / ((long) compactedMB * maxPerServer * loads.size());
+      eta = (long) (millis / offPeakFraction);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(dueRegions.size() + " regions due for major compaction, "
+          + compactions.size() + " major compactions running, " + backlogMB
+          + " MB to compact, ETA " + (eta < 0 ? "unknown" : StringUtils.formatTime(eta)));
+    }
+    this.dueCount = dueRegions.size();
+    this.etaMillis = eta;
+  }
+
+  /**
+   * @return The number of regions waiting for their major compaction to be requested
+   */
+  public int getDueCount() {
+    return dueCount;
+  }
+
+  /**
+   * @return The estimated time, in milliseconds, to major compact the due regions, 0 if there
+   *         are none, -1 if no major compaction completed yet
+   */
+  public long getEtaMillis() {
+    return etaMillis;
+  }
+}
@@ -56,6 +56,9 @@ import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.protobuf.RequestConverter;
 import org.apache.hadoop.hbase.protobuf.ResponseConverter;
 import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.AdminService;
+import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.CompactRegionRequest;
+import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.GetRegionInfoRequest;
+import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.GetRegionInfoResponse.CompactionState;
 import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.OpenRegionRequest;
 import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.OpenRegionResponse;
 import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.ServerInfo;
@@ -791,6 +794,58 @@ public class ServerManager {
     ProtobufUtil.mergeRegions(admin, region_a, region_b, forcible);
   }
 
+  /**
+   * Sends a COMPACT REGION RPC to the specified server to compact all the stores of the
+   * specified region. The region server queues the compaction and returns.
+   * @param server server hosting the region
+   * @param region region to compact
+   * @param major true to request a major compaction
+   * @throws IOException
+   */
+  public void sendRegionCompact(ServerName server, HRegionInfo region, boolean major)
+      throws IOException {
+    if (server == null) throw new NullPointerException("Passed server is null");
+    AdminService.BlockingInterface admin = getRsAdmin(server);
+    if (admin == null) {
+      throw new IOException("Attempting to send COMPACT REGION RPC to server "
+          + server.toString() + " for region " + region.getRegionNameAsString()
+          + " failed because no RPC connection found to this server");
+    }
+    CompactRegionRequest request =
+        RequestConverter.buildCompactRegionRequest(region.getRegionName(), major, null);
+    try {
+      admin.compactRegion(null, request);
+    } catch (ServiceException se) {
+      throw ProtobufUtil.getRemoteException(se);
+    }
+  }
+
+  /**
+   * Gets the compaction state of a region from the region server it is on. Requested
+   * compactions are reported from the time their files are selected until they end.
+   * @param server server the region is on
+   * @param region region to get the compaction state of
+   * @return the compaction state of the region
+   * @throws IOException
+   */
+  public CompactionState getRegionCompactionState(ServerName server, HRegionInfo region)
+      throws IOException {
+    if (server == null) throw new NullPointerException("Passed server is null");
+    AdminService.BlockingInterface admin = getRsAdmin(server);
+    if (admin == null) {
+      throw new IOException("Attempting to send GET REGION INFO RPC to server "
+          + server.toString() + " for region " + region.getRegionNameAsString()
+          + " failed because no RPC connection found to this server");
+    }
+    GetRegionInfoRequest request =
+        RequestConverter.buildGetRegionInfoRequest(region.getRegionName(), true);
+    try {
+      return admin.getRegionInfo(null, request).getCompactionState();
+    } catch (ServiceException se) {
+      throw ProtobufUtil.getRemoteException(se);
+    }
+  }
+
   /**
    * Check if a region server is reachable and has the expected start code
    */
@@ -0,0 +1,178 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.apache.hadoop.hbase.HConstants.HFILE_BLOCK_CACHE_SIZE_KEY;
+import static org.apache.hadoop.hbase.regionserver.HeapMemoryManager.BLOCK_CACHE_SIZE_MAX_RANGE_KEY;
+import static org.apache.hadoop.hbase.regionserver.HeapMemoryManager.BLOCK_CACHE_SIZE_MIN_RANGE_KEY;
+import static org.apache.hadoop.hbase.regionserver.HeapMemoryManager.MEMSTORE_SIZE_MAX_RANGE_KEY;
+import static org.apache.hadoop.hbase.regionserver.HeapMemoryManager.MEMSTORE_SIZE_MIN_RANGE_KEY;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerContext;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerResult;
+
+/**
+ * A HeapMemoryTuner which, unlike {@link DefaultHeapMemoryTuner}, looks at how much the block
+ * cache and the memstore actually suffer before moving heap between them:
+ * <ul>
+ * <li>The block cache is short of memory when it evicts blocks and more than
+ * <i>hbase.regionserver.heapmemory.autotuner.cache.miss.ratio.min</i> of the requests which
+ * would cache a block miss. A cache which evicts but still serves almost all the requests
+ * holds the working set already.</li>
+ * <li>The memstore is short of memory when there are flushes because of global heap pressure.
+ * It is not grown while the JVM was paused for GC more than
+ * <i>hbase.regionserver.heapmemory.autotuner.gc.pause.ratio.max</i> of the interval, as
+ * memstore churn is what the collector has to keep up with.</li>
+ * <li>When the memstore is grown and the cached blocks do not fill the block cache, the
+ * unused part of the block cache is handed over at once.</li>
+ * </ul>
+ * The step starts at <i>hbase.regionserver.heapmemory.autotuner.step</i>. It doubles every
+ * interval the heap moves the same way again, up to
+ * <i>hbase.regionserver.heapmemory.autotuner.step.max</i>, and halves when the heap moves back,
+ * down to <i>hbase.regionserver.heapmemory.autotuner.step.min</i>, so that the sizes settle
+ * quickly without oscillating.
+ */
+@InterfaceAudience.Private
+class AdaptiveHeapMemoryTuner implements HeapMemoryTuner {
+  private static final Log LOG = LogFactory.getLog(AdaptiveHeapMemoryTuner.class);
+
+  public static final String MIN_STEP_KEY = "hbase.regionserver.heapmemory.autotuner.step.min";
+  public static final float DEFAULT_MIN_STEP_VALUE = 0.005f; // 0.5%
+  public static final String MAX_STEP_KEY = "hbase.regionserver.heapmemory.autotuner.step.max";
+  public static final float DEFAULT_MAX_STEP_VALUE = 0.08f; // 8%
+  public static final String MIN_MISS_RATIO_KEY =
+      "hbase.regionserver.heapmemory.autotuner.cache.miss.ratio.min";
+  public static final float DEFAULT_MIN_MISS_RATIO = 0.02f;
+  public static final String MAX_GC_PAUSE_RATIO_KEY =
+      "hbase.regionserver.heapmemory.autotuner.gc.pause.ratio.max";
+  public static final float DEFAULT_MAX_GC_PAUSE_RATIO = 0.1f;
+
+  private static final TunerResult NO_OP_TUNER_RESULT = new TunerResult(false);
+
+  /** Which way the heap moves */
+  private static final int TO_BLOCK_CACHE = -1;
+  private static final int NONE = 0;
+  private static final int TO_MEMSTORE = 1;
+
+  private Configuration conf;
+  private float step = DefaultHeapMemoryTuner.DEFAULT_STEP_VALUE;
+  private float minStep = DEFAULT_MIN_STEP_VALUE;
+  private float maxStep = DEFAULT_MAX_STEP_VALUE;
+  private float minMissRatio = DEFAULT_MIN_MISS_RATIO;
+  private float maxGcPauseRatio = DEFAULT_MAX_GC_PAUSE_RATIO;
+
+  private float globalMemStorePercentMinRange;
+  private float globalMemStorePercentMaxRange;
+  private float blockCachePercentMinRange;
+  private float blockCachePercentMaxRange;
+
+  private int lastDirection = NONE;
+
+  @Override
+  public TunerResult tune(TunerContext context) {
+    boolean memstoreSufficient =
+        context.getBlockedFlushCount() == 0 && context.getUnblockedFlushCount() == 0;
+    boolean blockCacheSufficient = context.getEvictCount() == 0
+        || context.getCacheRequestCount() == 0
+        || (float) context.getCacheMissCount() / context.getCacheRequestCount() < minMissRatio;
+    boolean gcBound = context.getPeriodMillis() > 0
+        && (float) context.getGcPauseTimeMillis() / context.getPeriodMillis() > maxGcPauseRatio;
+
+    int direction = NONE;
+    if (!memstoreSufficient && blockCacheSufficient && !gcBound) {
+      direction = TO_MEMSTORE;
+    } else if (memstoreSufficient && !blockCacheSufficient) {
+      direction = TO_BLOCK_CACHE;
+    }
+    // As of now not making any tuning when both are short of memory.
+    if (direction == NONE) {
+      return NO_OP_TUNER_RESULT;
+    }
+
+    if (direction == lastDirection) {
+      step = Math.min(step * 2, maxStep);
+    } else if (lastDirection != NONE) {
+      step = Math.max(step / 2, minStep);
+    }
+    lastDirection = direction;
+
+    float curMemstoreSize = context.getCurMemStoreSize();
+    float curBlockCacheSize = context.getCurBlockCacheSize();
+    float delta = step;
+    if (direction == TO_MEMSTORE) {
+      if (context.getEvictCount() == 0) {
+        // The cached blocks do not need the whole cache
+        delta = Math.max(delta,
+            Math.min(curBlockCacheSize - context.getBlockCacheUsedSize(), maxStep));
+      }
+      delta = Math.min(delta, Math.min(globalMemStorePercentMaxRange - curMemstoreSize,
+          curBlockCacheSize - blockCachePercentMinRange));
+    } else {
+      delta = Math.min(delta, Math.min(curMemstoreSize - globalMemStorePercentMinRange,
+          blockCachePercentMaxRange - curBlockCacheSize));
+    }
+    if (delta <= 0) {
+      return NO_OP_TUNER_RESULT;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Moving " + delta + " of the heap to the "
+          + (direction == TO_MEMSTORE ? "memstore" : "block cache") + ", context: " + context);
+    }
+    TunerResult result = new TunerResult(true);
+    result.setMemstoreSize(curMemstoreSize + direction * delta);
+    result.setBlockCacheSize(curBlockCacheSize - direction * delta);
+    return result;
+  }
+
+  /**
+   * @return The step of the next heap move in the same direction as the last one
+   */
+  float getStep() {
+    return step;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return this.conf;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.minStep = conf.getFloat(MIN_STEP_KEY, DEFAULT_MIN_STEP_VALUE);
+    this.maxStep = Math.max(minStep, conf.getFloat(MAX_STEP_KEY, DEFAULT_MAX_STEP_VALUE));
+    this.step = Math.min(maxStep, Math.max(minStep,
+        conf.getFloat(DefaultHeapMemoryTuner.STEP_KEY, DefaultHeapMemoryTuner.DEFAULT_STEP_VALUE)));
+    this.minMissRatio = conf.getFloat(MIN_MISS_RATIO_KEY, DEFAULT_MIN_MISS_RATIO);
+    this.maxGcPauseRatio = conf.getFloat(MAX_GC_PAUSE_RATIO_KEY, DEFAULT_MAX_GC_PAUSE_RATIO);
+    this.blockCachePercentMinRange = conf.getFloat(BLOCK_CACHE_SIZE_MIN_RANGE_KEY,
+        conf.getFloat(HFILE_BLOCK_CACHE_SIZE_KEY, HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT));
+    this.blockCachePercentMaxRange = conf.getFloat(BLOCK_CACHE_SIZE_MAX_RANGE_KEY,
+        conf.getFloat(HFILE_BLOCK_CACHE_SIZE_KEY, HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT));
+    this.globalMemStorePercentMinRange = conf.getFloat(MEMSTORE_SIZE_MIN_RANGE_KEY,
+        MemStoreFlusher.getGlobalMemStorePercent(conf));
+    this.globalMemStorePercentMaxRange = conf.getFloat(MEMSTORE_SIZE_MAX_RANGE_KEY,
+        MemStoreFlusher.getGlobalMemStorePercent(conf));
+  }
+}
@@ -0,0 +1,261 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Stores the minimum and maximum values (both inclusive, in unsigned
+ * lexicographic order) of the columns of a StoreFile which the column family
+ * declares in {@link #COLUMNS_KEY}. The ranges are stored in the file info and
+ * used at read time to skip the files in which no row can pass the
+ * {@link SingleColumnValueFilter}s of a scan.
+ * <p>
+ * A file is skipped only if its rows cannot be returned, which holds when
+ * each row is written by a single Put and never updated, as in time series
+ * tables: the cells of a row are then all in the same file. Otherwise a newer
+ * file holding the updated value of a row could be skipped and the older value
+ * returned, so the ranges are only used when the table or the family declares
+ * its rows written once with {@link #WRITE_ONCE_KEY}. Files with delete markers
+ * have no ranges, since skipping them would bring deleted cells back.
+ */
+@InterfaceAudience.Private
+public class ColumnValueRangeTracker implements Writable {
+
+  /**
+   * Column family configuration key of the comma separated qualifiers whose
+   * value ranges are tracked. Qualifiers can be escaped as in
+   * {@link Bytes#toBytesBinary(String)}.
+   */
+  public static final String COLUMNS_KEY = "hbase.hstore.value.range.columns";
+
+  /**
+   * Table or column family configuration key declaring that each row is
+   * written once and never updated, which the files must be for their value
+   * ranges to be used at read time. False by default.
+   */
+  public static final String WRITE_ONCE_KEY = "hbase.hstore.value.range.write.once";
+
+  private byte[] family;
+  private final Map<byte[], byte[][]> ranges =
+      new TreeMap<byte[], byte[][]>(Bytes.BYTES_COMPARATOR);
+  private boolean hasDeletes = false;
+
+  /**
+   * Default constructor, for reading the ranges from the file info.
+   */
+  public ColumnValueRangeTracker() {
+  }
+
+  /**
+   * @param conf the store configuration, which includes the column family
+   *          configuration
+   * @return a tracker of the columns the configuration declares, or null if
+   *         it declares none
+   */
+  public static ColumnValueRangeTracker fromConf(Configuration conf) {
+    String[] columns = conf.getStrings(COLUMNS_KEY);
+    if (columns == null) {
+      return null;
+    }
+    ColumnValueRangeTracker tracker = new ColumnValueRangeTracker();
+    for (String column : columns) {
+      if (column.trim().length() > 0) {
+        tracker.ranges.put(Bytes.toBytesBinary(column.trim()), new byte[2][]);
+      }
+    }
+    return tracker.ranges.isEmpty() ? null : tracker;
+  }
+
+  /**
+   * @param conf the store configuration, which includes the table and column
+   *          family configuration
+   * @return true if the value ranges of the files can be used to skip them
+   */
+  public static boolean isPruningEnabled(Configuration conf) {
+    return conf.getBoolean(WRITE_ONCE_KEY, false);
+  }
+
+  /**
+   * Updates the range of the column of the given KeyValue, if tracked.
+   * @param kv the KeyValue appended to the file
+   */
+  public void include(final KeyValue kv) {
+    if (family == null) {
+      family = kv.getFamily();
+    }
+    if (KeyValue.Type.Put.getCode() != kv.getTypeByte()) {
+      hasDeletes = true;
+      return;
+    }
+    byte[][] range = ranges.get(kv.getQualifier());
+    if (range == null) {
+      return;
+    }
+    byte[] value = kv.getValueArray();
+    int offset = kv.getValueOffset();
+    int length = kv.getValueLength();
+    if (range[0] == null || Bytes.compareTo(value, offset, length,
+        range[0], 0, range[0].length) < 0) {
+      range[0] = Bytes.copy(value, offset, length);
+    }
+    if (range[1] == null || Bytes.compareTo(value, offset, length,
+        range[1], 0, range[1].length) > 0) {
+      range[1] = Bytes.copy(value, offset, length);
+    }
+  }
+
+  /**
+   * @return false if the ranges cannot be used to skip the file
+   */
+  public boolean isUsable() {
+    return family != null && !hasDeletes;
+  }
+
+  /**
+   * Checks whether a row of the file may pass the given filter. Only
+   * {@link SingleColumnValueFilter}s which filter the rows missing the column
+   * and compare with a {@link BinaryComparator}, alone or in a
+   * {@link FilterList} which they must all pass, are checked.
+   *
+   * @param filter the filter of a scan, may be null
+   * @return false if no row of the file can pass the filter
+   */
+  public boolean mayPass(Filter filter) {
+    if (filter instanceof FilterList) {
+      FilterList list = (FilterList) filter;
+      if (list.getOperator() != FilterList.Operator.MUST_PASS_ALL) {
+        return true;
+      }
+      for (Filter f : list.getFilters()) {
+        if (!mayPass(f)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (!(filter instanceof SingleColumnValueFilter)) {
+      return true;
+    }
+    SingleColumnValueFilter scvf = (SingleColumnValueFilter) filter;
+    if (!scvf.getFilterIfMissing() || !Bytes.equals(family, scvf.getFamily())
+        || scvf.getComparator() == null
+        || scvf.getComparator().getClass() != BinaryComparator.class) {
+      return true;
+    }
+    byte[][] range = ranges.get(scvf.getQualifier());
+    if (range == null) {
+      // The column is not tracked
+      return true;
+    }
+    if (range[0] == null) {
+      // No row of the file has the column
+      return false;
+    }
+    byte[] value = scvf.getComparator().getValue();
+    int minCompare = Bytes.compareTo(range[0], value);
+    int maxCompare = Bytes.compareTo(range[1], value);
+    switch (scvf.getOperator()) {
+    case LESS:
+      return minCompare < 0;
+    case LESS_OR_EQUAL:
+      return minCompare <= 0;
+    case EQUAL:
+      return minCompare <= 0 && maxCompare >= 0;
+    case NOT_EQUAL:
+      return minCompare != 0 || maxCompare != 0;
+    case GREATER_OR_EQUAL:
+      return maxCompare >= 0;
+    case GREATER:
+      return maxCompare > 0;
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * @return the minimum and maximum values of the column, or null if the
+   *         column is not tracked or the file does not have it
+   */
+  public byte[][] getRange(byte[] qualifier) {
+    byte[][] range = ranges.get(qualifier);
+    return range == null || range[0] == null ? null : range;
+  }
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    Bytes.writeByteArray(out, family);
+    out.writeInt(ranges.size());
+    for (Map.Entry<byte[], byte[][]> e : ranges.entrySet()) {
+      Bytes.writeByteArray(out, e.getKey());
+      byte[][] range = e.getValue();
+      out.writeBoolean(range[0] != null);
+      if (range[0] != null) {
+        Bytes.writeByteArray(out, range[0]);
+        Bytes.writeByteArray(out, range[1]);
+      }
+    }
+  }
+
+  @Override
+  public void readFields(final DataInput in) throws IOException {
+    family = Bytes.readByteArray(in);
+    ranges.clear();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      byte[] qualifier = Bytes.readByteArray(in);
+      byte[][] range = new byte[2][];
+      if (in.readBoolean()) {
+        range[0] = Bytes.readByteArray(in);
+        range[1] = Bytes.readByteArray(in);
+      }
+      ranges.put(qualifier, range);
+    }
+    hasDeletes = false;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<byte[], byte[][]> e : ranges.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      byte[][] range = e.getValue();
+      sb.append(Bytes.toStringBinary(e.getKey())).append("=");
+      sb.append(range[0] == null ? "[]" : "[" + Bytes.toStringBinary(range[0])
+          + "," + Bytes.toStringBinary(range[1]) + "]");
+    }
+    return sb.toString();
+  }
+}
@@ -22,8 +22,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -40,6 +44,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.RemoteExceptionHandler;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.throttle.CompactionThroughputControllerFactory;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.util.StringUtils;
@@ -47,12 +53,24 @@ import org.apache.hadoop.util.StringUtils;
 import com.google.common.base.Preconditions;
 
 /**
- * Compact region on request and then run split if appropriate
+ * Compact region on request and then run split if appropriate.
+ * <p>
+ * Queued compactions of stores blocking updates, and user requested ones, run by priority.
+ * The other system compactions run by read amplification score first, see
+ * {@link Store#getReadAmplificationScore()}, so that the stores whose reads look at the most
+ * store files per second are compacted first, unless {@link #READ_AWARE_SCHEDULING_KEY} is
+ * false.
  */
 @InterfaceAudience.Private
-public class CompactSplitThread implements CompactionRequestor {
+public class CompactSplitThread implements CompactionRequestor, CompactionQueueMXBean {
   static final Log LOG = LogFactory.getLog(CompactSplitThread.class);
 
+  public static final String READ_AWARE_SCHEDULING_KEY =
+      "hbase.regionserver.compaction.read.aware";
+
+  /** Number of stores reported by {@link #getTopReadAmplificationScores()} */
+  static final int TOP_STORES = 20;
+
   private final HRegionServer server;
   private final Configuration conf;
 
@@ -61,6 +79,9 @@ public class CompactSplitThread implements CompactionRequestor {
   private final ThreadPoolExecutor splits;
   private final ThreadPoolExecutor mergePool;
 
+  /** Limits the throughput of the compactions run by the long and short pools */
+  private final ThroughputController compactionThroughputController;
+
   /**
    * Splitting should not take place if the total number of regions exceed this.
    * This is not a hard limit to the number of regions but it is a guideline to
@@ -68,11 +89,14 @@ public class CompactSplitThread implements CompactionRequestor {
    */
   private int regionSplitLimit;
 
+  private final boolean readAwareScheduling;
+
   /** @param server */
   CompactSplitThread(HRegionServer server) {
     super();
     this.server = server;
     this.conf = server.getConfiguration();
+    this.readAwareScheduling = conf.getBoolean(READ_AWARE_SCHEDULING_KEY, true);
     this.regionSplitLimit = conf.getInt("hbase.regionserver.regionSplitLimit",
         Integer.MAX_VALUE);
 
@@ -131,6 +155,16 @@ public class CompactSplitThread implements CompactionRequestor {
             return t;
           }
         });
+
+    this.compactionThroughputController =
+        CompactionThroughputControllerFactory.create(server, conf);
+  }
+
+  /**
+   * @return the controller limiting the throughput of the compactions
+   */
+  public ThroughputController getCompactionThroughputController() {
+    return compactionThroughputController;
   }
 
   @Override
@@ -347,6 +381,7 @@ public class CompactSplitThread implements CompactionRequestor {
     mergePool.shutdown();
     longCompactions.shutdown();
     shortCompactions.shutdown();
+    compactionThroughputController.stop("Region server stopping");
   }
 
   private void waitFor(ThreadPoolExecutor t, String name) {
@@ -391,6 +426,56 @@ public class CompactSplitThread implements CompactionRequestor {
   }
 
 
+  @Override
+  public List<String> getLargeCompactionQueue() {
+    return describeQueue(longCompactions);
+  }
+
+  @Override
+  public List<String> getSmallCompactionQueue() {
+    return describeQueue(shortCompactions);
+  }
+
+  private static List<String> describeQueue(ThreadPoolExecutor pool) {
+    List<CompactionRunner> runners = new ArrayList<CompactionRunner>();
+    for (Runnable r : pool.getQueue()) {
+      if (r instanceof CompactionRunner) {
+        runners.add((CompactionRunner) r);
+      }
+    }
+    Collections.sort(runners);
+    List<String> queue = new ArrayList<String>(runners.size());
+    for (CompactionRunner runner : runners) {
+      queue.add(runner + ", readScore=" + runner.readScore);
+    }
+    return queue;
+  }
+
+  @Override
+  public Map<String, Double> getTopReadAmplificationScores() {
+    List<Pair<String, Double>> scores = new ArrayList<Pair<String, Double>>();
+    for (HRegion region : server.getOnlineRegionsLocalContext()) {
+      for (Store store : region.getStores().values()) {
+        double score = store.getReadAmplificationScore();
+        if (score > 0) {
+          scores.add(new Pair<String, Double>(region.getRegionNameAsString() + "/"
+              + store.getColumnFamilyName(), score));
+        }
+      }
+    }
+    Collections.sort(scores, new Comparator<Pair<String, Double>>() {
+      @Override
+      public int compare(Pair<String, Double> left, Pair<String, Double> right) {
+        return Double.compare(right.getSecond(), left.getSecond());
+      }
+    });
+    Map<String, Double> top = new LinkedHashMap<String, Double>();
+    for (Pair<String, Double> score : scores.subList(0, Math.min(TOP_STORES, scores.size()))) {
+      top.put(score.getFirst(), score.getSecond());
+    }
+    return top;
+  }
+
   private boolean shouldSplitRegion() {
     return (regionSplitLimit > server.getNumberOfOnlineRegions());
   }
@@ -407,6 +492,8 @@ public class CompactSplitThread implements CompactionRequestor {
     private final HRegion region;
     private CompactionContext compaction;
     private int queuedPriority;
+    /** Read amplification score of the store when queued, only set for system compactions */
+    private double readScore;
     private ThreadPoolExecutor parent;
 
     public CompactionRunner(Store store, HRegion region,
@@ -417,9 +504,15 @@ public class CompactSplitThread implements CompactionRequestor {
       this.compaction = compaction;
       this.queuedPriority = (this.compaction == null)
           ? store.getCompactPriority() : compaction.getRequest().getPriority();
+      this.readScore = getReadScore();
       this.parent = parent;
     }
 
+    private double getReadScore() {
+      return readAwareScheduling && this.compaction == null
+          ? store.getReadAmplificationScore() : 0;
+    }
+
     @Override
     public String toString() {
       return (this.compaction != null) ? ("Request = " + compaction.getRequest())
@@ -437,6 +530,7 @@ public class CompactSplitThread implements CompactionRequestor {
       if (this.compaction == null) {
         int oldPriority = this.queuedPriority;
         this.queuedPriority = this.store.getCompactPriority();
+        this.readScore = getReadScore();
         if (this.queuedPriority > oldPriority) {
           // Store priority decreased while we were in queue (due to some other compaction?),
           // requeue with new priority to avoid blocking potential higher priorities.
@@ -472,7 +566,8 @@ public class CompactSplitThread implements CompactionRequestor {
         // Note: please don't put single-compaction logic here;
         //       put it into region/store/etc. This is CST logic.
         long start = EnvironmentEdgeManager.currentTimeMillis();
-        boolean completed = region.compact(compaction, store);
+        boolean completed =
+            region.compact(compaction, store, compactionThroughputController);
         long now = EnvironmentEdgeManager.currentTimeMillis();
         LOG.info(((completed) ? "Completed" : "Aborted") + " compaction: " +
               this + "; duration=" + StringUtils.formatTimeDiff(now, start));
@@ -512,7 +607,16 @@ public class CompactSplitThread implements CompactionRequestor {
     @Override
     public int compareTo(CompactionRunner o) {
       // Only compare the underlying request (if any), for queue sorting purposes.
-      int compareVal = queuedPriority - o.queuedPriority; // compare priority
+      int compareVal;
+      if (queuedPriority <= Store.PRIORITY_USER || o.queuedPriority <= Store.PRIORITY_USER) {
+        // User compactions and stores blocking updates go by priority alone. Their priority
+        // is lower than that of any other compaction, so they still go first.
+        compareVal = queuedPriority - o.queuedPriority;
+      } else {
+        // The stores whose reads look at the most files per second go first
+        compareVal = Double.compare(o.readScore, readScore);
+        if (compareVal == 0) compareVal = queuedPriority - o.queuedPriority;
+      }
       if (compareVal != 0) return compareVal;
       CompactionContext tc = this.compaction, oc = o.compaction;
       // Sort pre-selected (user?) compactions before system ones with equal priority.
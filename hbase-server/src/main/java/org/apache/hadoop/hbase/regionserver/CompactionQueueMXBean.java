@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * JMX view of the compaction queues of {@link CompactSplitThread}, and of the read
+ * amplification scores they are ordered by. Stores are keyed by region and family name
+ * separated by '/'.
+ */
+@InterfaceAudience.Private
+public interface CompactionQueueMXBean {
+
+  /**
+   * @return the queued compactions of the large compaction pool, in the order they run
+   */
+  List<String> getLargeCompactionQueue();
+
+  /**
+   * @return the queued compactions of the small compaction pool, in the order they run
+   */
+  List<String> getSmallCompactionQueue();
+
+  /**
+   * @return read amplification score of the online stores with the highest scores
+   */
+  Map<String, Double> getTopReadAmplificationScores();
+}
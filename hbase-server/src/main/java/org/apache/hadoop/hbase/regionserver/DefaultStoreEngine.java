@@ -29,6 +29,8 @@ import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.ExploringCompactionPolicy;
 import org.apache.hadoop.hbase.regionserver.compactions.RatioBasedCompactionPolicy;
 import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.util.ReflectionUtils;
 
 /**
@@ -106,7 +108,12 @@ public class DefaultStoreEngine extends StoreEngine<
 
     @Override
     public List<Path> compact() throws IOException {
-      return compactor.compact(request);
+      return compact(NoLimitThroughputController.INSTANCE);
+    }
+
+    @Override
+    public List<Path> compact(ThroughputController throughputController) throws IOException {
+      return compactor.compact(request, throughputController);
     }
 
     @Override
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A {@link FlushPolicy} that only flushes the stores whose memstore is larger than
+ * {@link #HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND}, so that a busy family does not force
+ * tiny flushes of the quiet families of the region. The stores holding edits old enough to be
+ * flushed anyway, see {@link HRegion#shouldFlushStore(Store)}, are flushed too. If no store is
+ * selected, all the stores are flushed.
+ */
+@InterfaceAudience.Private
+public class FlushLargeStoresPolicy extends FlushPolicy {
+  private static final Log LOG = LogFactory.getLog(FlushLargeStoresPolicy.class);
+
+  public static final String HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND =
+      "hbase.hregion.percolumnfamilyflush.size.lower.bound";
+
+  private static final long DEFAULT_HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND =
+      1024 * 1024 * 16L;
+
+  private long flushSizeLowerBound;
+
+  @Override
+  protected void configureForRegion(HRegion region) {
+    super.configureForRegion(region);
+    String value = region.getTableDesc().getValue(HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND);
+    if (value != null) {
+      try {
+        this.flushSizeLowerBound = Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        LOG.warn("Number format exception when parsing "
+            + HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND + " for table "
+            + region.getTableDesc().getTableName() + ":" + value + ". " + e);
+        value = null;
+      }
+    }
+    if (value == null) {
+      this.flushSizeLowerBound = getConf().getLong(HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND,
+          DEFAULT_HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND);
+    }
+  }
+
+  @Override
+  public Collection<Store> selectStoresToFlush() {
+    Collection<Store> stores = region.getStores().values();
+    List<Store> specificStoresToFlush = new ArrayList<Store>();
+    for (Store store : stores) {
+      if (store.getMemStoreSize() > flushSizeLowerBound || region.shouldFlushStore(store)) {
+        specificStoresToFlush.add(store);
+      }
+    }
+    if (specificStoresToFlush.isEmpty()) {
+      return stores;
+    }
+    if (LOG.isDebugEnabled() && specificStoresToFlush.size() < stores.size()) {
+      LOG.debug("Flushing " + specificStoresToFlush.size() + " of the " + stores.size()
+          + " stores of " + region);
+    }
+    return specificStoresToFlush;
+  }
+}
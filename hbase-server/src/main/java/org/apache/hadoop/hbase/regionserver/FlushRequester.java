@@ -32,6 +32,16 @@ public interface FlushRequester {
    * @param region the HRegion requesting the cache flush
    */
   void requestFlush(HRegion region);
+
+  /**
+   * Tell the listener the cache needs to be flushed.
+   *
+   * @param region the HRegion requesting the cache flush
+   * @param forceFlushAllStores whether all the stores of the region must be flushed, rather than
+   *          the ones selected by the {@link FlushPolicy} of the region
+   */
+  void requestFlush(HRegion region, boolean forceFlushAllStores);
+
   /**
    * Tell the listener the cache needs to be flushed after a delay
    *
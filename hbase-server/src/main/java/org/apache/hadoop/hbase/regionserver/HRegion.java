@@ -36,6 +36,7 @@ import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -119,6 +120,8 @@ import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.SnapshotDescriptio
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.CompactionDescriptor;
 import org.apache.hadoop.hbase.regionserver.MultiVersionConsistencyControl.WriteEntry;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.hadoop.hbase.regionserver.wal.HLogFactory;
 import org.apache.hadoop.hbase.regionserver.wal.HLogKey;
@@ -260,6 +263,9 @@ public class HRegion implements HeapSize { // , Writable{
   final Counter readRequestsCount = new Counter();
   final Counter writeRequestsCount = new Counter();
 
+  // Number of updates rejected because the memstore was above its blocking size
+  final Counter blockedRequestsCount = new Counter();
+
   // Compaction counters
   final AtomicLong compactionsFinished = new AtomicLong(0L);
   final AtomicLong compactionNumFilesCompacted = new AtomicLong(0L);
@@ -309,6 +315,15 @@ public class HRegion implements HeapSize { // , Writable{
    */
   private boolean isLoadingCfsOnDemandDefault = false;
 
+  /** The region server wide row cache, null if not used by this region */
+  private final RowCache rowCache;
+
+  /**
+   * Generation of the results of this region in the row cache. Moving to a new
+   * generation invalidates all of them.
+   */
+  private volatile long rowCacheGeneration = RowCache.nextGeneration();
+
   private final AtomicInteger majorInProgress = new AtomicInteger(0);
   private final AtomicInteger minorInProgress = new AtomicInteger(0);
 
@@ -419,6 +434,7 @@ public class HRegion implements HeapSize { // , Writable{
 
   private HTableDescriptor htableDescriptor = null;
   private RegionSplitPolicy splitPolicy;
+  private FlushPolicy flushPolicy;
 
   private final MetricsRegion metricsRegion;
   private final MetricsRegionWrapperImpl metricsRegionWrapper;
@@ -502,6 +518,8 @@ public class HRegion implements HeapSize { // , Writable{
                     DEFAULT_ROWLOCK_WAIT_DURATION);
 
     this.isLoadingCfsOnDemandDefault = conf.getBoolean(LOAD_CFS_ON_DEMAND_CONFIG_KEY, true);
+    this.rowCache = conf.getBoolean(RowCache.ROW_CACHE_ENABLED_KEY, true)
+        ? RowCache.instantiate(confParam) : null;
     this.htableDescriptor = htd;
     this.rsServices = rsServices;
     this.threadWakeFrequency = conf.getLong(HConstants.THREAD_WAKE_FREQUENCY, 10 * 1000);
@@ -649,6 +667,9 @@ public class HRegion implements HeapSize { // , Writable{
     // Initialize split policy
     this.splitPolicy = RegionSplitPolicy.create(this, conf);
 
+    // Initialize flush policy
+    this.flushPolicy = FlushPolicy.create(this, conf);
+
     this.lastFlushTime = EnvironmentEdgeManager.currentTimeMillis();
     // Use maximum of log sequenceid or that which was found in stores
     // (particularly if no recovered edits, seqid will be -1).
@@ -860,6 +881,11 @@ public class HRegion implements HeapSize { // , Writable{
     return this.writeRequestsCount.get();
   }
 
+  /** @return the number of updates rejected because the memstore was above its blocking size */
+  long getBlockedRequestsCount() {
+    return this.blockedRequestsCount.get();
+  }
+
   MetricsRegion getMetrics() {
     return metricsRegion;
   }
@@ -984,6 +1010,11 @@ public class HRegion implements HeapSize { // , Writable{
    */
   public static final long MAX_FLUSH_PER_CHANGES = 1000000000; // 1G
 
+  /** Conf key for the maximum number of stores of a region flushed in parallel */
+  public static final String HREGION_FLUSH_STORE_THREADS_MAX =
+      "hbase.hregion.flush.store.threads.max";
+  public static final int DEFAULT_HREGION_FLUSH_STORE_THREADS_MAX = 1;
+
   /**
    * Close down this HRegion.  Flush the cache unless abort parameter is true,
    * Shut down each HStore, don't service any more calls.
@@ -1129,6 +1160,7 @@ public class HRegion implements HeapSize { // , Writable{
         }
       }
       this.closed.set(true);
+      invalidateRowCache();
       if (memstoreSize.get() != 0) LOG.error("Memstore size is " + memstoreSize.get());
       if (coprocessorHost != null) {
         status.setStatus("Running coprocessor post-close hooks");
@@ -1366,6 +1398,20 @@ public class HRegion implements HeapSize { // , Writable{
    * @throws IOException e
    */
   public boolean compact(CompactionContext compaction, Store store) throws IOException {
+    return compact(compaction, store, NoLimitThroughputController.INSTANCE);
+  }
+
+  /**
+   * Compact the given store as {@link #compact(CompactionContext, Store)} does, letting the
+   * given controller limit the throughput of the compaction.
+   * @param compaction Compaction details, obtained by requestCompaction()
+   * @param store the store to compact
+   * @param throughputController the compaction throughput controller
+   * @return whether the compaction completed
+   * @throws IOException e
+   */
+  public boolean compact(CompactionContext compaction, Store store,
+      ThroughputController throughputController) throws IOException {
     assert compaction != null && compaction.hasSelection();
     assert !compaction.getRequest().getFiles().isEmpty();
     if (this.closing.get() || this.closed.get()) {
@@ -1412,7 +1458,8 @@ public class HRegion implements HeapSize { // , Writable{
         try {
           status.setStatus("Compacting store " + store);
           didPerformCompaction = true;
-          store.compact(compaction);
+          store.compact(compaction, throughputController);
+          invalidateRowCache();
         } catch (InterruptedIOException iioe) {
           String msg = "compaction interrupted";
           LOG.info(msg, iioe);
@@ -1462,6 +1509,19 @@ public class HRegion implements HeapSize { // , Writable{
    * because a Snapshot was not properly persisted.
    */
   public boolean flushcache() throws IOException {
+    return flushcache(true);
+  }
+
+  /**
+   * Flush the cache, like {@link #flushcache()}.
+   * @param forceFlushAllStores whether to flush all the stores, or only those selected by the
+   *          flush policy of the region
+   * @return true if the region needs compacting
+   * @throws IOException general io exceptions
+   * @throws DroppedSnapshotException Thrown when replay of hlog is required
+   * because a Snapshot was not properly persisted.
+   */
+  public boolean flushcache(boolean forceFlushAllStores) throws IOException {
     // fail-fast instead of waiting on the lock
     if (this.closing.get()) {
       LOG.debug("Skipping flush on " + this + " because closing");
@@ -1501,7 +1561,9 @@ public class HRegion implements HeapSize { // , Writable{
         }
       }
       try {
-        boolean result = internalFlushcache(status);
+        Collection<Store> storesToFlush = forceFlushAllStores ? stores.values()
+            : flushPolicy.selectStoresToFlush();
+        boolean result = internalFlushcache(this.log, -1, storesToFlush, status);
 
         if (coprocessorHost != null) {
           status.setStatus("Running post-flush coprocessor hooks");
@@ -1523,6 +1585,25 @@ public class HRegion implements HeapSize { // , Writable{
     }
   }
 
+  /**
+   * Should the store be flushed because it holds old edits, see {@link #shouldFlush()}
+   */
+  boolean shouldFlushStore(Store store) {
+    if (this.log != null) {
+      long earliest = this.log.getEarliestMemstoreSeqNum(
+          getRegionInfo().getEncodedNameAsBytes(), store.getFamily().getName());
+      if (earliest != HConstants.NO_SEQNUM
+          && earliest + this.flushPerChanges < this.sequenceId.get()) {
+        return true;
+      }
+    }
+    if (flushCheckInterval <= 0) { //disabled
+      return false;
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    return store.timeOfOldestEdit() < now - flushCheckInterval;
+  }
+
   /**
    * Should the memstore be flushed now
    */
@@ -1600,6 +1681,22 @@ public class HRegion implements HeapSize { // , Writable{
    */
   protected boolean internalFlushcache(
       final HLog wal, final long myseqid, MonitoredTask status)
+  throws IOException {
+    return internalFlushcache(wal, myseqid, stores.values(), status);
+  }
+
+  /**
+   * @param wal Null if we're NOT to go via hlog/wal.
+   * @param myseqid The seqid to use if <code>wal</code> is null writing out
+   * flush file.
+   * @param storesToFlush The stores to flush, all the stores when <code>wal</code> is null.
+   * @param status
+   * @return true if the region needs compacting
+   * @throws IOException
+   * @see #internalFlushcache(MonitoredTask)
+   */
+  protected boolean internalFlushcache(final HLog wal, final long myseqid,
+      final Collection<Store> storesToFlush, MonitoredTask status)
   throws IOException {
     if (this.rsServices != null && this.rsServices.isAborted()) {
       // Don't flush when server aborting, it's unsafe
@@ -1635,15 +1732,30 @@ public class HRegion implements HeapSize { // , Writable{
     this.updatesLock.writeLock().lock();
     long totalFlushableSize = 0;
     status.setStatus("Preparing to flush by snapshotting stores");
-    List<StoreFlushContext> storeFlushCtxs = new ArrayList<StoreFlushContext>(stores.size());
+    List<StoreFlushContext> storeFlushCtxs =
+        new ArrayList<StoreFlushContext>(storesToFlush.size());
+    boolean isFlushAllStores = storesToFlush.size() == stores.size();
     long flushSeqId = -1L;
+    // The edits up to this id are all in store files once the flush completes
+    long flushedSeqId = -1L;
     try {
       // Record the mvcc for all transactions in progress.
       w = mvcc.beginMemstoreInsert();
       mvcc.advanceMemstore(w);
       // check if it is not closing.
       if (wal != null) {
-        if (!wal.startCacheFlush(this.getRegionInfo().getEncodedNameAsBytes())) {
+        byte[] encodedRegionName = this.getRegionInfo().getEncodedNameAsBytes();
+        boolean started;
+        if (isFlushAllStores) {
+          started = wal.startCacheFlush(encodedRegionName);
+        } else {
+          Set<byte[]> flushedFamilyNames = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+          for (Store s : storesToFlush) {
+            flushedFamilyNames.add(s.getFamily().getName());
+          }
+          started = wal.startCacheFlush(encodedRegionName, flushedFamilyNames);
+        }
+        if (!started) {
           status.setStatus("Flush will not be started for ["
               + this.getRegionInfo().getEncodedName() + "] - because the WAL is closing.");
           return false;
@@ -1652,9 +1764,10 @@ public class HRegion implements HeapSize { // , Writable{
       } else {
         // use the provided sequence Id as WAL is not being used for this flush.
         flushSeqId = myseqid;
+        flushedSeqId = myseqid;
       }
 
-      for (Store s : stores.values()) {
+      for (Store s : storesToFlush) {
         totalFlushableSize += s.getFlushableSize();
         storeFlushCtxs.add(s.createFlushContext(flushSeqId));
       }
@@ -1684,6 +1797,15 @@ public class HRegion implements HeapSize { // , Writable{
     // were removed via a rollbackMemstore could be written to Hfiles.
     mvcc.waitForRead(w);
 
+    if (wal != null) {
+      // The transactions in progress are all in the WAL now, the stores not flushed hold the
+      // edits from their oldest unflushed one on
+      long earliestUnflushed =
+          wal.getEarliestMemstoreSeqNum(this.getRegionInfo().getEncodedNameAsBytes());
+      flushedSeqId = earliestUnflushed == HConstants.NO_SEQNUM || earliestUnflushed > flushSeqId
+          ? flushSeqId : earliestUnflushed - 1;
+    }
+
     s = "Flushing stores of " + this;
     status.setStatus(s);
     if (LOG.isTraceEnabled()) LOG.trace(s);
@@ -1699,9 +1821,7 @@ public class HRegion implements HeapSize { // , Writable{
       // just-made new flush store file. The new flushed file is still in the
       // tmp directory.
 
-      for (StoreFlushContext flush : storeFlushCtxs) {
-        flush.flushCache(status);
-      }
+      flushStores(storeFlushCtxs, status);
 
       // Switch snapshot (in memstore) -> new hfile (thus causing
       // all the store scanners to reset/reseek).
@@ -1712,6 +1832,7 @@ public class HRegion implements HeapSize { // , Writable{
         }
       }
       storeFlushCtxs.clear();
+      invalidateRowCache();
 
       // Set down the memstore size by amount of flush.
       this.addAndGetGlobalMemstoreSize(-totalFlushableSize);
@@ -1741,7 +1862,7 @@ public class HRegion implements HeapSize { // , Writable{
     this.lastFlushTime = EnvironmentEdgeManager.currentTimeMillis();
 
     // Update the last flushed sequence id for region
-    completeSequenceId = flushSeqId;
+    completeSequenceId = flushedSeqId;
 
     // C. Finally notify anyone waiting on memstore to clear:
     // e.g. checkResources().
@@ -1755,7 +1876,8 @@ public class HRegion implements HeapSize { // , Writable{
       StringUtils.humanReadableInt(totalFlushableSize) + "/" + totalFlushableSize +
       ", currentsize=" +
       StringUtils.humanReadableInt(memstoresize) + "/" + memstoresize +
-      " for region " + this + " in " + time + "ms, sequenceid=" + flushSeqId +
+      " for region " + this + (isFlushAllStores ? "" : " (" + storesToFlush.size() + " of "
+      + stores.size() + " stores)") + " in " + time + "ms, sequenceid=" + flushSeqId +
       ", compaction requested=" + compactionRequested +
       ((wal == null)? "; wal=null": "");
     LOG.info(msg);
@@ -1765,6 +1887,51 @@ public class HRegion implements HeapSize { // , Writable{
     return compactionRequested;
   }
 
+  /**
+   * Writes the snapshots of the stores to files. With {@link #HREGION_FLUSH_STORE_THREADS_MAX}
+   * above one the stores are flushed in parallel, so that the encoding of the snapshot of a
+   * store overlaps the HDFS writes of the others.
+   */
+  private void flushStores(List<StoreFlushContext> storeFlushCtxs, final MonitoredTask status)
+      throws IOException {
+    int maxThreads = Math.min(storeFlushCtxs.size(),
+        conf.getInt(HREGION_FLUSH_STORE_THREADS_MAX, DEFAULT_HREGION_FLUSH_STORE_THREADS_MAX));
+    if (maxThreads <= 1) {
+      for (StoreFlushContext flush : storeFlushCtxs) {
+        flush.flushCache(status);
+      }
+      return;
+    }
+    ThreadPoolExecutor storeFlusherThreadPool = getOpenAndCloseThreadPool(maxThreads,
+        "StoreFlusher-" + this.getRegionInfo().getShortNameToLog());
+    CompletionService<Void> completionService =
+        new ExecutorCompletionService<Void>(storeFlusherThreadPool);
+    for (final StoreFlushContext flush : storeFlushCtxs) {
+      completionService.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          flush.flushCache(status);
+          return null;
+        }
+      });
+    }
+    try {
+      for (int i = 0; i < storeFlushCtxs.size(); i++) {
+        completionService.take().get();
+      }
+    } catch (InterruptedException e) {
+      throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      storeFlusherThreadPool.shutdownNow();
+    }
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   // get() methods for client use.
   //////////////////////////////////////////////////////////////////////////////
@@ -2530,6 +2697,11 @@ public class HRegion implements HeapSize { // , Writable{
         rollbackMemstore(batchOp, familyMaps, firstIndex, lastIndexExclusive);
       }
       if (w != null) mvcc.completeMemstoreInsert(w);
+      if (rowCache != null) {
+        for (int i = firstIndex; i < lastIndexExclusive; i++) {
+          invalidateCachedRow(batchOp.getMutation(i).getRow());
+        }
+      }
 
       if (locked) {
         this.updatesLock.readLock().unlock();
@@ -2790,6 +2962,7 @@ public class HRegion implements HeapSize { // , Writable{
     if (this.getRegionInfo().isMetaRegion()) return;
 
     if (this.memstoreSize.get() > this.blockingMemStoreSize) {
+      blockedRequestsCount.increment();
       requestFlush();
       throw new RegionTooBusyException("Above memstore limit, " +
           "regionName=" + (this.getRegionInfo() == null ? "unknown" :
@@ -3594,6 +3767,7 @@ public class HRegion implements HeapSize { // , Writable{
           throw ioe;
         }
       }
+      invalidateRowCache();
       return true;
     } finally {
       closeBulkRegionOperation();
@@ -4672,6 +4846,26 @@ public class HRegion implements HeapSize { // , Writable{
     return Result.create(results, get.isCheckExistenceOnly() ? !results.isEmpty() : null);
   }
 
+  /**
+   * Invalidates the row cache results of a row. Must be called once the
+   * mutation of the row is visible to readers.
+   */
+  private void invalidateCachedRow(byte[] row) {
+    if (rowCache != null) {
+      rowCache.invalidateRow(getRegionName(), row);
+    }
+  }
+
+  /**
+   * Invalidates all the row cache results of this region. Called when the
+   * store files change, or the region closes.
+   */
+  void invalidateRowCache() {
+    if (rowCache != null) {
+      rowCacheGeneration = RowCache.nextGeneration();
+    }
+  }
+
   /*
    * Do a get based on the get parameter.
    * @param withCoprocessor invoke coprocessor or not. We don't want to
@@ -4689,15 +4883,34 @@ public class HRegion implements HeapSize { // , Writable{
        }
     }
 
-    Scan scan = new Scan(get);
+    // Only the client facing Gets go through the row cache
+    boolean useRowCache = withCoprocessor && rowCache != null
+        && RowCache.isCacheable(get, htableDescriptor);
+    long rowCacheStamp = 0;
+    long generation = rowCacheGeneration;
+    List<Cell> cached = null;
+    if (useRowCache) {
+      // Read the stamp before the scanner picks its read point
+      rowCacheStamp = rowCache.getStamp(getRegionName(), get.getRow());
+      cached = rowCache.getRow(getRegionName(), generation, get);
+    }
 
-    RegionScanner scanner = null;
-    try {
-      scanner = getScanner(scan);
-      scanner.next(results);
-    } finally {
-      if (scanner != null)
-        scanner.close();
+    if (cached != null) {
+      results.addAll(cached);
+    } else {
+      Scan scan = new Scan(get);
+
+      RegionScanner scanner = null;
+      try {
+        scanner = getScanner(scan);
+        scanner.next(results);
+      } finally {
+        if (scanner != null)
+          scanner.close();
+      }
+      if (useRowCache) {
+        rowCache.cacheRow(getRegionName(), generation, get, results, rowCacheStamp);
+      }
     }
 
     // post-get CP hook
@@ -4876,6 +5089,11 @@ public class HRegion implements HeapSize { // , Writable{
           mvcc.completeMemstoreInsert(writeEntry);
           writeEntry = null;
         }
+        if (rowCache != null && !mutations.isEmpty()) {
+          for (byte[] row : processor.getRowsToLock()) {
+            invalidateCachedRow(row);
+          }
+        }
         if (locked) {
           this.updatesLock.readLock().unlock();
           locked = false;
@@ -5124,6 +5342,7 @@ public class HRegion implements HeapSize { // , Writable{
     } finally {
       if (w != null) {
         mvcc.completeMemstoreInsert(w);
+        invalidateCachedRow(row);
       }
       closeRegionOperation(Operation.APPEND);
     }
@@ -5318,6 +5537,7 @@ public class HRegion implements HeapSize { // , Writable{
     } finally {
       if (w != null) {
         mvcc.completeMemstoreInsert(w);
+        invalidateCachedRow(row);
       }
       closeRegionOperation(Operation.INCREMENT);
       if (this.metricsRegion != null) {
@@ -5349,15 +5569,15 @@ public class HRegion implements HeapSize { // , Writable{
   public static final long FIXED_OVERHEAD = ClassSize.align(
       ClassSize.OBJECT +
       ClassSize.ARRAY +
-      41 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT +
-      (12 * Bytes.SIZEOF_LONG) +
+      44 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT +
+      (13 * Bytes.SIZEOF_LONG) +
       4 * Bytes.SIZEOF_BOOLEAN);
 
   // woefully out of date - currently missing:
   // 1 x HashMap - coprocessorServiceHandlers
-  // 6 x Counter - numMutationsWithoutWAL, dataInMemoryWithoutWAL,
+  // 7 x Counter - numMutationsWithoutWAL, dataInMemoryWithoutWAL,
   //   checkAndMutateChecksPassed, checkAndMutateChecksFailed, readRequestsCount,
-  //   writeRequestsCount
+  //   writeRequestsCount, blockedRequestsCount
   // 1 x HRegion$WriteState - writestate
   // 1 x RegionCoprocessorHost - coprocessorHost
   // 1 x RegionSplitPolicy - splitPolicy
@@ -73,6 +73,9 @@ public class HRegionFileSystem {
   /** Temporary subdirectory of the region directory used for compaction output. */
   private static final String REGION_TEMP_DIR = ".tmp";
 
+  /** Subdirectory of the region directory where compactions checkpoint their output. */
+  public static final String REGION_COMPACTION_CHECKPOINTS_DIR = ".checkpoints";
+
   private final HRegionInfo regionInfo;
   private final Configuration conf;
   private final Path tableDir;
@@ -153,6 +156,16 @@ public class HRegionFileSystem {
     return new Path(this.getRegionDir(), familyName);
   }
 
+  /**
+   * Returns the directory where compactions of the specified family checkpoint their output.
+   * Unlike the temp directory, it is kept when the region is reopened.
+   * @param familyName Column Family Name
+   * @return {@link Path} to the compaction checkpoint directory of the specified family
+   */
+  Path getCompactionCheckpointDir(final String familyName) {
+    return new Path(new Path(this.getRegionDir(), REGION_COMPACTION_CHECKPOINTS_DIR), familyName);
+  }
+
   /**
    * Create the store directory for the specified family name
    * @param familyName Column Family Name
@@ -83,6 +83,7 @@ import org.apache.hadoop.hbase.exceptions.RegionOpeningException;
 import org.apache.hadoop.hbase.executor.ExecutorService;
 import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.fs.HFileSystem;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheUsage;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.ipc.RpcClient;
 import org.apache.hadoop.hbase.ipc.RpcServerInterface;
@@ -109,6 +110,8 @@ import org.apache.hadoop.hbase.protobuf.generated.RegionServerStatusProtos.Repor
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionProgress;
 import org.apache.hadoop.hbase.regionserver.handler.CloseMetaHandler;
 import org.apache.hadoop.hbase.regionserver.handler.CloseRegionHandler;
+import org.apache.hadoop.hbase.regionserver.throttle.FlushThroughputControllerFactory;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.hadoop.hbase.regionserver.wal.HLogFactory;
 import org.apache.hadoop.hbase.regionserver.wal.HLogSplitter;
@@ -175,6 +178,9 @@ public class HRegionServer extends HasThread implements
   // Cache flushing
   protected MemStoreFlusher cacheFlusher;
 
+  /** Limits the throughput of the memstore flushes */
+  private ThroughputController flushThroughputController;
+
   protected HeapMemoryManager hMemManager;
 
   // catalog tracker
@@ -353,6 +359,16 @@ public class HRegionServer extends HasThread implements
    */
   private ObjectName mxBean = null;
 
+  /**
+   * MX Bean for the block cache usage by table, family and file
+   */
+  private ObjectName blockCacheUsageMXBean = null;
+
+  /**
+   * MX Bean for the compaction queues
+   */
+  private ObjectName compactionQueueMXBean = null;
+
   /**
    * Chore to clean periodically the moved region list
    */
@@ -660,6 +676,7 @@ public class HRegionServer extends HasThread implements
   private void initializeThreads() throws IOException {
     // Cache flushing thread.
     this.cacheFlusher = new MemStoreFlusher(conf, this);
+    this.flushThroughputController = FlushThroughputControllerFactory.create(this, conf);
 
     // Compaction thread
     this.compactSplitThread = new CompactSplitThread(this);
@@ -797,6 +814,14 @@ public class HRegionServer extends HasThread implements
       MBeanUtil.unregisterMBean(mxBean);
       mxBean = null;
     }
+    if (blockCacheUsageMXBean != null) {
+      MBeanUtil.unregisterMBean(blockCacheUsageMXBean);
+      blockCacheUsageMXBean = null;
+    }
+    if (compactionQueueMXBean != null) {
+      MBeanUtil.unregisterMBean(compactionQueueMXBean);
+      compactionQueueMXBean = null;
+    }
     if (this.leases != null) this.leases.closeAfterLeasesExpire();
     if (this.splitLogWorker != null) {
       splitLogWorker.stop();
@@ -1130,6 +1155,10 @@ public class HRegionServer extends HasThread implements
       this.hlog = setupWALAndReplication();
       // Init in here rather than in constructor after thread name has been set
       this.metricsRegionServer = new MetricsRegionServer(new MetricsRegionServerWrapperImpl(this));
+      this.blockCacheUsageMXBean = MBeanUtil.registerMBean("RegionServer", "BlockCacheUsage",
+          BlockCacheUsage.getInstance());
+      this.compactionQueueMXBean = MBeanUtil.registerMBean("RegionServer", "CompactionQueue",
+          this.compactSplitThread);
 
       startServiceThreads();
       startHeapMemoryManager();
@@ -1151,7 +1180,8 @@ public class HRegionServer extends HasThread implements
   }
 
   private void startHeapMemoryManager() {
-    this.hMemManager = HeapMemoryManager.create(this.conf, this.cacheFlusher, this);
+    this.hMemManager =
+        HeapMemoryManager.create(this.conf, this.cacheFlusher, this, this.pauseMonitor);
     if (this.hMemManager != null) {
       this.hMemManager.start();
     }
@@ -1647,7 +1677,10 @@ public class HRegionServer extends HasThread implements
     LOG.info("Post open deploy tasks for " + r.getRegionNameAsString());
     // Do checks to see if we need to compact (references or too many files)
     for (Store s : r.getStores().values()) {
-      if (s.hasReferences() || s.needsCompaction()) {
+      if (s.hasCompactionCheckpoint()) {
+        // Resume the interrupted compaction before other compactions change the files
+        this.compactSplitThread.requestSystemCompaction(r, s, "Resuming compaction");
+      } else if (s.hasReferences() || s.needsCompaction()) {
        this.compactSplitThread.requestSystemCompaction(r, s, "Opening Region");
       }
     }
@@ -1760,6 +1793,9 @@ public class HRegionServer extends HasThread implements
     Threads.shutdown(this.compactionChecker.getThread());
     Threads.shutdown(this.periodicFlusher.getThread());
     this.cacheFlusher.join();
+    if (this.flushThroughputController != null) {
+      this.flushThroughputController.stop("Region server stopping");
+    }
     if (this.healthCheckChore != null) {
       Threads.shutdown(this.healthCheckChore.getThread());
     }
@@ -2576,6 +2612,33 @@ public class HRegionServer extends HasThread implements
     return this.nonceManager;
   }
 
+  @Override
+  public double getCompactionPressure() {
+    double max = 0;
+    for (HRegion region : onlineRegions.values()) {
+      for (Store store : region.getStores().values()) {
+        double pressure = store.getCompactionPressure();
+        if (pressure > max) {
+          max = pressure;
+        }
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public double getFlushPressure() {
+    if (this.cacheFlusher == null) {
+      return 0.0;
+    }
+    return this.cacheFlusher.getFlushPressure();
+  }
+
+  @Override
+  public ThroughputController getFlushThroughputController() {
+    return this.flushThroughputController;
+  }
+
   private static class MovedRegionInfo {
     private final ServerName serverName;
     private final long seqNum;
@@ -39,6 +39,7 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
@@ -59,6 +60,7 @@ import org.apache.hadoop.hbase.RemoteExceptionHandler;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.ZstdCodec;
 import org.apache.hadoop.hbase.io.crypto.Cipher;
 import org.apache.hadoop.hbase.io.crypto.Encryption;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
@@ -72,11 +74,14 @@ import org.apache.hadoop.hbase.io.hfile.InvalidHFileException;
 import org.apache.hadoop.hbase.monitoring.MonitoredTask;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.CompactionDescriptor;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionCheckpoint;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionProgress;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
 import org.apache.hadoop.hbase.regionserver.compactions.OffPeakHours;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLogUtil;
 import org.apache.hadoop.hbase.security.EncryptionUtil;
 import org.apache.hadoop.hbase.security.User;
@@ -141,6 +146,18 @@ public class HStore implements Store {
   private volatile long storeSize = 0L;
   private volatile long totalUncompressedBytes = 0L;
 
+  /**
+   * Shortest period the read amplification score is computed over, so that the first reads
+   * after a compaction do not make for a high rate.
+   */
+  private static final long MIN_READ_AMPLIFICATION_PERIOD_MS = 60 * 1000;
+  /** Store files looked at by user reads since the last compaction */
+  private final AtomicLong storeFilesReadSinceCompaction = new AtomicLong();
+  private volatile long lastCompactionTime = EnvironmentEdgeManager.currentTimeMillis();
+
+  private final AtomicLong deletedCellsSkipped = new AtomicLong();
+  private final AtomicLong userScanCount = new AtomicLong();
+
   /**
    * RWLock for store operations.
    * Locked in shared mode when the list of component stores is looked at:
@@ -183,9 +200,15 @@ public class HStore implements Store {
 
   private long blockingFileCount;
   private int compactionCheckMultiplier;
+  /** Whether compactions checkpoint their output, so that there can be a checkpoint to resume */
+  private final boolean compactionCheckpoints;
 
   private Encryption.Context cryptoContext = Encryption.Context.NONE;
 
+  /** Compression level and dictionary of the family, for the ZSTD algorithm */
+  private int compressionLevel;
+  private byte[] compressionDictionary;
+
   /**
    * Constructor
    * @param region
@@ -240,6 +263,7 @@ public class HStore implements Store {
 
     this.blockingFileCount =
         conf.getInt(BLOCKING_STOREFILES_KEY, DEFAULT_BLOCKING_STOREFILE_COUNT);
+    this.compactionCheckpoints = conf.getLong(DefaultCompactor.CHECKPOINT_SIZE_KEY, 0) > 0;
     this.compactionCheckMultiplier = conf.getInt(
         COMPACTCHECKER_INTERVAL_MULTIPLIER_KEY, DEFAULT_COMPACTCHECKER_INTERVAL_MULTIPLIER);
     if (this.compactionCheckMultiplier <= 0) {
@@ -253,6 +277,13 @@ public class HStore implements Store {
           "hbase.hstore.close.check.interval", 10*1000*1000 /* 10 MB */);
     }
 
+    this.compressionLevel = conf.getInt(ZstdCodec.ZSTD_LEVEL_KEY, ZstdCodec.ZSTD_LEVEL_DEFAULT);
+    // The dictionary must be registered before the store files are opened
+    String dictionaryPath = conf.get(ZstdCodec.ZSTD_DICTIONARY_KEY);
+    if (dictionaryPath != null) {
+      this.compressionDictionary = ZstdCodec.loadDictionary(conf, dictionaryPath);
+    }
+
     this.storeEngine = StoreEngine.create(this, this.conf, this.comparator);
     this.storeEngine.getStoreFileManager().loadFiles(loadStoreFiles());
 
@@ -775,6 +806,17 @@ public class HStore implements Store {
     }
   }
 
+  /**
+   * @return the controller of the flush throughput of the region server, if any
+   */
+  private ThroughputController getFlushThroughputController() {
+    RegionServerServices rsServices = region.getRegionServerServices();
+    ThroughputController throughputController =
+        rsServices == null ? null : rsServices.getFlushThroughputController();
+    return throughputController == null
+        ? NoLimitThroughputController.INSTANCE : throughputController;
+  }
+
   /**
    * Write out current snapshot.  Presumes {@link #snapshot()} has been called
    * previously.
@@ -792,10 +834,12 @@ public class HStore implements Store {
     // Retry after catching exception when flushing, otherwise server will abort
     // itself
     StoreFlusher flusher = storeEngine.getStoreFlusher();
+    ThroughputController throughputController = getFlushThroughputController();
     IOException lastException = null;
     for (int i = 0; i < flushRetriesNumber; i++) {
       try {
-        List<Path> pathNames = flusher.flushSnapshot(snapshot, logCacheFlushId, status);
+        List<Path> pathNames =
+            flusher.flushSnapshot(snapshot, logCacheFlushId, status, throughputController);
         Path lastPathName = null;
         try {
           for (Path pathName : pathNames) {
@@ -903,6 +947,8 @@ public class HStore implements Store {
                                 .withIncludesMvcc(includeMVCCReadpoint)
                                 .withIncludesTags(includesTag)
                                 .withCompression(compression)
+                                .withCompressionLevel(compressionLevel)
+                                .withCompressionDictionary(compressionDictionary)
                                 .withCompressTags(family.shouldCompressTags())
                                 .withChecksumType(checksumType)
                                 .withBytesPerCheckSum(bytesPerChecksum)
@@ -1059,6 +1105,12 @@ public class HStore implements Store {
    */
   @Override
   public List<StoreFile> compact(CompactionContext compaction) throws IOException {
+    return compact(compaction, NoLimitThroughputController.INSTANCE);
+  }
+
+  @Override
+  public List<StoreFile> compact(CompactionContext compaction,
+      ThroughputController throughputController) throws IOException {
     assert compaction != null && compaction.hasSelection();
     CompactionRequest cr = compaction.getRequest();
     Collection<StoreFile> filesToCompact = cr.getFiles();
@@ -1079,7 +1131,7 @@ public class HStore implements Store {
     List<StoreFile> sfs = null;
     try {
       // Commence the compaction.
-      List<Path> newFiles = compaction.compact();
+      List<Path> newFiles = compaction.compact(throughputController);
 
       // TODO: get rid of this!
       if (!this.conf.getBoolean("hbase.hstore.compaction.complete", true)) {
@@ -1099,6 +1151,7 @@ public class HStore implements Store {
       replaceStoreFiles(filesToCompact, sfs);
       // At this point the store will use new files for all new scanners.
       completeCompaction(filesToCompact); // Archive old files & update store size.
+      resetReadAmplification();
     } finally {
       finishCompactionRequest(cr);
     }
@@ -1363,6 +1416,18 @@ public class HStore implements Store {
           }
         }
 
+        // Resume an interrupted compaction with the files it was compacting
+        if (!compaction.hasSelection() && this.compactionCheckpoints) {
+          List<StoreFile> checkpointed = CompactionCheckpoint.selectFiles(getFileSystem(),
+              getCompactionCheckpointDir(), compaction.preSelect(this.filesCompacting));
+          if (checkpointed != null) {
+            CompactionRequest resumed = new CompactionRequest(checkpointed);
+            boolean allFiles = checkpointed.size() == getStorefilesCount();
+            resumed.setIsMajor(allFiles, allFiles);
+            compaction.forceSelect(resumed);
+          }
+        }
+
         // Normal case - coprocessor is not overriding file selection.
         if (!compaction.hasSelection()) {
           boolean isUserCompaction = priority == Store.PRIORITY_USER;
@@ -1769,6 +1834,18 @@ public class HStore implements Store {
     this.forceMajor = true;
   }
 
+  @Override
+  public Path getCompactionCheckpointDir() {
+    return this.fs.getCompactionCheckpointDir(getColumnFamilyName());
+  }
+
+  @Override
+  public boolean hasCompactionCheckpoint() throws IOException {
+    // Checkpoints left while compactions do not checkpoint are ignored
+    return this.compactionCheckpoints
+        && CompactionCheckpoint.exists(getFileSystem(), getCompactionCheckpointDir());
+  }
+
 
   //////////////////////////////////////////////////////////////////////////////
   // File administration
@@ -1871,6 +1948,44 @@ public class HStore implements Store {
     return priority;
   }
 
+  @Override
+  public double getCompactionPressure() {
+    return storeEngine.getCompactionPolicy().getCompactionPressure(getStorefilesCount());
+  }
+
+  @Override
+  public void updateReadAmplification(int storeFilesRead) {
+    storeFilesReadSinceCompaction.addAndGet(storeFilesRead);
+  }
+
+  @Override
+  public double getReadAmplificationScore() {
+    long period = Math.max(MIN_READ_AMPLIFICATION_PERIOD_MS,
+        EnvironmentEdgeManager.currentTimeMillis() - lastCompactionTime);
+    return storeFilesReadSinceCompaction.get() * 1000.0 / period;
+  }
+
+  @Override
+  public void updateDeletedCellsSkipped(long deletedCellsSkipped) {
+    this.deletedCellsSkipped.addAndGet(deletedCellsSkipped);
+    this.userScanCount.incrementAndGet();
+  }
+
+  @Override
+  public long getDeletedCellsSkippedCount() {
+    return deletedCellsSkipped.get();
+  }
+
+  @Override
+  public long getUserScanCount() {
+    return userScanCount.get();
+  }
+
+  private void resetReadAmplification() {
+    storeFilesReadSinceCompaction.set(0);
+    lastCompactionTime = EnvironmentEdgeManager.currentTimeMillis();
+  }
+
   @Override
   public boolean throttleCompaction(long compactionSize) {
     return storeEngine.getCompactionPolicy().throttleCompaction(compactionSize);
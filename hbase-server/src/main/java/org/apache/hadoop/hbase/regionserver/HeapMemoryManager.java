@@ -32,7 +32,9 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.Server;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.ResizableBlockCache;
+import org.apache.hadoop.hbase.util.JvmPauseMonitor;
 import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.util.ReflectionUtils;
 
@@ -71,17 +73,22 @@ public class HeapMemoryManager {
   private final ResizableBlockCache blockCache;
   private final FlushRequester memStoreFlusher;
   private final Server server;
+  private final JvmPauseMonitor pauseMonitor;
 
   private HeapMemoryTunerChore heapMemTunerChore = null;
   private final boolean tunerOn;
 
   private long maxHeapSize = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
 
+  /**
+   * @param pauseMonitor Where to get the GC pauses of the JVM from, can be null
+   */
   public static HeapMemoryManager create(Configuration conf, FlushRequester memStoreFlusher,
-      Server server) {
+      Server server, JvmPauseMonitor pauseMonitor) {
     BlockCache blockCache = CacheConfig.instantiateBlockCache(conf);
     if (blockCache instanceof ResizableBlockCache) {
-      return new HeapMemoryManager((ResizableBlockCache) blockCache, memStoreFlusher, server);
+      return new HeapMemoryManager((ResizableBlockCache) blockCache, memStoreFlusher, server,
+          pauseMonitor);
     }
     return null;
   }
@@ -89,9 +96,16 @@ public class HeapMemoryManager {
   @VisibleForTesting
   HeapMemoryManager(ResizableBlockCache blockCache, FlushRequester memStoreFlusher,
       Server server) {
+    this(blockCache, memStoreFlusher, server, null);
+  }
+
+  @VisibleForTesting
+  HeapMemoryManager(ResizableBlockCache blockCache, FlushRequester memStoreFlusher,
+      Server server, JvmPauseMonitor pauseMonitor) {
     this.blockCache = blockCache;
     this.memStoreFlusher = memStoreFlusher;
     this.server = server;
+    this.pauseMonitor = pauseMonitor;
     this.tunerOn = doInit(server.getConfiguration());
   }
 
@@ -208,11 +222,16 @@ public class HeapMemoryManager {
     private AtomicLong blockedFlushCount = new AtomicLong();
     private AtomicLong unblockedFlushCount = new AtomicLong();
     private long evictCount = 0L;
+    private long cacheMissCount = 0L;
+    private long cacheRequestCount = 0L;
+    private long gcPauseTimeMillis = 0L;
     private TunerContext tunerContext = new TunerContext();
 
     public HeapMemoryTunerChore() {
       super(server.getServerName() + "-HeapMemoryTunerChore", server.getConfiguration().getInt(
           HBASE_RS_HEAP_MEMORY_TUNER_PERIOD, HBASE_RS_HEAP_MEMORY_TUNER_DEFAULT_PERIOD), server);
+      tunerContext.setPeriodMillis(server.getConfiguration().getInt(
+          HBASE_RS_HEAP_MEMORY_TUNER_PERIOD, HBASE_RS_HEAP_MEMORY_TUNER_DEFAULT_PERIOD));
       Class<? extends HeapMemoryTuner> tunerKlass = server.getConfiguration().getClass(
           HBASE_RS_HEAP_MEMORY_TUNER_CLASS, DefaultHeapMemoryTuner.class, HeapMemoryTuner.class);
       heapMemTuner = ReflectionUtils.newInstance(tunerKlass, server.getConfiguration());
@@ -220,12 +239,26 @@ public class HeapMemoryManager {
 
     @Override
     protected void chore() {
-      evictCount = blockCache.getStats().getEvictedCount() - evictCount;
+      CacheStats stats = blockCache.getStats();
       tunerContext.setBlockedFlushCount(blockedFlushCount.getAndSet(0));
       tunerContext.setUnblockedFlushCount(unblockedFlushCount.getAndSet(0));
-      tunerContext.setEvictCount(evictCount);
+      tunerContext.setEvictCount(stats.getEvictedCount() - evictCount);
+      evictCount = stats.getEvictedCount();
+      tunerContext.setCacheMissCount(stats.getMissCachingCount() - cacheMissCount);
+      cacheMissCount = stats.getMissCachingCount();
+      tunerContext.setCacheRequestCount(stats.getRequestCachingCount() - cacheRequestCount);
+      cacheRequestCount = stats.getRequestCachingCount();
+      if (pauseMonitor != null) {
+        tunerContext.setGcPauseTimeMillis(pauseMonitor.getGcPauseTimeMillis() - gcPauseTimeMillis);
+        gcPauseTimeMillis = pauseMonitor.getGcPauseTimeMillis();
+      }
       tunerContext.setCurBlockCacheSize(blockCachePercent);
       tunerContext.setCurMemStoreSize(globalMemStorePercent);
+      tunerContext.setBlockCacheUsedSize((float) blockCache.getCurrentSize() / maxHeapSize);
+      if (LOG.isTraceEnabled()) {
+        // Traces of contexts can be replayed offline to evaluate tuners
+        LOG.trace("TunerContext " + tunerContext);
+      }
       TunerResult result = null;
       try {
         result = this.heapMemTuner.tune(tunerContext);
@@ -297,15 +330,21 @@ public class HeapMemoryManager {
 
   /**
    * POJO to pass all the relevant information required to do the heap memory tuning. It holds the
-   * flush counts and block cache evictions happened within the interval. Also holds the current
-   * heap percentage allocated for memstore and block cache.
+   * flush counts, block cache evictions, misses and requests, and time paused for GC happened
+   * within the interval. Also holds the current heap percentage allocated for memstore and block
+   * cache, and used by cached blocks.
    */
   public static final class TunerContext {
     private long blockedFlushCount;
     private long unblockedFlushCount;
     private long evictCount;
+    private long cacheMissCount;
+    private long cacheRequestCount;
+    private long gcPauseTimeMillis;
+    private long periodMillis;
     private float curMemStoreSize;
     private float curBlockCacheSize;
+    private float blockCacheUsedSize;
 
     public long getBlockedFlushCount() {
       return blockedFlushCount;
@@ -331,6 +370,50 @@ public class HeapMemoryManager {
       this.evictCount = evictCount;
     }
 
+    /**
+     * @return The number of block cache misses of requests which would have cached the block
+     */
+    public long getCacheMissCount() {
+      return cacheMissCount;
+    }
+
+    public void setCacheMissCount(long cacheMissCount) {
+      this.cacheMissCount = cacheMissCount;
+    }
+
+    /**
+     * @return The number of block cache requests which would have cached the block
+     */
+    public long getCacheRequestCount() {
+      return cacheRequestCount;
+    }
+
+    public void setCacheRequestCount(long cacheRequestCount) {
+      this.cacheRequestCount = cacheRequestCount;
+    }
+
+    /**
+     * @return The time the JVM was paused for garbage collections, in milliseconds
+     */
+    public long getGcPauseTimeMillis() {
+      return gcPauseTimeMillis;
+    }
+
+    public void setGcPauseTimeMillis(long gcPauseTimeMillis) {
+      this.gcPauseTimeMillis = gcPauseTimeMillis;
+    }
+
+    /**
+     * @return The length of the interval, in milliseconds
+     */
+    public long getPeriodMillis() {
+      return periodMillis;
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+      this.periodMillis = periodMillis;
+    }
+
     public float getCurMemStoreSize() {
       return curMemStoreSize;
     }
@@ -346,6 +429,27 @@ public class HeapMemoryManager {
     public void setCurBlockCacheSize(float curBlockCacheSize) {
       this.curBlockCacheSize = curBlockCacheSize;
     }
+
+    /**
+     * @return The heap percentage used by the cached blocks, at most the block cache size
+     */
+    public float getBlockCacheUsedSize() {
+      return blockCacheUsedSize;
+    }
+
+    public void setBlockCacheUsedSize(float blockCacheUsedSize) {
+      this.blockCacheUsedSize = blockCacheUsedSize;
+    }
+
+    @Override
+    public String toString() {
+      return "blockedFlushCount=" + blockedFlushCount + ", unblockedFlushCount="
+          + unblockedFlushCount + ", evictCount=" + evictCount + ", cacheMissCount="
+          + cacheMissCount + ", cacheRequestCount=" + cacheRequestCount
+          + ", gcPauseTimeMillis=" + gcPauseTimeMillis + ", periodMillis=" + periodMillis
+          + ", curMemStoreSize=" + curMemStoreSize + ", curBlockCacheSize=" + curBlockCacheSize
+          + ", blockCacheUsedSize=" + blockCacheUsedSize;
+    }
   }
 
   /**
@@ -130,7 +130,8 @@ class LogRoller extends HasThread implements WALActionsListener {
     if (r != null) {
       requester = this.services.getFlushRequester();
       if (requester != null) {
-        requester.requestFlush(r);
+        // Flush all the stores, so that the WAL file can be archived
+        requester.requestFlush(r, true);
         scheduled = true;
       }
     }
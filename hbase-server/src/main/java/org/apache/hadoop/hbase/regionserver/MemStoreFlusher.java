@@ -30,8 +30,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -75,6 +80,15 @@ class MemStoreFlusher implements FlushRequester {
   private static final String MEMSTORE_SIZE_LOWER_LIMIT_OLD_KEY = 
       "hbase.regionserver.global.memstore.lowerLimit";
 
+  /**
+   * Number of regions flushed concurrently when the global memstore is above its low water mark.
+   * Updates are blocked above the high water mark until enough regions are flushed, so flushing
+   * several of the largest regions at once shortens the time spent blocked.
+   */
+  static final String GLOBAL_PRESSURE_FLUSH_PARALLELISM_KEY =
+      "hbase.regionserver.global.memstore.flush.parallelism";
+  private static final int DEFAULT_GLOBAL_PRESSURE_FLUSH_PARALLELISM = 1;
+
   private static final float DEFAULT_MEMSTORE_SIZE = 0.4f;
   // Default lower water mark limit is 95% size of memstore size.
   private static final float DEFAULT_MEMSTORE_SIZE_LOWER_LIMIT = 0.95f;
@@ -100,6 +114,9 @@ class MemStoreFlusher implements FlushRequester {
   private final Counter updatesBlockedMsHighWater = new Counter();
 
   private final FlushHandler[] flushHandlers;
+  private final int globalPressureFlushParallelism;
+  // Flushes the regions selected along with the largest one under global pressure
+  private ExecutorService globalPressureFlushPool;
   private List<FlushRequestListener> flushRequestListeners = new ArrayList<FlushRequestListener>(1);
 
   /**
@@ -124,6 +141,8 @@ class MemStoreFlusher implements FlushRequester {
       90000);
     int handlerCount = conf.getInt("hbase.hstore.flusher.count", 1);
     this.flushHandlers = new FlushHandler[handlerCount];
+    this.globalPressureFlushParallelism = Math.max(1, conf.getInt(
+      GLOBAL_PRESSURE_FLUSH_PARALLELISM_KEY, DEFAULT_GLOBAL_PRESSURE_FLUSH_PARALLELISM));
     LOG.info("globalMemStoreLimit=" +
       StringUtils.humanReadableInt(this.globalMemStoreLimit) +
       ", globalMemStoreLimitLowMark=" +
@@ -172,7 +191,8 @@ class MemStoreFlusher implements FlushRequester {
   /**
    * The memstore across all regions has exceeded the low water mark. Pick
    * one region to flush and flush it synchronously (this is called from the
-   * flush thread)
+   * flush thread). With {@link #GLOBAL_PRESSURE_FLUSH_PARALLELISM_KEY} above one, the next
+   * largest regions needed to get below the low water mark are flushed at the same time.
    * @return true if successful
    */
   private boolean flushOneForGlobalPressure() {
@@ -223,8 +243,20 @@ class MemStoreFlusher implements FlushRequester {
 
       Preconditions.checkState(regionToFlush.memstoreSize.get() > 0);
 
+      List<Future<Boolean>> parallelFlushes = flushInParallelForGlobalPressure(regionsBySize,
+        excludedRegions, regionToFlush);
       LOG.info("Flush of region " + regionToFlush + " due to global heap pressure");
-      flushedOne = flushRegion(regionToFlush, true);
+      flushedOne = flushRegion(regionToFlush, true, true);
+      for (Future<Boolean> parallelFlush : parallelFlushes) {
+        try {
+          flushedOne |= parallelFlush.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return true;
+        } catch (ExecutionException e) {
+          LOG.warn("Parallel flush for global heap pressure failed", e.getCause());
+        }
+      }
       if (!flushedOne) {
         LOG.info("Excluding unflushable region " + regionToFlush +
           " - trying to find a different region to flush.");
@@ -292,6 +324,45 @@ class MemStoreFlusher implements FlushRequester {
   }
 
 
+  /**
+   * Starts the flushes of the next largest regions, after the one the caller flushes, needed to
+   * get the global memstore below its low water mark, up to
+   * {@link #GLOBAL_PRESSURE_FLUSH_PARALLELISM_KEY} regions in all.
+   * @return the flushes started, empty when the parallel flushes are disabled
+   */
+  private List<Future<Boolean>> flushInParallelForGlobalPressure(
+      SortedMap<Long, HRegion> regionsBySize, Set<HRegion> excludedRegions,
+      HRegion regionToFlush) {
+    List<Future<Boolean>> parallelFlushes = new ArrayList<Future<Boolean>>();
+    if (globalPressureFlushPool == null) {
+      return parallelFlushes;
+    }
+    long sizeToFree = server.getRegionServerAccounting().getGlobalMemstoreSize()
+        - globalMemStoreLimitLowMark - regionToFlush.memstoreSize.get();
+    synchronized (regionsInQueue) {
+      for (HRegion region : regionsBySize.values()) {
+        if (sizeToFree <= 0 || parallelFlushes.size() + 1 >= globalPressureFlushParallelism) {
+          break;
+        }
+        if (region == regionToFlush || excludedRegions.contains(region)
+            || region.writestate.flushing || !region.writestate.writesEnabled
+            || isTooManyStoreFiles(region) || region.memstoreSize.get() <= 0) {
+          continue;
+        }
+        sizeToFree -= region.memstoreSize.get();
+        final HRegion parallelRegion = region;
+        LOG.info("Flush of region " + parallelRegion + " due to global heap pressure, in parallel");
+        parallelFlushes.add(globalPressureFlushPool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            return flushRegion(parallelRegion, true, true);
+          }
+        }));
+      }
+    }
+    return parallelFlushes;
+  }
+
   private void wakeupFlushThread() {
     if (wakeupPending.compareAndSet(false, true)) {
       flushQueue.add(new WakeupFlushThread());
@@ -321,6 +392,14 @@ class MemStoreFlusher implements FlushRequester {
     return null;
   }
 
+  /**
+   * @return the global memstore size over its low water mark
+   */
+  double getFlushPressure() {
+    return (double) server.getRegionServerAccounting().getGlobalMemstoreSize()
+        / globalMemStoreLimitLowMark;
+  }
+
   /**
    * Return true if global memory usage is above the high watermark
    */
@@ -338,13 +417,20 @@ class MemStoreFlusher implements FlushRequester {
   }
 
   public void requestFlush(HRegion r) {
+    requestFlush(r, false);
+  }
+
+  public void requestFlush(HRegion r, boolean forceFlushAllStores) {
     synchronized (regionsInQueue) {
-      if (!regionsInQueue.containsKey(r)) {
+      FlushRegionEntry queued = regionsInQueue.get(r);
+      if (queued == null) {
         // This entry has no delay so it will be added at the top of the flush
         // queue.  It'll come out near immediately.
-        FlushRegionEntry fqe = new FlushRegionEntry(r);
+        FlushRegionEntry fqe = new FlushRegionEntry(r, forceFlushAllStores);
         this.regionsInQueue.put(r, fqe);
         this.flushQueue.add(fqe);
+      } else if (forceFlushAllStores) {
+        queued.forceFlushAllStores();
       }
     }
   }
@@ -353,7 +439,7 @@ class MemStoreFlusher implements FlushRequester {
     synchronized (regionsInQueue) {
       if (!regionsInQueue.containsKey(r)) {
         // This entry has some delay
-        FlushRegionEntry fqe = new FlushRegionEntry(r);
+        FlushRegionEntry fqe = new FlushRegionEntry(r, false);
         fqe.requeue(delay);
         this.regionsInQueue.put(r, fqe);
         this.flushQueue.add(fqe);
@@ -387,6 +473,11 @@ class MemStoreFlusher implements FlushRequester {
       flusherThreadFactory.newThread(flushHandlers[i]);
       flushHandlers[i].start();
     }
+    if (globalPressureFlushParallelism > 1) {
+      globalPressureFlushPool = Executors.newFixedThreadPool(globalPressureFlushParallelism - 1,
+        Threads.newDaemonThreadFactory(server.getServerName().toShortString()
+            + "-MemStoreFlusher.globalPressure", eh));
+    }
   }
 
   boolean isAlive() {
@@ -404,6 +495,9 @@ class MemStoreFlusher implements FlushRequester {
         Threads.shutdown(flushHander.getThread());
       }
     }
+    if (globalPressureFlushPool != null) {
+      globalPressureFlushPool.shutdownNow();
+    }
   }
 
   /*
@@ -448,7 +542,7 @@ class MemStoreFlusher implements FlushRequester {
         return true;
       }
     }
-    return flushRegion(region, false);
+    return flushRegion(region, false, fqe.isForceFlushAllStores());
   }
 
   /*
@@ -458,12 +552,15 @@ class MemStoreFlusher implements FlushRequester {
    * needs to be removed from the flush queue. If false, when we were called
    * from the main flusher run loop and we got the entry to flush by calling
    * poll on the flush queue (which removed it).
+   * @param forceFlushAllStores whether to flush all the stores of the region, rather than the
+   * ones selected by its flush policy
    *
    * @return true if the region was successfully flushed, false otherwise. If
    * false, there will be accompanying log messages explaining why the log was
    * not flushed.
    */
-  private boolean flushRegion(final HRegion region, final boolean emergencyFlush) {
+  private boolean flushRegion(final HRegion region, final boolean emergencyFlush,
+      boolean forceFlushAllStores) {
     synchronized (this.regionsInQueue) {
       FlushRegionEntry fqe = this.regionsInQueue.remove(region);
       if (fqe != null && emergencyFlush) {
@@ -475,7 +572,7 @@ class MemStoreFlusher implements FlushRequester {
     lock.readLock().lock();
     try {
       notifyFlushRequest(region, emergencyFlush);
-      boolean shouldCompact = region.flushcache();
+      boolean shouldCompact = region.flushcache(forceFlushAllStores);
       // We just want to check the size
       boolean shouldSplit = region.checkSplit() != null;
       if (shouldSplit) {
@@ -680,11 +777,28 @@ class MemStoreFlusher implements FlushRequester {
     private final long createTime;
     private long whenToExpire;
     private int requeueCount = 0;
+    private volatile boolean forceFlushAllStores;
 
-    FlushRegionEntry(final HRegion r) {
+    FlushRegionEntry(final HRegion r, boolean forceFlushAllStores) {
       this.region = r;
       this.createTime = EnvironmentEdgeManager.currentTimeMillis();
       this.whenToExpire = this.createTime;
+      this.forceFlushAllStores = forceFlushAllStores;
+    }
+
+    /**
+     * @return whether all the stores of the region must be flushed
+     */
+    public boolean isForceFlushAllStores() {
+      return this.forceFlushAllStores;
+    }
+
+    /**
+     * Makes the flush of this entry cover all the stores of the region, e.g. when a WAL
+     * roll asks for the flush of a region already queued for a flush of its large stores.
+     */
+    void forceFlushAllStores() {
+      this.forceFlushAllStores = true;
     }
 
     /**
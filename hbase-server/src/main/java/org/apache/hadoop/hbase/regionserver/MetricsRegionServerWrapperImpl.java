@@ -32,6 +32,7 @@ import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
 import org.apache.hadoop.metrics2.MetricsExecutor;
@@ -48,6 +49,7 @@ class MetricsRegionServerWrapperImpl
   private final HRegionServer regionServer;
 
   private BlockCache blockCache;
+  private final RowCache rowCache;
 
   private volatile long numStores = 0;
   private volatile long numHLogFiles = 0;
@@ -66,6 +68,9 @@ class MetricsRegionServerWrapperImpl
   private volatile long numMutationsWithoutWAL = 0;
   private volatile long dataInMemoryWithoutWAL = 0;
   private volatile int percentFileLocal = 0;
+  private volatile long deletedCellsSkippedCount = 0;
+  private volatile long deletedCellsSkippedPerScan = 0;
+  private volatile long blockedRequestsCount = 0;
 
   private CacheStats cacheStats;
   private ScheduledExecutorService executor;
@@ -75,6 +80,7 @@ class MetricsRegionServerWrapperImpl
   public MetricsRegionServerWrapperImpl(final HRegionServer regionServer) {
     this.regionServer = regionServer;
     initBlockCache();
+    this.rowCache = RowCache.instantiate(regionServer.conf);
 
     this.period =
         regionServer.conf.getLong(HConstants.REGIONSERVER_METRICS_PERIOD,
@@ -257,6 +263,54 @@ class MetricsRegionServerWrapperImpl
     return (int) (this.cacheStats.getHitCachingRatio() * 100);
   }
 
+  @Override
+  public long getRowCacheSize() {
+    return this.rowCache == null ? 0 : this.rowCache.getSize();
+  }
+
+  @Override
+  public long getRowCacheCount() {
+    return this.rowCache == null ? 0 : this.rowCache.getCount();
+  }
+
+  @Override
+  public long getRowCacheHitCount() {
+    return this.rowCache == null ? 0 : this.rowCache.getHitCount();
+  }
+
+  @Override
+  public long getRowCacheMissCount() {
+    return this.rowCache == null ? 0 : this.rowCache.getMissCount();
+  }
+
+  @Override
+  public long getRowCacheEvictedCount() {
+    return this.rowCache == null ? 0 : this.rowCache.getEvictedCount();
+  }
+
+  @Override
+  public long getCompactionThrottledTime() {
+    CompactSplitThread compactSplitThread = this.regionServer.compactSplitThread;
+    return compactSplitThread == null ? 0
+        : compactSplitThread.getCompactionThroughputController().getThrottledTime();
+  }
+
+  @Override
+  public long getFlushThrottledTime() {
+    ThroughputController controller = this.regionServer.getFlushThroughputController();
+    return controller == null ? 0 : controller.getThrottledTime();
+  }
+
+  @Override
+  public long getDeletedCellsSkippedCount() {
+    return deletedCellsSkippedCount;
+  }
+
+  @Override
+  public long getDeletedCellsSkippedPerScan() {
+    return deletedCellsSkippedPerScan;
+  }
+
   @Override public void forceRecompute() {
     this.runnable.run();
   }
@@ -353,6 +407,11 @@ class MetricsRegionServerWrapperImpl
     return this.regionServer.cacheFlusher.getUpdatesBlockedMsHighWater().get();
   }
 
+  @Override
+  public long getBlockedRequestsCount() {
+    return blockedRequestsCount;
+  }
+
 
   /**
    * This is the runnable that will be executed on the executor every PERIOD number of seconds
@@ -386,6 +445,9 @@ class MetricsRegionServerWrapperImpl
       long tempNumMutationsWithoutWAL = 0;
       long tempDataInMemoryWithoutWAL = 0;
       int tempPercentFileLocal = 0;
+      long tempDeletedCellsSkippedCount = 0;
+      long tempUserScanCount = 0;
+      long tempBlockedRequestsCount = 0;
 
 
       for (HRegion r : regionServer.getOnlineRegionsLocalContext()) {
@@ -395,6 +457,7 @@ class MetricsRegionServerWrapperImpl
         tempWriteRequestsCount += r.writeRequestsCount.get();
         tempCheckAndMutateChecksFailed += r.checkAndMutateChecksFailed.get();
         tempCheckAndMutateChecksPassed += r.checkAndMutateChecksPassed.get();
+        tempBlockedRequestsCount += r.getBlockedRequestsCount();
         tempNumStores += r.stores.size();
         for (Store store : r.stores.values()) {
           tempNumStoreFiles += store.getStorefilesCount();
@@ -403,6 +466,8 @@ class MetricsRegionServerWrapperImpl
           tempStorefileIndexSize += store.getStorefilesIndexSize();
           tempTotalStaticBloomSize += store.getTotalStaticBloomSize();
           tempTotalStaticIndexSize += store.getTotalStaticIndexSize();
+          tempDeletedCellsSkippedCount += store.getDeletedCellsSkippedCount();
+          tempUserScanCount += store.getUserScanCount();
         }
 
         hdfsBlocksDistribution.add(r.getHDFSBlocksDistribution());
@@ -457,7 +522,11 @@ class MetricsRegionServerWrapperImpl
       totalStaticIndexSize = tempTotalStaticIndexSize;
       totalStaticBloomSize = tempTotalStaticBloomSize;
       numMutationsWithoutWAL = tempNumMutationsWithoutWAL;
+      deletedCellsSkippedCount = tempDeletedCellsSkippedCount;
+      deletedCellsSkippedPerScan = tempUserScanCount == 0 ? 0
+          : tempDeletedCellsSkippedCount / tempUserScanCount;
       dataInMemoryWithoutWAL = tempDataInMemoryWithoutWAL;
+      blockedRequestsCount = tempBlockedRequestsCount;
       percentFileLocal = tempPercentFileLocal;
     }
   }
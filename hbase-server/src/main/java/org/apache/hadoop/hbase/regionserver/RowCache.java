@@ -0,0 +1,338 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.util.StringUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Region server wide cache of the results of simple Gets, so that repeated
+ * point reads of hot rows don't go through the scanner machinery.
+ * <p>
+ * Entries are keyed by region, row and the set of families read. Each entry
+ * carries the stamp of its row at the time the Get started; the write paths of
+ * {@link HRegion} bump the stamp of a row once a mutation of it is visible,
+ * which invalidates all cached results of the row. Stamps are kept in a fixed
+ * array indexed by a hash of region and row, so a collision only causes a
+ * spurious miss. Flushes, compactions, bulk loads and closes invalidate a whole
+ * region by moving the region to a new generation, which is part of the key.
+ * <p>
+ * Only Gets of whole families, without filter, time range or version and
+ * pagination limits, of families without TTL, are cached.
+ */
+@InterfaceAudience.Private
+public class RowCache {
+  static final Log LOG = LogFactory.getLog(RowCache.class);
+
+  /**
+   * Size of the row cache, a fraction of the maximum heap if smaller than 1,
+   * otherwise in megabytes. The row cache is disabled when 0.
+   */
+  public static final String ROW_CACHE_SIZE_KEY = "hbase.rowcache.size";
+  public static final float DEFAULT_ROW_CACHE_SIZE = 0f;
+  /** Number of row stamps, rounded up to a power of two */
+  public static final String ROW_CACHE_STAMPS_KEY = "hbase.rowcache.stamps";
+  public static final int DEFAULT_ROW_CACHE_STAMPS = 1 << 16;
+  /**
+   * Per table switch, set in the table descriptor to keep the Gets of a table
+   * out of the row cache.
+   */
+  public static final String ROW_CACHE_ENABLED_KEY = "hbase.rowcache.enabled";
+
+  /** The region server wide row cache, null if not instantiated */
+  private static RowCache globalRowCache;
+
+  private static final AtomicLong generations = new AtomicLong(0);
+
+  private final Cache<RowCacheKey, CachedRow> cache;
+  private final AtomicLongArray stamps;
+  private final int stampMask;
+  private final long maxSize;
+
+  private final AtomicLong size = new AtomicLong(0);
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong evictedCount = new AtomicLong(0);
+
+  /**
+   * @param maxSize maximum heap size of the cached results, in bytes
+   * @param numStamps number of row stamps
+   */
+  public RowCache(long maxSize, int numStamps) {
+    int n = Integer.highestOneBit(Math.max(numStamps, 1) - 1) << 1;
+    this.stamps = new AtomicLongArray(Math.max(n, 1));
+    this.stampMask = stamps.length() - 1;
+    this.maxSize = maxSize;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxSize)
+        .weigher(new Weigher<RowCacheKey, CachedRow>() {
+          @Override
+          public int weigh(RowCacheKey key, CachedRow row) {
+            return (int) Math.min(Integer.MAX_VALUE, key.heapSize + row.heapSize);
+          }
+        })
+        .removalListener(new RemovalListener<RowCacheKey, CachedRow>() {
+          @Override
+          public void onRemoval(RemovalNotification<RowCacheKey, CachedRow> notification) {
+            size.addAndGet(-(notification.getKey().heapSize + notification.getValue().heapSize));
+            if (notification.getCause() == RemovalCause.SIZE) {
+              evictedCount.incrementAndGet();
+            }
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Returns the region server wide row cache, creating it on first use.
+   * @param conf configuration
+   * @return the row cache, or null if disabled
+   */
+  public static synchronized RowCache instantiate(Configuration conf) {
+    if (globalRowCache != null) return globalRowCache;
+    float cacheSize = conf.getFloat(ROW_CACHE_SIZE_KEY, DEFAULT_ROW_CACHE_SIZE);
+    if (cacheSize <= 0) return null;
+    long maxSize = (long) (cacheSize < 1
+        ? ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax() * cacheSize
+        : cacheSize * 1024 * 1024);
+    LOG.info("Allocating row cache with maximum size " + StringUtils.humanReadableInt(maxSize));
+    globalRowCache = new RowCache(maxSize,
+        conf.getInt(ROW_CACHE_STAMPS_KEY, DEFAULT_ROW_CACHE_STAMPS));
+    return globalRowCache;
+  }
+
+  /**
+   * @return a generation never returned before, for a region to tag its
+   * entries with
+   */
+  public static long nextGeneration() {
+    return generations.incrementAndGet();
+  }
+
+  /**
+   * @param get the Get, after the coprocessors have seen it
+   * @param htd descriptor of the table read
+   * @return true if the results of the Get may be cached
+   */
+  public static boolean isCacheable(Get get, HTableDescriptor htd) {
+    if (get.getFilter() != null || get.getMaxVersions() != 1
+        || !get.getTimeRange().isAllTime() || get.getMaxResultsPerColumnFamily() >= 0
+        || get.getRowOffsetPerColumnFamily() > 0 || !get.getCacheBlocks()
+        || get.isClosestRowBefore()) {
+      return false;
+    }
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : get.getFamilyMap().entrySet()) {
+      if (entry.getValue() != null && !entry.getValue().isEmpty()) return false;
+      HColumnDescriptor family = htd.getFamily(entry.getKey());
+      if (family == null || family.getTimeToLive() != HConstants.FOREVER) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the current stamp of a row. Must be read before the Get creates
+   * its scanner, so that any later visible mutation changes it.
+   */
+  public long getStamp(byte[] regionName, byte[] row) {
+    return stamps.get(stampIndex(regionName, row));
+  }
+
+  /**
+   * Invalidates the cached results of a row. Must be called once the mutation
+   * is visible to readers.
+   */
+  public void invalidateRow(byte[] regionName, byte[] row) {
+    stamps.incrementAndGet(stampIndex(regionName, row));
+  }
+
+  /**
+   * @return the cached cells of the Get, or null on a miss
+   */
+  public List<Cell> getRow(byte[] regionName, long generation, Get get) {
+    RowCacheKey key = new RowCacheKey(regionName, generation, get);
+    CachedRow cached = cache.getIfPresent(key);
+    if (cached != null) {
+      if (cached.stamp == getStamp(regionName, key.row)) {
+        hitCount.incrementAndGet();
+        return new ArrayList<Cell>(Arrays.asList(cached.cells));
+      }
+      cache.invalidate(key);
+    }
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Caches the results of a Get.
+   * @param stamp stamp of the row read before the Get started
+   */
+  public void cacheRow(byte[] regionName, long generation, Get get, List<Cell> results,
+      long stamp) {
+    RowCacheKey key = new RowCacheKey(regionName, generation, get);
+    if (stamp != getStamp(regionName, key.row)) return;
+    // Copy the cells, they may point into much larger block buffers
+    long heapSize = ClassSize.OBJECT + ClassSize.REFERENCE + Bytes.SIZEOF_LONG
+        + ClassSize.ARRAY;
+    Cell[] cells = new Cell[results.size()];
+    for (int i = 0; i < cells.length; i++) {
+      KeyValue kv = KeyValueUtil.copyToNewKeyValue(results.get(i));
+      heapSize += ClassSize.REFERENCE + kv.heapSize();
+      cells[i] = kv;
+    }
+    CachedRow row = new CachedRow(cells, stamp, ClassSize.align(heapSize));
+    size.addAndGet(key.heapSize + row.heapSize);
+    cache.put(key, row);
+  }
+
+  private int stampIndex(byte[] regionName, byte[] row) {
+    int h = Bytes.hashCode(regionName) * 31 + Bytes.hashCode(row);
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h & stampMask;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return heap size of the cached results
+   */
+  public long getSize() {
+    return size.get();
+  }
+
+  public long getCount() {
+    return cache.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return number of results dropped to keep the cache within its size
+   */
+  public long getEvictedCount() {
+    return evictedCount.get();
+  }
+
+  /**
+   * Drops all cached results.
+   */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  private static class CachedRow {
+    final Cell[] cells;
+    final long stamp;
+    final long heapSize;
+
+    CachedRow(Cell[] cells, long stamp, long heapSize) {
+      this.cells = cells;
+      this.stamp = stamp;
+      this.heapSize = heapSize;
+    }
+  }
+
+  private static class RowCacheKey {
+    final byte[] regionName;
+    final long generation;
+    final byte[] row;
+    final byte[][] families;
+    final int hashCode;
+    final long heapSize;
+
+    RowCacheKey(byte[] regionName, long generation, Get get) {
+      this.regionName = regionName;
+      this.generation = generation;
+      this.row = get.getRow();
+      // The family map of a Get is sorted
+      this.families = get.getFamilyMap().keySet().toArray(new byte[0][]);
+      int h = Bytes.hashCode(regionName);
+      h = 31 * h + (int) (generation ^ (generation >>> 32));
+      h = 31 * h + Bytes.hashCode(row);
+      long familiesSize = ClassSize.ARRAY;
+      for (byte[] family : families) {
+        h = 31 * h + Bytes.hashCode(family);
+        familiesSize += ClassSize.REFERENCE + ClassSize.ARRAY + family.length;
+      }
+      this.hashCode = h;
+      // The region name is shared with the region
+      this.heapSize = ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE
+          + Bytes.SIZEOF_LONG * 2 + Bytes.SIZEOF_INT + ClassSize.ARRAY + row.length
+          + familiesSize);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof RowCacheKey)) return false;
+      RowCacheKey that = (RowCacheKey) obj;
+      if (hashCode != that.hashCode || generation != that.generation
+          || families.length != that.families.length
+          || !Bytes.equals(row, that.row) || !Bytes.equals(regionName, that.regionName)) {
+        return false;
+      }
+      for (int i = 0; i < families.length; i++) {
+        if (!Bytes.equals(families[i], that.families[i])) return false;
+      }
+      return true;
+    }
+  }
+}
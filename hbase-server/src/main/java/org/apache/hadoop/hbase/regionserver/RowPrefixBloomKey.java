@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Derives the key of a {@link BloomType#ROWPREFIX} Bloom filter from a row.
+ * The prefix is either the first <code>prefix_length</code> bytes of the row,
+ * or the row up to and including the first occurrence of a delimiter. Rows
+ * which are shorter than the prefix length or have no delimiter are their
+ * own key.
+ * <p>
+ * The delimiter is part of the key so that the keys of sorted rows are
+ * sorted too, as compound Bloom filters require. For example with the
+ * delimiter <code>|</code>, <code>a0</code> sorts before <code>a|z</code>,
+ * but <code>a</code> would sort before <code>a0</code>.
+ * <p>
+ * The prefix is set in the column family configuration when the file is
+ * written, and saved in the file info, so that readers use the prefix the
+ * file was written with.
+ */
+@InterfaceAudience.Private
+public class RowPrefixBloomKey {
+
+  /** Column family configuration key of the fixed prefix length */
+  public static final String PREFIX_LENGTH_KEY = "RowPrefixBloomFilter.prefix_length";
+
+  /** Column family configuration key of the prefix delimiter */
+  public static final String DELIMITER_KEY = "RowPrefixBloomFilter.delimiter";
+
+  /** File info keys */
+  static final byte[] BLOOM_PREFIX_LENGTH_KEY = Bytes.toBytes("BLOOM_PREFIX_LENGTH");
+  static final byte[] BLOOM_PREFIX_DELIMITER_KEY = Bytes.toBytes("BLOOM_PREFIX_DELIMITER");
+
+  private final int prefixLength;
+  private final byte[] delimiter;
+
+  RowPrefixBloomKey(int prefixLength, byte[] delimiter) {
+    if ((prefixLength > 0) == (delimiter != null)) {
+      throw new IllegalArgumentException("Exactly one of " + PREFIX_LENGTH_KEY
+          + " and " + DELIMITER_KEY + " must be set for "
+          + BloomType.ROWPREFIX + " Bloom filters");
+    }
+    if (delimiter != null && delimiter.length == 0) {
+      throw new IllegalArgumentException(DELIMITER_KEY + " must not be empty");
+    }
+    this.prefixLength = prefixLength;
+    this.delimiter = delimiter;
+  }
+
+  /**
+   * @param conf the store configuration, which includes the column family
+   *          configuration
+   * @return the prefix set in the configuration
+   * @throws IllegalArgumentException if the prefix is not or badly set
+   */
+  public static RowPrefixBloomKey fromConf(Configuration conf) {
+    int prefixLength = conf.getInt(PREFIX_LENGTH_KEY, 0);
+    if (prefixLength < 0) {
+      throw new IllegalArgumentException(PREFIX_LENGTH_KEY + " must be positive: "
+          + prefixLength);
+    }
+    String delimiter = conf.get(DELIMITER_KEY);
+    return new RowPrefixBloomKey(prefixLength,
+        delimiter == null ? null : Bytes.toBytes(delimiter));
+  }
+
+  /**
+   * @param fileInfo the file info of a store file
+   * @return the prefix the file was written with
+   * @throws IOException if the file info does not define the prefix
+   */
+  static RowPrefixBloomKey fromFileInfo(Map<byte[], byte[]> fileInfo)
+      throws IOException {
+    byte[] length = fileInfo.get(BLOOM_PREFIX_LENGTH_KEY);
+    try {
+      return new RowPrefixBloomKey(length == null ? 0 : Bytes.toInt(length),
+          fileInfo.get(BLOOM_PREFIX_DELIMITER_KEY));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Bad row prefix Bloom filter file info", e);
+    }
+  }
+
+  /**
+   * Saves the prefix in the file info of the given store file.
+   */
+  void appendFileInfo(StoreFile.Writer writer) throws IOException {
+    if (delimiter != null) {
+      writer.appendFileInfo(BLOOM_PREFIX_DELIMITER_KEY, delimiter);
+    } else {
+      writer.appendFileInfo(BLOOM_PREFIX_LENGTH_KEY, Bytes.toBytes(prefixLength));
+    }
+  }
+
+  /**
+   * @return the length of the Bloom key of the given row, which starts at the
+   *         row offset
+   */
+  public int getKeyLength(byte[] row, int offset, int length) {
+    int prefix = getPrefixLength(row, offset, length);
+    return prefix < 0 ? length : prefix;
+  }
+
+  /**
+   * @return the length of the full prefix of the given row, or -1 if the row
+   *         is too short or does not contain the delimiter
+   */
+  private int getPrefixLength(byte[] row, int offset, int length) {
+    if (delimiter == null) {
+      return length >= prefixLength ? prefixLength : -1;
+    }
+    int last = offset + length - delimiter.length;
+    for (int i = offset; i <= last; i++) {
+      if (Bytes.equals(row, i, delimiter.length, delimiter, 0, delimiter.length)) {
+        return i - offset + delimiter.length;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the Bloom key shared by all the rows of a scan, if any. This is
+   * the case for gets, and for scans which start with a full prefix and stop
+   * at or before the end of the rows with that prefix.
+   *
+   * @param scan the scan
+   * @return the Bloom key, or null if the rows of the scan can have different
+   *         keys
+   */
+  public byte[] getScanKey(Scan scan) {
+    byte[] startRow = scan.getStartRow();
+    if (scan.isGetScan()) {
+      return Bytes.head(startRow, getKeyLength(startRow, 0, startRow.length));
+    }
+    if (scan.isReversed()) {
+      return null;
+    }
+    int prefix = getPrefixLength(startRow, 0, startRow.length);
+    byte[] stopRow = scan.getStopRow();
+    if (prefix < 0 || stopRow.length == 0) {
+      return null;
+    }
+    byte[] key = Bytes.head(startRow, prefix);
+    // All rows with the full prefix are in [key, next), where next is the
+    // first row after the rows starting with the key
+    if (Bytes.startsWith(stopRow, key)) {
+      return key;
+    }
+    byte[] next = nextRowAfterPrefix(key);
+    return next != null && Bytes.compareTo(stopRow, next) <= 0 ? key : null;
+  }
+
+  /**
+   * @return the first row which does not start with the given prefix and
+   *         sorts after it, or null if there is none
+   */
+  private static byte[] nextRowAfterPrefix(byte[] prefix) {
+    for (int i = prefix.length - 1; i >= 0; i--) {
+      if (prefix[i] != (byte) 0xff) {
+        byte[] next = Bytes.head(prefix, i + 1);
+        next[i]++;
+        return next;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return delimiter != null
+        ? "delimiter=" + Bytes.toStringBinary(delimiter)
+        : "prefixLength=" + prefixLength;
+  }
+}
@@ -80,6 +80,9 @@ public class ScanQueryMatcher {
   /** Keeps track of columns and versions */
   private final ColumnTracker columns;
 
+  /** The columns of an explicit column query, null for a wildcard one */
+  private final NavigableSet<byte[]> explicitColumns;
+
   /** Key to seek to in memstore and StoreFiles */
   private final Cell startKey;
 
@@ -134,6 +137,9 @@ public class ScanQueryMatcher {
   
   private final boolean isUserScan;
 
+  /** Number of delete markers and deleted cells matched */
+  private long deletedCellsSkipped = 0;
+
   private final boolean isReversed;
 
   /**
@@ -181,6 +187,7 @@ public class ScanQueryMatcher {
       // use a specialized scan for wildcard column tracker.
       this.columns = new ScanWildcardColumnTracker(
           scanInfo.getMinVersions(), maxVersions, oldestUnexpiredTS);
+      this.explicitColumns = null;
     } else {
       // whether there is null column in the explicit column query
       hasNullColumn = (columns.first().length == 0);
@@ -190,6 +197,7 @@ public class ScanQueryMatcher {
       byte[] attr = scan.getAttribute(Scan.HINT_LOOKAHEAD);
       this.columns = new ExplicitColumnTracker(columns, scanInfo.getMinVersions(), maxVersions,
           oldestUnexpiredTS, attr == null ? 0 : Bytes.toInt(attr));
+      this.explicitColumns = columns;
     }
     this.isReversed = scan.isReversed();
   }
@@ -233,6 +241,29 @@ public class ScanQueryMatcher {
     return hasNullColumn;
   }
 
+  /**
+   * @return the columns of a forward user scan which reads explicit columns,
+   *         whose store files may skip the other columns, or null
+   */
+  public NavigableSet<byte[]> getExplicitColumns() {
+    return isUserScan && !isReversed ? explicitColumns : null;
+  }
+
+  /**
+   * @return whether this matcher is for a user scan rather than a flush or a compaction
+   */
+  public boolean isUserScan() {
+    return isUserScan;
+  }
+
+  /**
+   * @return number of delete markers and deleted cells matched so far. A deleted column or
+   *         family is counted once, however many of its cells the scanner seeks past.
+   */
+  public long getDeletedCellsSkipped() {
+    return deletedCellsSkipped;
+  }
+
   /**
    * Determines if the caller should do one of several things:
    * - seek/skip to the next row (MatchCode.SEEK_NEXT_ROW)
@@ -344,6 +375,7 @@ public class ScanQueryMatcher {
         // else: fall through and do version counting on the
         // delete markers
       } else {
+        deletedCellsSkipped++;
         return MatchCode.SKIP;
       }
       // note the following next else if...
@@ -354,10 +386,12 @@ public class ScanQueryMatcher {
       switch (deleteResult) {
         case FAMILY_DELETED:
         case COLUMN_DELETED:
+          deletedCellsSkipped++;
           return columns.getNextRowOrNextColumn(cell.getQualifierArray(),
               qualifierOffset, qualifierLength);
         case VERSION_DELETED:
         case FAMILY_VERSION_DELETED:
+          deletedCellsSkipped++;
           return MatchCode.SKIP;
         case NOT_DELETED:
           break;
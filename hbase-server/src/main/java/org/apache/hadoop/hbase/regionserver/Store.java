@@ -40,6 +40,7 @@ import org.apache.hadoop.hbase.protobuf.generated.WALProtos.CompactionDescriptor
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionProgress;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 
 /**
  * Interface for objects that hold a column family in a Region. Its a memstore and a set of zero or
@@ -188,6 +189,15 @@ public interface Store extends HeapSize, StoreConfigInformation {
 
   List<StoreFile> compact(CompactionContext compaction) throws IOException;
 
+  /**
+   * Runs the compaction, letting the given controller limit its throughput.
+   * @param compaction compaction details obtained from requestCompaction()
+   * @param throughputController the compaction throughput controller
+   * @return Storefile we compacted into or null if we failed or opted out early.
+   */
+  List<StoreFile> compact(CompactionContext compaction,
+      ThroughputController throughputController) throws IOException;
+
   /**
    * @return true if we should run a major compaction.
    */
@@ -195,6 +205,19 @@ public interface Store extends HeapSize, StoreConfigInformation {
 
   void triggerMajorCompaction();
 
+  /**
+   * @return The directory where compactions of all the files of this store checkpoint their
+   *         completed output files
+   */
+  Path getCompactionCheckpointDir();
+
+  /**
+   * @return true if a compaction of all the files of this store was interrupted after
+   *         checkpointing part of its output, and can resume from there; always false when
+   *         compactions do not checkpoint their output
+   */
+  boolean hasCompactionCheckpoint() throws IOException;
+
   /**
    * See if there's too much store files in this store
    * @return true if number of store files is greater than the number defined in minFilesToCompact
@@ -203,6 +226,41 @@ public interface Store extends HeapSize, StoreConfigInformation {
 
   int getCompactPriority();
 
+  /**
+   * @return the compaction pressure of this store: 0.0 when it has no more files than a minor
+   *         compaction needs, 1.0 when it has as many files as blocks updates, and more beyond.
+   */
+  double getCompactionPressure();
+
+  /**
+   * Records a user read of this store, for {@link #getReadAmplificationScore()}.
+   * @param storeFilesRead number of store files the read has to look at
+   */
+  void updateReadAmplification(int storeFilesRead);
+
+  /**
+   * @return the read request rate of this store since its last compaction times the average
+   *         number of store files a read looks at, i.e. the store files read per second. The
+   *         stores with the highest score gain the most from being compacted.
+   */
+  double getReadAmplificationScore();
+
+  /**
+   * Records the delete markers and deleted cells a user scan of this store skipped.
+   * @param deletedCellsSkipped see {@link ScanQueryMatcher#getDeletedCellsSkipped()}
+   */
+  void updateDeletedCellsSkipped(long deletedCellsSkipped);
+
+  /**
+   * @return number of delete markers and deleted cells skipped by user scans of this store
+   */
+  long getDeletedCellsSkippedCount();
+
+  /**
+   * @return number of user scans of this store, including gets
+   */
+  long getUserScanCount();
+
   StoreFlushContext createFlushContext(long cacheFlushId);
 
   /**
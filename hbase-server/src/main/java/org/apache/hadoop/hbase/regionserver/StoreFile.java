@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -102,6 +103,9 @@ public class StoreFile {
   public static final byte[] DELETE_FAMILY_COUNT =
       Bytes.toBytes("DELETE_FAMILY_COUNT");
 
+  /** Delete marker count, of all the delete types, in FileInfo */
+  public static final byte[] DELETE_COUNT = Bytes.toBytes("DELETE_COUNT");
+
   /** Last Bloom filter key in FileInfo */
   private static final byte[] LAST_BLOOM_KEY = Bytes.toBytes("LAST_BLOOM_KEY");
 
@@ -111,6 +115,10 @@ public class StoreFile {
   /** Key for timestamp of earliest-put in metadata*/
   public static final byte[] EARLIEST_PUT_TS = Bytes.toBytes("EARLIEST_PUT_TS");
 
+  /** Key for the value ranges of the tracked columns in metadata */
+  public static final byte[] COLUMN_VALUE_RANGES_KEY =
+      Bytes.toBytes("COLUMN_VALUE_RANGES");
+
   private final StoreFileInfo fileInfo;
   private final FileSystem fs;
 
@@ -161,6 +169,12 @@ public class StoreFile {
    */
   private final BloomType cfBloomType;
 
+  /**
+   * Whether the table or column family declares its rows written once, so that
+   * the value ranges of the file can be used to skip it.
+   */
+  private final boolean columnValueRangePruning;
+
   // the last modification time stamp
   private long modificationTimeStamp = 0L;
 
@@ -213,6 +227,7 @@ public class StoreFile {
           "cfBloomType=" + cfBloomType + " (disabled in config)");
       this.cfBloomType = BloomType.NONE;
     }
+    this.columnValueRangePruning = ColumnValueRangeTracker.isPruningEnabled(conf);
 
     // cache the modification time stamp of this store file
     this.modificationTimeStamp = fileInfo.getModificationTime();
@@ -439,6 +454,18 @@ public class StoreFile {
           "proceeding without", e);
       this.reader.timeRangeTracker = null;
     }
+
+    try {
+      byte[] rangesBytes = metadataMap.get(COLUMN_VALUE_RANGES_KEY);
+      if (rangesBytes != null && columnValueRangePruning) {
+        this.reader.columnValueRangeTracker = new ColumnValueRangeTracker();
+        Writables.copyWritable(rangesBytes, this.reader.columnValueRangeTracker);
+      }
+    } catch (IllegalArgumentException e) {
+      LOG.error("Error reading column value ranges from meta -- " +
+          "proceeding without", e);
+      this.reader.columnValueRangeTracker = null;
+    }
     return this.reader;
   }
 
@@ -686,6 +713,7 @@ public class StoreFile {
     private final BloomFilterWriter generalBloomFilterWriter;
     private final BloomFilterWriter deleteFamilyBloomFilterWriter;
     private final BloomType bloomType;
+    private final RowPrefixBloomKey rowPrefix;
     private byte[] lastBloomKey;
     private int lastBloomKeyOffset, lastBloomKeyLen;
     private KVComparator kvComparator;
@@ -693,6 +721,7 @@ public class StoreFile {
     private long earliestPutTs = HConstants.LATEST_TIMESTAMP;
     private KeyValue lastDeleteFamilyKV = null;
     private long deleteFamilyCnt = 0;
+    private long deleteCnt = 0;
 
 
     /** Checksum type */
@@ -710,6 +739,9 @@ public class StoreFile {
      * the appended KeyValues*/
     boolean isTimeRangeTrackerSet = false;
 
+    /* Value ranges of the columns the family declares, null if none */
+    private final ColumnValueRangeTracker columnValueRangeTracker;
+
     protected HFile.Writer writer;
 
     /**
@@ -739,6 +771,17 @@ public class StoreFile {
           .create();
 
       this.kvComparator = comparator;
+      this.columnValueRangeTracker = ColumnValueRangeTracker.fromConf(conf);
+
+      RowPrefixBloomKey rowPrefix = null;
+      if (bloomType == BloomType.ROWPREFIX) {
+        try {
+          rowPrefix = RowPrefixBloomKey.fromConf(conf);
+        } catch (IllegalArgumentException e) {
+          LOG.warn("Not writing a row prefix Bloom filter for " + path, e);
+          bloomType = BloomType.NONE;
+        }
+      }
 
       generalBloomFilterWriter = BloomFilterFactory.createGeneralBloomAtWrite(
           conf, cacheConf, bloomType,
@@ -746,11 +789,13 @@ public class StoreFile {
 
       if (generalBloomFilterWriter != null) {
         this.bloomType = bloomType;
+        this.rowPrefix = rowPrefix;
         if (LOG.isTraceEnabled()) LOG.trace("Bloom filter type for " + path + ": " +
           this.bloomType + ", " + generalBloomFilterWriter.getClass().getSimpleName());
       } else {
         // Not using Bloom filters.
         this.bloomType = BloomType.NONE;
+        this.rowPrefix = null;
       }
 
       // initialize delete family Bloom filter when there is NO RowCol Bloom
@@ -828,12 +873,18 @@ public class StoreFile {
           case ROWCOL:
             newKey = ! kvComparator.matchingRowColumn(kv, lastKv);
             break;
+          case ROWPREFIX:
+            newKey = ! Bytes.equals(kv.getRowArray(), kv.getRowOffset(),
+                rowPrefix.getKeyLength(kv.getRowArray(), kv.getRowOffset(),
+                    kv.getRowLength()),
+                lastBloomKey, lastBloomKeyOffset, lastBloomKeyLen);
+            break;
           case NONE:
             newKey = false;
             break;
           default:
             throw new IOException("Invalid Bloom filter type: " + bloomType +
-                " (ROW or ROWCOL expected)");
+                " (ROW, ROWCOL or ROWPREFIX expected)");
           }
         }
         if (newKey) {
@@ -841,9 +892,10 @@ public class StoreFile {
            * http://2.bp.blogspot.com/_Cib_A77V54U/StZMrzaKufI/AAAAAAAAADo/ZhK7bGoJdMQ/s400/KeyValue.png
            * Key = RowLen + Row + FamilyLen + Column [Family + Qualifier] + TimeStamp
            *
-           * 2 Types of Filtering:
+           * 3 Types of Filtering:
            *  1. Row = Row
            *  2. RowCol = Row + Qualifier
+           *  3. RowPrefix = prefix of Row
            */
           byte[] bloomKey;
           int bloomKeyOffset, bloomKeyLen;
@@ -864,9 +916,15 @@ public class StoreFile {
             bloomKeyOffset = 0;
             bloomKeyLen = bloomKey.length;
             break;
+          case ROWPREFIX:
+            bloomKey = kv.getRowArray();
+            bloomKeyOffset = kv.getRowOffset();
+            bloomKeyLen = rowPrefix.getKeyLength(bloomKey, bloomKeyOffset,
+                kv.getRowLength());
+            break;
           default:
             throw new IOException("Invalid Bloom filter type: " + bloomType +
-                " (ROW or ROWCOL expected)");
+                " (ROW, ROWCOL or ROWPREFIX expected)");
           }
           generalBloomFilterWriter.add(bloomKey, bloomKeyOffset, bloomKeyLen);
           if (lastBloomKey != null
@@ -911,8 +969,14 @@ public class StoreFile {
     public void append(final KeyValue kv) throws IOException {
       appendGeneralBloomfilter(kv);
       appendDeleteFamilyBloomFilter(kv);
+      if (kv.isDelete()) {
+        deleteCnt++;
+      }
       writer.append(kv);
       trackTimestamps(kv);
+      if (columnValueRangeTracker != null) {
+        columnValueRangeTracker.include(kv);
+      }
     }
 
     public Path getPath() {
@@ -953,6 +1017,9 @@ public class StoreFile {
               lastBloomKey, lastBloomKeyOffset, lastBloomKeyOffset
                   + lastBloomKeyLen));
         }
+        if (rowPrefix != null) {
+          rowPrefix.appendFileInfo(this);
+        }
       }
       return hasGeneralBloom;
     }
@@ -976,6 +1043,11 @@ public class StoreFile {
     public void close() throws IOException {
       boolean hasGeneralBloom = this.closeGeneralBloomFilter();
       boolean hasDeleteFamilyBloom = this.closeDeleteFamilyBloomFilter();
+      writer.appendFileInfo(DELETE_COUNT, Bytes.toBytes(this.deleteCnt));
+      if (columnValueRangeTracker != null && columnValueRangeTracker.isUsable()) {
+        writer.appendFileInfo(COLUMN_VALUE_RANGES_KEY,
+            WritableUtils.toByteArray(columnValueRangeTracker));
+      }
 
       writer.close();
 
@@ -1009,11 +1081,14 @@ public class StoreFile {
     protected BloomFilter generalBloomFilter = null;
     protected BloomFilter deleteFamilyBloomFilter = null;
     protected BloomType bloomFilterType;
+    private RowPrefixBloomKey rowPrefix;
     private final HFile.Reader reader;
     protected TimeRangeTracker timeRangeTracker = null;
+    protected ColumnValueRangeTracker columnValueRangeTracker = null;
     protected long sequenceID = -1;
     private byte[] lastBloomKey;
     private long deleteFamilyCnt = -1;
+    private long deleteCnt = -1;
 
     public Reader(FileSystem fs, Path path, CacheConfig cacheConf, Configuration conf)
         throws IOException {
@@ -1065,8 +1140,23 @@ public class StoreFile {
     public StoreFileScanner getStoreFileScanner(boolean cacheBlocks,
                                                boolean pread,
                                                boolean isCompaction, long readPt) {
+      return getStoreFileScanner(cacheBlocks, pread, isCompaction, readPt, null);
+    }
+
+    /**
+     * Get a scanner to scan over this StoreFile, which may skip the columns
+     * the caller does not read.
+     *
+     * @param cacheBlocks should this scanner cache blocks?
+     * @param pread use pread (for highly concurrent small readers)
+     * @param isCompaction is scanner being used for compaction?
+     * @param columns the qualifiers the caller reads, or null for all
+     * @return a scanner
+     */
+    public StoreFileScanner getStoreFileScanner(boolean cacheBlocks,
+        boolean pread, boolean isCompaction, long readPt, NavigableSet<byte[]> columns) {
       return new StoreFileScanner(this,
-                                 getScanner(cacheBlocks, pread, isCompaction),
+                                 getScanner(cacheBlocks, pread, isCompaction, columns),
                                  !isCompaction, reader.hasMVCCInfo(), readPt);
     }
 
@@ -1103,6 +1193,21 @@ public class StoreFile {
       return reader.getScanner(cacheBlocks, pread, isCompaction);
     }
 
+    /**
+     * Warning: Do not write further code which depends on this call. Instead
+     * use getStoreFileScanner() which uses the StoreFileScanner class/interface
+     * which is the preferred way to scan a store with higher level concepts.
+     *
+     * @param columns the qualifiers the caller reads, or null for all
+     * @return the underlying HFileScanner, which may skip the other columns
+     * @see HFile.Reader#getScanner(boolean, boolean, boolean, NavigableSet)
+     */
+    @Deprecated
+    public HFileScanner getScanner(boolean cacheBlocks, boolean pread,
+        boolean isCompaction, NavigableSet<byte[]> columns) {
+      return reader.getScanner(cacheBlocks, pread, isCompaction, columns);
+    }
+
     public void close(boolean evictOnClose) throws IOException {
       reader.close(evictOnClose);
     }
@@ -1124,9 +1229,23 @@ public class StoreFile {
       }
     }
 
+    /**
+     * Check if a row of this StoreFile may pass the column value filters of
+     * the scan, using the value ranges of the columns tracked by the family.
+     * @param scan the current scan
+     * @return false if no row of this StoreFile can pass the scan filter
+     */
+    boolean passesColumnValueFilter(Scan scan) {
+      if (columnValueRangeTracker == null || scan.getFilter() == null) {
+        return true;
+      }
+      return columnValueRangeTracker.mayPass(scan.getFilter());
+    }
+
     /**
      * Checks whether the given scan passes the Bloom filter (if present). Only
-     * checks Bloom filters for single-row or single-row-column scans. Bloom
+     * checks Bloom filters for single-row or single-row-column scans, and
+     * row prefix Bloom filters for scans within a row prefix. Bloom
      * filter checking for multi-gets is implemented as part of the store
      * scanner system (see {@link StoreFileScanner#seekExactly}) and uses
      * the lower-level API {@link #passesGeneralBloomFilter(byte[], int, int, byte[],
@@ -1142,6 +1261,13 @@ public class StoreFile {
      */
      boolean passesBloomFilter(Scan scan,
         final SortedSet<byte[]> columns) {
+      // Row prefix Bloom filters also apply to scans within a prefix
+      if (this.bloomFilterType == BloomType.ROWPREFIX) {
+        byte[] prefix = rowPrefix.getScanKey(scan);
+        return prefix == null || passesGeneralBloomFilter(prefix, 0,
+            prefix.length, null, 0, 0);
+      }
+
       // Multi-column non-get scans will use Bloom filters through the
       // lower-level API function that this function calls.
       if (!scan.isGetScan()) {
@@ -1238,6 +1364,11 @@ public class StoreFile {
               colOffset, colLen);
           break;
 
+        case ROWPREFIX:
+          key = Arrays.copyOfRange(row, rowOffset,
+              rowOffset + rowPrefix.getKeyLength(row, rowOffset, rowLen));
+          break;
+
         default:
           return true;
       }
@@ -1339,6 +1470,9 @@ public class StoreFile {
       byte[] b = fi.get(BLOOM_FILTER_TYPE_KEY);
       if (b != null) {
         bloomFilterType = BloomType.valueOf(Bytes.toString(b));
+        if (bloomFilterType == BloomType.ROWPREFIX) {
+          rowPrefix = RowPrefixBloomKey.fromFileInfo(fi);
+        }
       }
 
       lastBloomKey = fi.get(LAST_BLOOM_KEY);
@@ -1346,6 +1480,10 @@ public class StoreFile {
       if (cnt != null) {
         deleteFamilyCnt = Bytes.toLong(cnt);
       }
+      cnt = fi.get(DELETE_COUNT);
+      if (cnt != null) {
+        deleteCnt = Bytes.toLong(cnt);
+      }
 
       return fi;
     }
@@ -1460,6 +1598,14 @@ public class StoreFile {
       return deleteFamilyCnt;
     }
 
+    /**
+     * @return number of delete markers in this file, or -1 if the file was written before
+     *         they were counted
+     */
+    public long getDeleteCount() {
+      return deleteCnt;
+    }
+
     public byte[] getFirstKey() {
       return reader.getFirstKey();
     }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -112,10 +113,13 @@ public class StoreFileScanner implements KeyValueScanner {
       boolean isCompaction, ScanQueryMatcher matcher, long readPt) throws IOException {
     List<StoreFileScanner> scanners = new ArrayList<StoreFileScanner>(
         files.size());
+    // Store files may skip the columns an explicit column scan does not read
+    NavigableSet<byte[]> columns = matcher == null ? null : matcher.getExplicitColumns();
     for (StoreFile file : files) {
       StoreFile.Reader r = file.createReader();
-      StoreFileScanner scanner = r.getStoreFileScanner(cacheBlocks, usePread,
-          isCompaction, readPt);
+      StoreFileScanner scanner = columns == null
+          ? r.getStoreFileScanner(cacheBlocks, usePread, isCompaction, readPt)
+          : r.getStoreFileScanner(cacheBlocks, usePread, isCompaction, readPt, columns);
       scanner.setScanQueryMatcher(matcher);
       scanners.add(scanner);
     }
@@ -224,8 +228,8 @@ public class StoreFileScanner implements KeyValueScanner {
   }
 
   public void close() {
-    // Nothing to close on HFileScanner?
     cur = null;
+    this.hfs.close();
   }
 
   /**
@@ -404,7 +408,8 @@ public class StoreFileScanner implements KeyValueScanner {
   @Override
   public boolean shouldUseScanner(Scan scan, SortedSet<byte[]> columns, long oldestUnexpiredTS) {
     return reader.passesTimerangeFilter(scan, oldestUnexpiredTS)
-        && reader.passesKeyRangeFilter(scan) && reader.passesBloomFilter(scan, columns);
+        && reader.passesKeyRangeFilter(scan) && reader.passesBloomFilter(scan, columns)
+        && reader.passesColumnValueFilter(scan);
   }
 
   @Override
@@ -168,6 +168,13 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
 
     // Pass columns to try to filter out unnecessary StoreFiles.
     List<KeyValueScanner> scanners = getScannersNoCompaction();
+    int storeFilesRead = 0;
+    for (KeyValueScanner kvs : scanners) {
+      if (kvs.isFileScanner()) {
+        storeFilesRead++;
+      }
+    }
+    this.store.updateReadAmplification(storeFilesRead);
 
     // Seek all scanners to the start of the Row (or if the exact matching row
     // key does not exist, then to the start of the next matching Row).
@@ -393,8 +400,12 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     if (this.closing) return;
     this.closing = true;
     // under test, we dont have a this.store
-    if (this.store != null)
+    if (this.store != null) {
       this.store.deleteChangedReaderObserver(this);
+      if (matcher != null && matcher.isUserScan()) {
+        this.store.updateDeletedCellsSkipped(matcher.getDeletedCellsSkipped());
+      }
+    }
     if (this.heap != null)
       this.heap.close();
     this.heap = null; // CLOSED!
@@ -31,6 +31,8 @@ import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.StripeCompactionPolicy;
 import org.apache.hadoop.hbase.regionserver.compactions.StripeCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 
 import com.google.common.base.Preconditions;
 
@@ -98,8 +100,13 @@ public class StripeStoreEngine extends StoreEngine<StripeStoreFlusher,
 
     @Override
     public List<Path> compact() throws IOException {
+      return compact(NoLimitThroughputController.INSTANCE);
+    }
+
+    @Override
+    public List<Path> compact(ThroughputController throughputController) throws IOException {
       Preconditions.checkArgument(this.stripeRequest != null, "Cannot compact without selection");
-      return this.stripeRequest.execute(compactor);
+      return this.stripeRequest.execute(compactor, throughputController);
     }
   }
 }
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSUtils;
+
+/**
+ * The completed output files of a compaction of all the files of a store, kept in the
+ * compaction checkpoint directory of the store until the compaction completes, so that a
+ * compaction which failed, or was interrupted by the close of the region, can resume from the
+ * row following the last checkpointed one instead of starting over.
+ * <p/>
+ * Next to the files, the checkpoint records the names of the compacted files. The next
+ * compaction of the store selects these files again, see {@link #selectFiles}, leaving the
+ * files flushed since, e.g. when the region was closed or its WAL replayed, to later
+ * compactions. A checkpoint is only resumed by a compaction of the very same files; any other
+ * compaction of all the files drops it.
+ */
+@InterfaceAudience.Private
+public class CompactionCheckpoint {
+  private static final Log LOG = LogFactory.getLog(CompactionCheckpoint.class);
+
+  /** Name of the file listing the files being compacted */
+  static final String INPUTS_FILE = ".inputs";
+
+  private static final PathFilter OUTPUT_FILTER = new PathFilter() {
+    @Override
+    public boolean accept(Path p) {
+      return !p.getName().startsWith(".");
+    }
+  };
+
+  private final Configuration conf;
+  private final Store store;
+  private final FileSystem fs;
+  private final Path dir;
+  private final List<String> inputs;
+  private final List<Path> files = new ArrayList<Path>();
+  private byte[] resumeRow = HConstants.EMPTY_START_ROW;
+
+  CompactionCheckpoint(Configuration conf, Store store, Collection<StoreFile> filesToCompact) {
+    this.conf = conf;
+    this.store = store;
+    this.fs = store.getFileSystem();
+    this.dir = store.getCompactionCheckpointDir();
+    this.inputs = new ArrayList<String>(filesToCompact.size());
+    for (StoreFile sf : filesToCompact) {
+      this.inputs.add(sf.getPath().getName());
+    }
+    Collections.sort(this.inputs);
+  }
+
+  /**
+   * @return true if the given directory holds a checkpoint
+   */
+  public static boolean exists(FileSystem fs, Path dir) throws IOException {
+    return fs.exists(new Path(dir, INPUTS_FILE));
+  }
+
+  /**
+   * Selects the files recorded by the checkpoint in the given directory, so that the
+   * interrupted compaction resumes with them.
+   * @param candidates The files of the store which can be compacted
+   * @return The recorded files sorted by sequence id, or null if there is no checkpoint, if a
+   *         recorded file is not a candidate anymore, or if another candidate is older than a
+   *         recorded file.
+   */
+  public static List<StoreFile> selectFiles(FileSystem fs, Path dir,
+      Collection<StoreFile> candidates) throws IOException {
+    List<String> names = readInputs(fs, dir);
+    if (names == null) {
+      return null;
+    }
+    List<StoreFile> selected = new ArrayList<StoreFile>(names.size());
+    long minOtherSeqId = Long.MAX_VALUE;
+    for (StoreFile sf : candidates) {
+      if (names.contains(sf.getPath().getName())) {
+        selected.add(sf);
+      } else {
+        minOtherSeqId = Math.min(minOtherSeqId, sf.getMaxSequenceId());
+      }
+    }
+    if (selected.size() != names.size()) {
+      return null;
+    }
+    Collections.sort(selected, StoreFile.Comparators.SEQ_ID);
+    // Only the newest files can be left out of a compaction
+    if (selected.get(selected.size() - 1).getMaxSequenceId() >= minOtherSeqId) {
+      return null;
+    }
+    return selected;
+  }
+
+  /**
+   * @return true if the checkpoint, if any, is that of a compaction of the same files
+   */
+  boolean isOfSameFiles() throws IOException {
+    return inputs.equals(readInputs(fs, dir));
+  }
+
+  /**
+   * Loads the checkpoint left by an earlier attempt at this compaction, if any. The checkpoint
+   * of any other compaction is deleted.
+   * @return true if the compaction resumes from a checkpoint
+   */
+  boolean load() throws IOException {
+    if (!fs.exists(dir)) {
+      return false;
+    }
+    if (!isOfSameFiles()) {
+      LOG.info("Deleting the compaction checkpoint of other files in " + dir);
+      delete();
+      return false;
+    }
+    FileStatus[] statuses = FSUtils.listStatus(fs, dir, OUTPUT_FILTER);
+    if (statuses == null) {
+      return false;
+    }
+    byte[] lastRow = null;
+    for (FileStatus status : statuses) {
+      HFile.Reader reader =
+          HFile.createReader(fs, status.getPath(), store.getCacheConfig(), conf);
+      try {
+        reader.loadFileInfo();
+        byte[] lastKey = reader.getLastKey();
+        if (lastKey != null) {
+          byte[] row = KeyValue.createKeyValueFromKey(lastKey).getRow();
+          if (lastRow == null || Bytes.compareTo(row, lastRow) > 0) {
+            lastRow = row;
+          }
+        }
+      } finally {
+        reader.close(false);
+      }
+      files.add(status.getPath());
+    }
+    if (lastRow != null) {
+      // The first row sorting after the last checkpointed one
+      resumeRow = Bytes.add(lastRow, new byte[] { 0 });
+    }
+    return !files.isEmpty();
+  }
+
+  /**
+   * @return The rows to compact start from this row, EMPTY_START_ROW when nothing was
+   *         checkpointed.
+   */
+  byte[] getResumeRow() {
+    return resumeRow;
+  }
+
+  /**
+   * @return The checkpointed output files, loaded or added
+   */
+  List<Path> getFiles() {
+    return files;
+  }
+
+  /**
+   * Moves a closed output file into the checkpoint.
+   * @param path The file, covering rows sorting before all the rows yet to be compacted.
+   */
+  void add(Path path) throws IOException {
+    if (files.isEmpty() && !exists(fs, dir)) {
+      writeInputs();
+    }
+    Path dstPath = new Path(dir, path.getName());
+    if (!fs.rename(path, dstPath)) {
+      throw new IOException("Failed rename of " + path + " to " + dstPath);
+    }
+    files.add(dstPath);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Checkpointed compaction output " + dstPath);
+    }
+  }
+
+  /**
+   * Called once the compaction completed: the checkpointed files are now part of its output,
+   * and the checkpoint can no longer be resumed.
+   */
+  void complete() throws IOException {
+    fs.delete(new Path(dir, INPUTS_FILE), false);
+  }
+
+  /**
+   * Deletes the checkpoint, with its files.
+   */
+  void delete() throws IOException {
+    if (!fs.delete(dir, true) && fs.exists(dir)) {
+      throw new IOException("Failed delete of " + dir);
+    }
+    files.clear();
+    resumeRow = HConstants.EMPTY_START_ROW;
+  }
+
+  private static List<String> readInputs(FileSystem fs, Path dir) throws IOException {
+    Path path = new Path(dir, INPUTS_FILE);
+    if (!fs.exists(path)) {
+      return null;
+    }
+    FSDataInputStream in = fs.open(path);
+    try {
+      int count = in.readInt();
+      List<String> names = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++) {
+        names.add(in.readUTF());
+      }
+      return names;
+    } finally {
+      in.close();
+    }
+  }
+
+  private void writeInputs() throws IOException {
+    if (!fs.exists(dir) && !fs.mkdirs(dir)) {
+      throw new IOException("Failed creating " + dir);
+    }
+    // Written aside then renamed, so that a partial list is never read
+    Path tmpPath = new Path(dir, INPUTS_FILE + ".tmp");
+    FSDataOutputStream out = fs.create(tmpPath, true);
+    try {
+      out.writeInt(inputs.size());
+      for (String name : inputs) {
+        out.writeUTF(name);
+      }
+    } finally {
+      out.close();
+    }
+    Path path = new Path(dir, INPUTS_FILE);
+    if (!fs.rename(tmpPath, path)) {
+      throw new IOException("Failed rename of " + tmpPath + " to " + path);
+    }
+  }
+}
@@ -51,6 +51,20 @@ public class CompactionConfiguration {
   public static final String MIN_KEY = CONFIG_PREFIX + "min";
   public static final String MAX_KEY = CONFIG_PREFIX + "max";
 
+  // The following are for date tiered compaction, see DateTieredCompactionPolicy
+  public static final String MAX_AGE_MILLIS_KEY =
+      CONFIG_PREFIX + "date.tiered.max.storefile.age.millis";
+  public static final String BASE_WINDOW_MILLIS_KEY =
+      CONFIG_PREFIX + "date.tiered.base.window.millis";
+  public static final String WINDOWS_PER_TIER_KEY =
+      CONFIG_PREFIX + "date.tiered.windows.per.tier";
+  public static final String INCOMING_WINDOW_MIN_KEY =
+      CONFIG_PREFIX + "date.tiered.incoming.window.min";
+
+  // The following trigger major compactions of stores with many delete markers
+  public static final String TOMBSTONE_RATIO_KEY = CONFIG_PREFIX + "tombstone.ratio";
+  public static final String TOMBSTONE_MIN_COUNT_KEY = CONFIG_PREFIX + "tombstone.min.count";
+
   Configuration conf;
   StoreConfigInformation storeConfigInfo;
 
@@ -63,6 +77,12 @@ public class CompactionConfiguration {
   long throttlePoint;
   long majorCompactionPeriod;
   float majorCompactionJitter;
+  long maxStoreFileAgeMillis;
+  long baseWindowMillis;
+  int windowsPerTier;
+  int incomingWindowMin;
+  float tombstoneRatio;
+  long tombstoneMinCount;
 
   CompactionConfiguration(Configuration conf, StoreConfigInformation storeConfigInfo) {
     this.conf = conf;
@@ -83,6 +103,13 @@ public class CompactionConfiguration {
     // Make it 0.5 so jitter has us fall evenly either side of when the compaction should run
     majorCompactionJitter = conf.getFloat("hbase.hregion.majorcompaction.jitter", 0.50F);
 
+    maxStoreFileAgeMillis = conf.getLong(MAX_AGE_MILLIS_KEY, Long.MAX_VALUE);
+    baseWindowMillis = conf.getLong(BASE_WINDOW_MILLIS_KEY, 3600000 * 6);
+    windowsPerTier = conf.getInt(WINDOWS_PER_TIER_KEY, 4);
+    incomingWindowMin = conf.getInt(INCOMING_WINDOW_MIN_KEY, 6);
+    tombstoneRatio = conf.getFloat(TOMBSTONE_RATIO_KEY, 0F);
+    tombstoneMinCount = conf.getLong(TOMBSTONE_MIN_COUNT_KEY, 100000);
+
     LOG.info(this);
   }
 
@@ -166,4 +193,48 @@ public class CompactionConfiguration {
   float getMajorCompactionJitter() {
     return majorCompactionJitter;
   }
+
+  /**
+   * @return Maximum age of a store file, by its newest cell, to be included in date tiered
+   *  minor compactions
+   */
+  long getMaxStoreFileAgeMillis() {
+    return maxStoreFileAgeMillis;
+  }
+
+  /**
+   * @return Size of the newest window of date tiered compaction
+   */
+  long getBaseWindowMillis() {
+    return baseWindowMillis;
+  }
+
+  /**
+   * @return Number of windows of a tier that make up one window of the next, older, tier
+   */
+  int getWindowsPerTier() {
+    return windowsPerTier;
+  }
+
+  /**
+   * @return Minimum number of files in the newest window to compact them
+   */
+  int getIncomingWindowMin() {
+    return incomingWindowMin;
+  }
+
+  /**
+   * @return Fraction of the cells of a store which, when they are delete markers, triggers a
+   *  major compaction; 0 or less disables the trigger
+   */
+  float getTombstoneRatio() {
+    return tombstoneRatio;
+  }
+
+  /**
+   * @return Minimum number of delete markers in a store to trigger a major compaction
+   */
+  long getTombstoneMinCount() {
+    return tombstoneMinCount;
+  }
 }
@@ -24,6 +24,7 @@ import java.util.List;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 
 
 /**
@@ -70,6 +71,17 @@ public abstract class CompactionContext {
    */
   public abstract List<Path> compact() throws IOException;
 
+  /**
+   * Runs the compaction based on current selection, letting the given controller limit the
+   * throughput of the writes. select/forceSelect must have been called. The default
+   * implementation does not limit the throughput and runs {@link #compact()}.
+   * @param throughputController The compaction throughput controller.
+   * @return The new file paths resulting from compaction.
+   */
+  public List<Path> compact(ThroughputController throughputController) throws IOException {
+    return compact();
+  }
+
   public CompactionRequest getRequest() {
     assert hasSelection();
     return this.request;
@@ -55,6 +55,26 @@ public abstract class CompactionPolicy {
    */
   public abstract boolean throttleCompaction(long compactionSize);
 
+  /**
+   * The compaction pressure of a store with the given number of files: 0.0 when it has no more
+   * files than a minor compaction needs, 1.0 when it has as many files as blocks its updates,
+   * and more beyond.
+   * @param storefileCount Number of files in the store.
+   * @return the compaction pressure
+   */
+  public double getCompactionPressure(int storefileCount) {
+    int minFilesToCompact = comConf.getMinFilesToCompact();
+    long blockingFileCount = storeConfigInfo.getBlockingFileCount();
+    if (blockingFileCount <= minFilesToCompact) {
+      return storefileCount >= blockingFileCount ? 1.0 : 0.0;
+    }
+    if (storefileCount <= minFilesToCompact) {
+      return 0.0;
+    }
+    return (double) (storefileCount - minFilesToCompact)
+        / (blockingFileCount - minFilesToCompact);
+  }
+
   /**
    * Inform the policy that some configuration has been change,
    * so cached value should be updated it any.
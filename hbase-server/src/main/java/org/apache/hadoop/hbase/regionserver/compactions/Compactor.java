@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.regionserver.compactions;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -42,6 +43,8 @@ import org.apache.hadoop.hbase.regionserver.Store;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.regionserver.StoreFileScanner;
 import org.apache.hadoop.hbase.regionserver.StoreScanner;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputControlUtil;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.util.StringUtils;
 
@@ -76,6 +79,21 @@ public abstract class Compactor {
     void append(KeyValue kv) throws IOException;
   }
 
+  /**
+   * Compactions of all the files of the store write with the compaction
+   * compression of the family, other compactions with the compression used
+   * for flushes, so that a heavy codec is only paid for when the data is
+   * rewritten as a whole.
+   * @param request the compaction
+   * @return compression of the files written by the compaction
+   */
+  protected Compression.Algorithm getCompression(CompactionRequest request) {
+    if (request.isAllFiles() || this.store.getFamily() == null) {
+      return this.compactionCompression;
+    }
+    return this.store.getFamily().getCompression();
+  }
+
   public CompactionProgress getProgress() {
     return this.progress;
   }
@@ -202,42 +220,70 @@ public abstract class Compactor {
    * @param scanner Where to read from.
    * @param writer Where to write to.
    * @param smallestReadPoint Smallest read point.
+   * @param throughputController The compaction throughput controller.
+   * @return Whether compaction ended; false if it was interrupted for some reason.
+   */
+  protected boolean performCompaction(InternalScanner scanner, CellSink writer,
+      long smallestReadPoint, ThroughputController throughputController) throws IOException {
+    return performCompaction(scanner, writer, smallestReadPoint, throughputController,
+        this.progress);
+  }
+
+  /**
+   * Performs the compaction, or a part of it.
+   * @param scanner Where to read from.
+   * @param writer Where to write to.
+   * @param smallestReadPoint Smallest read point.
+   * @param throughputController The compaction throughput controller.
+   * @param progress Where to track the progress of this scanner.
    * @return Whether compaction ended; false if it was interrupted for some reason.
    */
-  protected boolean performCompaction(InternalScanner scanner,
-      CellSink writer, long smallestReadPoint) throws IOException {
+  protected boolean performCompaction(InternalScanner scanner, CellSink writer,
+      long smallestReadPoint, ThroughputController throughputController,
+      CompactionProgress progress) throws IOException {
     int bytesWritten = 0;
     // Since scanner.next() can return 'false' but still be delivering data,
     // we have to use a do/while loop.
     List<Cell> kvs = new ArrayList<Cell>();
     // Limit to "hbase.hstore.compaction.kv.max" (default 10) to avoid OOME
     int closeCheckInterval = HStore.getCloseCheckInterval();
+    String compactionName = ThroughputControlUtil.getNameForThrottling(store, "compaction");
+    throughputController.start(compactionName);
     boolean hasMore;
-    do {
-      hasMore = scanner.next(kvs, compactionKVMax);
-      // output to writer:
-      for (Cell c : kvs) {
-        KeyValue kv = KeyValueUtil.ensureKeyValue(c);
-        if (kv.getMvccVersion() <= smallestReadPoint) {
-          kv.setMvccVersion(0);
-        }
-        writer.append(kv);
-        ++progress.currentCompactedKVs;
+    try {
+      do {
+        hasMore = scanner.next(kvs, compactionKVMax);
+        // output to writer:
+        for (Cell c : kvs) {
+          KeyValue kv = KeyValueUtil.ensureKeyValue(c);
+          if (kv.getMvccVersion() <= smallestReadPoint) {
+            kv.setMvccVersion(0);
+          }
+          writer.append(kv);
+          ++progress.currentCompactedKVs;
+          throughputController.control(compactionName, kv.getLength());
 
-        // check periodically to see if a system stop is requested
-        if (closeCheckInterval > 0) {
-          bytesWritten += kv.getLength();
-          if (bytesWritten > closeCheckInterval) {
-            bytesWritten = 0;
-            if (!store.areWritesEnabled()) {
-              progress.cancel();
-              return false;
+          // check periodically to see if a system stop is requested
+          if (closeCheckInterval > 0) {
+            bytesWritten += kv.getLength();
+            if (bytesWritten > closeCheckInterval) {
+              bytesWritten = 0;
+              if (!store.areWritesEnabled()) {
+                progress.cancel();
+                return false;
+              }
             }
           }
         }
-      }
-      kvs.clear();
-    } while (hasMore);
+        kvs.clear();
+      } while (hasMore);
+    } catch (InterruptedException e) {
+      progress.cancel();
+      throw new InterruptedIOException("Interrupted while control throughput of compacting "
+          + compactionName);
+    } finally {
+      throughputController.finish(compactionName);
+    }
     progress.complete();
     return true;
   }
@@ -252,10 +298,31 @@ public abstract class Compactor {
    */
   protected InternalScanner createScanner(Store store, List<StoreFileScanner> scanners,
       ScanType scanType, long smallestReadPoint, long earliestPutTs) throws IOException {
-    Scan scan = new Scan();
+    return createScanner(store, scanners, scanType, smallestReadPoint, earliestPutTs,
+        HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+  }
+
+  /**
+   * @param store store
+   * @param scanners Store file scanners.
+   * @param scanType Scan type.
+   * @param smallestReadPoint Smallest MVCC read point.
+   * @param earliestPutTs Earliest put across all files.
+   * @param startRow The inclusive first row to compact; can be EMPTY_START_ROW.
+   * @param stopRow The exclusive last row to compact; can be EMPTY_END_ROW.
+   * @return A compaction scanner over the given rows.
+   */
+  protected InternalScanner createScanner(Store store, List<StoreFileScanner> scanners,
+      ScanType scanType, long smallestReadPoint, long earliestPutTs, byte[] startRow,
+      byte[] stopRow) throws IOException {
+    Scan scan = new Scan(startRow, stopRow);
     scan.setMaxVersions(store.getFamily().getMaxVersions());
-    return new StoreScanner(store, store.getScanInfo(), scan, scanners,
+    InternalScanner scanner = new StoreScanner(store, store.getScanInfo(), scan, scanners,
         scanType, smallestReadPoint, earliestPutTs);
+    // The stop row of the scan only ends region scans, a compaction scanner runs on to the end
+    // of the store
+    return Bytes.equals(stopRow, HConstants.EMPTY_END_ROW) ? scanner
+        : new StopRowScanner(scanner, store.getComparator(), stopRow);
   }
 
   /**
@@ -275,4 +342,49 @@ public abstract class Compactor {
     return new StoreScanner(store, store.getScanInfo(), scan, scanners, smallestReadPoint,
         earliestPutTs, dropDeletesFromRow, dropDeletesToRow);
   }
+
+  /**
+   * Ends a compaction scanner before the given row.
+   */
+  private static class StopRowScanner implements InternalScanner {
+    private final InternalScanner delegate;
+    private final KeyValue.KVComparator comparator;
+    private final byte[] stopRow;
+    private boolean stopped = false;
+
+    StopRowScanner(InternalScanner delegate, KeyValue.KVComparator comparator, byte[] stopRow) {
+      this.delegate = delegate;
+      this.comparator = comparator;
+      this.stopRow = stopRow;
+    }
+
+    @Override
+    public boolean next(List<Cell> results) throws IOException {
+      return next(results, -1);
+    }
+
+    @Override
+    public boolean next(List<Cell> results, int limit) throws IOException {
+      if (stopped) {
+        return false;
+      }
+      int size = results.size();
+      boolean hasMore = delegate.next(results, limit);
+      for (int i = size; i < results.size(); i++) {
+        Cell cell = results.get(i);
+        if (comparator.compareRows(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(),
+            stopRow, 0, stopRow.length) >= 0) {
+          results.subList(i, results.size()).clear();
+          stopped = true;
+          return false;
+        }
+      }
+      return hasMore;
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
 }
@@ -0,0 +1,184 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * Compaction policy for time-series data. Store files are grouped into time windows by the
+ * timestamp of their newest cell, and a minor compaction only ever merges files of the same
+ * window, so old data is not rewritten together with new data, and whole files can be dropped
+ * once their data expires (see hbase.store.delete.expired.storefile).
+ * <p/>
+ * The newest window is {@link CompactionConfiguration#BASE_WINDOW_MILLIS_KEY} wide; every
+ * {@link CompactionConfiguration#WINDOWS_PER_TIER_KEY} windows of a tier make up one window
+ * of the next, older, tier, so windows grow exponentially with age. The files of the newest
+ * window are all compacted once there are
+ * {@link CompactionConfiguration#INCOMING_WINDOW_MIN_KEY} of them; within older windows the
+ * files are selected as in {@link RatioBasedCompactionPolicy}. Files whose newest cell is older
+ * than {@link CompactionConfiguration#MAX_AGE_MILLIS_KEY}, or than the TTL of the store, are
+ * not compacted anymore, nor are the files flushed before them.
+ * <p/>
+ * As a major compaction merges all the windows into one file, this policy never triggers
+ * periodic major compactions; user requested ones still run.
+ */
+@InterfaceAudience.Private
+public class DateTieredCompactionPolicy extends RatioBasedCompactionPolicy {
+  private static final Log LOG = LogFactory.getLog(DateTieredCompactionPolicy.class);
+
+  public DateTieredCompactionPolicy(Configuration conf, StoreConfigInformation storeConfigInfo) {
+    super(conf, storeConfigInfo);
+  }
+
+  @Override
+  public boolean isMajorCompaction(final Collection<StoreFile> filesToCompact)
+      throws IOException {
+    return false;
+  }
+
+  /**
+   * @param candidates pre-filtrate, ordered from oldest to newest
+   * @return the files of the newest window that needs a compaction, or an empty list
+   */
+  @Override
+  ArrayList<StoreFile> applyCompactionPolicy(ArrayList<StoreFile> candidates,
+      boolean mayUseOffPeak, boolean mayBeStuck) throws IOException {
+    if (candidates.isEmpty()) {
+      return candidates;
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    long oldestToCompact = now - Math.min(comConf.getMaxStoreFileAgeMillis(),
+        storeConfigInfo.getStoreFileTtl());
+
+    Window window = getIncomingWindow(now, comConf.getBaseWindowMillis());
+    boolean isIncomingWindow = true;
+    // Walk the files from the newest to the oldest. The files of a window are contiguous
+    // in sequence id order: a file which is newer than the window, e.g. a file flushed before
+    // the bulk load of older data, is compacted together with the window.
+    int pos = candidates.size() - 1;
+    while (pos >= 0) {
+      long maxTimestamp = candidates.get(pos).getReader().getMaxTimestamp();
+      if (maxTimestamp < oldestToCompact) {
+        break;
+      }
+      if (window.compareToTimestamp(maxTimestamp) > 0) {
+        // The file is older than the window, move to the next window
+        window = window.nextWindow(comConf.getWindowsPerTier(), oldestToCompact);
+        isIncomingWindow = false;
+        continue;
+      }
+      int end = pos + 1;
+      while (pos >= 0) {
+        maxTimestamp = candidates.get(pos).getReader().getMaxTimestamp();
+        if (maxTimestamp < oldestToCompact || window.compareToTimestamp(maxTimestamp) > 0) {
+          break;
+        }
+        --pos;
+      }
+      ArrayList<StoreFile> windowFiles =
+          new ArrayList<StoreFile>(candidates.subList(pos + 1, end));
+      int minThreshold = isIncomingWindow
+          ? comConf.getIncomingWindowMin() : comConf.getMinFilesToCompact();
+      if (windowFiles.size() >= minThreshold) {
+        ArrayList<StoreFile> selection = isIncomingWindow ? windowFiles
+            : super.applyCompactionPolicy(windowFiles, mayUseOffPeak, false);
+        if (selection.size() >= minThreshold) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Date tiered compaction has selected " + selection.size()
+                + " files from " + windowFiles.size() + " in window " + window);
+          }
+          return selection;
+        }
+      }
+    }
+    if (mayBeStuck) {
+      // Merge windows rather than block updates
+      return super.applyCompactionPolicy(candidates, mayUseOffPeak, true);
+    }
+    candidates.clear();
+    return candidates;
+  }
+
+  private static Window getIncomingWindow(long now, long baseWindowMillis) {
+    return new Window(baseWindowMillis, now / baseWindowMillis);
+  }
+
+  /**
+   * A time window, [divPosition * windowMillis, (divPosition + 1) * windowMillis).
+   */
+  private static final class Window {
+    /** How big a range of timestamps fit inside the window in milliseconds */
+    private final long windowMillis;
+
+    /** A timestamp t is within the window iff t / size == divPosition */
+    private final long divPosition;
+
+    private Window(long windowMillis, long divPosition) {
+      this.windowMillis = windowMillis;
+      this.divPosition = divPosition;
+    }
+
+    private long startMillis() {
+      return windowMillis * divPosition;
+    }
+
+    private long endMillis() {
+      return windowMillis * (divPosition + 1);
+    }
+
+    /**
+     * @return 1 if the timestamp is older than the window, -1 if it is newer, 0 if it is
+     *  within the window
+     */
+    int compareToTimestamp(long timestamp) {
+      if (timestamp < startMillis()) {
+        return 1;
+      }
+      return timestamp >= endMillis() ? -1 : 0;
+    }
+
+    /**
+     * The window just before this one. It moves up to the next tier when this window is the
+     * first of its tier, unless that would reach past the oldest timestamp to compact.
+     */
+    Window nextWindow(int windowsPerTier, long oldestToCompact) {
+      if (divPosition % windowsPerTier != 0
+          || startMillis() - windowMillis * windowsPerTier < oldestToCompact) {
+        return new Window(windowMillis, divPosition - 1);
+      }
+      return new Window(windowMillis * windowsPerTier, divPosition / windowsPerTier - 1);
+    }
+
+    @Override
+    public String toString() {
+      return "[" + startMillis() + ", " + endMillis() + ")";
+    }
+  }
+}
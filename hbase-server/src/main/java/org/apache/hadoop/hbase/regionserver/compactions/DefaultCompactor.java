@@ -22,32 +22,98 @@ import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.HFileBlockIndex;
 import org.apache.hadoop.hbase.regionserver.Store;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
 import org.apache.hadoop.hbase.regionserver.ScanType;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.regionserver.StoreFileScanner;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Threads;
+import org.apache.hadoop.util.StringUtils;
 
 /**
- * Compact passed set of files. Create an instance and then call {@link #compact(CompactionRequest)}
+ * Compact passed set of files. Create an instance and then call
+ * {@link #compact(CompactionRequest, ThroughputController)}
+ * <p/>
+ * A compaction of all the files of a big store can be split by row into
+ * {@link #SUBRANGES_KEY} sub-ranges compacted in parallel, each writing its own file, when
+ * every sub-range gets at least {@link #SUBRANGE_MIN_SIZE_KEY} bytes. The files of a split
+ * compaction cover disjoint rows and share their sequence id; minor compactions leave them
+ * to the next major compaction, see {@link RatioBasedCompactionPolicy}.
+ * <p/>
+ * Otherwise, a compaction of all the files can roll its output to a new file at the first row
+ * boundary after every {@link #CHECKPOINT_SIZE_KEY} bytes, moving each completed file to a
+ * {@link CompactionCheckpoint}. When the compaction fails or the region is closed, the next
+ * compaction of the store, possibly on another server, selects the same files and resumes
+ * after the last checkpointed row. The files of a checkpointed compaction have the same shape
+ * as those of a compaction split into sub-ranges.
  */
 @InterfaceAudience.Private
 public class DefaultCompactor extends Compactor {
+  private static final Log LOG = LogFactory.getLog(DefaultCompactor.class);
+
+  /** Maximum number of sub-ranges a compaction of all the files is split into */
+  public static final String SUBRANGES_KEY = "hbase.hstore.compaction.subranges";
+  /** Minimum size of the files to compact per sub-range */
+  public static final String SUBRANGE_MIN_SIZE_KEY = "hbase.hstore.compaction.subrange.min.size";
+  private static final long DEFAULT_SUBRANGE_MIN_SIZE = 10L * 1024 * 1024 * 1024;
+  /** Size of the output after which a compaction of all the files checkpoints it; 0 disables */
+  public static final String CHECKPOINT_SIZE_KEY = "hbase.hstore.compaction.checkpoint.size";
+
+  private final int maxSubRanges;
+  private final long subRangeMinSize;
+  private final long checkpointSize;
+
   public DefaultCompactor(final Configuration conf, final Store store) {
     super(conf, store);
+    this.maxSubRanges = conf.getInt(SUBRANGES_KEY, 1);
+    this.subRangeMinSize =
+        Math.max(1, conf.getLong(SUBRANGE_MIN_SIZE_KEY, DEFAULT_SUBRANGE_MIN_SIZE));
+    this.checkpointSize = conf.getLong(CHECKPOINT_SIZE_KEY, 0);
   }
 
   /**
    * Do a minor/major compaction on an explicit set of storefiles from a Store.
    */
-  public List<Path> compact(final CompactionRequest request) throws IOException {
+  public List<Path> compact(final CompactionRequest request,
+      ThroughputController throughputController) throws IOException {
     FileDetails fd = getFileDetails(request.getFiles(), request.isAllFiles());
     this.progress = new CompactionProgress(fd.maxKeyCount);
 
+    List<byte[]> boundaries = getSubRangeBoundaries(request);
+    if (boundaries != null) {
+      return compactSubRanges(request, fd, boundaries, throughputController);
+    }
+
+    CompactionCheckpoint checkpoint = getCheckpoint(request);
+    byte[] startRow = HConstants.EMPTY_START_ROW;
+    if (checkpoint != null && checkpoint.load()) {
+      startRow = checkpoint.getResumeRow();
+      LOG.info("Resuming compaction of store " + store + " in region "
+          + store.getRegionInfo().getRegionNameAsString() + " after "
+          + checkpoint.getFiles().size() + " checkpointed files, from row "
+          + Bytes.toStringBinary(startRow));
+    }
+
     // Find the smallest read point across all the Scanners.
     long smallestReadPoint = getSmallestReadPoint();
     List<StoreFileScanner> scanners = createFileScanners(request.getFiles(), smallestReadPoint);
@@ -62,7 +128,8 @@ public class DefaultCompactor extends Compactor {
             request.isAllFiles() ? ScanType.COMPACT_DROP_DELETES : ScanType.COMPACT_RETAIN_DELETES;
         scanner = preCreateCoprocScanner(request, scanType, fd.earliestPutTs, scanners);
         if (scanner == null) {
-          scanner = createScanner(store, scanners, scanType, smallestReadPoint, fd.earliestPutTs);
+          scanner = createScanner(store, scanners, scanType, smallestReadPoint, fd.earliestPutTs,
+              startRow, HConstants.EMPTY_END_ROW);
         }
         scanner = postCreateCoprocScanner(request, scanType, scanner);
         if (scanner == null) {
@@ -71,17 +138,32 @@ public class DefaultCompactor extends Compactor {
         }
         // Create the writer even if no kv(Empty store file is also ok),
         // because we need record the max seq id for the store file, see HBASE-6059
-        writer = store.createWriterInTmp(fd.maxKeyCount, this.compactionCompression, true,
-            fd.maxMVCCReadpoint >= smallestReadPoint, fd.maxTagsLength > 0);
-        boolean finished = performCompaction(scanner, writer, smallestReadPoint);
+        writer = createTmpWriter(request, fd, smallestReadPoint);
+        boolean finished;
+        if (checkpoint == null) {
+          finished = performCompaction(scanner, writer, smallestReadPoint, throughputController);
+        } else {
+          CheckpointingSink sink =
+              new CheckpointingSink(request, fd, smallestReadPoint, checkpoint, writer);
+          try {
+            finished = performCompaction(scanner, sink, smallestReadPoint, throughputController);
+          } finally {
+            writer = sink.writer;
+          }
+        }
         if (!finished) {
           writer.close();
           store.getFileSystem().delete(writer.getPath(), false);
           writer = null;
+          // The checkpointed files are kept for the next attempt
           throw new InterruptedIOException( "Aborting compaction of store " + store +
               " in region " + store.getRegionInfo().getRegionNameAsString() +
               " because it was interrupted.");
          }
+        if (checkpoint != null) {
+          newFiles.addAll(checkpoint.getFiles());
+          checkpoint.complete();
+        }
        } finally {
          if (scanner != null) {
            scanner.close();
@@ -97,9 +179,242 @@ public class DefaultCompactor extends Compactor {
     return newFiles;
   }
 
+  private StoreFile.Writer createTmpWriter(CompactionRequest request, FileDetails fd,
+      long smallestReadPoint) throws IOException {
+    return store.createWriterInTmp(fd.maxKeyCount, getCompression(request), true,
+        fd.maxMVCCReadpoint >= smallestReadPoint, fd.maxTagsLength > 0);
+  }
+
+  /**
+   * @return The checkpoint of the compaction, or null if it does not checkpoint its output
+   */
+  private CompactionCheckpoint getCheckpoint(CompactionRequest request) throws IOException {
+    if (checkpointSize <= 0) {
+      // Checkpoints left over from when it was enabled are ignored
+      return null;
+    }
+    CompactionCheckpoint checkpoint =
+        new CompactionCheckpoint(conf, store, request.getFiles());
+    // Resumed with the files it recorded, newer files may have been left out
+    if (!request.isAllFiles() && !checkpoint.isOfSameFiles()) {
+      return null;
+    }
+    // Coprocessors see each compaction once, and could replace its scanner. The rows of the
+    // catalog regions do not sort as plain bytes, the resume row would be wrong.
+    if (store.getRegionInfo().isMetaRegion()
+        || (store.getCoprocessorHost() != null
+            && !store.getCoprocessorHost().getCoprocessors().isEmpty())) {
+      // Left over from a compaction which checkpointed its output, it won't be resumed
+      if (store.hasCompactionCheckpoint()) {
+        checkpoint.delete();
+      }
+      return null;
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Writes the output of a compaction to a new file at the first row boundary after every
+   * {@link #CHECKPOINT_SIZE_KEY} bytes, adding the completed file to the checkpoint.
+   */
+  private class CheckpointingSink implements CellSink {
+    private final CompactionRequest request;
+    private final FileDetails fd;
+    private final long smallestReadPoint;
+    private final CompactionCheckpoint checkpoint;
+    /** The file being written, null while rolling */
+    StoreFile.Writer writer;
+    private KeyValue lastKv;
+    private long bytesWritten = 0;
+
+    CheckpointingSink(CompactionRequest request, FileDetails fd, long smallestReadPoint,
+        CompactionCheckpoint checkpoint, StoreFile.Writer writer) {
+      this.request = request;
+      this.fd = fd;
+      this.smallestReadPoint = smallestReadPoint;
+      this.checkpoint = checkpoint;
+      this.writer = writer;
+    }
+
+    @Override
+    public void append(KeyValue kv) throws IOException {
+      if (bytesWritten >= checkpointSize && !CellUtil.matchingRow(lastKv, kv)) {
+        StoreFile.Writer completed = writer;
+        writer = null;
+        completed.appendMetadata(fd.maxSeqId, request.isAllFiles());
+        completed.close();
+        checkpoint.add(completed.getPath());
+        writer = createTmpWriter(request, fd, smallestReadPoint);
+        bytesWritten = 0;
+      }
+      writer.append(kv);
+      bytesWritten += kv.getLength();
+      lastKv = kv;
+    }
+  }
+
+  /**
+   * Picks the rows splitting a compaction into sub-ranges of about the same size, from the root
+   * index of its biggest file.
+   * @return The boundaries of the sub-ranges, from the empty start row to the empty end row, or
+   *         null if the compaction should not be split.
+   */
+  List<byte[]> getSubRangeBoundaries(CompactionRequest request) throws IOException {
+    // The files of each sub-range count against the blocking store file count
+    int count = (int) Math.min(Math.min(maxSubRanges, store.getBlockingFileCount() / 2),
+        request.getSize() / subRangeMinSize);
+    if (count < 2 || !request.isAllFiles()) {
+      return null;
+    }
+    // Coprocessors see each compaction once, and could replace its scanner
+    if (store.getCoprocessorHost() != null
+        && !store.getCoprocessorHost().getCoprocessors().isEmpty()) {
+      return null;
+    }
+    StoreFile biggest = null;
+    for (StoreFile sf : request.getFiles()) {
+      StoreFile.Reader r = sf.getReader();
+      if (r == null) {
+        return null;
+      }
+      if (biggest == null || r.length() > biggest.getReader().length()) {
+        biggest = sf;
+      }
+    }
+    HFileBlockIndex.BlockIndexReader index =
+        biggest.getReader().getHFileReader().getDataBlockIndexReader();
+    int rootCount = index.getRootBlockCount();
+    List<byte[]> boundaries = new ArrayList<byte[]>(count + 1);
+    boundaries.add(HConstants.EMPTY_START_ROW);
+    for (int i = 1; i < count; i++) {
+      byte[] row = KeyValue.createKeyValueFromKey(
+          index.getRootBlockKey((int) ((long) i * rootCount / count))).getRow();
+      byte[] last = boundaries.get(boundaries.size() - 1);
+      if (last.length == 0
+          || store.getComparator().compareRows(row, 0, row.length, last, 0, last.length) > 0) {
+        boundaries.add(row);
+      }
+    }
+    boundaries.add(HConstants.EMPTY_END_ROW);
+    return boundaries.size() > 2 ? boundaries : null;
+  }
+
+  /**
+   * Compacts the rows between each two boundaries in parallel, into a file per sub-range. Either
+   * all the files are returned, or none is kept.
+   */
+  private List<Path> compactSubRanges(final CompactionRequest request, final FileDetails fd,
+      final List<byte[]> boundaries, final ThroughputController throughputController)
+      throws IOException {
+    final long smallestReadPoint = getSmallestReadPoint();
+    final int count = boundaries.size() - 1;
+    final AtomicBoolean aborted = new AtomicBoolean(false);
+    LOG.info("Compacting " + StringUtils.humanReadableInt(request.getSize()) + " in " + count
+        + " sub-ranges for store " + store + " in region "
+        + store.getRegionInfo().getRegionNameAsString());
+    ExecutorService pool = Executors.newFixedThreadPool(count,
+        Threads.newDaemonThreadFactory(store.getRegionInfo().getEncodedName() + "-"
+            + store.getColumnFamilyName() + "-subrange-compaction"));
+    List<Future<Path>> futures = new ArrayList<Future<Path>>(count);
+    List<Path> newFiles = new ArrayList<Path>(count);
+    IOException error = null;
+    try {
+      for (int i = 0; i < count; i++) {
+        final byte[] startRow = boundaries.get(i);
+        final byte[] stopRow = boundaries.get(i + 1);
+        futures.add(pool.submit(new Callable<Path>() {
+          @Override
+          public Path call() throws IOException {
+            return compactSubRange(request, fd, smallestReadPoint, startRow, stopRow, count,
+                throughputController, aborted);
+          }
+        }));
+      }
+      for (Future<Path> future : futures) {
+        try {
+          Path path = future.get();
+          if (path != null) {
+            newFiles.add(path);
+          } else if (error == null) {
+            error = new InterruptedIOException("Aborting compaction of store " + store
+                + " in region " + store.getRegionInfo().getRegionNameAsString()
+                + " because it was interrupted.");
+          }
+        } catch (CancellationException e) {
+          // Cancelled because another sub-range failed
+        } catch (ExecutionException e) {
+          if (error == null) {
+            error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                : new IOException(e.getCause());
+          }
+        } catch (InterruptedException e) {
+          if (error == null) {
+            error = new InterruptedIOException("Interrupted while compacting " + store);
+          }
+          Thread.currentThread().interrupt();
+        }
+        if (error != null && !aborted.getAndSet(true)) {
+          for (Future<Path> other : futures) {
+            other.cancel(true);
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    if (error != null) {
+      this.progress.cancel();
+      for (Path path : newFiles) {
+        store.getFileSystem().delete(path, false);
+      }
+      throw error;
+    }
+    this.progress.complete();
+    return newFiles;
+  }
+
+  /**
+   * @return The file written for the rows in [startRow, stopRow), or null if the compaction was
+   *         interrupted or aborted.
+   */
+  private Path compactSubRange(CompactionRequest request, FileDetails fd,
+      long smallestReadPoint, byte[] startRow, byte[] stopRow, int count,
+      ThroughputController throughputController, AtomicBoolean aborted) throws IOException {
+    // The sub-ranges hold about the same number of cells
+    long maxKeyCount = Math.max(1, fd.maxKeyCount / count);
+    CompactionProgress subRangeProgress = new CompactionProgress(maxKeyCount);
+    List<StoreFileScanner> scanners = createFileScanners(request.getFiles(), smallestReadPoint);
+    InternalScanner scanner = createScanner(store, scanners, ScanType.COMPACT_DROP_DELETES,
+        smallestReadPoint, fd.earliestPutTs, startRow, stopRow);
+    StoreFile.Writer writer = null;
+    boolean finished = false;
+    try {
+      // Every sub-range writes a file, even empty, with the max seq id, see HBASE-6059
+      writer = store.createWriterInTmp(maxKeyCount, getCompression(request), true,
+          fd.maxMVCCReadpoint >= smallestReadPoint, fd.maxTagsLength > 0);
+      finished = performCompaction(scanner, writer, smallestReadPoint, throughputController,
+          subRangeProgress);
+    } finally {
+      scanner.close();
+      if (writer != null) {
+        writer.appendMetadata(fd.maxSeqId, request.isAllFiles());
+        writer.close();
+        // Once aborted, nobody else knows about this file
+        if (!finished || aborted.get()) {
+          store.getFileSystem().delete(writer.getPath(), false);
+          finished = false;
+        }
+      }
+      synchronized (this.progress) {
+        this.progress.currentCompactedKVs += subRangeProgress.currentCompactedKVs;
+      }
+    }
+    return finished ? writer.getPath() : null;
+  }
+
   /**
    * Compact a list of files for testing. Creates a fake {@link CompactionRequest} to pass to
-   * {@link #compact(CompactionRequest)};
+   * {@link #compact(CompactionRequest, ThroughputController)};
    * @param filesToCompact the files to compact. These are used as the compactionSelection for
    *          the generated {@link CompactionRequest}.
    * @param isMajor true to major compact (prune all deletes, max versions, etc)
@@ -111,6 +426,6 @@ public class DefaultCompactor extends Compactor {
       throws IOException {
     CompactionRequest cr = new CompactionRequest(filesToCompact);
     cr.setIsMajor(isMajor, isMajor);
-    return this.compact(cr);
+    return this.compact(cr, NoLimitThroughputController.INSTANCE);
   }
 }
@@ -109,6 +109,7 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
     boolean isAfterSplit = StoreUtils.hasReferences(candidateSelection);
     if (!isTryingMajor && !isAfterSplit) {
       // We're are not compacting all files, let's see what files are applicable
+      candidateSelection = skipSubRangeFiles(candidateSelection);
       candidateSelection = filterBulk(candidateSelection);
       candidateSelection = applyCompactionPolicy(candidateSelection, mayUseOffPeak, mayBeStuck);
       candidateSelection = checkMinFilesCriteria(candidateSelection);
@@ -142,6 +143,42 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
     return candidates;
   }
 
+  /**
+   * @param candidates pre-filtrate
+   * @return filtered subset
+   * exclude the oldest files if they were written by a compaction split into sub-ranges
+   * (see {@link DefaultCompactor}); they cover disjoint rows and are left to the next
+   * major compaction
+   */
+  private ArrayList<StoreFile> skipSubRangeFiles(ArrayList<StoreFile> candidates) {
+    int pos = getSubRangeFileCount(candidates);
+    if (pos > 0) {
+      LOG.debug("Excluding " + pos + " files written by a sub-range compaction from "
+          + "compaction candidates");
+      candidates.subList(0, pos).clear();
+    }
+    return candidates;
+  }
+
+  /**
+   * @param files files, ordered from oldest to newest
+   * @return the number of files at the start of the list which were written by one compaction
+   *         split into sub-ranges: at least two major compacted files with the same sequence id,
+   *         or 0
+   */
+  static int getSubRangeFileCount(List<StoreFile> files) {
+    if (files.isEmpty() || !files.get(0).isMajorCompaction()) {
+      return 0;
+    }
+    long seqId = files.get(0).getMaxSequenceId();
+    int pos = 1;
+    while (pos < files.size() && files.get(pos).isMajorCompaction()
+        && files.get(pos).getMaxSequenceId() == seqId) {
+      ++pos;
+    }
+    return pos > 1 ? pos : 0;
+  }
+
   /**
    * @param candidates pre-filtrate
    * @return filtered subset
@@ -280,6 +317,9 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
   public boolean isMajorCompaction(final Collection<StoreFile> filesToCompact)
       throws IOException {
     boolean result = false;
+    if (filesToCompact != null && hasTooManyTombstones(filesToCompact)) {
+      return true;
+    }
     long mcTime = getNextMajorCompactTime(filesToCompact);
     if (filesToCompact == null || filesToCompact.isEmpty() || mcTime == 0) {
       return result;
@@ -290,14 +330,25 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
     if (lowTimestamp > 0l && lowTimestamp < (now - mcTime)) {
       // Major compaction time has elapsed.
       long cfTtl = this.storeConfigInfo.getStoreFileTtl();
-      if (filesToCompact.size() == 1) {
+      // The files of a compaction split into sub-ranges are as good as a single file
+      boolean isSubRangeFiles = filesToCompact.size() > 1 && getSubRangeFileCount(
+          new ArrayList<StoreFile>(filesToCompact)) == filesToCompact.size();
+      if (filesToCompact.size() == 1 || isSubRangeFiles) {
         // Single file
-        StoreFile sf = filesToCompact.iterator().next();
-        Long minTimestamp = sf.getMinimumTimestamp();
+        Long minTimestamp = null;
+        boolean isMajor = true;
+        for (StoreFile sf : filesToCompact) {
+          Long fileMinTimestamp = sf.getMinimumTimestamp();
+          if (fileMinTimestamp != null && (minTimestamp == null
+              || fileMinTimestamp.longValue() < minTimestamp.longValue())) {
+            minTimestamp = fileMinTimestamp;
+          }
+          isMajor = isMajor && sf.isMajorCompaction();
+        }
         long oldest = (minTimestamp == null)
             ? Long.MIN_VALUE
             : now - minTimestamp.longValue();
-        if (sf.isMajorCompaction() &&
+        if (isMajor &&
             (cfTtl == HConstants.FOREVER || oldest < cfTtl)) {
           if (LOG.isDebugEnabled()) {
             LOG.debug("Skipping major compaction of " + this +
@@ -321,6 +372,39 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
     return result;
   }
 
+  /**
+   * Only a major compaction drops delete markers, which scans have to skip until then, along
+   * with the cells they delete. The markers left by a major compaction, e.g. as the family
+   * keeps deleted cells, are not counted, as another major compaction would keep them too.
+   * Like the time based major compactions, it is disabled when the major compaction period is
+   * 0, e.g. as they are scheduled by the master.
+   * @return true if the delete markers make up more than the tombstone ratio of the cells
+   */
+  private boolean hasTooManyTombstones(final Collection<StoreFile> filesToCompact) {
+    if (comConf.getTombstoneRatio() <= 0 || comConf.getMajorCompactionPeriod() <= 0) {
+      return false;
+    }
+    long deletes = 0;
+    long entries = 0;
+    for (StoreFile sf : filesToCompact) {
+      StoreFile.Reader r = sf.getReader();
+      if (r == null) {
+        continue;
+      }
+      entries += r.getEntries();
+      if (!sf.isMajorCompaction() && r.getDeleteCount() > 0) {
+        deletes += r.getDeleteCount();
+      }
+    }
+    if (deletes < comConf.getTombstoneMinCount()
+        || deletes <= entries * comConf.getTombstoneRatio()) {
+      return false;
+    }
+    LOG.debug("Major compaction triggered on store " + this + " because " + deletes
+        + " of its " + entries + " cells are delete markers");
+    return true;
+  }
+
   public long getNextMajorCompactTime(final Collection<StoreFile> filesToCompact) {
     // default = 24hrs
     long ret = comConf.getMajorCompactionPeriod();
@@ -35,6 +35,7 @@ import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.regionserver.StoreUtils;
 import org.apache.hadoop.hbase.regionserver.StripeStoreConfig;
 import org.apache.hadoop.hbase.regionserver.StripeStoreFlusher;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ConcatenatedLists;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
@@ -394,9 +395,11 @@ public class StripeCompactionPolicy extends CompactionPolicy {
      * Executes the request against compactor (essentially, just calls correct overload of
      * compact method), to simulate more dynamic dispatch.
      * @param compactor Compactor.
+     * @param throughputController The compaction throughput controller.
      * @return result of compact(...)
      */
-    public abstract List<Path> execute(StripeCompactor compactor) throws IOException;
+    public abstract List<Path> execute(StripeCompactor compactor,
+        ThroughputController throughputController) throws IOException;
 
     public StripeCompactionRequest(CompactionRequest request) {
       this.request = request;
@@ -447,9 +450,10 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     }
 
     @Override
-    public List<Path> execute(StripeCompactor compactor) throws IOException {
-      return compactor.compact(
-          this.request, this.targetBoundaries, this.majorRangeFromRow, this.majorRangeToRow);
+    public List<Path> execute(StripeCompactor compactor,
+        ThroughputController throughputController) throws IOException {
+      return compactor.compact(this.request, this.targetBoundaries, this.majorRangeFromRow,
+          this.majorRangeToRow, throughputController);
     }
   }
 
@@ -497,9 +501,10 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     }
 
     @Override
-    public List<Path> execute(StripeCompactor compactor) throws IOException {
-      return compactor.compact(this.request, this.targetCount, this.targetKvs,
-          this.startRow, this.endRow, this.majorRangeFromRow, this.majorRangeToRow);
+    public List<Path> execute(StripeCompactor compactor,
+        ThroughputController throughputController) throws IOException {
+      return compactor.compact(this.request, this.targetCount, this.targetKvs, this.startRow,
+          this.endRow, this.majorRangeFromRow, this.majorRangeToRow, throughputController);
     }
 
     /** Set major range of the compaction to the entire compaction range.
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.throttle;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.hbase.Chore;
+import org.apache.hadoop.hbase.Stoppable;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * Base class of the {@link ThroughputController}s which share a maximum throughput between the
+ * running operations, and retune it periodically from a pressure read on the region server:
+ * the higher the pressure, the higher the throughput. An operation is checked each time it has
+ * written {@link #controlPerSize} bytes since its last check, and sleeps long enough to bring
+ * its throughput back to its share of the maximum.
+ */
+@InterfaceAudience.Private
+public abstract class PressureAwareThroughputController extends Configured implements
+    ThroughputController, Stoppable {
+  private static final Log LOG = LogFactory.getLog(PressureAwareThroughputController.class);
+
+  /**
+   * Stores the information of one controlled operation.
+   */
+  private static final class ActiveOperation {
+
+    private final long startTime;
+
+    private long lastControlTime;
+
+    private long lastControlSize;
+
+    private long totalSize;
+
+    private long numberOfSleeps;
+
+    private long totalSleepTime;
+
+    // prevent too many debug log
+    private long lastLogTime;
+
+    ActiveOperation() {
+      long currentTime = EnvironmentEdgeManager.currentTimeMillis();
+      this.startTime = currentTime;
+      this.lastControlTime = currentTime;
+      this.lastLogTime = currentTime;
+    }
+  }
+
+  protected long maxThroughputUpperBound;
+
+  protected long maxThroughputLowerBound;
+
+  protected int tuningPeriod;
+
+  /** The number of bytes an operation writes between two checks of its throughput */
+  protected long controlPerSize;
+
+  private volatile double maxThroughput;
+
+  private volatile boolean stopped;
+
+  private final AtomicLong throttledTime = new AtomicLong(0);
+
+  private final ConcurrentMap<String, ActiveOperation> activeOperations =
+      new ConcurrentHashMap<String, ActiveOperation>();
+
+  /**
+   * Retunes the maximum throughput periodically, until the controller or the server stops.
+   */
+  private class ThroughputTuner extends Chore {
+    private final RegionServerServices server;
+
+    ThroughputTuner(RegionServerServices server, Stoppable stopper) {
+      super(server.getServerName() + "-" + PressureAwareThroughputController.this.getClass()
+          .getSimpleName(), tuningPeriod, stopper);
+      this.server = server;
+    }
+
+    @Override
+    protected void chore() {
+      tune(server);
+    }
+  }
+
+  @Override
+  public void setup(final RegionServerServices server) {
+    tune(server);
+    Stoppable stopper = new Stoppable() {
+      @Override
+      public void stop(String why) {
+        PressureAwareThroughputController.this.stop(why);
+      }
+
+      @Override
+      public boolean isStopped() {
+        return PressureAwareThroughputController.this.isStopped() || server.isStopped();
+      }
+    };
+    ThroughputTuner tuner = new ThroughputTuner(server, stopper);
+    Threads.setDaemonThreadRunning(tuner.getThread());
+  }
+
+  /**
+   * Sets the maximum throughput from the current pressure on the region server.
+   */
+  protected abstract void tune(RegionServerServices server);
+
+  @Override
+  public void start(String name) {
+    activeOperations.put(name, new ActiveOperation());
+  }
+
+  @Override
+  public long control(String name, long size) throws InterruptedException {
+    ActiveOperation operation = activeOperations.get(name);
+    operation.totalSize += size;
+    long deltaSize = operation.totalSize - operation.lastControlSize;
+    if (deltaSize < controlPerSize) {
+      return 0;
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    double maxThroughputPerOperation = this.maxThroughput / activeOperations.size();
+    long minTimeAllowed = (long) (deltaSize / maxThroughputPerOperation * 1000); // ms
+    long elapsedTime = now - operation.lastControlTime;
+    operation.lastControlSize = operation.totalSize;
+    if (elapsedTime >= minTimeAllowed) {
+      operation.lastControlTime = now;
+      return 0;
+    }
+    // too fast
+    long sleepTime = minTimeAllowed - elapsedTime;
+    if (LOG.isDebugEnabled()) {
+      // do not log too much
+      if (now - operation.lastLogTime > 5L * 1000) {
+        LOG.debug(name + " sleep " + sleepTime + " ms because current throughput is "
+            + throughputDesc(deltaSize, elapsedTime) + ", max allowed is "
+            + throughputDesc(maxThroughputPerOperation) + ", already slept "
+            + operation.numberOfSleeps + " time(s) and total slept time is "
+            + operation.totalSleepTime + " ms till now.");
+        operation.lastLogTime = now;
+      }
+    }
+    Thread.sleep(sleepTime);
+    operation.numberOfSleeps++;
+    operation.totalSleepTime += sleepTime;
+    throttledTime.addAndGet(sleepTime);
+    operation.lastControlTime = EnvironmentEdgeManager.currentTimeMillis();
+    return sleepTime;
+  }
+
+  @Override
+  public void finish(String name) {
+    ActiveOperation operation = activeOperations.remove(name);
+    if (operation == null) {
+      return;
+    }
+    long elapsedTime = EnvironmentEdgeManager.currentTimeMillis() - operation.startTime;
+    LOG.info(name + " average throughput is "
+        + throughputDesc(operation.totalSize, elapsedTime) + ", slept "
+        + operation.numberOfSleeps + " time(s) and total slept time is "
+        + operation.totalSleepTime + " ms. " + activeOperations.size()
+        + " active operations remaining, total limit is " + throughputDesc(maxThroughput));
+  }
+
+  @Override
+  public long getThrottledTime() {
+    return throttledTime.get();
+  }
+
+  /**
+   * @return the maximum throughput of all the operations, in bytes per second
+   */
+  public double getMaxThroughput() {
+    return maxThroughput;
+  }
+
+  protected void setMaxThroughput(double maxThroughput) {
+    this.maxThroughput = maxThroughput;
+  }
+
+  protected static String throughputDesc(long deltaSize, long elapsedTime) {
+    return throughputDesc((double) deltaSize / elapsedTime * 1000);
+  }
+
+  protected static String throughputDesc(double speed) {
+    if (speed >= 1E15) { // large enough to say it is unlimited
+      return "unlimited";
+    } else {
+      return String.format("%.2f MB/sec", speed / 1024 / 1024);
+    }
+  }
+
+  @Override
+  public void stop(String why) {
+    stopped = true;
+  }
+
+  @Override
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [maxThroughput=" + throughputDesc(maxThroughput)
+        + ", activeOperations=" + activeOperations.size() + "]";
+  }
+}
@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -280,31 +281,35 @@ class FSHLog implements HLog, Syncable {
   private final Object regionSequenceIdLock = new Object();
 
   /**
-   * Map of encoded region names to their OLDEST -- i.e. their first, the longest-lived --
-   * sequence id in memstore. Note that this sequenceid is the region sequence id.  This is not
-   * related to the id we use above for {@link #highestSyncedSequence} and
-   * {@link #highestUnsyncedSequence} which is the sequence from the disruptor ring buffer, an
-   * internal detail.
+   * Map of encoded region names to a map of their column families to the OLDEST -- i.e. the
+   * first, the longest-lived -- sequence id in the memstore of the family. Stores are tracked
+   * one by one as a region may flush only some of them. Note that this sequenceid is the region
+   * sequence id.  This is not related to the id we use above for {@link #highestSyncedSequence}
+   * and {@link #highestUnsyncedSequence} which is the sequence from the disruptor ring buffer,
+   * an internal detail.
    */
-  private final ConcurrentSkipListMap<byte [], Long> oldestUnflushedRegionSequenceIds =
-    new ConcurrentSkipListMap<byte [], Long>(Bytes.BYTES_COMPARATOR);
+  private final ConcurrentSkipListMap<byte [], ConcurrentSkipListMap<byte [], Long>>
+    oldestUnflushedStoreSequenceIds =
+      new ConcurrentSkipListMap<byte [], ConcurrentSkipListMap<byte [], Long>>(
+        Bytes.BYTES_COMPARATOR);
 
   /**
-   * Map of encoded region names to their lowest or OLDEST sequence/edit id in memstore currently
-   * being flushed out to hfiles. Entries are moved here from
-   * {@link #oldestUnflushedRegionSequenceIds} while the lock {@link #regionSequenceIdLock} is held
-   * (so movement between the Maps is atomic). This is not related to the id we use above for
-   * {@link #highestSyncedSequence} and {@link #highestUnsyncedSequence} which is the sequence from
-   * the disruptor ring buffer, an internal detail.
+   * Map of encoded region names to a map of their column families to the lowest or OLDEST
+   * sequence/edit id in the memstore currently being flushed out to hfiles. Entries are moved
+   * here from {@link #oldestUnflushedStoreSequenceIds} while the lock
+   * {@link #regionSequenceIdLock} is held (so movement between the Maps is atomic). This is not
+   * related to the id we use above for {@link #highestSyncedSequence} and
+   * {@link #highestUnsyncedSequence} which is the sequence from the disruptor ring buffer, an
+   * internal detail.
    */
-  private final Map<byte[], Long> lowestFlushingRegionSequenceIds =
-    new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+  private final Map<byte[], Map<byte[], Long>> lowestFlushingStoreSequenceIds =
+    new TreeMap<byte[], Map<byte[], Long>>(Bytes.BYTES_COMPARATOR);
 
  /**
   * Map of region encoded names to the latest region sequence id.  Updated on each append of
   * WALEdits to the WAL. We create one map for each WAL file at the time it is rolled.
   * <p>When deciding whether to archive a WAL file, we compare the sequence IDs in this map to
-  * {@link #lowestFlushingRegionSequenceIds} and {@link #oldestUnflushedRegionSequenceIds}.
+  * {@link #lowestFlushingStoreSequenceIds} and {@link #oldestUnflushedStoreSequenceIds}.
   * See {@link FSHLog#areAllRegionsFlushed(Map, Map, Map)} for more info.
   * <p>
   * This map uses byte[] as the key, and uses reference equality. It works in our use case as we
@@ -724,9 +729,10 @@ class FSHLog implements HLog, Syncable {
    * <p>
    * For each log file, it compares its region to sequenceId map
    * (@link {@link FSHLog#highestRegionSequenceIds} with corresponding region entries in
-   * {@link FSHLog#lowestFlushingRegionSequenceIds} and
-   * {@link FSHLog#oldestUnflushedRegionSequenceIds}. If all the regions in the map are flushed
-   * past of their value, then the wal is eligible for archiving.
+   * {@link FSHLog#lowestFlushingStoreSequenceIds} and
+   * {@link FSHLog#oldestUnflushedStoreSequenceIds}, taking the lowest sequence id of the stores
+   * of each region. If all the regions in the map are flushed past of their value, then the wal
+   * is eligible for archiving.
    * @throws IOException
    */
   private void cleanOldLogs() throws IOException {
@@ -735,9 +741,8 @@ class FSHLog implements HLog, Syncable {
     List<Path> logsToArchive = new ArrayList<Path>();
     // make a local copy so as to avoid locking when we iterate over these maps.
     synchronized (regionSequenceIdLock) {
-      oldestFlushingSeqNumsLocal = new HashMap<byte[], Long>(this.lowestFlushingRegionSequenceIds);
-      oldestUnflushedSeqNumsLocal =
-        new HashMap<byte[], Long>(this.oldestUnflushedRegionSequenceIds);
+      oldestFlushingSeqNumsLocal = copyMapWithLowestSeqId(this.lowestFlushingStoreSequenceIds);
+      oldestUnflushedSeqNumsLocal = copyMapWithLowestSeqId(this.oldestUnflushedStoreSequenceIds);
     }
     for (Map.Entry<Path, Map<byte[], Long>> e : byWalRegionSequenceIds.entrySet()) {
       // iterate over the log file.
@@ -757,10 +762,43 @@ class FSHLog implements HLog, Syncable {
     }
   }
 
+  /**
+   * @return the lowest sequence id of the stores in the map, or {@link HConstants#NO_SEQNUM} if
+   *  the map is null or empty
+   */
+  private static long getLowestSeqId(Map<byte[], Long> storeSeqIds) {
+    if (storeSeqIds == null) {
+      return HConstants.NO_SEQNUM;
+    }
+    long lowest = HConstants.NO_SEQNUM;
+    for (Long seqId : storeSeqIds.values()) {
+      if (lowest == HConstants.NO_SEQNUM || seqId.longValue() < lowest) {
+        lowest = seqId.longValue();
+      }
+    }
+    return lowest;
+  }
+
+  /**
+   * @return a copy of the region to stores map, with the lowest sequence id of the stores of
+   *  each region
+   */
+  private static <T extends Map<byte[], Long>> Map<byte[], Long> copyMapWithLowestSeqId(
+      Map<byte[], T> regionToStoreSeqIds) {
+    Map<byte[], Long> copied = new HashMap<byte[], Long>();
+    for (Map.Entry<byte[], T> entry : regionToStoreSeqIds.entrySet()) {
+      long lowest = getLowestSeqId(entry.getValue());
+      if (lowest != HConstants.NO_SEQNUM) {
+        copied.put(entry.getKey(), lowest);
+      }
+    }
+    return copied;
+  }
+
   /**
    * Takes a region:sequenceId map for a WAL file, and checks whether the file can be archived.
    * It compares the region entries present in the passed sequenceNums map with the local copy of
-   * {@link #oldestUnflushedRegionSequenceIds} and {@link #lowestFlushingRegionSequenceIds}. If,
+   * {@link #oldestUnflushedStoreSequenceIds} and {@link #lowestFlushingStoreSequenceIds}. If,
    * for all regions, the value is lesser than the minimum of values present in the
    * oldestFlushing/UnflushedSeqNums, then the wal file is eligible for archiving.
    * @param sequenceNums for a HLog, at the time when it was rolled.
@@ -786,7 +824,7 @@ class FSHLog implements HLog, Syncable {
 
   /**
    * Iterates over the given map of regions, and compares their sequence numbers with corresponding
-   * entries in {@link #oldestUnflushedRegionSequenceIds}. If the sequence number is greater or
+   * entries in {@link #oldestUnflushedStoreSequenceIds}. If the sequence number is greater or
    * equal, the region is eligible to flush, otherwise, there is no benefit to flush (from the
    * perspective of passed regionsSequenceNums map), because the region has already flushed the
    * entries present in the WAL file for which this method is called for (typically, the oldest
@@ -800,8 +838,8 @@ class FSHLog implements HLog, Syncable {
     // Keeping the old behavior of iterating unflushedSeqNums under oldestSeqNumsLock.
     synchronized (regionSequenceIdLock) {
       for (Map.Entry<byte[], Long> e : regionsSequenceNums.entrySet()) {
-        Long unFlushedVal = this.oldestUnflushedRegionSequenceIds.get(e.getKey());
-        if (unFlushedVal != null && unFlushedVal <= e.getValue()) {
+        long unFlushedVal = getLowestSeqId(this.oldestUnflushedStoreSequenceIds.get(e.getKey()));
+        if (unFlushedVal != HConstants.NO_SEQNUM && unFlushedVal <= e.getValue()) {
           if (regionsToFlush == null) regionsToFlush = new ArrayList<byte[]>();
           regionsToFlush.add(e.getKey());
         }
@@ -943,6 +981,12 @@ class FSHLog implements HLog, Syncable {
     return getUnflushedEntriesCount() > 0;
   }
 
+  /** @return the number of regions holding unflushed edits in their memstores */
+  @VisibleForTesting
+  int getNumUnflushedRegions() {
+    return this.oldestUnflushedStoreSequenceIds.size();
+  }
+
   private void archiveLogFile(final Path p) throws IOException {
     Path newPath = getHLogArchivePath(this.fullPathOldLogDir, p);
     // Tell our listeners that a log is going to be archived.
@@ -1574,22 +1618,49 @@ class FSHLog implements HLog, Syncable {
   
   @Override
   public boolean startCacheFlush(final byte[] encodedRegionName) {
-    Long oldRegionSeqNum = null;
+    return startCacheFlush(encodedRegionName, null);
+  }
+
+  @Override
+  public boolean startCacheFlush(final byte[] encodedRegionName, Set<byte[]> flushedFamilyNames) {
+    Map<byte[], Long> oldStoreSeqNums = null;
     if (!closeBarrier.beginOp()) {
       LOG.info("Flush will not be started for " + Bytes.toString(encodedRegionName) +
         " - because the server is closing.");
       return false;
     }
     synchronized (regionSequenceIdLock) {
-      oldRegionSeqNum = this.oldestUnflushedRegionSequenceIds.remove(encodedRegionName);
-      if (oldRegionSeqNum != null) {
-        Long oldValue =
-          this.lowestFlushingRegionSequenceIds.put(encodedRegionName, oldRegionSeqNum);
-        assert oldValue ==
-          null : "Flushing map not cleaned up for " + Bytes.toString(encodedRegionName);
+      ConcurrentSkipListMap<byte[], Long> oldestUnflushedStoreSequenceIdsOfRegion =
+        this.oldestUnflushedStoreSequenceIds.get(encodedRegionName);
+      if (oldestUnflushedStoreSequenceIdsOfRegion != null) {
+        if (flushedFamilyNames == null) {
+          oldStoreSeqNums = new TreeMap<byte[], Long>(oldestUnflushedStoreSequenceIdsOfRegion);
+          oldestUnflushedStoreSequenceIdsOfRegion.clear();
+        } else {
+          oldStoreSeqNums = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+          for (byte[] familyName : flushedFamilyNames) {
+            Long seqId = oldestUnflushedStoreSequenceIdsOfRegion.remove(familyName);
+            if (seqId != null) {
+              oldStoreSeqNums.put(familyName, seqId);
+            }
+          }
+        }
+        // Drop the map of the region once all its stores are flushed so it does not linger
+        // after the region moves away. An append racing with the removal notices it and
+        // retries against a fresh map, see updateOldestUnflushedStoreSequenceIds.
+        if (oldestUnflushedStoreSequenceIdsOfRegion.isEmpty()) {
+          this.oldestUnflushedStoreSequenceIds.remove(encodedRegionName,
+            oldestUnflushedStoreSequenceIdsOfRegion);
+        }
+        if (!oldStoreSeqNums.isEmpty()) {
+          Map<byte[], Long> oldValue =
+            this.lowestFlushingStoreSequenceIds.put(encodedRegionName, oldStoreSeqNums);
+          assert oldValue ==
+            null : "Flushing map not cleaned up for " + Bytes.toString(encodedRegionName);
+        }
       }
     }
-    if (oldRegionSeqNum == null) {
+    if (oldStoreSeqNums == null || oldStoreSeqNums.isEmpty()) {
       // TODO: if we have no oldRegionSeqNum, and WAL is not disabled, presumably either
       //       the region is already flushing (which would make this call invalid), or there
       //       were no appends after last flush, so why are we starting flush? Maybe we should
@@ -1604,31 +1675,87 @@ class FSHLog implements HLog, Syncable {
   @Override
   public void completeCacheFlush(final byte [] encodedRegionName) {
     synchronized (regionSequenceIdLock) {
-      this.lowestFlushingRegionSequenceIds.remove(encodedRegionName);
+      this.lowestFlushingStoreSequenceIds.remove(encodedRegionName);
     }
     closeBarrier.endOp();
   }
 
   @Override
   public void abortCacheFlush(byte[] encodedRegionName) {
-    Long currentSeqNum = null, seqNumBeforeFlushStarts = null;
+    Map<byte[], Long> storeSeqNumsBeforeFlushStarts;
+    Map<byte[], Long> currentStoreSeqNums = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
     synchronized (regionSequenceIdLock) {
-      seqNumBeforeFlushStarts = this.lowestFlushingRegionSequenceIds.remove(encodedRegionName);
-      if (seqNumBeforeFlushStarts != null) {
-        currentSeqNum =
-          this.oldestUnflushedRegionSequenceIds.put(encodedRegionName, seqNumBeforeFlushStarts);
+      storeSeqNumsBeforeFlushStarts = this.lowestFlushingStoreSequenceIds.remove(
+        encodedRegionName);
+      if (storeSeqNumsBeforeFlushStarts != null) {
+        ConcurrentSkipListMap<byte[], Long> oldestUnflushedStoreSequenceIdsOfRegion =
+          getOrCreateOldestUnflushedStoreSequenceIdsOfRegion(encodedRegionName);
+        for (Map.Entry<byte[], Long> familyNameAndSeqId : storeSeqNumsBeforeFlushStarts
+            .entrySet()) {
+          Long currentSeqNum = oldestUnflushedStoreSequenceIdsOfRegion.put(
+            familyNameAndSeqId.getKey(), familyNameAndSeqId.getValue());
+          if (currentSeqNum != null) {
+            currentStoreSeqNums.put(familyNameAndSeqId.getKey(), currentSeqNum);
+          }
+        }
       }
     }
     closeBarrier.endOp();
-    if ((currentSeqNum != null)
-        && (currentSeqNum.longValue() <= seqNumBeforeFlushStarts.longValue())) {
-      String errorStr = "Region " + Bytes.toString(encodedRegionName) +
-          "acquired edits out of order current memstore seq=" + currentSeqNum
-          + ", previous oldest unflushed id=" + seqNumBeforeFlushStarts;
-      LOG.error(errorStr);
-      assert false : errorStr;
-      Runtime.getRuntime().halt(1);
+    for (Map.Entry<byte[], Long> familyNameAndSeqId : currentStoreSeqNums.entrySet()) {
+      Long currentSeqNum = familyNameAndSeqId.getValue();
+      Long seqNumBeforeFlushStarts = storeSeqNumsBeforeFlushStarts.get(familyNameAndSeqId.getKey());
+      if (currentSeqNum.longValue() <= seqNumBeforeFlushStarts.longValue()) {
+        String errorStr = "Region " + Bytes.toString(encodedRegionName) + " family "
+            + Bytes.toString(familyNameAndSeqId.getKey())
+            + " acquired edits out of order current memstore seq=" + currentSeqNum
+            + ", previous oldest unflushed id=" + seqNumBeforeFlushStarts;
+        LOG.error(errorStr);
+        assert false : errorStr;
+        Runtime.getRuntime().halt(1);
+      }
+    }
+  }
+
+  private ConcurrentSkipListMap<byte[], Long> getOrCreateOldestUnflushedStoreSequenceIdsOfRegion(
+      byte[] encodedRegionName) {
+    ConcurrentSkipListMap<byte[], Long> oldestUnflushedStoreSequenceIdsOfRegion =
+      oldestUnflushedStoreSequenceIds.get(encodedRegionName);
+    if (oldestUnflushedStoreSequenceIdsOfRegion != null) {
+      return oldestUnflushedStoreSequenceIdsOfRegion;
     }
+    oldestUnflushedStoreSequenceIdsOfRegion =
+      new ConcurrentSkipListMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+    ConcurrentSkipListMap<byte[], Long> alreadyPut =
+      oldestUnflushedStoreSequenceIds.putIfAbsent(encodedRegionName,
+        oldestUnflushedStoreSequenceIdsOfRegion);
+    return alreadyPut == null ? oldestUnflushedStoreSequenceIdsOfRegion : alreadyPut;
+  }
+
+  /**
+   * Records the sequence id of an edit as the oldest unflushed one of the stores it modifies,
+   * unless they already hold older unflushed edits.
+   */
+  private void updateOldestUnflushedStoreSequenceIds(byte[] encodedRegionName, WALEdit edit,
+      Long regionSequenceId) {
+    ConcurrentSkipListMap<byte[], Long> oldestUnflushedStoreSequenceIdsOfRegion;
+    do {
+      oldestUnflushedStoreSequenceIdsOfRegion =
+        getOrCreateOldestUnflushedStoreSequenceIdsOfRegion(encodedRegionName);
+      byte[] lastFamily = null;
+      for (KeyValue kv : edit.getKeyValues()) {
+        // The edits of a WALEdit are grouped by family, skip the ones of the same family
+        if (lastFamily != null && Bytes.equals(lastFamily, 0, lastFamily.length,
+            kv.getFamilyArray(), kv.getFamilyOffset(), kv.getFamilyLength())) {
+          continue;
+        }
+        lastFamily = kv.getFamily();
+        if (!WALEdit.isMetaEditFamily(lastFamily)) {
+          oldestUnflushedStoreSequenceIdsOfRegion.putIfAbsent(lastFamily, regionSequenceId);
+        }
+      }
+      // A flush may have dropped the map while we were updating it, record the ids again
+    } while (oldestUnflushedStoreSequenceIds.get(encodedRegionName) !=
+        oldestUnflushedStoreSequenceIdsOfRegion);
   }
 
   @Override
@@ -1679,7 +1806,17 @@ class FSHLog implements HLog, Syncable {
 
   @Override
   public long getEarliestMemstoreSeqNum(byte[] encodedRegionName) {
-    Long result = oldestUnflushedRegionSequenceIds.get(encodedRegionName);
+    return getLowestSeqId(oldestUnflushedStoreSequenceIds.get(encodedRegionName));
+  }
+
+  @Override
+  public long getEarliestMemstoreSeqNum(byte[] encodedRegionName, byte[] familyName) {
+    ConcurrentSkipListMap<byte[], Long> oldestUnflushedStoreSequenceIdsOfRegion =
+      oldestUnflushedStoreSequenceIds.get(encodedRegionName);
+    if (oldestUnflushedStoreSequenceIdsOfRegion == null) {
+      return HConstants.NO_SEQNUM;
+    }
+    Long result = oldestUnflushedStoreSequenceIdsOfRegion.get(familyName);
     return result == null ? HConstants.NO_SEQNUM : result.longValue();
   }
 
@@ -1948,7 +2085,8 @@ class FSHLog implements HLog, Syncable {
         Long lRegionSequenceId = Long.valueOf(regionSequenceId);
         highestRegionSequenceIds.put(encodedRegionName, lRegionSequenceId);
         if (entry.isInMemstore()) {
-          oldestUnflushedRegionSequenceIds.putIfAbsent(encodedRegionName, lRegionSequenceId);
+          updateOldestUnflushedStoreSequenceIds(encodedRegionName, entry.getEdit(),
+            lRegionSequenceId);
         }
         coprocessorHost.postWALWrite(entry.getHRegionInfo(), entry.getKey(), entry.getEdit());
         // Update metrics.
@@ -23,6 +23,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -371,6 +372,15 @@ public interface HLog {
    */
   boolean startCacheFlush(final byte[] encodedRegionName);
 
+  /**
+   * Like {@link #startCacheFlush(byte[])}, for a flush of only some of the stores of the region:
+   * the oldest seqNums of the other stores are left in place.
+   * @param flushedFamilyNames the families of the stores about to flush
+   * @return true if the flush can proceed, false in case wal is closing (ususally, when server is
+   * closing) and flush couldn't be started.
+   */
+  boolean startCacheFlush(final byte[] encodedRegionName, Set<byte[]> flushedFamilyNames);
+
   /**
    * Complete the cache flush.
    * @param encodedRegionName Encoded region name.
@@ -404,4 +414,11 @@ public interface HLog {
    * @return The number if present, HConstants.NO_SEQNUM if absent.
    */
   long getEarliestMemstoreSeqNum(byte[] encodedRegionName);
+
+  /** Gets the earliest sequence number in the memstore of a store of this particular region.
+   * @param encodedRegionName The region to get the number for.
+   * @param familyName The family of the store.
+   * @return The number if present, HConstants.NO_SEQNUM if absent.
+   */
+  long getEarliestMemstoreSeqNum(byte[] encodedRegionName, byte[] familyName);
 }
@@ -1975,7 +1975,7 @@ public class HLogSplitter {
   public static boolean isDistributedLogReplay(Configuration conf) {
     boolean dlr = conf.getBoolean(HConstants.DISTRIBUTED_LOG_REPLAY_KEY,
       HConstants.DEFAULT_DISTRIBUTED_LOG_REPLAY_CONFIG);
-    int version = conf.getInt(HFile.FORMAT_VERSION_KEY, HFile.MAX_FORMAT_VERSION);
+    int version = conf.getInt(HFile.FORMAT_VERSION_KEY, HFile.DEFAULT_FORMAT_VERSION);
     if (LOG.isDebugEnabled()) {
       LOG.debug("Distributed log replay=" + dlr + ", " + HFile.FORMAT_VERSION_KEY + "=" + version);
     }
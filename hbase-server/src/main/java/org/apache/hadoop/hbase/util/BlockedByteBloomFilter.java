@@ -0,0 +1,213 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.util;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A blocked Bloom filter: the bit array is split into blocks of the size of a
+ * cache line, the first hash of a key selects a block and all the bits of the
+ * key are set within that block. A lookup touches a single cache line instead
+ * of one per hash function, for a slightly higher false positive rate at the
+ * same size, which is compensated by putting fewer keys in the filter.
+ * <p>
+ * The filter can be folded as a {@link ByteBloomFilter} as long as its size
+ * stays a multiple of the block size: a key in block b of n * p blocks is in
+ * block b mod n of the filter folded to n blocks.
+ *
+ * @see <a href="http://algo2.iti.kit.edu/documents/cacheefficientbloomfilters-jea.pdf">
+ *      Cache-, Hash- and Space-Efficient Bloom Filters</a>
+ */
+@InterfaceAudience.Private
+public class BlockedByteBloomFilter extends ByteBloomFilter {
+
+  /** Bytes in a block, the size of a cache line */
+  public static final int BLOCK_BYTES = 64;
+  private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+  /** log2(BLOCK_BYTES), the additional fold factor to keep whole blocks */
+  private static final int BLOCK_FOLD_FACTOR = 6;
+
+  private BlockedByteBloomFilter(int hashType) {
+    super(hashType);
+  }
+
+  /**
+   * Creates a blocked Bloom filter of the given size.
+   *
+   * @param byteSizeHint the desired number of bytes for the Bloom filter bit
+   *          array. Will be increased to a number of blocks which can be
+   *          folded.
+   * @param errorRate target false positive rate of the Bloom filter
+   * @param hashType Bloom filter hash function type
+   * @param foldFactor
+   * @return the new Bloom filter of the desired size
+   */
+  public static BlockedByteBloomFilter createBySize(int byteSizeHint,
+      double errorRate, int hashType, int foldFactor) {
+    BlockedByteBloomFilter bbf = new BlockedByteBloomFilter(hashType);
+
+    bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L,
+        foldFactor + BLOCK_FOLD_FACTOR);
+    long bitSize = bbf.byteSize * 8;
+    bbf.hashCount = optimalFunctionCount((int) idealMaxKeys(bitSize, errorRate),
+        bitSize);
+    bbf.maxKeys = (int) computeBlockedMaxKeys(bbf.byteSize, errorRate,
+        bbf.hashCount);
+    return bbf;
+  }
+
+  /**
+   * The maximum number of keys a blocked Bloom filter of the given size can
+   * hold at the given error rate.
+   */
+  static long computeBlockedMaxKeys(long byteSize, double errorRate,
+      int hashCount) {
+    long low = 0;
+    long high = idealMaxKeys(byteSize * 8, errorRate);
+    while (low < high) {
+      long mid = (low + high + 1) >>> 1;
+      if (blockedErrorRate(mid, byteSize, hashCount) <= errorRate) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Computes the error rate of a blocked Bloom filter. The number of keys in a
+   * block follows a Poisson distribution, and each block is a standard Bloom
+   * filter of {@link #BLOCK_BYTES} bytes.
+   *
+   * @param keyCount number of keys in the filter
+   * @param byteSize size of the filter
+   * @param hashCount number of bits set per key
+   * @return the expected false positive rate
+   */
+  public static double blockedErrorRate(long keyCount, long byteSize,
+      int hashCount) {
+    double keysPerBlock = keyCount * 1.0 / (byteSize / BLOCK_BYTES);
+    if (keysPerBlock == 0) {
+      return 0;
+    }
+    double logKeysPerBlock = Math.log(keysPerBlock);
+    int maxKeysInBlock = (int) (keysPerBlock + 10 * Math.sqrt(keysPerBlock) + 10);
+    double errorRate = 0;
+    // Log of the probability that a block has j keys, starting with j = 0
+    double logProbability = -keysPerBlock;
+    for (int j = 1; j <= maxKeysInBlock; j++) {
+      logProbability += logKeysPerBlock - Math.log(j);
+      errorRate += Math.exp(logProbability)
+          * ByteBloomFilter.actualErrorRate(j, BLOCK_BITS, hashCount);
+    }
+    return Math.min(1.0, errorRate);
+  }
+
+  @Override
+  public double actualErrorRate() {
+    return blockedErrorRate(keyCount, byteSize, hashCount);
+  }
+
+  @Override
+  public ByteBloomFilter createAnother() {
+    BlockedByteBloomFilter bbf = new BlockedByteBloomFilter(hashType);
+    bbf.byteSize = byteSize;
+    bbf.hashCount = hashCount;
+    bbf.maxKeys = maxKeys;
+    return bbf;
+  }
+
+  @Override
+  public void add(byte[] buf, int offset, int len) {
+    int hash1 = this.hash.hash(buf, offset, len, 0);
+    int hash2 = this.hash.hash(buf, offset, len, hash1);
+
+    long blockStart = (long) blockIndex(hash1, (int) (byteSize / BLOCK_BYTES))
+        * BLOCK_BITS;
+    // An odd step visits distinct bits of the block
+    int step = (hash2 >>> 9) | 1;
+    int bit = hash2;
+    for (int i = 0; i < this.hashCount; i++) {
+      set(blockStart + (bit & (BLOCK_BITS - 1)));
+      bit += step;
+    }
+
+    ++this.keyCount;
+  }
+
+  @Override
+  public boolean contains(byte[] buf, int offset, int length,
+      ByteBuffer theBloom) {
+    if (theBloom == null) {
+      theBloom = bloom;
+    }
+
+    if (theBloom.limit() != byteSize) {
+      throw new IllegalArgumentException("Bloom does not match expected size:"
+          + " theBloom.limit()=" + theBloom.limit() + ", byteSize=" + byteSize);
+    }
+
+    return contains(buf, offset, length, theBloom.array(),
+        theBloom.arrayOffset(), (int) byteSize, hash, hashCount);
+  }
+
+  public static boolean contains(byte[] buf, int offset, int length,
+      byte[] bloomArray, int bloomOffset, int bloomSize, Hash hash,
+      int hashCount) {
+    int hash1 = hash.hash(buf, offset, length, 0);
+    int hash2 = hash.hash(buf, offset, length, hash1);
+    int numBlocks = bloomSize / BLOCK_BYTES;
+
+    if (randomGeneratorForTest == null) {
+      // Production mode.
+      int blockStart = blockIndex(hash1, numBlocks) * BLOCK_BITS;
+      int step = (hash2 >>> 9) | 1;
+      int bit = hash2;
+      for (int i = 0; i < hashCount; i++) {
+        if (!get(blockStart + (bit & (BLOCK_BITS - 1)), bloomArray, bloomOffset)) {
+          return false;
+        }
+        bit += step;
+      }
+    } else {
+      // Test mode with "fake lookups" to estimate "ideal false positive rate".
+      int blockStart = randomGeneratorForTest.nextInt(numBlocks) * BLOCK_BITS;
+      for (int i = 0; i < hashCount; i++) {
+        int hashLoc = blockStart + randomGeneratorForTest.nextInt(BLOCK_BITS);
+        if (!get(hashLoc, bloomArray, bloomOffset)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static int blockIndex(int hash1, int numBlocks) {
+    return Math.abs(hash1 % numBlocks);
+  }
+
+  @Override
+  protected boolean canFoldTo(int newByteSize) {
+    return newByteSize % BLOCK_BYTES == 0;
+  }
+}
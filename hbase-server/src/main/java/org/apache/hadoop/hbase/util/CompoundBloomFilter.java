@@ -62,7 +62,19 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader)
       throws IOException {
+    this(meta, reader, false);
+  }
+
+  /**
+   * @param meta serialized Bloom filter metadata without any magic blocks
+   * @param blocked whether the chunks are {@link BlockedByteBloomFilter}s, as
+   *          written for {@link #BLOCKED_VERSION}
+   * @throws IOException
+   */
+  public CompoundBloomFilter(DataInput meta, HFile.Reader reader,
+      boolean blocked) throws IOException {
     this.reader = reader;
+    this.blocked = blocked;
 
     totalByteSize = meta.readLong();
     hashCount = meta.readInt();
@@ -108,9 +120,15 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
       }
 
       ByteBuffer bloomBuf = bloomBlock.getBufferReadOnly();
-      result = ByteBloomFilter.contains(key, keyOffset, keyLength,
-          bloomBuf.array(), bloomBuf.arrayOffset() + bloomBlock.headerSize(),
-          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      if (blocked) {
+        result = BlockedByteBloomFilter.contains(key, keyOffset, keyLength,
+            bloomBuf.array(), bloomBuf.arrayOffset() + bloomBlock.headerSize(),
+            bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      } else {
+        result = ByteBloomFilter.contains(key, keyOffset, keyLength,
+            bloomBuf.array(), bloomBuf.arrayOffset() + bloomBlock.headerSize(),
+            bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      }
     }
 
     if (numQueriesPerChunk != null && block >= 0) {
@@ -127,6 +145,10 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
     return true;
   }
 
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   public int getNumChunks() {
     return numChunks;
   }
@@ -173,6 +195,9 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
         "Number of chunks: " + numChunks);
     sb.append(ByteBloomFilter.STATS_RECORD_SEP + 
         "Comparator: " + comparator.getClass().getSimpleName());
+    if (blocked) {
+      sb.append(ByteBloomFilter.STATS_RECORD_SEP + "Blocked");
+    }
     return sb.toString();
   }
 
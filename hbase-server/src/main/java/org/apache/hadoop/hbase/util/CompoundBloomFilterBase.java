@@ -40,6 +40,16 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The version of compound Bloom filters made of
+   * {@link BlockedByteBloomFilter} chunks. The metadata is the same as for
+   * {@link #VERSION}.
+   */
+  public static final int BLOCKED_VERSION = 4;
+
+  /** Whether the chunks are blocked Bloom filters */
+  protected boolean blocked;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
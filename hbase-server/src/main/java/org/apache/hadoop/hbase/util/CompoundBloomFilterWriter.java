@@ -90,6 +90,19 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate,
       int hashType, int maxFold, boolean cacheOnWrite,
       KVComparator comparator) {
+    this(chunkByteSizeHint, errorRate, hashType, maxFold, cacheOnWrite,
+        comparator, false);
+  }
+
+  /**
+   * @param blocked
+   *          whether to write {@link BlockedByteBloomFilter} chunks, which
+   *          older readers do not know about
+   */
+  public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate,
+      int hashType, int maxFold, boolean cacheOnWrite,
+      KVComparator comparator, boolean blocked) {
+    this.blocked = blocked;
     chunkByteSize = ByteBloomFilter.computeFoldableByteSize(
         chunkByteSizeHint * 8L, maxFold);
 
@@ -174,8 +187,13 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
 
       if (prevChunk == null) {
         // First chunk
-        chunk = ByteBloomFilter.createBySize(chunkByteSize, errorRate,
-            hashType, maxFold);
+        if (blocked) {
+          chunk = BlockedByteBloomFilter.createBySize(chunkByteSize, errorRate,
+              hashType, maxFold);
+        } else {
+          chunk = ByteBloomFilter.createBySize(chunkByteSize, errorRate,
+              hashType, maxFold);
+        }
       } else {
         // Use the same parameters as the last chunk, but a new array and
         // a zero key count.
@@ -233,7 +251,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
      */
     @Override
     public void write(DataOutput out) throws IOException {
-      out.writeInt(VERSION);
+      out.writeInt(blocked ? BLOCKED_VERSION : VERSION);
 
       out.writeLong(getByteSize());
       out.writeInt(prevChunk.getHashCount());
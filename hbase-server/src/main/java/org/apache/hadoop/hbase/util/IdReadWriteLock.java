@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Allows multiple concurrent clients to take a read or write lock on a
+ * numeric id. Unlike {@link IdLock}, readers of the same id do not exclude
+ * each other. Ids are mapped onto a fixed number of lock stripes, so no
+ * objects are allocated per lock operation, at the price of unrelated ids
+ * occasionally sharing a stripe. The intended usage is as follows:
+ *
+ * <pre>
+ * ReentrantReadWriteLock lock = idReadWriteLock.getLock(id);
+ * lock.readLock().lock();
+ * try {
+ *   // User code.
+ * } finally {
+ *   lock.readLock().unlock();
+ * }</pre>
+ */
+@InterfaceAudience.Private
+public class IdReadWriteLock {
+  /** Default number of lock stripes */
+  public static final int DEFAULT_NUM_STRIPES = 1024;
+
+  private final ReentrantReadWriteLock[] locks;
+  private final int mask;
+
+  public IdReadWriteLock() {
+    this(DEFAULT_NUM_STRIPES);
+  }
+
+  /**
+   * @param numStripes the number of locks to spread ids over, rounded up to
+   *          the next power of two
+   */
+  public IdReadWriteLock(int numStripes) {
+    if (numStripes <= 0) {
+      throw new IllegalArgumentException("Number of stripes must be positive: " + numStripes);
+    }
+    int size = Integer.highestOneBit(numStripes);
+    if (size < numStripes) {
+      size <<= 1;
+    }
+    this.locks = new ReentrantReadWriteLock[size];
+    for (int i = 0; i < size; i++) {
+      this.locks[i] = new ReentrantReadWriteLock();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Get the lock guarding the given id. The same lock is always returned for
+   * the same id.
+   *
+   * @param id an arbitrary number to lock on
+   * @return the read-write lock for the id
+   */
+  public ReentrantReadWriteLock getLock(long id) {
+    return locks[stripeFor(id)];
+  }
+
+  /** @return the number of lock stripes */
+  public int getNumStripes() {
+    return locks.length;
+  }
+
+  /**
+   * Spreads the id bits before masking. Ids such as bucket offsets are
+   * multiples of a large power of two, so using the low bits directly would
+   * put them all on a handful of stripes.
+   */
+  int stripeFor(long id) {
+    long h = (id ^ (id >>> 32)) * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) & mask;
+  }
+}
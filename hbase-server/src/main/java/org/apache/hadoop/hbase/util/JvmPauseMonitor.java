@@ -22,6 +22,7 @@ import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -66,6 +67,9 @@ public class JvmPauseMonitor {
       "jvm.pause.info-threshold.ms";
   private static final long INFO_THRESHOLD_DEFAULT = 1000;
 
+  /** Time the JVM was paused while garbage collections ran, since the monitor started */
+  private final AtomicLong gcPauseTimeMillis = new AtomicLong();
+
   private Thread monitorThread;
   private volatile boolean shouldRun = true;
 
@@ -92,6 +96,25 @@ public class JvmPauseMonitor {
     }
   }
   
+  /**
+   * @return The total time, in milliseconds, the JVM or host machine was paused while one or
+   *         more garbage collections ran, since the monitor started
+   */
+  public long getGcPauseTimeMillis() {
+    return gcPauseTimeMillis.get();
+  }
+
+  private static boolean hasCollections(Map<String, GcTimes> gcTimesAfterSleep,
+      Map<String, GcTimes> gcTimesBeforeSleep) {
+    for (Map.Entry<String, GcTimes> entry : gcTimesAfterSleep.entrySet()) {
+      GcTimes before = gcTimesBeforeSleep.get(entry.getKey());
+      if (before != null && entry.getValue().gcCount != before.gcCount) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private String formatMessage(long extraSleepTime, Map<String, GcTimes> gcTimesAfterSleep,
       Map<String, GcTimes> gcTimesBeforeSleep) {
 
@@ -162,6 +185,9 @@ public class JvmPauseMonitor {
         }
         long extraSleepTime = sw.elapsedMillis() - SLEEP_INTERVAL_MS;
         Map<String, GcTimes> gcTimesAfterSleep = getGcTimes();
+        if (extraSleepTime > 0 && hasCollections(gcTimesAfterSleep, gcTimesBeforeSleep)) {
+          gcPauseTimeMillis.addAndGet(extraSleepTime);
+        }
 
         if (extraSleepTime > warnThresholdMs) {
           LOG.warn(formatMessage(extraSleepTime, gcTimesAfterSleep, gcTimesBeforeSleep));
@@ -30,6 +30,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.hfile.HFileContext;
@@ -47,6 +48,12 @@ public class HFilePerformanceEvaluation {
   private static final int ROW_LENGTH = 10;
   private static final int ROW_COUNT = 1000000;
   private static final int RFILE_BLOCKSIZE = 8 * 1024;
+  private static final int ENCODED_BLOCKSIZE = 64 * 1024;
+  private static final int ENCODED_ROW_COUNT = 200000;
+  private static final int CELLS_PER_ROW = 5;
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final DataBlockEncoding[] SEEK_ENCODINGS = { DataBlockEncoding.NONE,
+    DataBlockEncoding.FAST_DIFF, DataBlockEncoding.ROW_INDEX };
 
   static final Log LOG =
     LogFactory.getLog(HFilePerformanceEvaluation.class.getName());
@@ -112,14 +119,26 @@ public class HFilePerformanceEvaluation {
       }
     });
 
+    // Random seeks into blocks of multi-cell rows, per data block encoding
+    for (DataBlockEncoding encoding : SEEK_ENCODINGS) {
+      final Path ef = fs.makeQualified(new Path("performanceevaluation." + encoding));
+      if (fs.exists(ef)) {
+        fs.delete(ef, true);
+      }
+      runBenchmark(new EncodedWriteBenchmark(conf, fs, ef, ENCODED_ROW_COUNT, encoding),
+          ENCODED_ROW_COUNT);
+      runBenchmark(new EncodedUniformRandomSeekBenchmark(conf, fs, ef, ENCODED_ROW_COUNT,
+          encoding), ENCODED_ROW_COUNT);
+      fs.delete(ef, true);
+    }
   }
 
   protected void runBenchmark(RowOrientedBenchmark benchmark, int rowCount)
     throws Exception {
-    LOG.info("Running " + benchmark.getClass().getSimpleName() + " for " +
+    LOG.info("Running " + benchmark + " for " +
         rowCount + " rows.");
     long elapsedTime = benchmark.run();
-    LOG.info("Running " + benchmark.getClass().getSimpleName() + " for " +
+    LOG.info("Running " + benchmark + " for " +
         rowCount + " rows took " + elapsedTime + "ms.");
   }
 
@@ -152,6 +171,11 @@ public class HFilePerformanceEvaluation {
       // do nothing
     }
 
+    @Override
+    public String toString() {
+      return getClass().getSimpleName();
+    }
+
     /**
      * Run benchmark
      * @return elapsed time.
@@ -368,6 +392,100 @@ public class HFilePerformanceEvaluation {
     }
   }
 
+  static KeyValue createEncodedKeyValue(int row, int cell, byte[] value) {
+    return new KeyValue(format(row), FAMILY, Bytes.toBytes(cell), 1L, KeyValue.Type.Put,
+        value);
+  }
+
+  /**
+   * Writes rows of {@link #CELLS_PER_ROW} cells in 64 KB blocks encoded with the
+   * given data block encoding.
+   */
+  static class EncodedWriteBenchmark extends RowOrientedBenchmark {
+    private final DataBlockEncoding encoding;
+    private HFile.Writer writer;
+    private Random random = new Random();
+    private byte[] bytes = new byte[ROW_LENGTH];
+
+    public EncodedWriteBenchmark(Configuration conf, FileSystem fs, Path mf,
+        int totalRows, DataBlockEncoding encoding) {
+      super(conf, fs, mf, totalRows);
+      this.encoding = encoding;
+    }
+
+    @Override
+    void setUp() throws Exception {
+      HFileContext hFileContext = new HFileContextBuilder().withBlockSize(ENCODED_BLOCKSIZE)
+          .withDataBlockEncoding(encoding).build();
+      writer =
+        HFile.getWriterFactoryNoCache(conf)
+            .withPath(fs, mf)
+            .withFileContext(hFileContext)
+            .withComparator(KeyValue.COMPARATOR)
+            .create();
+    }
+
+    @Override
+    void doRow(int i) throws Exception {
+      for (int cell = 0; cell < CELLS_PER_ROW; cell++) {
+        random.nextBytes(bytes);
+        writer.append(createEncodedKeyValue(i, cell, bytes));
+      }
+    }
+
+    @Override
+    protected int getReportingPeriod() {
+      return this.totalRows; // don't report progress
+    }
+
+    @Override
+    void tearDown() throws Exception {
+      writer.close();
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + "(" + encoding + ")";
+    }
+  }
+
+  /**
+   * Seeks to the middle cell of uniformly random rows, which is where a Get for
+   * a single column lands in a block of the file written by
+   * {@link EncodedWriteBenchmark}.
+   */
+  static class EncodedUniformRandomSeekBenchmark extends ReadBenchmark {
+    private final DataBlockEncoding encoding;
+    private Random random = new Random();
+
+    public EncodedUniformRandomSeekBenchmark(Configuration conf, FileSystem fs,
+        Path mf, int totalRows, DataBlockEncoding encoding) {
+      super(conf, fs, mf, totalRows);
+      this.encoding = encoding;
+    }
+
+    @Override
+    void doRow(int i) throws Exception {
+      HFileScanner scanner = this.reader.getScanner(true, true);
+      KeyValue kv = createEncodedKeyValue(random.nextInt(totalRows), CELLS_PER_ROW / 2, null);
+      if (scanner.seekTo(kv.getKey()) != 0) {
+        LOG.info("Nonexistent cell: " + kv);
+        return;
+      }
+      // The encoded scanners return a deep copy positioned at its end
+      ByteBuffer k = scanner.getKey();
+      k.rewind();
+      PerformanceEvaluationCommons.assertKey(kv.getKey(), k);
+      ByteBuffer v = scanner.getValue();
+      PerformanceEvaluationCommons.assertValueSize(v.limit(), ROW_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + "(" + encoding + ")";
+    }
+  }
+
   /**
    * @param args
    * @throws Exception
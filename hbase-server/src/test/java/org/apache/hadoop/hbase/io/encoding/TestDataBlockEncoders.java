@@ -17,6 +17,7 @@
 package org.apache.hadoop.hbase.io.encoding;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -431,4 +432,96 @@ public class TestDataBlockEncoders {
         kvList);
   }
 
+  /**
+   * Test that the row index finds the sought key or the one before it, whatever
+   * row the seeker is positioned at.
+   */
+  @Test
+  public void testRowIndexSeek() throws IOException {
+    List<KeyValue> kvList = new ArrayList<KeyValue>();
+    byte[] family = new byte[] { 'f' };
+    for (int row = 0; row < 100; row++) {
+      for (int qualifier = 0; qualifier < 3; qualifier++) {
+        byte[] rowBytes = Bytes.toBytes(String.format("row%03d", row * 2));
+        byte[] qualifierBytes = Bytes.toBytes("q" + qualifier);
+        if (includesTags) {
+          kvList.add(new KeyValue(rowBytes, family, qualifierBytes, 0, qualifierBytes,
+              new Tag[] { new Tag((byte) 1, "value1") }));
+        } else {
+          kvList.add(new KeyValue(rowBytes, family, qualifierBytes, 0, Type.Put, qualifierBytes));
+        }
+      }
+    }
+    ByteBuffer originalBuffer = RedundantKVGenerator.convertKvToByteBuffer(kvList,
+        includesMemstoreTS);
+    DataBlockEncoder encoder = DataBlockEncoding.ROW_INDEX.getEncoder();
+    HFileContext meta = new HFileContextBuilder()
+                        .withHBaseCheckSum(false)
+                        .withIncludesMvcc(includesMemstoreTS)
+                        .withIncludesTags(includesTags)
+                        .withCompression(Compression.Algorithm.NONE)
+                        .build();
+    DataBlockEncoder.EncodedSeeker seeker = encoder.createSeeker(KeyValue.COMPARATOR,
+        encoder.newDataBlockDecodingContext(meta));
+    seeker.setCurrentBuffer(ByteBuffer.wrap(encodeBytes(DataBlockEncoding.ROW_INDEX,
+        originalBuffer)));
+
+    for (int i = 0; i < kvList.size(); i++) {
+      KeyValue kv = kvList.get(i);
+      seeker.rewind();
+      assertEquals(0, seeker.seekToKeyInBlock(kv, false));
+      assertKeyValue(kv, seeker.getKeyValueBuffer());
+      if (i > 0) {
+        seeker.rewind();
+        assertEquals(1, seeker.seekToKeyInBlock(kv, true));
+        assertKeyValue(kvList.get(i - 1), seeker.getKeyValueBuffer());
+      }
+    }
+
+    // Rows that are not in the block, sought forward without rewinding
+    seeker.rewind();
+    for (int row = 1; row < 200; row += 2) {
+      KeyValue firstOnRow = KeyValueUtil.createFirstOnRow(
+          Bytes.toBytes(String.format("row%03d", row)));
+      assertEquals(1, seeker.seekToKeyInBlock(firstOnRow, false));
+      assertKeyValue(kvList.get(row / 2 * 3 + 2), seeker.getKeyValueBuffer());
+    }
+  }
+
+  /**
+   * Test that the dictionary encoding stores repeated columns and values once.
+   */
+  @Test
+  public void testDictionaryOnRepeatedColumnsAndValues() throws IOException {
+    List<KeyValue> kvList = new ArrayList<KeyValue>();
+    byte[] family = new byte[] { 'f' };
+    String[] states = { "OK", "WARNING", "CRITICAL" };
+    for (int row = 0; row < 200; row++) {
+      for (int metric = 0; metric < 10; metric++) {
+        byte[] rowBytes = Bytes.toBytes(String.format("host%03d", row));
+        byte[] qualifier = Bytes.toBytes("metric.name." + metric);
+        byte[] value = Bytes.toBytes(states[(row + metric) % states.length]);
+        if (includesTags) {
+          kvList.add(new KeyValue(rowBytes, family, qualifier, row, value,
+              new Tag[] { new Tag((byte) 1, "value1") }));
+        } else {
+          kvList.add(new KeyValue(rowBytes, family, qualifier, row, Type.Put, value));
+        }
+      }
+    }
+    ByteBuffer originalBuffer = RedundantKVGenerator.convertKvToByteBuffer(kvList,
+        includesMemstoreTS);
+    testEncodersOnDataset(originalBuffer, kvList);
+
+    int dictionarySize = encodeBytes(DataBlockEncoding.DICTIONARY, originalBuffer).length;
+    int fastDiffSize = encodeBytes(DataBlockEncoding.FAST_DIFF, originalBuffer).length;
+    assertTrue("DICTIONARY " + dictionarySize + " not smaller than FAST_DIFF " + fastDiffSize,
+        dictionarySize < fastDiffSize);
+  }
+
+  private static void assertKeyValue(KeyValue expected, ByteBuffer actual) {
+    assertEquals(Bytes.toStringBinary(expected.getBuffer(), expected.getOffset(),
+        expected.getLength()), Bytes.toStringBinary(actual.array(), actual.arrayOffset(),
+        actual.limit()));
+  }
 }
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManagerTestHelper;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the accounting of the block cache usage by table, family and file.
+ */
+@Category(SmallTests.class)
+public class TestBlockCacheUsage {
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManagerTestHelper.reset();
+  }
+
+  @Test
+  public void testUsage() {
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(1000L * 60 * 60 * 24 * 365);
+    EnvironmentEdgeManagerTestHelper.injectEdge(edge);
+
+    BlockCacheUsage usage = new BlockCacheUsage();
+    usage.registerFile("f1", new Path("/hbase/data/default/t1/r1/cf1/f1"));
+    usage.registerFile("f2", new Path("/hbase/data/default/t1/r1/cf2/f2"));
+    usage.registerFile("f3", new Path("/hbase/data/default/t2/r2/cf1/f3"));
+
+    long oldTime = BlockCacheUsage.now();
+    usage.blockCached(new BlockCacheKey("f1", 0), 100, oldTime);
+    usage.blockCached(new BlockCacheKey("f1", 100), 100, oldTime);
+    edge.incValue(2 * 60 * 60 * 1000);
+    long newTime = BlockCacheUsage.now();
+    usage.blockCached(new BlockCacheKey("f2", 0), 50, newTime);
+    usage.blockCached(new BlockCacheKey("f3", 0), 10, newTime);
+    usage.blockCached(new BlockCacheKey("nofile", 0), 1, newTime);
+    usage.blockHit(new BlockCacheKey("f1", 0));
+    usage.blockHit(new BlockCacheKey("f3", 0));
+    usage.blockHit(new BlockCacheKey("f3", 0));
+
+    Map<String, Long> sizeByTable = usage.getCachedSizeByTable();
+    assertEquals(250L, (long) sizeByTable.get("t1"));
+    assertEquals(10L, (long) sizeByTable.get("t2"));
+    assertEquals(1L, (long) sizeByTable.get(BlockCacheUsage.UNKNOWN));
+    assertEquals(3L, (long) usage.getCachedBlocksByTable().get("t1"));
+    assertEquals(1L, (long) usage.getHitCountByTable().get("t1"));
+    assertEquals(2L, (long) usage.getHitCountByTable().get("t2"));
+    assertEquals(200L, (long) usage.getCachedSizeByFamily().get("t1/cf1"));
+    assertEquals(50L, (long) usage.getCachedSizeByFamily().get("t1/cf2"));
+    assertEquals("t1/cf1/f1", usage.getCachedSizeOfTopFiles().keySet().iterator().next());
+
+    // The serialized length of the blocks of the bucket caches is kept apart
+    usage.serializedBlockCached(new BlockCacheKey("f3", 100), 64, newTime);
+    assertEquals(10L, (long) usage.getCachedSizeByTable().get("t2"));
+    assertEquals(64L, (long) usage.getCachedSerializedSizeByTable().get("t2"));
+    assertEquals(0L, (long) usage.getCachedSerializedSizeByTable().get("t1"));
+    assertEquals(64L, (long) usage.getCachedSerializedSizeByFamily().get("t2/cf1"));
+    assertEquals("t2/cf1/f3",
+        usage.getCachedSerializedSizeOfTopFiles().keySet().iterator().next());
+    usage.serializedBlockRemoved(new BlockCacheKey("f3", 100), 64, newTime);
+    assertEquals(0L, (long) usage.getCachedSerializedSizeByTable().get("t2"));
+
+    Map<String, Long> byAge = usage.getCachedBlocksByAge();
+    assertEquals(3L, (long) byAge.get("<1m"));
+    assertEquals(2L, (long) byAge.get("<6h"));
+
+    // Blocks of closed files are still accounted until they are removed
+    usage.unregisterFile("f1");
+    usage.blockRemoved(new BlockCacheKey("f1", 0), 100, oldTime);
+    assertEquals(150L, (long) usage.getCachedSizeByTable().get("t1"));
+    usage.blockRemoved(new BlockCacheKey("f1", 100), 100, oldTime);
+    assertEquals(0L, (long) usage.getCachedBlocksByAge().get("<6h"));
+    assertFalse(usage.getCachedSizeOfTopFiles().containsKey("t1/cf1/f1"));
+  }
+
+  @Test
+  public void testEntriesDropped() {
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(1000L * 60 * 60 * 24 * 365);
+    EnvironmentEdgeManagerTestHelper.injectEdge(edge);
+
+    BlockCacheUsage usage = new BlockCacheUsage();
+    usage.registerFile("f1", new Path("/hbase/data/default/t1/r1/cf1/f1"));
+    long time = BlockCacheUsage.now();
+    usage.blockCached(new BlockCacheKey("f1", 0), 100, time);
+    usage.blockCached(new BlockCacheKey("nofile", 0), 100, time);
+    assertEquals(2, usage.getFileCount());
+    edge.incValue(10 * 60 * 1000);
+    // Unregistered files are dropped with their last block
+    usage.blockRemoved(new BlockCacheKey("nofile", 0), 100, time);
+    assertEquals(1, usage.getFileCount());
+    assertEquals(1, usage.getMinuteCount());
+    // Closed files too
+    usage.unregisterFile("f1");
+    assertEquals(1, usage.getFileCount());
+    usage.blockRemoved(new BlockCacheKey("f1", 0), 100, time);
+    assertEquals(0, usage.getFileCount());
+    assertEquals(0, usage.getMinuteCount());
+
+    // A minute whose blocks were all removed within it is dropped once blocks are cached later
+    time = BlockCacheUsage.now();
+    usage.blockCached(new BlockCacheKey("nofile", 0), 100, time);
+    usage.blockRemoved(new BlockCacheKey("nofile", 0), 100, time);
+    assertEquals(0, usage.getFileCount());
+    assertEquals(1, usage.getMinuteCount());
+    edge.incValue(5 * 60 * 1000);
+    usage.blockCached(new BlockCacheKey("nofile", 0), 100, BlockCacheUsage.now());
+    assertEquals(1, usage.getMinuteCount());
+  }
+
+  @Test
+  public void testFamilyResolvedOnRegister() {
+    BlockCacheUsage usage = new BlockCacheUsage();
+    // Cached on write, before the file is opened
+    long time = BlockCacheUsage.now();
+    usage.blockCached(new BlockCacheKey("f1", 0), 100, time);
+    usage.blockHit(new BlockCacheKey("f1", 0));
+    assertEquals(100L, (long) usage.getCachedSizeByTable().get(BlockCacheUsage.UNKNOWN));
+
+    usage.registerFile("f1", new Path("/hbase/data/default/t1/r1/cf1/f1"));
+    assertEquals(0L, (long) usage.getCachedSizeByTable().get(BlockCacheUsage.UNKNOWN));
+    assertEquals(100L, (long) usage.getCachedSizeByFamily().get("t1/cf1"));
+    assertEquals(1L, (long) usage.getHitCountByFamily().get("t1/cf1"));
+    usage.blockCached(new BlockCacheKey("f1", 100), 100, time);
+    usage.blockRemoved(new BlockCacheKey("f1", 0), 100, time);
+    assertEquals(1L, (long) usage.getCachedBlocksByTable().get("t1"));
+    assertEquals(0L, (long) usage.getCachedBlocksByTable().get(BlockCacheUsage.UNKNOWN));
+  }
+
+  @Test
+  public void testLruBlockCacheReports() throws IOException {
+    BlockCacheUsage usage = BlockCacheUsage.getInstance();
+    String hfileName = "testLruBlockCacheReports";
+    usage.registerFile(hfileName,
+        new Path("/hbase/data/default/testLruBlockCacheReports/r/cf/" + hfileName));
+    try {
+      LruBlockCache cache = new LruBlockCache(1024 * 1024, 16 * 1024, false);
+      CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(1024, 2);
+      BlockCacheKey key = new BlockCacheKey(hfileName, 0);
+      cache.cacheBlock(key, blocks[0].block);
+      assertEquals(1L, (long) usage.getCachedBlocksByTable().get(hfileName));
+      cache.getBlock(key, true, false);
+      assertEquals(1L, (long) usage.getHitCountByTable().get(hfileName));
+
+      // The summaries of a cache only cover its own blocks
+      LruBlockCache otherCache = new LruBlockCache(1024 * 1024, 16 * 1024, false);
+      BlockCacheKey otherKey = new BlockCacheKey(hfileName, 1024);
+      otherCache.cacheBlock(otherKey, blocks[1].block);
+      List<BlockCacheColumnFamilySummary> summaries =
+          cache.getBlockCacheColumnFamilySummaries(null);
+      assertEquals(1, summaries.size());
+      assertEquals(hfileName, summaries.get(0).getTable());
+      assertEquals("cf", summaries.get(0).getColumnFamily());
+      assertEquals(1, summaries.get(0).getBlocks());
+      assertEquals(2L, (long) usage.getCachedBlocksByTable().get(hfileName));
+      otherCache.evictBlock(otherKey);
+      otherCache.shutdown();
+
+      cache.evictBlock(key);
+      assertEquals(0L, (long) usage.getCachedBlocksByTable().get(hfileName));
+      assertNull(cache.getBlock(key, true, false));
+      assertTrue(cache.getBlockCacheColumnFamilySummaries(null).isEmpty());
+      cache.shutdown();
+    } finally {
+      usage.unregisterFile(hfileName);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Test {@link BlockReadahead}: scanners with readahead see the same cells as
+ * without it, across seeks.
+ */
+@Category(SmallTests.class)
+public class TestBlockReadahead {
+
+  private final static HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final int NUM_KEYS = 5000;
+
+  // No block cache, so that the blocks are read from the file
+  private static final CacheConfig CACHE_CONF = new CacheConfig(null, false, false, false,
+      false, false, false, false);
+
+  private static HFile.Reader createReader(Configuration conf, String name)
+      throws IOException {
+    FileSystem fs = TEST_UTIL.getTestFileSystem();
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    HFileContext context = new HFileContextBuilder().withBlockSize(1024).build();
+    HFile.Writer writer = HFile.getWriterFactory(conf, CACHE_CONF)
+        .withPath(fs, path)
+        .withFileContext(context)
+        .withComparator(KeyValue.COMPARATOR)
+        .create();
+    for (int i = 0; i < NUM_KEYS; i++) {
+      writer.append(new KeyValue(getRow(i), Bytes.toBytes("family"),
+          Bytes.toBytes("qual"), Bytes.toBytes("value" + i)));
+    }
+    writer.close();
+
+    HFile.Reader reader = HFile.createReader(fs, path, CACHE_CONF, conf);
+    reader.loadFileInfo();
+    return reader;
+  }
+
+  @Test
+  public void testScanWithReadahead() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(BlockReadahead.READAHEAD_BLOCKS_KEY, 8);
+    HFile.Reader reader = createReader(conf, "readahead.hfile");
+    long hits = BlockReadahead.hitCount.get();
+
+    // A full scan
+    HFileScanner scanner = reader.getScanner(false, false);
+    assertTrue(scanner.seekTo());
+    assertEquals(NUM_KEYS, countToEnd(scanner, 0));
+    assertTrue(BlockReadahead.hitCount.get() > hits);
+
+    // Seeks drop the blocks read ahead
+    for (int start : new int[] { 4000, 100, 2500 }) {
+      assertEquals(0, scanner.seekTo(new KeyValue(getRow(start), Bytes.toBytes("family"),
+          Bytes.toBytes("qual"), Bytes.toBytes("value" + start))));
+      assertEquals(NUM_KEYS - start, countToEnd(scanner, start));
+    }
+    scanner.close();
+    reader.close(true);
+  }
+
+  @Test
+  public void testCloseStopsReadahead() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(BlockReadahead.READAHEAD_BLOCKS_KEY, 8);
+    HFile.Reader reader = createReader(conf, "readahead-close.hfile");
+    HFileScanner scanner = reader.getScanner(false, false);
+    BlockReadahead readahead = ((HFileReaderV2.AbstractScannerV2) scanner).getReadahead();
+    assertTrue(scanner.seekTo());
+    // Cross a few blocks so that more are read ahead
+    for (int i = 0; i < 200; i++) {
+      assertTrue(scanner.next());
+    }
+    scanner.close();
+    // Nothing is read ahead any more once the scanner is closed
+    assertEquals(0, readahead.getPendingReads());
+    reader.close(true);
+  }
+
+  private static int countToEnd(HFileScanner scanner, int start) throws IOException {
+    int count = 0;
+    do {
+      KeyValue kv = scanner.getKeyValue();
+      assertTrue(Bytes.equals(getRow(start + count), kv.getRow()));
+      assertEquals("value" + (start + count), Bytes.toString(kv.getValue()));
+      count++;
+    } while (scanner.next());
+    return count;
+  }
+
+  private static byte[] getRow(int i) {
+    return Bytes.toBytes(String.format("row%06d", i));
+  }
+}
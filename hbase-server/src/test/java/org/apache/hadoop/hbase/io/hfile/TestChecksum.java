@@ -22,12 +22,15 @@ package org.apache.hadoop.hbase.io.hfile;
 import static org.apache.hadoop.hbase.io.compress.Compression.Algorithm.GZ;
 import static org.apache.hadoop.hbase.io.compress.Compression.Algorithm.NONE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -270,6 +273,43 @@ public class TestChecksum {
     assertEquals(ChecksumType.valueOf(type.toString()), type);
   }
 
+  /**
+   * Test that chunked checksums are validated the same way over heap and
+   * direct buffers, and that a corrupted chunk is detected.
+   */
+  @Test
+  public void testVerifyChunkedChecksums() throws IOException {
+    for (ChecksumType type : new ChecksumType[] { ChecksumType.CRC32, ChecksumType.CRC32C }) {
+      for (int bytesPerChecksum : BYTES_PER_CHECKSUM) {
+        byte[] data = new byte[5 * bytesPerChecksum + 17];
+        new Random(bytesPerChecksum).nextBytes(data);
+        int chunks = (int) ChecksumUtil.numChunks(data.length, bytesPerChecksum);
+        byte[] checksums = new byte[chunks * HFileBlock.CHECKSUM_SIZE];
+        ChecksumUtil.generateChecksums(data, 0, data.length, checksums, 0, type,
+            bytesPerChecksum);
+
+        for (boolean direct : BOOLEAN_VALUES) {
+          assertNull(ChecksumUtil.verifyChunkedChecksums("test", type, bytesPerChecksum,
+              toBuffer(data, direct), toBuffer(checksums, direct)));
+          data[3 * bytesPerChecksum + 1] ^= 1;
+          assertNotNull(ChecksumUtil.verifyChunkedChecksums("test", type, bytesPerChecksum,
+              toBuffer(data, direct), toBuffer(checksums, direct)));
+          data[3 * bytesPerChecksum + 1] ^= 1;
+        }
+      }
+    }
+  }
+
+  private static ByteBuffer toBuffer(byte[] bytes, boolean direct) {
+    if (!direct) {
+      return ByteBuffer.wrap(bytes);
+    }
+    ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes);
+    buf.flip();
+    return buf;
+  }
+
   private void validateData(DataInputStream in) throws IOException {
     // validate data
     for (int i = 0; i < 1234; i++) {
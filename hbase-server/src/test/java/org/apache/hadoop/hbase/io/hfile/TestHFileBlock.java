@@ -363,6 +363,62 @@ public class TestHFileBlock {
     }
   }
 
+  /**
+   * Test that a block read in its packed on-disk form survives cache
+   * serialization and unpacks to the same block a regular read returns.
+   */
+  @Test
+  public void testPackedBlock() throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), "blocks_v2_packed");
+    FSDataOutputStream os = fs.create(path);
+    HFileContext meta = new HFileContextBuilder()
+                       .withCompression(GZ)
+                       .withIncludesMvcc(includesMemstoreTS)
+                       .withIncludesTags(includesTag)
+                       .withBytesPerCheckSum(HFile.DEFAULT_BYTES_PER_CHECKSUM)
+                       .withChecksumType(HFile.DEFAULT_CHECKSUM_TYPE)
+                       .build();
+    HFileBlock.Writer hbw = new HFileBlock.Writer(null, meta);
+    long totalSize = 0;
+    for (int blockId = 0; blockId < 2; ++blockId) {
+      DataOutputStream dos = hbw.startWriting(BlockType.DATA);
+      writeTestBlockContents(dos);
+      hbw.writeHeaderAndData(os);
+      totalSize += hbw.getOnDiskSizeWithHeader();
+    }
+    os.close();
+
+    FSDataInputStream is = fs.open(path);
+    meta = new HFileContextBuilder()
+        .withHBaseCheckSum(true)
+        .withIncludesMvcc(includesMemstoreTS)
+        .withIncludesTags(includesTag)
+        .withCompression(GZ).build();
+    HFileBlock.FSReader hbr = new HFileBlock.FSReaderV2(is, totalSize, meta);
+    HFileBlock expected = hbr.readBlockData(0, -1, -1, true);
+    HFileBlock packed = hbr.readBlockData(0, -1, -1, true, false);
+    is.close();
+
+    assertTrue(expected.isUnpacked());
+    assertTrue(!packed.isUnpacked());
+    assertTrue(packed.getSerializedLength() < expected.getSerializedLength());
+    assertEquals(expected.getSerializedLength(), packed.getUnpackedSerializedLength());
+
+    // Round trip through the cache serialization format
+    ByteBuffer serialized = ByteBuffer.allocate(packed.getSerializedLength());
+    packed.serialize(serialized);
+    HFileBlock deserialized = (HFileBlock) packed.getDeserializer().deserialize(serialized);
+    assertTrue(!deserialized.isUnpacked());
+
+    HFileBlock unpacked = deserialized.unpack(meta, hbr);
+    assertTrue(unpacked.isUnpacked());
+    assertTrue(!deserialized.isUnpacked());
+    assertEquals(expected.getBufferWithoutHeader(), unpacked.getBufferWithoutHeader());
+    assertEquals(expected.getBlockType(), unpacked.getBlockType());
+    assertEquals(expected.getUncompressedSizeWithoutHeader(),
+        unpacked.getUncompressedSizeWithoutHeader());
+  }
+
   /**
    * Test encoding/decoding data blocks.
    * @throws IOException a bug or a problem with temporary files.
@@ -114,7 +114,7 @@ public class TestHFileBlockIndex {
     conf = TEST_UTIL.getConfiguration();
 
     // This test requires at least HFile format version 2.
-    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.MAX_FORMAT_VERSION);
+    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.DEFAULT_FORMAT_VERSION);
 
     fs = HFileSystem.get(conf);
   }
@@ -0,0 +1,289 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.Tag;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Testing writing a version 4 {@link HFile}, with columnar data blocks, and
+ * reading all or some of its columns.
+ */
+@RunWith(Parameterized.class)
+@Category(SmallTests.class)
+public class TestHFileWriterV4 {
+
+  private static final HBaseTestingUtility TEST_UTIL =
+      new HBaseTestingUtility();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final int NUM_ROWS = 300;
+  private static final int NUM_COLUMNS = 20;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private boolean useTags;
+
+  public TestHFileWriterV4(boolean useTags) {
+    this.useTags = useTags;
+  }
+
+  @Parameters
+  public static Collection<Object[]> parameters() {
+    return HBaseTestingUtility.BOOLEAN_PARAMETERIZED;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(HFile.FORMAT_VERSION_KEY, 4);
+    fs = FileSystem.get(conf);
+  }
+
+  @Test
+  public void testColumnarScans() throws IOException {
+    Path hfilePath = new Path(TEST_UTIL.getDataTestDir(), "testHFileFormatV4");
+    List<KeyValue> keyValues = writeHFile(hfilePath);
+
+    CacheConfig cacheConf = new CacheConfig(conf);
+    HFile.Reader reader = HFile.createReader(fs, hfilePath, cacheConf, conf);
+    reader.loadFileInfo();
+    assertEquals(4, reader.getTrailer().getMajorVersion());
+    assertEquals(keyValues.size(), reader.getEntries());
+
+    // All the columns
+    checkScanner(reader.getScanner(false, false), keyValues, keyValues);
+
+    // Some columns, and the delete markers
+    NavigableSet<byte[]> columns = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    columns.add(getQualifier(3));
+    columns.add(getQualifier(17));
+    List<KeyValue> expected = new ArrayList<KeyValue>();
+    for (KeyValue kv : keyValues) {
+      if (kv.getTypeByte() != KeyValue.Type.Put.getCode() || columns.contains(kv.getQualifier())) {
+        expected.add(kv);
+      }
+    }
+    checkScanner(reader.getScanner(false, false, false, columns), expected, keyValues);
+
+    // A column which is not in the file
+    columns.clear();
+    columns.add(Bytes.toBytes("missing"));
+    expected.clear();
+    for (KeyValue kv : keyValues) {
+      if (kv.getTypeByte() != KeyValue.Type.Put.getCode()) {
+        expected.add(kv);
+      }
+    }
+    checkScanner(reader.getScanner(false, false, false, columns), expected, keyValues);
+    reader.close();
+  }
+
+  private List<KeyValue> writeHFile(Path hfilePath) throws IOException {
+    HFileContext context = new HFileContextBuilder()
+                           .withBlockSize(1024)
+                           .withIncludesTags(useTags)
+                           .build();
+    HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+        .withPath(fs, hfilePath)
+        .withFileContext(context)
+        .withComparator(KeyValue.COMPARATOR)
+        .create();
+    assertTrue(writer instanceof HFileWriterV4);
+
+    List<KeyValue> keyValues = new ArrayList<KeyValue>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      byte[] row = Bytes.toBytes(String.format("row%05d", i));
+      if (i % 50 == 0) {
+        keyValues.add(new KeyValue(row, FAMILY, null, 20L, KeyValue.Type.DeleteFamily));
+      }
+      for (int j = 0; j < NUM_COLUMNS; j++) {
+        if (i % 7 == 0 && j == 3) {
+          keyValues.add(new KeyValue(row, FAMILY, getQualifier(j), 15L,
+              KeyValue.Type.DeleteColumn));
+        }
+        byte[] value = Bytes.toBytes("value-" + i + "-" + j);
+        if (useTags) {
+          List<Tag> tags = new ArrayList<Tag>();
+          tags.add(new Tag((byte) 1, Bytes.toBytes("tag" + j)));
+          keyValues.add(new KeyValue(row, FAMILY, getQualifier(j), 10L, value, tags));
+        } else {
+          keyValues.add(new KeyValue(row, FAMILY, getQualifier(j), 10L, value));
+        }
+      }
+    }
+    for (KeyValue kv : keyValues) {
+      writer.append(kv);
+    }
+    writer.close();
+    return keyValues;
+  }
+
+  private static byte[] getQualifier(int j) {
+    return Bytes.toBytes(String.format("q%02d", j));
+  }
+
+  /**
+   * Checks that the scanner returns the expected cells, in full scans and
+   * after seeks to any key of the file.
+   */
+  private void checkScanner(HFileScanner scanner, List<KeyValue> expected,
+      List<KeyValue> keyValues) throws IOException {
+    // Full scan
+    assertTrue(scanner.seekTo());
+    int count = 0;
+    do {
+      assertCell(expected.get(count++), scanner.getKeyValue());
+    } while (scanner.next());
+    assertEquals(expected.size(), count);
+
+    List<KeyValue> allKeys = new ArrayList<KeyValue>(keyValues);
+    allKeys.add(KeyValue.createFirstOnRow(Bytes.toBytes("row00042a")));
+    allKeys.add(KeyValue.createLastOnRow(Bytes.toBytes("row99999")));
+    Random rand = new Random(12345);
+    for (int i = 0; i < 200; i++) {
+      KeyValue key = allKeys.get(rand.nextInt(allKeys.size()));
+      int next = firstAtOrAfter(expected, key);
+
+      // Seek at or after, as StoreFileScanner does
+      if (seekAtOrAfter(scanner, key)) {
+        assertCell(expected.get(next), scanner.getKeyValue());
+      } else {
+        assertEquals(expected.size(), next);
+      }
+
+      // Seek before
+      if (scanner.seekBefore(key.getBuffer(), key.getKeyOffset(), key.getKeyLength())) {
+        assertTrue(next > 0);
+        assertCell(expected.get(next - 1), scanner.getKeyValue());
+      } else {
+        assertEquals(0, next);
+      }
+    }
+
+    // Reseeks, in key order
+    assertTrue(scanner.seekTo());
+    for (int i = 0; i < expected.size(); i += 1 + rand.nextInt(40)) {
+      KeyValue key = expected.get(i);
+      int result = scanner.reseekTo(key.getBuffer(), key.getKeyOffset(), key.getKeyLength());
+      assertEquals(0, result);
+      assertCell(key, scanner.getKeyValue());
+    }
+  }
+
+  private static int firstAtOrAfter(List<KeyValue> keyValues, KeyValue key) {
+    int i = 0;
+    while (i < keyValues.size() && KeyValue.COMPARATOR.compare(keyValues.get(i), key) < 0) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean seekAtOrAfter(HFileScanner s, KeyValue k) throws IOException {
+    int result = s.seekTo(k.getBuffer(), k.getKeyOffset(), k.getKeyLength());
+    if (result < 0) {
+      if (result == HConstants.INDEX_KEY_MAGIC) {
+        return true;
+      }
+      return s.seekTo();
+    } else if (result > 0) {
+      return s.next();
+    }
+    return true;
+  }
+
+  private static void assertCell(KeyValue expected, Cell actual) {
+    KeyValue kv = KeyValueUtil.ensureKeyValue(actual);
+    assertEquals(expected.getKeyString(), kv.getKeyString());
+    assertTrue(Bytes.equals(expected.getValue(), kv.getValue()));
+    if (expected.getTagsLength() > 0) {
+      assertTrue(Bytes.equals(expected.getTagsArray(), expected.getTagsOffset(),
+          expected.getTagsLength(), kv.getTagsArray(), kv.getTagsOffset(), kv.getTagsLength()));
+    }
+  }
+
+  @Test
+  public void testBlocksWithoutSelectedColumns() throws IOException {
+    // The first data block only has skipped columns
+    Path hfilePath = new Path(TEST_UTIL.getDataTestDir(), "testHFileFormatV4Skips");
+    HFileContext context = new HFileContextBuilder().withBlockSize(256).build();
+    HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+        .withPath(fs, hfilePath)
+        .withFileContext(context)
+        .withComparator(KeyValue.COMPARATOR)
+        .create();
+    List<KeyValue> keyValues = new ArrayList<KeyValue>();
+    List<KeyValue> selected = new ArrayList<KeyValue>();
+    for (int i = 0; i < 100; i++) {
+      byte[] row = Bytes.toBytes(String.format("row%05d", i));
+      byte[] qualifier = i < 50 ? Bytes.toBytes("a") : Bytes.toBytes("b");
+      KeyValue kv = new KeyValue(row, FAMILY, qualifier, 10L, Bytes.toBytes("value" + i));
+      writer.append(kv);
+      keyValues.add(kv);
+      if (i >= 50) {
+        selected.add(kv);
+      }
+    }
+    writer.close();
+
+    CacheConfig cacheConf = new CacheConfig(conf);
+    HFile.Reader reader = HFile.createReader(fs, hfilePath, cacheConf, conf);
+    reader.loadFileInfo();
+    NavigableSet<byte[]> columns = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    columns.add(Bytes.toBytes("b"));
+    HFileScanner scanner = reader.getScanner(false, true, false, columns);
+    checkScanner(scanner, selected, keyValues);
+
+    columns.clear();
+    columns.add(Bytes.toBytes("c"));
+    scanner = reader.getScanner(false, true, false, columns);
+    assertFalse(scanner.seekTo());
+    KeyValue key = KeyValue.createFirstOnRow(Bytes.toBytes("row00010"));
+    assertFalse(seekAtOrAfter(scanner, key));
+    reader.close();
+  }
+}
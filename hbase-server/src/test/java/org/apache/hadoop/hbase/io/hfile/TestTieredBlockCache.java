@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests lookups, promotions and per level statistics of the
+ * {@link TieredBlockCache}.
+ */
+@Category(SmallTests.class)
+public class TestTieredBlockCache {
+  private static final int BLOCK_SIZE = 8192;
+  private static final long CAPACITY = 32 * 1024 * 1024;
+
+  private LruBlockCache l1;
+  private BucketCache l2;
+  private BucketCache l3;
+  private TieredBlockCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    l1 = new LruBlockCache(CAPACITY, BLOCK_SIZE);
+    l2 = new BucketCache("heap", CAPACITY, BLOCK_SIZE, 1, 64, null);
+    l3 = new BucketCache("heap", CAPACITY, BLOCK_SIZE, 1, 64, null);
+    cache = new TieredBlockCache(l1, l2, l3);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.shutdown();
+  }
+
+  @Test
+  public void testCacheSimple() throws Exception {
+    assertEquals(3, cache.getNumTiers());
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 10);
+    for (HFileBlockPair block : blocks) {
+      assertNull(cache.getBlock(block.blockName, true, false));
+      cache.cacheBlock(block.blockName, block.block);
+    }
+    for (HFileBlockPair block : blocks) {
+      assertTrue(l1.containsBlock(block.blockName));
+      assertEquals(block.block, cache.getBlock(block.blockName, true, false));
+    }
+    assertEquals(blocks.length, cache.getTierStats(0).getHitCount());
+    assertEquals(blocks.length, cache.getTierStats(2).getMissCount());
+    assertEquals(blocks.length, cache.getStats().getHitCount());
+    assertEquals(blocks.length, cache.getStats().getMissCount());
+
+    assertTrue(cache.evictBlock(blocks[0].blockName));
+    assertNull(cache.getBlock(blocks[0].blockName, true, false));
+  }
+
+  @Test
+  public void testPromotion() throws Exception {
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 2);
+    BlockCacheKey key2 = blocks[0].blockName;
+    BlockCacheKey key3 = blocks[1].blockName;
+    l2.cacheBlock(key2, blocks[0].block);
+    l3.cacheBlock(key3, blocks[1].block);
+    waitForWriters();
+
+    // The first read of a lower level block does not move it
+    assertEquals(blocks[0].block, cache.getBlock(key2, true, false));
+    assertFalse(l1.containsBlock(key2));
+    assertEquals(blocks[1].block, cache.getBlock(key3, true, false));
+    assertEquals(0, cache.getTierStats(2).getPromotedCount());
+
+    // The second read moves it one level up
+    assertEquals(blocks[0].block, cache.getBlock(key2, true, false));
+    assertTrue(l1.containsBlock(key2));
+    assertEquals(1, cache.getTierStats(1).getPromotedCount());
+    assertEquals(blocks[1].block, cache.getBlock(key3, true, false));
+    assertEquals(1, cache.getTierStats(2).getPromotedCount());
+    assertNull(l3.getBlock(key3, true, false));
+
+    // Now served from the upper levels
+    assertEquals(blocks[0].block, cache.getBlock(key2, true, false));
+    assertEquals(1, cache.getTierStats(0).getHitCount());
+    assertEquals(blocks[1].block, cache.getBlock(key3, true, false));
+    assertEquals(3, cache.getTierStats(1).getHitCount());
+    assertNotNull(cache.getTierStats(1).toString());
+  }
+
+  private void waitForWriters() throws InterruptedException {
+    while (l2.size() == 0 || l3.size() == 0) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.RegionLoad;
+import org.apache.hadoop.hbase.ServerLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.protobuf.generated.AdminProtos.GetRegionInfoResponse.CompactionState;
+import org.apache.hadoop.hbase.regionserver.compactions.OffPeakHours;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
+
+@Category(SmallTests.class)
+public class TestMajorCompactionScheduler {
+  private static final long INTERVAL = 24L * 60 * 60 * 1000;
+  private static final long MINUTE = 60 * 1000;
+  private static final TableName TABLE = TableName.valueOf("testMajorCompactionScheduler");
+  private static final ServerName SERVER_A = ServerName.valueOf("a.example.org", 60020, 1);
+  private static final ServerName SERVER_B = ServerName.valueOf("b.example.org", 60020, 1);
+
+  private final ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+  private Configuration conf;
+  private MasterServices master;
+  private ServerManager serverManager;
+  private final Map<HRegionInfo, ServerName> assignments = new HashMap<HRegionInfo, ServerName>();
+  private final Map<ServerName, Map<byte[], RegionLoad>> loads =
+      new HashMap<ServerName, Map<byte[], RegionLoad>>();
+
+  @Before
+  public void setUp() throws Exception {
+    edge.setValue(1000);
+    EnvironmentEdgeManager.injectEdge(edge);
+    conf = HBaseConfiguration.create();
+    conf.setLong(MajorCompactionScheduler.INTERVAL_KEY, INTERVAL);
+
+    master = mock(MasterServices.class);
+    serverManager = mock(ServerManager.class);
+    AssignmentManager am = mock(AssignmentManager.class);
+    RegionStates regionStates = mock(RegionStates.class);
+    when(master.getConfiguration()).thenReturn(conf);
+    when(master.getServerName()).thenReturn(ServerName.valueOf("master.example.org", 60000, 1));
+    when(master.getServerManager()).thenReturn(serverManager);
+    when(master.getAssignmentManager()).thenReturn(am);
+    when(am.getRegionStates()).thenReturn(regionStates);
+    when(regionStates.getRegionAssignments()).thenReturn(assignments);
+
+    // Three regions on each server
+    byte[] startKey = new byte[0];
+    for (int i = 0; i < 6; i++) {
+      byte[] endKey = i == 5 ? new byte[0] : Bytes.toBytes("row-" + i);
+      HRegionInfo hri = new HRegionInfo(TABLE, startKey, endKey);
+      startKey = endKey;
+      ServerName server = i % 2 == 0 ? SERVER_A : SERVER_B;
+      assignments.put(hri, server);
+      setRegionLoad(server, hri);
+    }
+    Map<ServerName, ServerLoad> onlineServers = new HashMap<ServerName, ServerLoad>();
+    for (ServerName server : loads.keySet()) {
+      ServerLoad serverLoad = mock(ServerLoad.class);
+      when(serverLoad.getRegionsLoad()).thenReturn(loads.get(server));
+      onlineServers.put(server, serverLoad);
+    }
+    when(serverManager.getOnlineServers()).thenReturn(onlineServers);
+    // The requested compactions run until told otherwise
+    when(serverManager.getRegionCompactionState(any(ServerName.class), any(HRegionInfo.class)))
+        .thenReturn(CompactionState.MAJOR);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  private void setRegionLoad(ServerName server, HRegionInfo hri) {
+    Map<byte[], RegionLoad> regionLoads = loads.get(server);
+    if (regionLoads == null) {
+      regionLoads = new TreeMap<byte[], RegionLoad>(Bytes.BYTES_COMPARATOR);
+      loads.put(server, regionLoads);
+    }
+    RegionLoad load = mock(RegionLoad.class);
+    when(load.getStorefiles()).thenReturn(3);
+    when(load.getStorefileSizeMB()).thenReturn(100);
+    regionLoads.put(hri.getRegionName(), load);
+  }
+
+  private static OffPeakHours offPeakHours(final boolean offPeak) {
+    return new OffPeakHours() {
+      @Override
+      public boolean isOffPeakHour(int targetHour) {
+        return targetHour < 6;
+      }
+
+      @Override
+      public boolean isOffPeakHour() {
+        return offPeak;
+      }
+    };
+  }
+
+  @Test
+  public void testCompactionsSpreadOverServers() throws Exception {
+    MajorCompactionScheduler scheduler =
+        new MajorCompactionScheduler(master, offPeakHours(true));
+    // Regions seen for the first time are not due before the end of an interval
+    scheduler.chore();
+    verify(serverManager, never()).sendRegionCompact(any(ServerName.class),
+        any(HRegionInfo.class), anyBoolean());
+    assertEquals(0, scheduler.getDueCount());
+    assertEquals(0, scheduler.getEtaMillis());
+
+    edge.incValue(INTERVAL);
+    scheduler.chore();
+    ArgumentCaptor<HRegionInfo> captor = ArgumentCaptor.forClass(HRegionInfo.class);
+    verify(serverManager).sendRegionCompact(eq(SERVER_A), captor.capture(), eq(true));
+    verify(serverManager).sendRegionCompact(eq(SERVER_B), any(HRegionInfo.class), eq(true));
+    assertEquals(4, scheduler.getDueCount());
+    // No major compaction completed yet
+    assertEquals(-1, scheduler.getEtaMillis());
+
+    // Nothing more while the first ones have not completed
+    edge.incValue(MINUTE);
+    scheduler.chore();
+    verify(serverManager, times(2)).sendRegionCompact(any(ServerName.class),
+        any(HRegionInfo.class), anyBoolean());
+
+    // The major compaction of the region of server A completes
+    HRegionInfo compacted = captor.getValue();
+    edge.incValue(MINUTE);
+    scheduler.chore();
+    verify(serverManager, times(1)).sendRegionCompact(eq(SERVER_A), any(HRegionInfo.class),
+        anyBoolean());
+    when(serverManager.getRegionCompactionState(SERVER_A, compacted))
+        .thenReturn(CompactionState.NONE);
+    edge.incValue(MINUTE);
+    scheduler.chore();
+    verify(serverManager, times(2)).sendRegionCompact(eq(SERVER_A), any(HRegionInfo.class),
+        anyBoolean());
+    verify(serverManager, times(1)).sendRegionCompact(eq(SERVER_A), eq(compacted),
+        anyBoolean());
+    assertEquals(3, scheduler.getDueCount());
+    // 500 MB left at 100 MB per 3 minutes on each of the 2 servers, during a quarter of the day
+    assertEquals(4 * 500 * 3 * MINUTE / 200, scheduler.getEtaMillis());
+  }
+
+  @Test
+  public void testQueuedCompactionKeepsItsSlot() throws Exception {
+    MajorCompactionScheduler scheduler =
+        new MajorCompactionScheduler(master, offPeakHours(true));
+    edge.incValue(INTERVAL);
+    scheduler.chore();
+    verify(serverManager, times(2)).sendRegionCompact(any(ServerName.class),
+        any(HRegionInfo.class), anyBoolean());
+    // Queued behind other compactions on busy region servers for hours
+    for (int i = 0; i < 10; i++) {
+      edge.incValue(60 * MINUTE);
+      scheduler.chore();
+    }
+    verify(serverManager, times(2)).sendRegionCompact(any(ServerName.class),
+        any(HRegionInfo.class), anyBoolean());
+    assertEquals(4, scheduler.getDueCount());
+  }
+
+  @Test
+  public void testMovedRegionCompactedAgain() throws Exception {
+    MajorCompactionScheduler scheduler =
+        new MajorCompactionScheduler(master, offPeakHours(true));
+    edge.incValue(INTERVAL);
+    scheduler.chore();
+    ArgumentCaptor<HRegionInfo> captor = ArgumentCaptor.forClass(HRegionInfo.class);
+    verify(serverManager).sendRegionCompact(eq(SERVER_A), captor.capture(), eq(true));
+    HRegionInfo moved = captor.getValue();
+
+    // The region moves to server B before its major compaction completed
+    assignments.put(moved, SERVER_B);
+    loads.get(SERVER_A).remove(moved.getRegionName());
+    setRegionLoad(SERVER_B, moved);
+    edge.incValue(MINUTE);
+    scheduler.chore();
+    // Its slot on server A is freed, and it is still due
+    verify(serverManager, times(2)).sendRegionCompact(eq(SERVER_A), any(HRegionInfo.class),
+        anyBoolean());
+    assertEquals(4, scheduler.getDueCount());
+    verify(serverManager, never()).sendRegionCompact(eq(SERVER_B), eq(moved), anyBoolean());
+
+    // Server B compacts the moved region once it has a free slot
+    when(serverManager.getRegionCompactionState(any(ServerName.class), any(HRegionInfo.class)))
+        .thenReturn(CompactionState.NONE);
+    for (int i = 0; i < 3; i++) {
+      edge.incValue(MINUTE);
+      scheduler.chore();
+    }
+    verify(serverManager).sendRegionCompact(eq(SERVER_B), eq(moved), eq(true));
+    assertEquals(0, scheduler.getDueCount());
+  }
+
+  @Test
+  public void testNoCompactionsDuringPeakHours() throws Exception {
+    MajorCompactionScheduler scheduler =
+        new MajorCompactionScheduler(master, offPeakHours(false));
+    edge.incValue(INTERVAL);
+    scheduler.chore();
+    verify(serverManager, never()).sendRegionCompact(any(ServerName.class),
+        any(HRegionInfo.class), anyBoolean());
+    assertEquals(6, scheduler.getDueCount());
+    assertTrue(scheduler.getEtaMillis() < 0);
+  }
+}
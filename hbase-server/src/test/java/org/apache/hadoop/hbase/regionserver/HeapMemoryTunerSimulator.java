@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerContext;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerResult;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Replays a trace of {@link TunerContext}s, as logged at TRACE level by the
+ * {@link HeapMemoryManager}, through a {@link HeapMemoryTuner} to evaluate it offline.
+ * <p/>
+ * As the tuner resizes the memstore and the block cache differently than during the recording,
+ * the recorded counts are scaled: flushes because of global heap pressure in inverse proportion
+ * to the memstore size, evictions and cache misses in inverse proportion to the block cache
+ * size. The cached blocks fill at most the block cache. This is a rough model, good enough to
+ * compare tuners on the same trace.
+ */
+public class HeapMemoryTunerSimulator {
+  private static final String CONTEXT_PREFIX = "TunerContext ";
+  private static final int CONVERT_TO_PERCENTAGE = 100;
+  private static final int CLUSTER_MINIMUM_MEMORY_THRESHOLD =
+      (int) (CONVERT_TO_PERCENTAGE * HConstants.HBASE_CLUSTER_MINIMUM_MEMORY_THRESHOLD);
+
+  private final Configuration conf;
+  private final float memStoreMinRange;
+  private final float memStoreMaxRange;
+  private final float blockCacheMinRange;
+  private final float blockCacheMaxRange;
+
+  /**
+   * Outcome of the replay of a trace.
+   */
+  public static class Report {
+    int intervals;
+    int resizes;
+    int reversals;
+    float heapMoved;
+    long blockedFlushCount;
+    long unblockedFlushCount;
+    long cacheMissCount;
+    long cacheRequestCount;
+    float memStoreSize;
+    float blockCacheSize;
+
+    @Override
+    public String toString() {
+      return "intervals=" + intervals + ", resizes=" + resizes + ", reversals=" + reversals
+          + ", heapMoved=" + heapMoved + ", blockedFlushCount=" + blockedFlushCount
+          + ", unblockedFlushCount=" + unblockedFlushCount + ", cacheMissRatio="
+          + (cacheRequestCount == 0 ? 0 : (float) cacheMissCount / cacheRequestCount)
+          + ", memStoreSize=" + memStoreSize + ", blockCacheSize=" + blockCacheSize;
+    }
+  }
+
+  public HeapMemoryTunerSimulator(Configuration conf) {
+    this.conf = conf;
+    float memStoreSize = MemStoreFlusher.getGlobalMemStorePercent(conf);
+    float blockCacheSize = conf.getFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY,
+        HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT);
+    this.memStoreMinRange = conf.getFloat(HeapMemoryManager.MEMSTORE_SIZE_MIN_RANGE_KEY,
+        memStoreSize);
+    this.memStoreMaxRange = conf.getFloat(HeapMemoryManager.MEMSTORE_SIZE_MAX_RANGE_KEY,
+        memStoreSize);
+    this.blockCacheMinRange = conf.getFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MIN_RANGE_KEY,
+        blockCacheSize);
+    this.blockCacheMaxRange = conf.getFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MAX_RANGE_KEY,
+        blockCacheSize);
+  }
+
+  /**
+   * Parses a TunerContext, either a log line or the output of {@link TunerContext#toString()}.
+   * @return The context, or null if the line holds none
+   */
+  static TunerContext parse(String line) {
+    int pos = line.indexOf(CONTEXT_PREFIX);
+    String fields = pos < 0 ? line : line.substring(pos + CONTEXT_PREFIX.length());
+    if (!fields.contains("blockedFlushCount=")) {
+      return null;
+    }
+    TunerContext context = new TunerContext();
+    for (String field : fields.split(",")) {
+      String[] pair = field.trim().split("=", 2);
+      if (pair.length != 2) {
+        continue;
+      }
+      String name = pair[0];
+      String value = pair[1].trim();
+      if (name.equals("blockedFlushCount")) {
+        context.setBlockedFlushCount(Long.parseLong(value));
+      } else if (name.equals("unblockedFlushCount")) {
+        context.setUnblockedFlushCount(Long.parseLong(value));
+      } else if (name.equals("evictCount")) {
+        context.setEvictCount(Long.parseLong(value));
+      } else if (name.equals("cacheMissCount")) {
+        context.setCacheMissCount(Long.parseLong(value));
+      } else if (name.equals("cacheRequestCount")) {
+        context.setCacheRequestCount(Long.parseLong(value));
+      } else if (name.equals("gcPauseTimeMillis")) {
+        context.setGcPauseTimeMillis(Long.parseLong(value));
+      } else if (name.equals("periodMillis")) {
+        context.setPeriodMillis(Long.parseLong(value));
+      } else if (name.equals("curMemStoreSize")) {
+        context.setCurMemStoreSize(Float.parseFloat(value));
+      } else if (name.equals("curBlockCacheSize")) {
+        context.setCurBlockCacheSize(Float.parseFloat(value));
+      } else if (name.equals("blockCacheUsedSize")) {
+        context.setBlockCacheUsedSize(Float.parseFloat(value));
+      }
+    }
+    return context;
+  }
+
+  static List<TunerContext> readTrace(String path) throws IOException {
+    List<TunerContext> trace = new ArrayList<TunerContext>();
+    BufferedReader reader = new BufferedReader(new FileReader(path));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        TunerContext context = parse(line);
+        if (context != null) {
+          trace.add(context);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return trace;
+  }
+
+  private static long scale(long count, float recordedSize, float size) {
+    if (recordedSize <= 0 || size <= 0) {
+      return count;
+    }
+    return Math.round(count * recordedSize / size);
+  }
+
+  /**
+   * Replays the trace through a new instance of the tuner, starting from the sizes of the first
+   * recorded context, and resizes as the {@link HeapMemoryManager} would.
+   */
+  public Report replay(Class<? extends HeapMemoryTuner> tunerClass, List<TunerContext> trace) {
+    HeapMemoryTuner tuner = ReflectionUtils.newInstance(tunerClass, conf);
+    Report report = new Report();
+    if (trace.isEmpty()) {
+      return report;
+    }
+    float memStoreSize = trace.get(0).getCurMemStoreSize();
+    float blockCacheSize = trace.get(0).getCurBlockCacheSize();
+    int lastDirection = 0;
+    for (TunerContext recorded : trace) {
+      TunerContext context = new TunerContext();
+      float recordedMemStoreSize = recorded.getCurMemStoreSize();
+      float recordedBlockCacheSize = recorded.getCurBlockCacheSize();
+      context.setBlockedFlushCount(
+          scale(recorded.getBlockedFlushCount(), recordedMemStoreSize, memStoreSize));
+      context.setUnblockedFlushCount(
+          scale(recorded.getUnblockedFlushCount(), recordedMemStoreSize, memStoreSize));
+      context.setEvictCount(
+          scale(recorded.getEvictCount(), recordedBlockCacheSize, blockCacheSize));
+      context.setCacheRequestCount(recorded.getCacheRequestCount());
+      context.setCacheMissCount(Math.min(recorded.getCacheRequestCount(),
+          scale(recorded.getCacheMissCount(), recordedBlockCacheSize, blockCacheSize)));
+      context.setGcPauseTimeMillis(recorded.getGcPauseTimeMillis());
+      context.setPeriodMillis(recorded.getPeriodMillis());
+      context.setCurMemStoreSize(memStoreSize);
+      context.setCurBlockCacheSize(blockCacheSize);
+      context.setBlockCacheUsedSize(Math.min(recorded.getBlockCacheUsedSize(), blockCacheSize));
+
+      report.intervals++;
+      report.blockedFlushCount += context.getBlockedFlushCount();
+      report.unblockedFlushCount += context.getUnblockedFlushCount();
+      report.cacheMissCount += context.getCacheMissCount();
+      report.cacheRequestCount += context.getCacheRequestCount();
+
+      TunerResult result = tuner.tune(context);
+      if (result == null || !result.needsTuning()) {
+        continue;
+      }
+      float newMemStoreSize =
+          Math.max(memStoreMinRange, Math.min(memStoreMaxRange, result.getMemstoreSize()));
+      float newBlockCacheSize =
+          Math.max(blockCacheMinRange, Math.min(blockCacheMaxRange, result.getBlockCacheSize()));
+      int gml = (int) (newMemStoreSize * CONVERT_TO_PERCENTAGE);
+      int bcul = (int) (newBlockCacheSize * CONVERT_TO_PERCENTAGE);
+      if (CONVERT_TO_PERCENTAGE - (gml + bcul) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
+        continue;
+      }
+      float moved = newMemStoreSize - memStoreSize;
+      if (moved == 0) {
+        continue;
+      }
+      int direction = moved > 0 ? 1 : -1;
+      if (lastDirection != 0 && direction != lastDirection) {
+        report.reversals++;
+      }
+      lastDirection = direction;
+      report.resizes++;
+      report.heapMoved += Math.abs(moved);
+      memStoreSize = newMemStoreSize;
+      blockCacheSize = newBlockCacheSize;
+    }
+    report.memStoreSize = memStoreSize;
+    report.blockCacheSize = blockCacheSize;
+    return report;
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: HeapMemoryTunerSimulator <trace file> [<tuner class> ...]");
+    System.err.println("Replays the TunerContexts of the trace through each tuner, by default "
+        + DefaultHeapMemoryTuner.class.getSimpleName() + " and "
+        + AdaptiveHeapMemoryTuner.class.getSimpleName() + ". The memstore and block cache "
+        + "ranges are read from the configuration.");
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      printUsage();
+      System.exit(-1);
+    }
+    List<TunerContext> trace = readTrace(args[0]);
+    List<Class<? extends HeapMemoryTuner>> tuners =
+        new ArrayList<Class<? extends HeapMemoryTuner>>();
+    for (int i = 1; i < args.length; i++) {
+      tuners.add(Class.forName(args[i]).asSubclass(HeapMemoryTuner.class));
+    }
+    if (tuners.isEmpty()) {
+      tuners.add(DefaultHeapMemoryTuner.class);
+      tuners.add(AdaptiveHeapMemoryTuner.class);
+    }
+    HeapMemoryTunerSimulator simulator = new HeapMemoryTunerSimulator(HBaseConfiguration.create());
+    for (Class<? extends HeapMemoryTuner> tuner : tuners) {
+      System.out.println(tuner.getSimpleName() + ": " + simulator.replay(tuner, trace));
+    }
+  }
+}
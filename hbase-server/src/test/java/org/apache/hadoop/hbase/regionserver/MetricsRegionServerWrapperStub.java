@@ -196,6 +196,56 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 419;
   }
 
+  @Override
+  public long getRowCacheSize() {
+    return 420;
+  }
+
+  @Override
+  public long getRowCacheCount() {
+    return 421;
+  }
+
+  @Override
+  public long getRowCacheHitCount() {
+    return 422;
+  }
+
+  @Override
+  public long getRowCacheMissCount() {
+    return 423;
+  }
+
+  @Override
+  public long getRowCacheEvictedCount() {
+    return 424;
+  }
+
+  @Override
+  public long getCompactionThrottledTime() {
+    return 425;
+  }
+
+  @Override
+  public long getFlushThrottledTime() {
+    return 426;
+  }
+
+  @Override
+  public long getDeletedCellsSkippedCount() {
+    return 427;
+  }
+
+  @Override
+  public long getDeletedCellsSkippedPerScan() {
+    return 428;
+  }
+
+  @Override
+  public long getBlockedRequestsCount() {
+    return 429;
+  }
+
   @Override
   public void forceRecompute() {
     //IGNORED.
@@ -38,6 +38,7 @@ public class MockStoreFile extends StoreFile {
   byte[] splitPoint = null;
   TimeRangeTracker timeRangeTracker;
   long entryCount;
+  long deleteCount = -1;
 
   MockStoreFile(HBaseTestingUtility testUtil, Path testPath,
       long length, long ageInDisk, boolean isRef, long sequenceid) throws IOException {
@@ -95,11 +96,16 @@ public class MockStoreFile extends StoreFile {
     this.entryCount = entryCount;
   }
 
+  void setDeleteCount(long deleteCount) {
+    this.deleteCount = deleteCount;
+  }
+
   @Override
   public StoreFile.Reader getReader() {
     final long len = this.length;
     final TimeRangeTracker timeRange = this.timeRangeTracker;
     final long entries = this.entryCount;
+    final long deletes = this.deleteCount;
     return new StoreFile.Reader() {
       @Override
       public long length() {
@@ -115,6 +121,11 @@ public class MockStoreFile extends StoreFile {
       public long getEntries() {
         return entries;
       }
+
+      @Override
+      public long getDeleteCount() {
+        return deletes;
+      }
     };
   }
 }
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerContext;
+import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestAdaptiveHeapMemoryTuner {
+  private static final float DELTA = 0.0001f;
+
+  private Configuration conf;
+  private AdaptiveHeapMemoryTuner tuner;
+
+  @Before
+  public void setUp() {
+    conf = HBaseConfiguration.create();
+    conf.setFloat(MemStoreFlusher.MEMSTORE_SIZE_KEY, 0.4f);
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MAX_RANGE_KEY, 0.6f);
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MIN_RANGE_KEY, 0.2f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MAX_RANGE_KEY, 0.6f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MIN_RANGE_KEY, 0.2f);
+    tuner = new AdaptiveHeapMemoryTuner();
+    tuner.setConf(conf);
+  }
+
+  /**
+   * @return A context of a 1s interval with a full block cache of 0.4 and a memstore of 0.4
+   */
+  private static TunerContext context(long blockedFlushCount, long evictCount, long missCount,
+      long requestCount, long gcPauseTimeMillis) {
+    TunerContext context = new TunerContext();
+    context.setBlockedFlushCount(blockedFlushCount);
+    context.setEvictCount(evictCount);
+    context.setCacheMissCount(missCount);
+    context.setCacheRequestCount(requestCount);
+    context.setGcPauseTimeMillis(gcPauseTimeMillis);
+    context.setPeriodMillis(1000);
+    context.setCurMemStoreSize(0.4f);
+    context.setCurBlockCacheSize(0.4f);
+    context.setBlockCacheUsedSize(0.4f);
+    return context;
+  }
+
+  @Test
+  public void testEvictingCacheWithFewMissesGivesToMemstore() {
+    TunerResult result = tuner.tune(context(10, 100, 1, 1000, 0));
+    assertTrue(result.needsTuning());
+    assertEquals(0.42f, result.getMemstoreSize(), DELTA);
+    assertEquals(0.38f, result.getBlockCacheSize(), DELTA);
+  }
+
+  @Test
+  public void testMissingCacheGrows() {
+    TunerResult result = tuner.tune(context(0, 100, 100, 1000, 0));
+    assertTrue(result.needsTuning());
+    assertEquals(0.38f, result.getMemstoreSize(), DELTA);
+    assertEquals(0.42f, result.getBlockCacheSize(), DELTA);
+    // Both short of memory
+    assertFalse(tuner.tune(context(10, 100, 100, 1000, 0)).needsTuning());
+  }
+
+  @Test
+  public void testNoMemstoreGrowthWhenGcBound() {
+    assertFalse(tuner.tune(context(10, 0, 0, 1000, 500)).needsTuning());
+    assertTrue(tuner.tune(context(10, 0, 0, 1000, 50)).needsTuning());
+  }
+
+  @Test
+  public void testUnusedCacheHandedOver() {
+    TunerContext context = context(10, 0, 0, 1000, 0);
+    context.setBlockCacheUsedSize(0.35f);
+    TunerResult result = tuner.tune(context);
+    assertEquals(0.45f, result.getMemstoreSize(), DELTA);
+    assertEquals(0.35f, result.getBlockCacheSize(), DELTA);
+  }
+
+  @Test
+  public void testAdaptiveStep() {
+    float step = tuner.getStep();
+    tuner.tune(context(10, 0, 0, 1000, 0));
+    assertEquals(step, tuner.getStep(), DELTA);
+    // Same direction again
+    tuner.tune(context(10, 0, 0, 1000, 0));
+    assertEquals(2 * step, tuner.getStep(), DELTA);
+    // Back the other way
+    tuner.tune(context(0, 100, 100, 1000, 0));
+    assertEquals(step, tuner.getStep(), DELTA);
+    for (int i = 0; i < 10; i++) {
+      tuner.tune(context(0, 100, 100, 1000, 0));
+    }
+    assertEquals(AdaptiveHeapMemoryTuner.DEFAULT_MAX_STEP_VALUE, tuner.getStep(), DELTA);
+  }
+
+  @Test
+  public void testRangesRespected() {
+    TunerContext context = context(10, 0, 0, 1000, 0);
+    context.setCurMemStoreSize(0.59f);
+    context.setCurBlockCacheSize(0.21f);
+    TunerResult result = tuner.tune(context);
+    assertEquals(0.6f, result.getMemstoreSize(), DELTA);
+    assertEquals(0.2f, result.getBlockCacheSize(), DELTA);
+  }
+
+  @Test
+  public void testReplayTrace() {
+    // A write heavy trace, recorded with the default sizes
+    List<TunerContext> trace = new ArrayList<TunerContext>();
+    for (int i = 0; i < 5; i++) {
+      trace.add(HeapMemoryTunerSimulator.parse(
+          "TunerContext " + context(10, 0, 5, 1000, 0).toString()));
+    }
+    HeapMemoryTunerSimulator simulator = new HeapMemoryTunerSimulator(conf);
+    HeapMemoryTunerSimulator.Report adaptive =
+        simulator.replay(AdaptiveHeapMemoryTuner.class, trace);
+    HeapMemoryTunerSimulator.Report fixed = simulator.replay(DefaultHeapMemoryTuner.class, trace);
+    assertEquals(5, adaptive.intervals);
+    assertEquals(0, adaptive.reversals);
+    // The adaptive step reaches the maximum memstore size within the trace
+    assertEquals(0.6f, adaptive.memStoreSize, 0.001f);
+    assertEquals(0.2f, adaptive.blockCacheSize, 0.001f);
+    assertTrue(fixed.memStoreSize < adaptive.memStoreSize);
+    // A bigger memstore flushes less
+    assertTrue(adaptive.blockedFlushCount < fixed.blockedFlushCount);
+  }
+}
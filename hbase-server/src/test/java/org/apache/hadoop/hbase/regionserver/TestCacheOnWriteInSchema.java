@@ -149,7 +149,7 @@ public class TestCacheOnWriteInSchema {
     table = Bytes.toBytes(name.getMethodName().replaceAll("[\\[\\]]", "_"));
 
     conf = TEST_UTIL.getConfiguration();
-    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.MAX_FORMAT_VERSION);
+    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.DEFAULT_FORMAT_VERSION);
     conf.setBoolean(CacheConfig.CACHE_BLOCKS_ON_WRITE_KEY, false);
     conf.setBoolean(CacheConfig.CACHE_INDEX_BLOCKS_ON_WRITE_KEY, false);
     conf.setBoolean(CacheConfig.CACHE_BLOOM_BLOCKS_ON_WRITE_KEY, false);
@@ -58,6 +58,7 @@ import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
@@ -485,7 +486,8 @@ public class TestCompaction {
 
     // Set up the region mock that redirects compactions.
     HRegion r = mock(HRegion.class);
-    when(r.compact(any(CompactionContext.class), any(Store.class))).then(new Answer<Boolean>() {
+    when(r.compact(any(CompactionContext.class), any(Store.class),
+        any(ThroughputController.class))).then(new Answer<Boolean>() {
       public Boolean answer(InvocationOnMock invocation) throws Throwable {
         ((CompactionContext)invocation.getArguments()[0]).compact();
         return true;
@@ -542,6 +544,61 @@ public class TestCompaction {
     cst.interruptIfNecessary();
   }
 
+  /** Test that the stores with the highest read amplification are compacted first. */
+  @Test
+  public void testReadAwareCompactionQueue() throws Exception {
+    final Configuration conf = HBaseConfiguration.create();
+    HRegionServer mockServer = mock(HRegionServer.class);
+    when(mockServer.isStopped()).thenReturn(false);
+    when(mockServer.getConfiguration()).thenReturn(conf);
+    CompactSplitThread cst = new CompactSplitThread(mockServer);
+    when(mockServer.getCompactSplitThread()).thenReturn(cst);
+
+    HRegion r = mock(HRegion.class);
+    when(r.compact(any(CompactionContext.class), any(Store.class),
+        any(ThroughputController.class))).then(new Answer<Boolean>() {
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        ((CompactionContext)invocation.getArguments()[0]).compact();
+        return true;
+      }
+    });
+
+    ArrayList<Integer> results = new ArrayList<Integer>();
+    StoreMockMaker sm = new StoreMockMaker(results), sm2 = new StoreMockMaker(results);
+    Store store = sm.createStoreMock("store1"), store2 = sm2.createStoreMock("store2");
+    when(store.getReadAmplificationScore()).thenReturn(1.0);
+    when(store2.getReadAmplificationScore()).thenReturn(5.0);
+    BlockingStoreMockMaker blocker = new BlockingStoreMockMaker();
+
+    cst.requestSystemCompaction(r, blocker.createStoreMock(1, "b-pri1"), "b-pri1");
+    BlockingStoreMockMaker.BlockingCompactionContext currentBlock = blocker.waitForBlocking();
+
+    // Store1 has the higher priority, 3, but store2 is read more
+    for (int i = 0; i < 4; ++i) {
+      sm.notCompacting.add(createFile());
+    }
+    cst.requestSystemCompaction(r, store, "s1-pri3");
+    for (int i = 0; i < 3; ++i) {
+      sm2.notCompacting.add(createFile());
+    }
+    cst.requestSystemCompaction(r, store2, "s2-pri4");
+    List<String> queue = cst.getSmallCompactionQueue();
+    assertEquals(2, queue.size());
+    assertTrue(queue.get(0), queue.get(0).endsWith("readScore=5.0"));
+    assertTrue(queue.get(1), queue.get(1).endsWith("readScore=1.0"));
+
+    currentBlock.unblock();
+    while (true) {
+      synchronized (results) {
+        if (results.size() == 2) break;
+      }
+      Threads.sleepWithoutInterrupt(50);
+    }
+    assertEquals(3, results.get(0).intValue());
+    assertEquals(4, results.get(1).intValue());
+    cst.interruptIfNecessary();
+  }
+
   private static StoreFile createFile() throws Exception {
     StoreFile sf = mock(StoreFile.class);
     when(sf.getPath()).thenReturn(new Path("file"));
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionCheckpoint;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.regionserver.wal.HLog;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests compactions of all the files of a store resuming from their checkpointed output.
+ */
+@Category(MediumTests.class)
+public class TestCompactionCheckpoint {
+  @Rule public TestName name = new TestName();
+  private static final HBaseTestingUtility UTIL = HBaseTestingUtility.createLocalHTU();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int ROWS = 1000;
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = UTIL.getConfiguration();
+    conf.setLong(DefaultCompactor.CHECKPOINT_SIZE_KEY, 4096);
+    conf.setInt(HStore.BLOCKING_STOREFILES_KEY, 50);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf(name.getMethodName()));
+    htd.addFamily(new HColumnDescriptor(FAMILY));
+    region = UTIL.createLocalHRegion(htd, null, null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HLog hlog = region.getLog();
+    region.close();
+    hlog.closeAndDelete();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%05d", i));
+  }
+
+  private void loadAndFlush(int version) throws IOException {
+    for (int i = 0; i < ROWS; i++) {
+      Put put = new Put(row(i));
+      put.add(FAMILY, QUALIFIER, Bytes.toBytes("value-" + version + "-" + i));
+      region.put(put);
+    }
+    region.flushcache();
+  }
+
+  /**
+   * Runs a compaction of all the files of the store, interrupted half way.
+   */
+  private void interruptMajorCompaction(Store store) throws IOException {
+    CompactionRequest request = new CompactionRequest(store.getStorefiles());
+    request.setIsMajor(true, true);
+    try {
+      new DefaultCompactor(UTIL.getConfiguration(), store).compact(request,
+          new NoLimitThroughputController() {
+            private int count = 0;
+
+            @Override
+            public long control(String name, long size) throws InterruptedException {
+              if (++count > ROWS / 2) {
+                throw new InterruptedException();
+              }
+              return 0;
+            }
+          });
+      fail("The compaction should have been interrupted");
+    } catch (InterruptedIOException e) {
+      // expected
+    }
+  }
+
+  private static Set<String> getCheckpointedFiles(Store store) throws IOException {
+    Set<String> names = new HashSet<String>();
+    FileSystem fs = store.getFileSystem();
+    for (FileStatus status : fs.listStatus(store.getCompactionCheckpointDir())) {
+      if (!status.getPath().getName().startsWith(".")) {
+        names.add(status.getPath().getName());
+      }
+    }
+    return names;
+  }
+
+  @Test
+  public void testResumeFromCheckpoint() throws IOException {
+    loadAndFlush(1);
+    loadAndFlush(2);
+    loadAndFlush(3);
+    Store store = region.getStore(FAMILY);
+    assertFalse(store.hasCompactionCheckpoint());
+
+    interruptMajorCompaction(store);
+    assertTrue(store.hasCompactionCheckpoint());
+    Set<String> checkpointed = getCheckpointedFiles(store);
+    assertTrue(checkpointed.size() > 1);
+
+    // The next compaction of the same files keeps the checkpointed files
+    region.compactStores(true);
+    assertFalse(store.hasCompactionCheckpoint());
+    Set<String> names = new HashSet<String>();
+    long seqId = -1;
+    for (StoreFile sf : store.getStorefiles()) {
+      names.add(sf.getPath().getName());
+      assertTrue(sf.isMajorCompaction());
+      if (seqId < 0) {
+        seqId = sf.getMaxSequenceId();
+      }
+      assertEquals(seqId, sf.getMaxSequenceId());
+    }
+    assertTrue(names.containsAll(checkpointed));
+    assertTrue(names.size() > checkpointed.size());
+
+    // Every row is there once, with its latest value
+    RegionScanner scanner = region.getScanner(new Scan());
+    List<Cell> cells = new ArrayList<Cell>();
+    int i = 0;
+    boolean hasMore;
+    do {
+      hasMore = scanner.next(cells);
+      for (Cell cell : cells) {
+        assertArrayEquals(row(i), CellUtil.cloneRow(cell));
+        assertArrayEquals(Bytes.toBytes("value-3-" + i), CellUtil.cloneValue(cell));
+        i++;
+      }
+      cells.clear();
+    } while (hasMore);
+    scanner.close();
+    assertEquals(ROWS, i);
+  }
+
+  @Test
+  public void testResumeAfterReopen() throws IOException {
+    loadAndFlush(1);
+    loadAndFlush(2);
+    loadAndFlush(3);
+    Store store = region.getStore(FAMILY);
+    interruptMajorCompaction(store);
+    Set<String> inputs = new HashSet<String>();
+    for (StoreFile sf : store.getStorefiles()) {
+      inputs.add(sf.getPath().getName());
+    }
+    Set<String> checkpointed = getCheckpointedFiles(store);
+
+    // The close of the region flushes the new values of the first rows
+    for (int i = 0; i < ROWS / 10; i++) {
+      Put put = new Put(row(i));
+      put.add(FAMILY, QUALIFIER, Bytes.toBytes("value-4-" + i));
+      region.put(put);
+    }
+    region.close();
+    region = HRegion.openHRegion(region, null);
+    store = region.getStore(FAMILY);
+    assertTrue(store.hasCompactionCheckpoint());
+    assertEquals(inputs.size() + 1, store.getStorefilesCount());
+    String flushed = null;
+    for (StoreFile sf : store.getStorefiles()) {
+      if (!inputs.contains(sf.getPath().getName())) {
+        flushed = sf.getPath().getName();
+      }
+    }
+
+    // The compaction resumes with the checkpointed files, the flushed file is left out
+    region.compactStores();
+    assertFalse(store.hasCompactionCheckpoint());
+    Set<String> names = new HashSet<String>();
+    for (StoreFile sf : store.getStorefiles()) {
+      names.add(sf.getPath().getName());
+      assertFalse(inputs.contains(sf.getPath().getName()));
+    }
+    assertTrue(names.containsAll(checkpointed));
+    assertTrue(names.contains(flushed));
+
+    RegionScanner scanner = region.getScanner(new Scan());
+    List<Cell> cells = new ArrayList<Cell>();
+    int i = 0;
+    boolean hasMore;
+    do {
+      hasMore = scanner.next(cells);
+      for (Cell cell : cells) {
+        assertArrayEquals(row(i), CellUtil.cloneRow(cell));
+        String value = (i < ROWS / 10 ? "value-4-" : "value-3-") + i;
+        assertArrayEquals(Bytes.toBytes(value), CellUtil.cloneValue(cell));
+        i++;
+      }
+      cells.clear();
+    } while (hasMore);
+    scanner.close();
+    assertEquals(ROWS, i);
+  }
+
+  @Test
+  public void testCheckpointIgnoredWhenDisabled() throws IOException {
+    loadAndFlush(1);
+    loadAndFlush(2);
+    Store store = region.getStore(FAMILY);
+    interruptMajorCompaction(store);
+    Set<String> checkpointed = getCheckpointedFiles(store);
+    Path checkpointDir = store.getCompactionCheckpointDir();
+
+    // Reopened with checkpoints disabled, the compactions do not look for them
+    Configuration conf = new Configuration(UTIL.getConfiguration());
+    conf.setLong(DefaultCompactor.CHECKPOINT_SIZE_KEY, 0);
+    region.close();
+    HRegionFileSystem regionFs = region.getRegionFileSystem();
+    region = HRegion.openHRegion(conf, regionFs.getFileSystem(), UTIL.getDataTestDir(),
+        regionFs.getTableDir(), region.getRegionInfo(), region.getTableDesc(), region.getLog(),
+        null, null);
+    store = region.getStore(FAMILY);
+    assertFalse(store.hasCompactionCheckpoint());
+    region.compactStores(true);
+    long cells = 0;
+    for (StoreFile sf : store.getStorefiles()) {
+      assertFalse(checkpointed.contains(sf.getPath().getName()));
+      cells += sf.getReader().getEntries();
+    }
+    assertEquals(ROWS, cells);
+    // Left for when checkpoints are enabled again
+    assertTrue(CompactionCheckpoint.exists(store.getFileSystem(), checkpointDir));
+  }
+
+  @Test
+  public void testCheckpointOfOtherFilesDropped() throws IOException {
+    loadAndFlush(1);
+    loadAndFlush(2);
+    Store store = region.getStore(FAMILY);
+    interruptMajorCompaction(store);
+    assertTrue(store.hasCompactionCheckpoint());
+    Set<String> checkpointed = getCheckpointedFiles(store);
+
+    // A compaction of all the files, including a new one, starts over
+    loadAndFlush(3);
+    CompactionRequest request = new CompactionRequest(store.getStorefiles());
+    request.setIsMajor(true, true);
+    CompactionContext compaction = ((HStore) store).storeEngine.createCompaction();
+    compaction.forceSelect(request);
+    region.compact(compaction, store);
+    assertFalse(store.hasCompactionCheckpoint());
+    long cells = 0;
+    for (StoreFile sf : store.getStorefiles()) {
+      assertFalse(checkpointed.contains(sf.getPath().getName()));
+      cells += sf.getReader().getEntries();
+    }
+    assertEquals(ROWS, cells);
+  }
+}
@@ -127,7 +127,7 @@ public class TestCompoundBloomFilter {
     conf = TEST_UTIL.getConfiguration();
 
     // This test requires the most recent HFile format (i.e. v2).
-    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.MAX_FORMAT_VERSION);
+    conf.setInt(HFile.FORMAT_VERSION_KEY, HFile.DEFAULT_FORMAT_VERSION);
 
     fs = FileSystem.get(conf);
 
@@ -160,6 +160,46 @@ public class TestCompoundBloomFilter {
     }
   }
 
+  @Test
+  public void testBlockedCompoundBloomFilter() throws IOException {
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, true);
+    try {
+      int t = 1;
+      conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE,
+          (float) TARGET_ERROR_RATES[t]);
+      testIdMsg = "in blocked test #" + t + ":";
+      List<KeyValue> kvs = createSortedKeyValues(new Random(GENERATION_SEED),
+          NUM_KV[t]);
+      Path sfPath = writeStoreFile(t, BLOOM_TYPES[t], kvs);
+
+      StoreFile sf = new StoreFile(fs, sfPath, conf, cacheConf, BLOOM_TYPES[t]);
+      StoreFile.Reader r = sf.createReader();
+      CompoundBloomFilter cbf = (CompoundBloomFilter) r.getGeneralBloomFilter();
+      assertTrue(cbf.isBlocked());
+      StoreFileScanner scanner = r.getStoreFileScanner(true, true);
+      for (KeyValue kv : kvs) {
+        assertTrue(testIdMsg + " Bloom filter false negative",
+            isInBloom(scanner, kv.getRow(), kv.getQualifier()));
+      }
+      int numFalsePos = 0;
+      Random rand = new Random(EVALUATION_SEED);
+      int nTrials = NUM_KV[t] * 10;
+      for (int i = 0; i < nTrials; ++i) {
+        byte[] query = TestHFileWriterV2.randomRowOrQualifier(rand);
+        if (isInBloom(scanner, query, BLOOM_TYPES[t], rand)) {
+          numFalsePos += 1;
+        }
+      }
+      double falsePosRate = numFalsePos * 1.0 / nTrials;
+      assertTrue("False positive is too high: " + falsePosRate,
+          falsePosRate < TARGET_ERROR_RATES[t] * 1.5);
+      r.close(true);
+    } finally {
+      conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, false);
+    }
+  }
+
   /**
    * Validates the false positive ratio by computing its z-value and comparing
    * it to the provided threshold.
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionConfiguration;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.compactions.DateTieredCompactionPolicy;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestDateTieredCompactionPolicy {
+  private final static HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private Configuration conf;
+  private StoreConfigInformation storeConfigInfo;
+  private Path testFile;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(CompactionConfiguration.MIN_KEY, 3);
+    conf.setInt(CompactionConfiguration.MAX_KEY, 10);
+    conf.setLong(CompactionConfiguration.BASE_WINDOW_MILLIS_KEY, 6);
+    conf.setInt(CompactionConfiguration.WINDOWS_PER_TIER_KEY, 4);
+    conf.setInt(CompactionConfiguration.INCOMING_WINDOW_MIN_KEY, 3);
+
+    storeConfigInfo = mock(StoreConfigInformation.class);
+    // Files up to 10 bytes are always selected by the ratio test
+    when(storeConfigInfo.getMemstoreFlushSize()).thenReturn(10L);
+    when(storeConfigInfo.getBlockingFileCount()).thenReturn(100L);
+    when(storeConfigInfo.getStoreFileTtl()).thenReturn(Long.MAX_VALUE);
+
+    testFile = new Path(TEST_UTIL.getDataTestDir(getClass().getSimpleName()), "file");
+    TEST_UTIL.getTestFileSystem().createNewFile(testFile);
+
+    // Windows are [12, 18), [6, 12), [0, 6), then [-24, 0)
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(16);
+    EnvironmentEdgeManager.injectEdge(edge);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  /**
+   * @param maxTimestamps newest timestamp of each file, from the oldest file to the newest
+   */
+  private List<StoreFile> sfCreate(long... maxTimestamps) throws IOException {
+    List<StoreFile> files = new ArrayList<StoreFile>();
+    for (int i = 0; i < maxTimestamps.length; i++) {
+      MockStoreFile sf = new MockStoreFile(TEST_UTIL, testFile, 10, 0, false, i);
+      sf.setTimeRangeTracker(new TimeRangeTracker(maxTimestamps[i], maxTimestamps[i]));
+      files.add(sf);
+    }
+    return files;
+  }
+
+  private void compactEquals(List<StoreFile> candidates, long... expectedMaxTimestamps)
+      throws IOException {
+    compactEquals(candidates, false, expectedMaxTimestamps);
+  }
+
+  private void compactEquals(List<StoreFile> candidates, boolean forceMajor,
+      long... expectedMaxTimestamps) throws IOException {
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    CompactionRequest request = policy.selectCompaction(candidates, new ArrayList<StoreFile>(),
+        forceMajor, false, forceMajor);
+    List<StoreFile> actual = new ArrayList<StoreFile>(request.getFiles());
+    long[] actualMaxTimestamps = new long[actual.size()];
+    for (int i = 0; i < actual.size(); i++) {
+      actualMaxTimestamps[i] = actual.get(i).getReader().getMaxTimestamp();
+    }
+    assertEquals(Arrays.toString(expectedMaxTimestamps), Arrays.toString(actualMaxTimestamps));
+  }
+
+  @Test
+  public void testIncomingWindow() throws IOException {
+    compactEquals(sfCreate(1, 2, 3, 13, 14, 15), 13, 14, 15);
+    // Not enough files in the incoming window, compact an older window
+    compactEquals(sfCreate(1, 2, 3, 14, 15), 1, 2, 3);
+    compactEquals(sfCreate(1, 2, 7, 14, 15));
+  }
+
+  @Test
+  public void testOlderTier() throws IOException {
+    // Past [0, 6), the windows move up to the next tier
+    compactEquals(sfCreate(-20, -10, -1, 5, 9, 15), -20, -10, -1);
+  }
+
+  @Test
+  public void testNewerFilesStayContiguous() throws IOException {
+    // Older data bulk loaded after 13 and 14 is compacted with them
+    compactEquals(sfCreate(13, 14, 3, 15), 13, 14, 3);
+  }
+
+  @Test
+  public void testMaxStoreFileAge() throws IOException {
+    conf.setLong(CompactionConfiguration.MAX_AGE_MILLIS_KEY, 10);
+    compactEquals(sfCreate(1, 2, 3, 14, 15));
+    // Files flushed before an old file are left alone too
+    compactEquals(sfCreate(7, 8, 3, 9, 15));
+    compactEquals(sfCreate(3, 7, 8, 9, 15), 7, 8, 9);
+  }
+
+  @Test
+  public void testTtl() throws IOException {
+    when(storeConfigInfo.getStoreFileTtl()).thenReturn(10L);
+    compactEquals(sfCreate(1, 2, 3, 14, 15));
+  }
+
+  @Test
+  public void testMajorCompaction() throws IOException {
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    assertFalse(policy.isMajorCompaction(sfCreate(1, 2, 3, 14, 15)));
+    compactEquals(sfCreate(1, 2, 3, 14, 15), true, 1, 2, 3, 14, 15);
+  }
+}
@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.SmallTests;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionConfiguration;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.RatioBasedCompactionPolicy;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
@@ -303,6 +304,55 @@ public class TestDefaultCompactSelection extends TestCase {
     compactEquals(sfCreate(99,99,99,99, 27,27,27,20,20,20), 20, 20, 20);
   }
 
+  private List<StoreFile> sfCreateWithDeletes(long entries, long deletes, long... sizes)
+      throws IOException {
+    List<StoreFile> candidates = sfCreate(sizes);
+    for (StoreFile file : candidates) {
+      ((MockStoreFile) file).setEntries(entries);
+      ((MockStoreFile) file).setDeleteCount(deletes);
+    }
+    return candidates;
+  }
+
+  public void testTombstoneTriggeredMajorCompaction() throws IOException {
+    this.conf.setFloat(CompactionConfiguration.TOMBSTONE_RATIO_KEY, 0.5F);
+    this.conf.setLong(CompactionConfiguration.TOMBSTONE_MIN_COUNT_KEY, 100);
+    this.conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 1000*60*60*24);
+    store.storeEngine.getCompactionPolicy().setConf(this.conf);
+    try {
+      // More than half of the cells are delete markers, compact all the files
+      List<StoreFile> candidates = sfCreateWithDeletes(1000, 600, 100, 50, 23, 12);
+      assertTrue(store.storeEngine.getCompactionPolicy().isMajorCompaction(candidates));
+      compactEquals(candidates, 100, 50, 23, 12);
+      // Not enough delete markers, the ratio applies
+      compactEquals(sfCreateWithDeletes(1000, 400, 100, 50, 23, 12) /* empty */);
+      // Nor are there enough of them in absolute terms
+      this.conf.setLong(CompactionConfiguration.TOMBSTONE_MIN_COUNT_KEY, 10000);
+      store.storeEngine.getCompactionPolicy().setConf(this.conf);
+      compactEquals(sfCreateWithDeletes(1000, 600, 100, 50, 23, 12) /* empty */);
+    } finally {
+      this.conf.setFloat(CompactionConfiguration.TOMBSTONE_RATIO_KEY, 0F);
+      this.conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 0);
+    }
+  }
+
+  public void testNoTombstoneTriggeredMajorCompactionWhenDisabled() throws IOException {
+    // Disabled by default
+    List<StoreFile> candidates = sfCreateWithDeletes(1000, 600, 100, 50, 23, 12);
+    assertFalse(store.storeEngine.getCompactionPolicy().isMajorCompaction(candidates));
+    // Nor are delete markers triggering major compactions when these are disabled
+    this.conf.setFloat(CompactionConfiguration.TOMBSTONE_RATIO_KEY, 0.5F);
+    this.conf.setLong(CompactionConfiguration.TOMBSTONE_MIN_COUNT_KEY, 100);
+    this.conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 0);
+    store.storeEngine.getCompactionPolicy().setConf(this.conf);
+    try {
+      assertFalse(store.storeEngine.getCompactionPolicy().isMajorCompaction(candidates));
+      compactEquals(candidates /* empty */);
+    } finally {
+      this.conf.setFloat(CompactionConfiguration.TOMBSTONE_RATIO_KEY, 0F);
+    }
+  }
+
   public void testCompactionEmptyHFile() throws IOException {
     // Set TTL
     ScanInfo oldScanInfo = store.getScanInfo();
@@ -358,6 +358,11 @@ public class TestHeapMemoryManager {
       this.listener.flushRequested(flushType, region);
     }
 
+    @Override
+    public void requestFlush(HRegion region, boolean forceFlushAllStores) {
+      requestFlush(region);
+    }
+
     @Override
     public void requestDelayedFlush(HRegion region, long delay) {
 
@@ -86,6 +86,16 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("blockCountHitPercent", 98, serverSource);
     HELPER.assertGauge("blockCacheExpressHitPercent", 97, serverSource);
     HELPER.assertCounter("updatesBlockedTime", 419, serverSource);
+    HELPER.assertGauge("rowCacheSize", 420, serverSource);
+    HELPER.assertGauge("rowCacheCount", 421, serverSource);
+    HELPER.assertCounter("rowCacheHitCount", 422, serverSource);
+    HELPER.assertCounter("rowCacheMissCount", 423, serverSource);
+    HELPER.assertCounter("rowCacheEvictedCount", 424, serverSource);
+    HELPER.assertCounter("compactionThrottledTime", 425, serverSource);
+    HELPER.assertCounter("flushThrottledTime", 426, serverSource);
+    HELPER.assertCounter("deletedCellsSkippedCount", 427, serverSource);
+    HELPER.assertGauge("deletedCellsSkippedPerScan", 428, serverSource);
+    HELPER.assertCounter("blockedRequestCount", 429, serverSource);
   }
 
   @Test
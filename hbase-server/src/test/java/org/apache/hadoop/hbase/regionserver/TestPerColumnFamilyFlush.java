@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.regionserver.wal.HLog;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Threads;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests flushes of only some of the stores of a region, and the tracking of the oldest
+ * unflushed edits of the stores in the WAL, as well as parallel flushes of the stores and of
+ * the regions under global memstore pressure.
+ */
+@Category(MediumTests.class)
+public class TestPerColumnFamilyFlush {
+  @Rule public TestName name = new TestName();
+  private static final HBaseTestingUtility UTIL = HBaseTestingUtility.createLocalHTU();
+  private static final byte[] LARGE_FAMILY = Bytes.toBytes("large");
+  private static final byte[] SMALL_FAMILY = Bytes.toBytes("small");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final long LOWER_BOUND = 40 * 1024;
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = UTIL.getConfiguration();
+    conf.setLong(FlushLargeStoresPolicy.HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND,
+        LOWER_BOUND);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf(name.getMethodName()));
+    htd.addFamily(new HColumnDescriptor(LARGE_FAMILY));
+    htd.addFamily(new HColumnDescriptor(SMALL_FAMILY));
+    region = UTIL.createLocalHRegion(htd, null, null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HLog hlog = region.getLog();
+    region.close();
+    hlog.closeAndDelete();
+  }
+
+  private void put(byte[] family, int row, int valueSize) throws IOException {
+    Put put = new Put(Bytes.toBytes("row-" + row));
+    put.add(family, QUALIFIER, new byte[valueSize]);
+    region.put(put);
+  }
+
+  private long getEarliestMemstoreSeqNum(byte[] family) {
+    return region.getLog().getEarliestMemstoreSeqNum(
+        region.getRegionInfo().getEncodedNameAsBytes(), family);
+  }
+
+  @Test
+  public void testFlushLargeStoresOnly() throws IOException {
+    Store largeStore = region.getStore(LARGE_FAMILY);
+    Store smallStore = region.getStore(SMALL_FAMILY);
+    put(SMALL_FAMILY, 0, 100);
+    long smallSeqNum = getEarliestMemstoreSeqNum(SMALL_FAMILY);
+    for (int i = 0; i < 100; i++) {
+      put(LARGE_FAMILY, i, 1024);
+    }
+    put(SMALL_FAMILY, 1, 100);
+    assertTrue(smallSeqNum != HConstants.NO_SEQNUM);
+    assertTrue(getEarliestMemstoreSeqNum(LARGE_FAMILY) > smallSeqNum);
+    assertEquals(smallSeqNum, region.getLog().getEarliestMemstoreSeqNum(
+        region.getRegionInfo().getEncodedNameAsBytes()));
+    assertTrue(largeStore.getMemStoreSize() > LOWER_BOUND);
+    long smallMemStoreSize = smallStore.getMemStoreSize();
+
+    region.flushcache(false);
+    assertEquals(1, largeStore.getStorefilesCount());
+    assertEquals(0, smallStore.getStorefilesCount());
+    assertEquals(smallMemStoreSize, smallStore.getMemStoreSize());
+    assertEquals(HConstants.NO_SEQNUM, getEarliestMemstoreSeqNum(LARGE_FAMILY));
+    assertEquals(smallSeqNum, getEarliestMemstoreSeqNum(SMALL_FAMILY));
+    // Replay must not skip the edits still in the memstore of the small family
+    assertEquals(smallSeqNum - 1, region.completeSequenceId);
+
+    // No store is large enough, all of them are flushed
+    put(LARGE_FAMILY, 100, 100);
+    region.flushcache(false);
+    assertEquals(2, largeStore.getStorefilesCount());
+    assertEquals(1, smallStore.getStorefilesCount());
+    assertEquals(HConstants.NO_SEQNUM, getEarliestMemstoreSeqNum(SMALL_FAMILY));
+    assertEquals(HConstants.NO_SEQNUM, region.getLog().getEarliestMemstoreSeqNum(
+        region.getRegionInfo().getEncodedNameAsBytes()));
+    assertTrue(region.completeSequenceId > smallSeqNum);
+
+    Result result = region.get(new Get(Bytes.toBytes("row-1")));
+    assertArrayEquals(new byte[100], result.getValue(SMALL_FAMILY, QUALIFIER));
+    assertArrayEquals(new byte[1024], result.getValue(LARGE_FAMILY, QUALIFIER));
+  }
+
+  @Test
+  public void testForceFlushAllStores() throws IOException {
+    put(SMALL_FAMILY, 0, 100);
+    for (int i = 0; i < 100; i++) {
+      put(LARGE_FAMILY, i, 1024);
+    }
+    region.flushcache(true);
+    assertEquals(1, region.getStore(LARGE_FAMILY).getStorefilesCount());
+    assertEquals(1, region.getStore(SMALL_FAMILY).getStorefilesCount());
+    assertEquals(HConstants.NO_SEQNUM, getEarliestMemstoreSeqNum(SMALL_FAMILY));
+  }
+
+  @Test
+  public void testParallelStoreFlush() throws IOException {
+    HTableDescriptor htd =
+        new HTableDescriptor(TableName.valueOf(name.getMethodName() + "-parallel"));
+    htd.addFamily(new HColumnDescriptor(LARGE_FAMILY));
+    htd.addFamily(new HColumnDescriptor(SMALL_FAMILY));
+    htd.setConfiguration(HRegion.HREGION_FLUSH_STORE_THREADS_MAX, "2");
+    HRegion parallelRegion = UTIL.createLocalHRegion(htd, null, null);
+    try {
+      for (int i = 0; i < 100; i++) {
+        Put put = new Put(Bytes.toBytes("row-" + i));
+        put.add(LARGE_FAMILY, QUALIFIER, new byte[1024]);
+        put.add(SMALL_FAMILY, QUALIFIER, new byte[100]);
+        parallelRegion.put(put);
+      }
+      parallelRegion.flushcache();
+      assertEquals(0, parallelRegion.getMemstoreSize().get());
+      assertEquals(1, parallelRegion.getStore(LARGE_FAMILY).getStorefilesCount());
+      assertEquals(1, parallelRegion.getStore(SMALL_FAMILY).getStorefilesCount());
+      Result result = parallelRegion.get(new Get(Bytes.toBytes("row-99")));
+      assertArrayEquals(new byte[1024], result.getValue(LARGE_FAMILY, QUALIFIER));
+      assertArrayEquals(new byte[100], result.getValue(SMALL_FAMILY, QUALIFIER));
+    } finally {
+      HLog hlog = parallelRegion.getLog();
+      parallelRegion.close();
+      hlog.closeAndDelete();
+    }
+  }
+
+  @Test
+  public void testParallelFlushForGlobalPressure() throws Exception {
+    HTableDescriptor htd =
+        new HTableDescriptor(TableName.valueOf(name.getMethodName() + "-other"));
+    htd.addFamily(new HColumnDescriptor(LARGE_FAMILY));
+    final HRegion otherRegion = UTIL.createLocalHRegion(htd, null, null);
+    final AtomicBoolean stopped = new AtomicBoolean(false);
+    MemStoreFlusher flusher = null;
+    try {
+      // the regions are told apart by their memstore sizes, keep them different
+      for (int i = 0; i < 100; i++) {
+        put(LARGE_FAMILY, i, 1024);
+        Put put = new Put(Bytes.toBytes("row-" + i));
+        put.add(LARGE_FAMILY, QUALIFIER, new byte[1000]);
+        otherRegion.put(put);
+      }
+
+      // setup a flusher on a mock server hosting both regions
+      HRegionServer mockServer = Mockito.mock(HRegionServer.class);
+      Mockito.when(mockServer.getServerName()).thenReturn(
+          ServerName.valueOf("localhost", 1, 1));
+      Mockito.when(mockServer.isStopped()).thenAnswer(new Answer<Boolean>() {
+        @Override
+        public Boolean answer(InvocationOnMock invocation) {
+          return stopped.get();
+        }
+      });
+      Mockito.when(mockServer.getCopyOfOnlineRegionsSortedBySize()).thenAnswer(
+          new Answer<SortedMap<Long, HRegion>>() {
+            @Override
+            public SortedMap<Long, HRegion> answer(InvocationOnMock invocation) {
+              SortedMap<Long, HRegion> regionsBySize =
+                  new TreeMap<Long, HRegion>(Collections.<Long>reverseOrder());
+              regionsBySize.put(region.getMemstoreSize().get(), region);
+              regionsBySize.put(otherRegion.getMemstoreSize().get(), otherRegion);
+              return regionsBySize;
+            }
+          });
+      RegionServerAccounting accounting = Mockito.mock(RegionServerAccounting.class);
+      Mockito.when(accounting.getGlobalMemstoreSize()).thenAnswer(new Answer<Long>() {
+        @Override
+        public Long answer(InvocationOnMock invocation) {
+          return region.getMemstoreSize().get() + otherRegion.getMemstoreSize().get();
+        }
+      });
+      Mockito.when(mockServer.getRegionServerAccounting()).thenReturn(accounting);
+
+      Configuration conf = new Configuration(UTIL.getConfiguration());
+      conf.setInt(MemStoreFlusher.GLOBAL_PRESSURE_FLUSH_PARALLELISM_KEY, 2);
+      flusher = new MemStoreFlusher(conf, mockServer);
+      // both regions are needed to get below the low water mark
+      long regionSize = Math.min(region.getMemstoreSize().get(),
+          otherRegion.getMemstoreSize().get());
+      flusher.globalMemStoreLimit = regionSize + regionSize / 2;
+      flusher.globalMemStoreLimitLowMark = regionSize / 2;
+      final List<String> flushThreads = Collections.synchronizedList(new ArrayList<String>());
+      flusher.registerFlushRequestListener(new FlushRequestListener() {
+        @Override
+        public void flushRequested(FlushType type, HRegion r) {
+          flushThreads.add(Thread.currentThread().getName());
+        }
+      });
+      flusher.start(null);
+
+      // blocks until the flushes get the global memstore below the high water mark
+      flusher.reclaimMemStoreMemory();
+      assertTrue(flusher.getUpdatesBlockedMsHighWater().get() > 0);
+      for (int i = 0; i < 100 && (region.getMemstoreSize().get() > 0
+          || otherRegion.getMemstoreSize().get() > 0); i++) {
+        Threads.sleep(100);
+      }
+      assertEquals(0, region.getMemstoreSize().get());
+      assertEquals(0, otherRegion.getMemstoreSize().get());
+      assertEquals(1, region.getStore(LARGE_FAMILY).getStorefilesCount());
+      assertEquals(1, otherRegion.getStore(LARGE_FAMILY).getStorefilesCount());
+      assertEquals(2, flushThreads.size());
+      boolean flushedInParallel = false;
+      for (String flushThread : flushThreads) {
+        flushedInParallel |= flushThread.contains("globalPressure");
+      }
+      assertTrue(flushedInParallel);
+    } finally {
+      stopped.set(true);
+      if (flusher != null) {
+        flusher.interruptIfNecessary();
+        flusher.join();
+      }
+      HLog hlog = otherRegion.getLog();
+      otherRegion.close();
+      hlog.closeAndDelete();
+    }
+  }
+}
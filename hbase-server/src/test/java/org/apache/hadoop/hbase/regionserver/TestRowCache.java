@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Append;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the row cache, and that the write paths of the region invalidate it.
+ */
+@Category(SmallTests.class)
+public class TestRowCache {
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] REGION = Bytes.toBytes("region");
+
+  @Test
+  public void testStamps() throws Exception {
+    RowCache cache = new RowCache(1024 * 1024, 1024);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("testStamps"));
+    htd.addFamily(new HColumnDescriptor(FAMILY));
+    Get get = new Get(ROW).addFamily(FAMILY);
+    assertTrue(RowCache.isCacheable(get, htd));
+    List<Cell> cells = new ArrayList<Cell>();
+    cells.add(new KeyValue(ROW, FAMILY, QUALIFIER, Bytes.toBytes("v")));
+
+    long stamp = cache.getStamp(REGION, ROW);
+    assertNull(cache.getRow(REGION, 1, get));
+    cache.cacheRow(REGION, 1, get, cells, stamp);
+    assertEquals(1, cache.getRow(REGION, 1, get).size());
+    assertNull(cache.getRow(REGION, 2, get));
+    assertTrue(cache.getSize() > 0);
+
+    // A result read before the invalidation is never served
+    cache.invalidateRow(REGION, ROW);
+    assertNull(cache.getRow(REGION, 1, get));
+    cache.cacheRow(REGION, 1, get, cells, stamp);
+    assertNull(cache.getRow(REGION, 1, get));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(4, cache.getMissCount());
+
+    assertFalse(RowCache.isCacheable(new Get(ROW).addColumn(FAMILY, QUALIFIER), htd));
+    assertFalse(RowCache.isCacheable(new Get(ROW).addFamily(FAMILY).setMaxVersions(2), htd));
+    htd.getFamily(FAMILY).setTimeToLive(1000);
+    assertFalse(RowCache.isCacheable(get, htd));
+  }
+
+  @Test
+  public void testRegionInvalidation() throws Exception {
+    HBaseTestingUtility htu = HBaseTestingUtility.createLocalHTU();
+    htu.getConfiguration().setFloat(RowCache.ROW_CACHE_SIZE_KEY, 16);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("testRegionInvalidation"));
+    htd.addFamily(new HColumnDescriptor(FAMILY));
+    HRegion region = htu.createLocalHRegion(htd, null, null);
+    RowCache cache = RowCache.instantiate(htu.getConfiguration());
+    assertNotNull(cache);
+    try {
+      region.put(new Put(ROW).add(FAMILY, QUALIFIER, Bytes.toBytes("v1")));
+      long hits = cache.getHitCount();
+      assertValue(region, "v1");
+      assertValue(region, "v1");
+      assertEquals(hits + 1, cache.getHitCount());
+
+      region.put(new Put(ROW).add(FAMILY, QUALIFIER, Bytes.toBytes("v2")));
+      assertValue(region, "v2");
+      region.append(new Append(ROW).add(FAMILY, QUALIFIER, Bytes.toBytes("3")));
+      assertValue(region, "v23");
+
+      hits = cache.getHitCount();
+      region.flushcache();
+      assertValue(region, "v23");
+      assertValue(region, "v23");
+      assertEquals(hits + 1, cache.getHitCount());
+
+      region.delete(new Delete(ROW));
+      assertTrue(region.get(new Get(ROW)).isEmpty());
+
+      // Gets with a filter go through the scanners
+      hits = cache.getHitCount();
+      region.get(new Get(ROW).setFilter(new FirstKeyOnlyFilter()));
+      region.get(new Get(ROW).setFilter(new FirstKeyOnlyFilter()));
+      assertEquals(hits, cache.getHitCount());
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  private static void assertValue(HRegion region, String expected) throws Exception {
+    Result result = region.get(new Get(ROW));
+    assertArrayEquals(Bytes.toBytes(expected), result.getValue(FAMILY, QUALIFIER));
+  }
+}
@@ -43,6 +43,9 @@ import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.SmallTests;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.io.HFileLink;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
@@ -564,6 +567,7 @@ public class TestStoreFile extends HBaseTestCase {
       }
     }
     assertEquals(1000, reader.getDeleteFamilyCnt());
+    assertEquals(1000, reader.getDeleteCount());
     reader.close(true); // evict because we are about to delete the file
     fs.delete(f, true);
     assertEquals("False negatives: " + falseNeg, 0, falseNeg);
@@ -687,6 +691,177 @@ public class TestStoreFile extends HBaseTestCase {
     }
   }
 
+  public void testRowPrefixBloomFilter() throws Exception {
+    float err = (float) 0.01;
+    FileSystem fs = FileSystem.getLocal(conf);
+    Configuration prefixConf = new Configuration(conf);
+    prefixConf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, err);
+    prefixConf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+
+    int userCount = 100;
+    int eventCount = 10;
+
+    // rows are user + "|" + event, once with a fixed length and once with a
+    // delimited prefix
+    for (int x : new int[]{0,1}) {
+      Configuration writeConf = new Configuration(prefixConf);
+      if (x == 0) {
+        writeConf.setInt(RowPrefixBloomKey.PREFIX_LENGTH_KEY, 4);
+      } else {
+        writeConf.set(RowPrefixBloomKey.DELIMITER_KEY, "|");
+      }
+      Path f = new Path(ROOT_DIR, getName() + x);
+      HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL)
+          .withChecksumType(CKTYPE)
+          .withBytesPerCheckSum(CKBYTES).build();
+      StoreFile.Writer writer = new StoreFile.WriterBuilder(writeConf, cacheConf, this.fs)
+              .withFilePath(f)
+              .withBloomType(BloomType.ROWPREFIX)
+              .withMaxKeyCount(userCount)
+              .withFileContext(meta)
+              .build();
+
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < userCount * 2; i += 2) {
+        for (int j = 0; j < eventCount; j++) {
+          KeyValue kv = new KeyValue(Bytes.toBytes(String.format("%04d|%06d", i, j)),
+              "family".getBytes(), "col".getBytes(), now, Bytes.toBytes((long) -1));
+          writer.append(kv);
+        }
+      }
+      writer.close();
+
+      // the prefix is read from the file info, not from the configuration
+      StoreFile.Reader reader = new StoreFile.Reader(fs, f, cacheConf, prefixConf);
+      reader.loadFileInfo();
+      reader.loadBloomfilter();
+      StoreFileScanner scanner = reader.getStoreFileScanner(false, false);
+      assertEquals(BloomType.ROWPREFIX, reader.getBloomFilterType());
+      assertEquals(userCount, reader.generalBloomFilter.getKeyCount());
+
+      int falsePos = 0;
+      int falseNeg = 0;
+      for (int i = 0; i < userCount * 2; i++) {
+        String user = String.format("%04d", i);
+        Scan[] scans = {
+            // all the events of the user
+            new Scan(Bytes.toBytes(user + "|"), Bytes.toBytes(user + "}")),
+            // some events of the user
+            new Scan(Bytes.toBytes(user + "|000002"), Bytes.toBytes(user + "|000005")),
+            // a single event
+            new Scan(Bytes.toBytes(user + "|000003"), Bytes.toBytes(user + "|000003"))
+        };
+        for (Scan scan : scans) {
+          boolean exists = scanner.shouldUseScanner(scan, null, Long.MIN_VALUE);
+          if (i % 2 == 0) {
+            if (!exists) falseNeg++;
+          } else {
+            if (exists) falsePos++;
+          }
+        }
+      }
+      assertEquals(0, falseNeg);
+      assertTrue("Too many false positives: " + falsePos,
+          falsePos <= 2 * 3 * userCount * err);
+
+      // scans over several prefixes, or without a full prefix, are not pruned
+      assertTrue(scanner.shouldUseScanner(new Scan(Bytes.toBytes("0001|"),
+          Bytes.toBytes("0003|")), null, Long.MIN_VALUE));
+      assertTrue(scanner.shouldUseScanner(new Scan(Bytes.toBytes("001"),
+          Bytes.toBytes("0011")), null, Long.MIN_VALUE));
+      reader.close(true); // evict because we are about to delete the file
+      fs.delete(f, true);
+    }
+  }
+
+  public void testColumnValueRanges() throws Exception {
+    FileSystem fs = FileSystem.getLocal(conf);
+    Configuration rangeConf = new Configuration(conf);
+    rangeConf.set(ColumnValueRangeTracker.COLUMNS_KEY, "ts, other");
+    byte[] family = Bytes.toBytes("family");
+    byte[] ts = Bytes.toBytes("ts");
+
+    for (boolean withDelete : new boolean[] { false, true }) {
+      Path f = new Path(ROOT_DIR, getName() + withDelete);
+      HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL).build();
+      StoreFile.Writer writer = new StoreFile.WriterBuilder(rangeConf, cacheConf, this.fs)
+          .withFilePath(f)
+          .withFileContext(meta)
+          .build();
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < 100; i++) {
+        byte[] row = Bytes.toBytes(String.format(localFormatter, i));
+        writer.append(new KeyValue(row, family, Bytes.toBytes("col"), now,
+            Bytes.toBytes("value")));
+        if (withDelete && i == 50) {
+          writer.append(new KeyValue(row, family, ts, now, KeyValue.Type.Delete));
+        }
+        writer.append(new KeyValue(row, family, ts, now - 1, Bytes.toBytes(1000L + i)));
+      }
+      writer.appendMetadata(0, false);
+      writer.close();
+
+      // The ranges are only used when the rows are declared written once
+      StoreFile sf = new StoreFile(fs, f, conf, cacheConf, BloomType.NONE);
+      StoreFile.Reader reader = sf.createReader();
+      assertNull(reader.columnValueRangeTracker);
+      assertTrue(reader.getStoreFileScanner(false, false).shouldUseScanner(
+          rangeScan(family, ts, 500L, 900L, true), null, Long.MIN_VALUE));
+      reader.close(true);
+
+      Configuration writeOnceConf = new Configuration(rangeConf);
+      writeOnceConf.setBoolean(ColumnValueRangeTracker.WRITE_ONCE_KEY, true);
+      sf = new StoreFile(fs, f, writeOnceConf, cacheConf, BloomType.NONE);
+      reader = sf.createReader();
+      StoreFileScanner scanner = reader.getStoreFileScanner(false, false);
+      if (withDelete) {
+        // Skipping the file would bring back the deleted cells
+        assertNull(reader.columnValueRangeTracker);
+        assertTrue(scanner.shouldUseScanner(
+            rangeScan(family, ts, 500L, 900L, true), null, Long.MIN_VALUE));
+      } else {
+        assertTrue(Bytes.equals(Bytes.toBytes(1000L),
+            reader.columnValueRangeTracker.getRange(ts)[0]));
+        assertTrue(Bytes.equals(Bytes.toBytes(1099L),
+            reader.columnValueRangeTracker.getRange(ts)[1]));
+        // the column is missing from all the rows
+        assertNull(reader.columnValueRangeTracker.getRange(Bytes.toBytes("other")));
+        assertFalse(scanner.shouldUseScanner(
+            rangeScan(family, ts, 500L, 900L, true), null, Long.MIN_VALUE));
+        assertFalse(scanner.shouldUseScanner(
+            rangeScan(family, ts, 1100L, 1200L, true), null, Long.MIN_VALUE));
+        assertTrue(scanner.shouldUseScanner(
+            rangeScan(family, ts, 900L, 1001L, true), null, Long.MIN_VALUE));
+        assertTrue(scanner.shouldUseScanner(
+            rangeScan(family, ts, 1099L, 1200L, true), null, Long.MIN_VALUE));
+        // rows without the column pass the filter
+        assertTrue(scanner.shouldUseScanner(
+            rangeScan(family, ts, 500L, 900L, false), null, Long.MIN_VALUE));
+        Scan scan = new Scan();
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(family,
+            Bytes.toBytes("other"), CompareOp.EQUAL, Bytes.toBytes("value"));
+        filter.setFilterIfMissing(true);
+        scan.setFilter(filter);
+        assertFalse(scanner.shouldUseScanner(scan, null, Long.MIN_VALUE));
+      }
+      reader.close(true);
+      fs.delete(f, true);
+    }
+  }
+
+  private static Scan rangeScan(byte[] family, byte[] qualifier, long from, long to,
+      boolean filterIfMissing) {
+    SingleColumnValueFilter lower = new SingleColumnValueFilter(family, qualifier,
+        CompareOp.GREATER_OR_EQUAL, Bytes.toBytes(from));
+    lower.setFilterIfMissing(filterIfMissing);
+    SingleColumnValueFilter upper = new SingleColumnValueFilter(family, qualifier,
+        CompareOp.LESS, Bytes.toBytes(to));
+    upper.setFilterIfMissing(filterIfMissing);
+    Scan scan = new Scan();
+    scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, lower, upper));
+    return scan;
+  }
+
   public void testSeqIdComparator() {
     assertOrdering(StoreFile.Comparators.SEQ_ID,
         mockStoreFile(true,  100,   1000, -1, "/foo/123"),
@@ -48,6 +48,7 @@ import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.StripeCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -124,7 +125,8 @@ public class TestStripeCompactor {
     StoreFileWritersCapture writers = new StoreFileWritersCapture();
     StripeCompactor sc = createCompactor(writers, input);
     List<Path> paths =
-        sc.compact(createDummyRequest(), Arrays.asList(boundaries), majorFrom, majorTo);
+        sc.compact(createDummyRequest(), Arrays.asList(boundaries), majorFrom, majorTo,
+          NoLimitThroughputController.INSTANCE);
     writers.verifyKvs(output, allFiles, true);
     if (allFiles) {
       assertEquals(output.length, paths.size());
@@ -159,8 +161,8 @@ public class TestStripeCompactor {
       byte[] left, byte[] right, KeyValue[][] output) throws Exception {
     StoreFileWritersCapture writers = new StoreFileWritersCapture();
     StripeCompactor sc = createCompactor(writers, input);
-    List<Path> paths = sc.compact(
-        createDummyRequest(), targetCount, targetSize, left, right, null, null);
+    List<Path> paths = sc.compact(createDummyRequest(), targetCount, targetSize, left, right,
+        null, null, NoLimitThroughputController.INSTANCE);
     assertEquals(output.length, paths.size());
     writers.verifyKvs(output, true, true);
     List<byte[]> boundaries = new ArrayList<byte[]>();
@@ -172,13 +174,37 @@ public class TestStripeCompactor {
     writers.verifyBoundaries(boundaries.toArray(new byte[][] {}));
   }
 
+  @Test
+  public void testCompressionOfMajorAndMinorCompactions() throws Exception {
+    HColumnDescriptor col = new HColumnDescriptor(NAME_OF_THINGS);
+    col.setCompressionType(Compression.Algorithm.NONE);
+    col.setCompactionCompressionType(Compression.Algorithm.GZ);
+    StoreFileWritersCapture writers = new StoreFileWritersCapture();
+    CompactionRequest request = createDummyRequest();
+    createCompactor(writers, a(KV_A, KV_B), col).compact(
+        request, 1, Long.MAX_VALUE, OPEN_KEY, OPEN_KEY, null, null,
+        NoLimitThroughputController.INSTANCE);
+    request = createDummyRequest();
+    request.setIsMajor(true, true);
+    createCompactor(writers, a(KV_A, KV_B), col).compact(
+        request, 1, Long.MAX_VALUE, OPEN_KEY, OPEN_KEY, null, null,
+        NoLimitThroughputController.INSTANCE);
+    // Minor compactions write as flushes do, major ones with the compaction compression
+    assertEquals(Arrays.asList(Compression.Algorithm.NONE, Compression.Algorithm.GZ),
+        writers.compressions);
+  }
+
   private static StripeCompactor createCompactor(
       StoreFileWritersCapture writers, KeyValue[] input) throws Exception {
+    return createCompactor(writers, input, new HColumnDescriptor(NAME_OF_THINGS));
+  }
+
+  private static StripeCompactor createCompactor(StoreFileWritersCapture writers,
+      KeyValue[] input, HColumnDescriptor col) throws Exception {
     Configuration conf = HBaseConfiguration.create();
     final Scanner scanner = new Scanner(input);
 
     // Create store mock that is satisfactory for compactor.
-    HColumnDescriptor col = new HColumnDescriptor(NAME_OF_THINGS);
     ScanInfo si = new ScanInfo(col, Long.MAX_VALUE, 0, new KVComparator());
     Store store = mock(Store.class);
     when(store.getFamily()).thenReturn(col);
@@ -250,6 +276,8 @@ public class TestStripeCompactor {
     }
 
     private List<Writer> writers = new ArrayList<Writer>();
+    /** Compression of each writer created through the store */
+    public List<Compression.Algorithm> compressions = new ArrayList<Compression.Algorithm>();
 
     @Override
     public StoreFile.Writer createWriter() throws IOException {
@@ -270,6 +298,7 @@ public class TestStripeCompactor {
 
     @Override
     public StoreFile.Writer answer(InvocationOnMock invocation) throws Throwable {
+      compressions.add((Compression.Algorithm) invocation.getArguments()[1]);
       return createWriter();
     }
 
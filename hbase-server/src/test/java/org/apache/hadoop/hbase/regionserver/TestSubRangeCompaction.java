@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
+import org.apache.hadoop.hbase.regionserver.wal.HLog;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests compactions of all the files of a store split into sub-ranges.
+ */
+@Category(MediumTests.class)
+public class TestSubRangeCompaction {
+  @Rule public TestName name = new TestName();
+  private static final HBaseTestingUtility UTIL = HBaseTestingUtility.createLocalHTU();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int ROWS = 1000;
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = UTIL.getConfiguration();
+    conf.setInt(DefaultCompactor.SUBRANGES_KEY, 4);
+    conf.setLong(DefaultCompactor.SUBRANGE_MIN_SIZE_KEY, 1);
+    conf.setInt(HStore.BLOCKING_STOREFILES_KEY, 20);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf(name.getMethodName()));
+    HColumnDescriptor hcd = new HColumnDescriptor(FAMILY);
+    // Small blocks, so that the root index has enough keys to split on
+    hcd.setBlocksize(1024);
+    htd.addFamily(hcd);
+    region = UTIL.createLocalHRegion(htd, null, null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HLog hlog = region.getLog();
+    region.close();
+    hlog.closeAndDelete();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%05d", i));
+  }
+
+  private void loadAndFlush(int version) throws IOException {
+    for (int i = 0; i < ROWS; i++) {
+      Put put = new Put(row(i));
+      put.add(FAMILY, QUALIFIER, Bytes.toBytes("value-" + version + "-" + i));
+      region.put(put);
+    }
+    region.flushcache();
+  }
+
+  @Test
+  public void testMajorCompactionInSubRanges() throws IOException {
+    loadAndFlush(1);
+    loadAndFlush(2);
+    loadAndFlush(3);
+    for (int i = 0; i < 100; i++) {
+      region.delete(new Delete(row(i)));
+    }
+    region.flushcache();
+    region.compactStores(true);
+
+    Store store = region.getStore(FAMILY);
+    List<StoreFile> files = new ArrayList<StoreFile>();
+    long cells = 0;
+    for (StoreFile sf : store.getStorefiles()) {
+      cells += sf.getReader().getEntries();
+      if (sf.getReader().getEntries() > 0) {
+        files.add(sf);
+      }
+    }
+    assertTrue("got " + files.size() + " files", files.size() > 1);
+    // Every cell is written once, by the sub-range of its row
+    assertEquals(ROWS - 100, cells);
+    Collections.sort(files, new Comparator<StoreFile>() {
+      @Override
+      public int compare(StoreFile left, StoreFile right) {
+        return Bytes.compareTo(left.getReader().getFirstKey(), right.getReader().getFirstKey());
+      }
+    });
+    long seqId = files.get(0).getMaxSequenceId();
+    byte[] lastRow = null;
+    for (StoreFile sf : store.getStorefiles()) {
+      assertTrue(sf.isMajorCompaction());
+      assertEquals(seqId, sf.getMaxSequenceId());
+    }
+    for (StoreFile sf : files) {
+      // The files cover disjoint rows
+      byte[] firstRow = KeyValue.createKeyValueFromKey(sf.getReader().getFirstKey()).getRow();
+      if (lastRow != null) {
+        assertTrue(Bytes.compareTo(lastRow, firstRow) < 0);
+      }
+      lastRow = KeyValue.createKeyValueFromKey(sf.getReader().getLastKey()).getRow();
+    }
+
+    // Nothing lost, deletes applied
+    RegionScanner scanner = region.getScanner(new Scan());
+    List<Cell> cells = new ArrayList<Cell>();
+    int i = 100;
+    boolean hasMore;
+    do {
+      hasMore = scanner.next(cells);
+      for (Cell cell : cells) {
+        assertArrayEquals(row(i), CellUtil.cloneRow(cell));
+        assertArrayEquals(Bytes.toBytes("value-3-" + i), CellUtil.cloneValue(cell));
+        i++;
+      }
+      cells.clear();
+    } while (hasMore);
+    scanner.close();
+    assertEquals(ROWS, i);
+
+    // Minor compactions leave the files of the sub-ranges alone
+    int subRangeFiles = store.getStorefilesCount();
+    loadAndFlush(4);
+    loadAndFlush(5);
+    loadAndFlush(6);
+    region.compactStores(false);
+    assertEquals(subRangeFiles + 1, store.getStorefilesCount());
+  }
+}
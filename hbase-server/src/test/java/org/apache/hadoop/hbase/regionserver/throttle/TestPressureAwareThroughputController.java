@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.throttle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.regionserver.compactions.CurrentHourProvider;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the tuning of the pressure aware throughput controllers, and how they throttle.
+ */
+@Category(SmallTests.class)
+public class TestPressureAwareThroughputController {
+
+  private static final long LOWER_BOUND = 10L * 1024 * 1024;
+  private static final long HIGHER_BOUND = 20L * 1024 * 1024;
+
+  private static Configuration createConf() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setLong(
+      PressureAwareCompactionThroughputController.HBASE_HSTORE_COMPACTION_MAX_THROUGHPUT_LOWER_BOUND,
+      LOWER_BOUND);
+    conf.setLong(
+      PressureAwareCompactionThroughputController.HBASE_HSTORE_COMPACTION_MAX_THROUGHPUT_HIGHER_BOUND,
+      HIGHER_BOUND);
+    conf.setLong(
+      PressureAwareFlushThroughputController.HBASE_HSTORE_FLUSH_MAX_THROUGHPUT_LOWER_BOUND,
+      LOWER_BOUND);
+    conf.setLong(
+      PressureAwareFlushThroughputController.HBASE_HSTORE_FLUSH_MAX_THROUGHPUT_UPPER_BOUND,
+      HIGHER_BOUND);
+    return conf;
+  }
+
+  @Test
+  public void testCompactionThroughputTuning() {
+    PressureAwareCompactionThroughputController controller = ReflectionUtils.newInstance(
+      PressureAwareCompactionThroughputController.class, createConf());
+    controller.tune(0.0);
+    assertEquals(LOWER_BOUND, controller.getMaxThroughput(), 0.01);
+    controller.tune(0.5);
+    assertEquals((LOWER_BOUND + HIGHER_BOUND) / 2, controller.getMaxThroughput(), 0.01);
+    controller.tune(1.0);
+    assertEquals(HIGHER_BOUND, controller.getMaxThroughput(), 0.01);
+    // Stores blocking updates, no limit
+    controller.tune(1.5);
+    assertEquals(Double.MAX_VALUE, controller.getMaxThroughput(), 0.01);
+  }
+
+  @Test
+  public void testOffPeakCompactionThroughput() {
+    Configuration conf = createConf();
+    // Off-peak hours cover the current and the next hour
+    int currentHour = CurrentHourProvider.getCurrentHour();
+    conf.setInt("hbase.offpeak.start.hour", currentHour);
+    conf.setInt("hbase.offpeak.end.hour", (currentHour + 23) % 24);
+    conf.setLong(
+      PressureAwareCompactionThroughputController.HBASE_HSTORE_COMPACTION_MAX_THROUGHPUT_OFFPEAK,
+      5 * HIGHER_BOUND);
+    PressureAwareCompactionThroughputController controller = ReflectionUtils.newInstance(
+      PressureAwareCompactionThroughputController.class, conf);
+    controller.tune(0.0);
+    assertEquals(5 * HIGHER_BOUND, controller.getMaxThroughput(), 0.01);
+    controller.tune(1.5);
+    assertEquals(Double.MAX_VALUE, controller.getMaxThroughput(), 0.01);
+  }
+
+  @Test
+  public void testFlushThroughputTuning() {
+    PressureAwareFlushThroughputController controller = ReflectionUtils.newInstance(
+      PressureAwareFlushThroughputController.class, createConf());
+    controller.tune(0.0);
+    assertEquals(LOWER_BOUND, controller.getMaxThroughput(), 0.01);
+    controller.tune(0.5);
+    assertEquals((LOWER_BOUND + HIGHER_BOUND) / 2, controller.getMaxThroughput(), 0.01);
+    // Flushes are forced to free memory, no limit
+    controller.tune(1.0);
+    assertEquals(Double.MAX_VALUE, controller.getMaxThroughput(), 0.01);
+  }
+
+  @Test
+  public void testControl() throws InterruptedException {
+    Configuration conf = createConf();
+    conf.setLong(
+      PressureAwareCompactionThroughputController.HBASE_HSTORE_COMPACTION_MAX_THROUGHPUT_LOWER_BOUND,
+      1024 * 1024);
+    conf.setLong(PressureAwareCompactionThroughputController
+        .HBASE_HSTORE_COMPACTION_THROUGHPUT_CONTROL_CHECK_INTERVAL, 100 * 1024);
+    PressureAwareCompactionThroughputController controller = ReflectionUtils.newInstance(
+      PressureAwareCompactionThroughputController.class, conf);
+    controller.tune(0.0);
+
+    controller.start("op1");
+    // Below the check interval
+    assertEquals(0, controller.control("op1", 50 * 1024));
+    // 110KB at 1MB/s take more than 100ms
+    long slept = controller.control("op1", 60 * 1024);
+    assertTrue(slept > 0);
+    assertEquals(slept, controller.getThrottledTime());
+
+    // The throughput is shared with a second operation
+    controller.start("op2");
+    long slept2 = controller.control("op2", 110 * 1024);
+    assertTrue("slept " + slept2 + " ms", slept2 > slept);
+    controller.finish("op2");
+
+    // Not throttled without limit
+    controller.tune(1.5);
+    assertEquals(0, controller.control("op1", 1024 * 1024));
+    controller.finish("op1");
+    assertEquals(slept + slept2, controller.getThrottledTime());
+  }
+
+  @Test
+  public void testFactories() {
+    // Neither compactions nor flushes are throttled by default
+    Configuration conf = HBaseConfiguration.create();
+    assertEquals(NoLimitThroughputController.class,
+      CompactionThroughputControllerFactory.getThroughputControllerClass(conf));
+    assertEquals(NoLimitThroughputController.class,
+      FlushThroughputControllerFactory.getThroughputControllerClass(conf));
+
+    conf.set(CompactionThroughputControllerFactory.HBASE_THROUGHPUT_CONTROLLER_KEY,
+      PressureAwareCompactionThroughputController.class.getName());
+    conf.set(FlushThroughputControllerFactory.HBASE_FLUSH_THROUGHPUT_CONTROLLER_KEY,
+      PressureAwareFlushThroughputController.class.getName());
+    assertEquals(PressureAwareCompactionThroughputController.class,
+      CompactionThroughputControllerFactory.getThroughputControllerClass(conf));
+    assertEquals(PressureAwareFlushThroughputController.class,
+      FlushThroughputControllerFactory.getThroughputControllerClass(conf));
+
+    // Unknown classes fall back to the defaults
+    conf.set(CompactionThroughputControllerFactory.HBASE_THROUGHPUT_CONTROLLER_KEY,
+      "org.example.NoSuchController");
+    assertEquals(NoLimitThroughputController.class,
+      CompactionThroughputControllerFactory.getThroughputControllerClass(conf));
+  }
+}
@@ -1095,6 +1095,8 @@ public class TestHLog  {
       hlog.rollWriter(true);
       // no wal should remain now.
       assertEquals(0, ((FSHLog) hlog).getNumRolledLogFiles());
+      // the flushed regions are no longer tracked
+      assertEquals(0, ((FSHLog) hlog).getNumUnflushedRegions());
       // add edits both to region 1 and region 2, and roll.
       addEdits(hlog, hri1, t1, 2, sequenceId1);
       addEdits(hlog, hri2, t2, 2, sequenceId2);
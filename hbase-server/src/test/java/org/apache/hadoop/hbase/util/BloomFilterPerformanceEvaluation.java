@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Compares the standard and the blocked Bloom filters: bits per key at the
+ * target error rate, observed false positive rate and probe latency of
+ * present and absent keys. The filter is much larger than the CPU caches, as
+ * the Bloom chunks of a region server are.
+ * <p>
+ * Usage: BloomFilterPerformanceEvaluation [filterMegabytes] [errorRate]
+ */
+public class BloomFilterPerformanceEvaluation {
+  private static final Log LOG =
+      LogFactory.getLog(BloomFilterPerformanceEvaluation.class.getName());
+
+  private static final int PROBES = 2 * 1000 * 1000;
+
+  private static void runBenchmark(String name, ByteBloomFilter bloom,
+      double errorRate) {
+    bloom.allocBloom();
+    int keys = (int) bloom.getMaxKeys();
+    long start = System.nanoTime();
+    for (int i = 0; i < keys; i++) {
+      bloom.add(Bytes.toBytes(i));
+    }
+    long addNanos = System.nanoTime() - start;
+
+    // Probe in a pseudo random order so that lookups miss the CPU caches
+    int present = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < PROBES; i++) {
+      if (bloom.contains(Bytes.toBytes((int) ((i * 2654435761L) % keys)))) {
+        present++;
+      }
+    }
+    long hitNanos = System.nanoTime() - start;
+
+    int falsePositives = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < PROBES; i++) {
+      if (bloom.contains(Bytes.toBytes(keys + i))) {
+        falsePositives++;
+      }
+    }
+    long missNanos = System.nanoTime() - start;
+
+    LOG.info(String.format("%s: %d keys, %.2f bits/key, hash functions %d, "
+        + "target error rate %.4f, observed %.4f, add %.1f ns/key, "
+        + "present probe %.1f ns, absent probe %.1f ns", name, keys,
+        bloom.getByteSize() * 8.0 / keys, bloom.getHashCount(), errorRate,
+        falsePositives * 1.0 / PROBES, addNanos * 1.0 / keys,
+        hitNanos * 1.0 / PROBES, missNanos * 1.0 / PROBES));
+    if (present != PROBES) {
+      throw new AssertionError(name + " returned " + (PROBES - present)
+          + " false negatives");
+    }
+  }
+
+  public static void main(String[] args) {
+    int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    double errorRate = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+    int byteSize = megabytes * 1024 * 1024;
+    // Twice each, the first run warms up the JIT
+    for (int run = 0; run < 2; run++) {
+      runBenchmark("ByteBloomFilter", ByteBloomFilter.createBySize(byteSize,
+          errorRate, Hash.MURMUR_HASH, 0), errorRate);
+      runBenchmark("BlockedByteBloomFilter", BlockedByteBloomFilter.createBySize(
+          byteSize, errorRate, Hash.MURMUR_HASH, 0), errorRate);
+    }
+  }
+}
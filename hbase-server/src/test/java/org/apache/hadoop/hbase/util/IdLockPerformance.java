@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Contention microbenchmark comparing {@link IdLock} with the read lock of
+ * {@link IdReadWriteLock} when many threads read the same id, as happens in
+ * BucketCache for a hot block. Each critical section copies a 64KB buffer to
+ * mimic reading a block from the IOEngine.
+ */
+public class IdLockPerformance {
+  public static final Log LOG = LogFactory.getLog(IdLockPerformance.class);
+
+  private static final long HOT_ID = 256L * 1024;
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  interface Locker {
+    void run(Runnable work) throws IOException;
+  }
+
+  static class IdLockLocker implements Locker {
+    private final IdLock lock = new IdLock();
+
+    @Override
+    public void run(Runnable work) throws IOException {
+      IdLock.Entry entry = lock.getLockEntry(HOT_ID);
+      try {
+        work.run();
+      } finally {
+        lock.releaseLockEntry(entry);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "IdLock";
+    }
+  }
+
+  static class IdReadWriteLockLocker implements Locker {
+    private final IdReadWriteLock lock = new IdReadWriteLock();
+
+    @Override
+    public void run(Runnable work) {
+      ReentrantReadWriteLock rwLock = lock.getLock(HOT_ID);
+      rwLock.readLock().lock();
+      try {
+        work.run();
+      } finally {
+        rwLock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "IdReadWriteLock";
+    }
+  }
+
+  static double runTest(final Locker locker, int threads, final int opsPerThread)
+      throws Exception {
+    final byte[] source = new byte[BLOCK_SIZE];
+    ExecutorService exec = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Long>> results = new ArrayList<Future<Long>>();
+      long startTime = System.nanoTime();
+      for (int t = 0; t < threads; ++t) {
+        results.add(exec.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            final byte[] dest = new byte[BLOCK_SIZE];
+            Runnable work = new Runnable() {
+              @Override
+              public void run() {
+                System.arraycopy(source, 0, dest, 0, BLOCK_SIZE);
+              }
+            };
+            for (int i = 0; i < opsPerThread; ++i) {
+              locker.run(work);
+            }
+            return (long) dest[0];
+          }
+        }));
+      }
+      for (Future<Long> result : results) {
+        result.get();
+      }
+      long took = System.nanoTime() - startTime;
+      return (double) threads * opsPerThread / (took / 1e9);
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    // How many operations each thread does; large enough for hotspot to warm up.
+    final int opsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+    // Warm up
+    runTest(new IdLockLocker(), 4, opsPerThread);
+    runTest(new IdReadWriteLockLocker(), 4, opsPerThread);
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      for (Locker locker : new Locker[] { new IdLockLocker(), new IdReadWriteLockLocker() }) {
+        double opsPerSec = runTest(locker, threads, opsPerThread);
+        LOG.info(locker + ": threads=" + threads + ", ops/sec=" + String.format("%.0f", opsPerSec));
+      }
+    }
+  }
+}
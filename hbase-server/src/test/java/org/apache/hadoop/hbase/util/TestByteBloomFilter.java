@@ -158,6 +158,61 @@ public class TestByteBloomFilter extends TestCase {
     assertTrue(Math.abs(bitSize2 - bitSize) * 1.0 / bitSize < 1e-5);
   }
 
+  public void testBlockedBloom() throws Exception {
+    double err = 0.01;
+    BlockedByteBloomFilter b = BlockedByteBloomFilter.createBySize(128 * 1024,
+        err, Hash.MURMUR_HASH, 3);
+    b.allocBloom();
+    assertEquals(0, b.getByteSize() % BlockedByteBloomFilter.BLOCK_BYTES);
+    // Blocking costs some keys at the same size and error rate
+    long idealMaxKeys = ByteBloomFilter.idealMaxKeys(b.getByteSize() * 8, err);
+    assertTrue(b.getMaxKeys() < idealMaxKeys);
+    assertTrue(b.getMaxKeys() > idealMaxKeys * 0.7);
+
+    int keys = (int) b.getMaxKeys();
+    for (int i = 0; i < keys; ++i) {
+      b.add(Bytes.toBytes(i));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 2 * keys; ++i) {
+      if (b.contains(Bytes.toBytes(i))) {
+        if (i >= keys) falsePositives++;
+      } else {
+        assertFalse(i < keys);
+      }
+    }
+    assertTrue("False positives = " + falsePositives,
+        falsePositives <= keys * err * 1.25);
+    assertTrue(b.actualErrorRate() <= err);
+
+    // Serialized and read back as a compound Bloom filter chunk would be
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    b.writeBloom(new DataOutputStream(bOut));
+    byte[] array = bOut.toByteArray();
+    for (int i = 0; i < keys; ++i) {
+      byte[] key = Bytes.toBytes(i);
+      assertTrue(BlockedByteBloomFilter.contains(key, 0, key.length, array, 0,
+          array.length, Hash.getInstance(Hash.MURMUR_HASH), b.getHashCount()));
+    }
+  }
+
+  public void testBlockedBloomFold() throws Exception {
+    BlockedByteBloomFilter b = BlockedByteBloomFilter.createBySize(8192, 0.01,
+        Hash.MURMUR_HASH, 7);
+    b.allocBloom();
+    long origSize = b.getByteSize();
+    for (int i = 0; i < 100; ++i) {
+      b.add(Bytes.toBytes(i));
+    }
+    b.compactBloom();
+    assertTrue(b.getByteSize() < origSize);
+    // Folding keeps whole blocks
+    assertEquals(0, b.getByteSize() % BlockedByteBloomFilter.BLOCK_BYTES);
+    for (int i = 0; i < 100; ++i) {
+      assertTrue(b.contains(Bytes.toBytes(i)));
+    }
+  }
+
   public void testFoldableByteSize() {
     assertEquals(128, ByteBloomFilter.computeFoldableByteSize(1000, 5));
     assertEquals(640, ByteBloomFilter.computeFoldableByteSize(5001, 4));